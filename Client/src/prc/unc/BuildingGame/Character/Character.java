@@ -107,10 +107,10 @@ public class Character extends DoubleRectangle {
 	public boolean IsCollidingWithBlock(Point pt1, Point pt2) {
 		for (int x = (int) (this.x / Tile.tileSize); x < (int) (this.x / Tile.tileSize + 3); x++) {
 			for (int y = (int) (this.y / Tile.tileSize); y < (int) (this.y / Tile.tileSize + 3); y++) {
-				if (x >= 0 && y >= 0 && x < Component.level.block.length && y < Component.level.block[0].length)
+				if (x >= 0 && y >= 0 && x < Component.level.world.width && y < Component.level.world.height)
 
-					if (Component.level.block[x][y].id != Tile.air && Component.level.block[x][y].id != Tile.power && Component.level.block[x][y].id != Tile.Water) {
-						if (Component.level.block[x][y].contains(pt1) || Component.level.block[x][y].contains(pt2)) {
+					if (Component.level.world.get(x, y) != Tile.air && Component.level.world.get(x, y) != Tile.power && Component.level.world.get(x, y) != Tile.Water) {
+						if (Component.level.contains(x, y, pt1) || Component.level.contains(x, y, pt2)) {
 
 							return true;
 						}
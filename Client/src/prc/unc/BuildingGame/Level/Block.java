@@ -1,23 +0,0 @@
-package prc.unc.BuildingGame.Level;
-
-import java.awt.*;
-
-import prc.unc.BuildingGame.Component;
-import prc.unc.BuildingGame.Misc.Tile;
-
-public class Block extends Rectangle {
-	private static final long serialVersionUID = 1L;
-	public int[] id = { -1, -1 };
-	String k;
-
-	public Block(Rectangle size, int[] id) {
-		setBounds(size);
-		this.id = id;
-	}
-
-	public void render(Graphics g) {
-		if (id != Tile.air) {
-			g.drawImage(Tile.tileset_terrain, x - (int) Component.sX, y - (int) Component.sY, x + width - (int) Component.sX, y + height - (int) Component.sY, id[0] * Tile.tileSize, id[1] * Tile.tileSize, id[0] * Tile.tileSize + Tile.tileSize, id[1] * Tile.tileSize + Tile.tileSize, null);
-		}
-	}
-}
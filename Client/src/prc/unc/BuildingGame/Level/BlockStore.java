@@ -0,0 +1,245 @@
+package prc.unc.BuildingGame.Level;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import prc.unc.BuildingGame.Misc.Tile;
+
+/**
+ * Block ids of the world, stored in CHUNK x CHUNK chunks. Every chunk keeps
+ * a small palette of the block types it contains and a packed bit array of
+ * palette indices, so an all-air chunk costs a few bytes and a typical one
+ * 2-4 bits per block. Ids are the Tile constants, compared by reference as
+ * everywhere else in the game.
+ */
+public class BlockStore {
+	public static final int CHUNK_SHIFT = 4;
+	public static final int CHUNK = 1 << CHUNK_SHIFT;
+
+	private static final int MAGIC = 0x42475744; // "BGWD"
+	private static final int VERSION = 1;
+
+	private static final List<int[]> types = new ArrayList<int[]>(Arrays.asList(Tile.air, Tile.dirt, Tile.Grass, Tile.sanD, Tile.WOOD, Tile.Stone, Tile.tree, Tile.WaterSource, Tile.Water, Tile.solidair, Tile.Chest, Tile.power, Tile.Dynamite, Tile.Leaf, Tile.light3, Tile.light, Tile.light2));
+
+	public final int width, height;
+	private final int chunksX, chunksY;
+	private final Chunk[] chunks;
+
+	public BlockStore(int width, int height) {
+		this.width = width;
+		this.height = height;
+		chunksX = (width + CHUNK - 1) >> CHUNK_SHIFT;
+		chunksY = (height + CHUNK - 1) >> CHUNK_SHIFT;
+		chunks = new Chunk[chunksX * chunksY];
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = new Chunk();
+		}
+	}
+
+	/**
+	 * Throws ArrayIndexOutOfBoundsException outside the world, like the
+	 * Block[][] this replaces.
+	 */
+	public int[] get(int x, int y) {
+		check(x, y);
+		return types.get(chunk(x, y).get(local(x, y)));
+	}
+
+	public void set(int x, int y, int[] id) {
+		check(x, y);
+		chunk(x, y).set(local(x, y), code(id));
+	}
+
+	public void fill(int[] id) {
+		int c = code(id);
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = new Chunk(c);
+		}
+	}
+
+	/**
+	 * Bytes used by palettes and bit arrays, not counting object headers.
+	 */
+	public long dataBytes() {
+		long bytes = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			bytes += chunks[i].palette.length * 4 + (chunks[i].data == null ? 0 : chunks[i].data.length * 8);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes the world to a region file: a header, the block type table and
+	 * every chunk's palette and bit array, through a mapped FileChannel.
+	 */
+	public void save(File file) throws IOException {
+		int size = 6 * 4 + types.size() * 8;
+		for (int i = 0; i < chunks.length; i++) {
+			size += 2 * 4 + chunks[i].palette.length * 4 + (chunks[i].data == null ? 0 : chunks[i].data.length * 8);
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buf.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(CHUNK);
+			buf.putInt(types.size());
+			for (int[] id : types) {
+				buf.putInt(id[0]).putInt(id[1]);
+			}
+			for (int i = 0; i < chunks.length; i++) {
+				Chunk c = chunks[i];
+				buf.putInt(c.palette.length).putInt(c.bits);
+				for (int p = 0; p < c.palette.length; p++) {
+					buf.putInt(c.palette[p]);
+				}
+				if (c.data != null) {
+					buf.asLongBuffer().put(c.data);
+					buf.position(buf.position() + c.data.length * 8);
+				}
+			}
+			buf.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	public static BlockStore load(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION) throw new IOException("Not a world file: " + file);
+			BlockStore store = new BlockStore(buf.getInt(), buf.getInt());
+			if (buf.getInt() != CHUNK) throw new IOException("Unsupported chunk size in " + file);
+
+			int[] remap = new int[buf.getInt()];
+			for (int i = 0; i < remap.length; i++) {
+				remap[i] = code(buf.getInt(), buf.getInt());
+			}
+			for (int i = 0; i < store.chunks.length; i++) {
+				int[] palette = new int[buf.getInt()];
+				int bits = buf.getInt();
+				for (int p = 0; p < palette.length; p++) {
+					palette[p] = remap[buf.getInt()];
+				}
+				long[] data = null;
+				if (bits > 0) {
+					data = new long[longs(bits)];
+					buf.asLongBuffer().get(data);
+					buf.position(buf.position() + data.length * 8);
+				}
+				store.chunks[i] = new Chunk(palette, bits, data);
+			}
+			return store;
+		} finally {
+			in.close();
+		}
+	}
+
+	private Chunk chunk(int x, int y) {
+		return chunks[(x >> CHUNK_SHIFT) + (y >> CHUNK_SHIFT) * chunksX];
+	}
+
+	private static int local(int x, int y) {
+		return (x & (CHUNK - 1)) + ((y & (CHUNK - 1)) << CHUNK_SHIFT);
+	}
+
+	private void check(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) throw new ArrayIndexOutOfBoundsException(x + ", " + y);
+	}
+
+	private static int code(int[] id) {
+		for (int i = 0; i < types.size(); i++) {
+			if (types.get(i) == id) return i;
+		}
+		types.add(id);
+		return types.size() - 1;
+	}
+
+	private static int code(int id0, int id1) {
+		for (int i = 0; i < types.size(); i++) {
+			if (types.get(i)[0] == id0 && types.get(i)[1] == id1) return i;
+		}
+		return code(new int[] { id0, id1 });
+	}
+
+	private static int longs(int bits) {
+		return (CHUNK * CHUNK * bits + 63) >> 6;
+	}
+
+	private static class Chunk {
+		int[] palette;
+		int bits;
+		long[] data;
+
+		Chunk() {
+			this(0);
+		}
+
+		Chunk(int code) {
+			this(new int[] { code }, 0, null);
+		}
+
+		Chunk(int[] palette, int bits, long[] data) {
+			this.palette = palette;
+			this.bits = bits;
+			this.data = data;
+		}
+
+		int get(int i) {
+			if (bits == 0) return palette[0];
+			return palette[read(data, bits, i)];
+		}
+
+		void set(int i, int code) {
+			int p = indexOf(code);
+			if (p < 0) {
+				p = palette.length;
+				palette = Arrays.copyOf(palette, p + 1);
+				palette[p] = code;
+				if (p >= (1 << bits)) resize(bits + 1);
+			}
+			if (bits > 0) write(data, bits, i, p);
+		}
+
+		private int indexOf(int code) {
+			for (int p = 0; p < palette.length; p++) {
+				if (palette[p] == code) return p;
+			}
+			return -1;
+		}
+
+		private void resize(int newBits) {
+			long[] newData = new long[longs(newBits)];
+			for (int i = 0; i < CHUNK * CHUNK; i++) {
+				write(newData, newBits, i, bits == 0 ? 0 : read(data, bits, i));
+			}
+			data = newData;
+			bits = newBits;
+		}
+
+		private static int read(long[] data, int bits, int i) {
+			long bit = (long) i * bits;
+			int word = (int) (bit >> 6);
+			int shift = (int) (bit & 63);
+			long value = data[word] >>> shift;
+			if (shift + bits > 64) value |= data[word + 1] << (64 - shift);
+			return (int) (value & ((1L << bits) - 1));
+		}
+
+		private static void write(long[] data, int bits, int i, int value) {
+			long mask = (1L << bits) - 1;
+			long bit = (long) i * bits;
+			int word = (int) (bit >> 6);
+			int shift = (int) (bit & 63);
+			data[word] = (data[word] & ~(mask << shift)) | ((value & mask) << shift);
+			if (shift + bits > 64) {
+				int spill = 64 - shift;
+				data[word + 1] = (data[word + 1] & ~(mask >>> spill)) | ((value & mask) >>> spill);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package prc.unc.BuildingGame.Level;
 
 import java.awt.*;
+import java.io.*;
 import java.util.*;
 
 import prc.unc.BuildingGame.Component;
@@ -35,49 +36,82 @@ public class Level extends DoubleRectangle {
 	public int bx;
 	public static Rectangle range = new Rectangle((209 / Component.pixelSize), (120 / Component.pixelSize), (280 / Component.pixelSize), (280 / Component.pixelSize));
 
-	public Block[][] block = new Block[worldW][worldH];
+	public BlockStore world = new BlockStore(worldW, worldH);
+	private final Random random;
 
 	public Level() {
+		this(new Random().nextLong());
+	}
+
+	public Level(long seed) {
 		blocks = new int[64];
-		for (int x = 0; x < block.length; x++) {
-			for (int y = 0; y < block[0].length; y++) {
-				block[x][y] = new Block(new Rectangle(x * Tile.tileSize, y * Tile.tileSize, Tile.tileSize, Tile.tileSize), Tile.air);
+		random = new Random(seed);
+		generateLevel();
+	}
 
-			}
-		}
+	public Level(BlockStore world) {
+		blocks = new int[64];
+		random = new Random();
+		this.world = world;
+	}
 
-		generateLevel();
+	public void save(File file) throws IOException {
+		world.save(file);
+	}
+
+	public static Level load(File file) throws IOException {
+		return new Level(BlockStore.load(file));
+	}
+
+	public boolean contains(int x, int y, Point p) {
+		return contains(x, y, p.x, p.y);
+	}
+
+	/**
+	 * Whether the pixel (px, py) lies in the block at (x, y).
+	 */
+	public boolean contains(int x, int y, int px, int py) {
+		int bx = x * Tile.tileSize, by = y * Tile.tileSize;
+		return px >= bx && py >= by && px < bx + Tile.tileSize && py < by + Tile.tileSize;
+	}
+
+	private void renderBlock(Graphics g, int x, int y) {
+		int[] id = world.get(x, y);
+		if (id != Tile.air) {
+			int bx = x * Tile.tileSize - (int) Component.sX, by = y * Tile.tileSize - (int) Component.sY;
+			g.drawImage(Tile.tileset_terrain, bx, by, bx + Tile.tileSize, by + Tile.tileSize, id[0] * Tile.tileSize, id[1] * Tile.tileSize, id[0] * Tile.tileSize + Tile.tileSize, id[1] * Tile.tileSize + Tile.tileSize, null);
+		}
 	}
 
 	public void generateLevel() {
 		// GeneRating MoUntaIns, dirt, etC
-		for (int y = 0; y < block.length; y++) {
-			for (int x = 0; x < block[0].length; x++) {
+		for (int y = 0; y < worldW; y++) {
+			for (int x = 0; x < worldH; x++) {
 				if (y > worldH / 4) {
-					if (new Random().nextInt(100) > 20) {
+					if (random.nextInt(100) > 20) {
 						try {
-							if (block[x - 1][y - 1].id == Tile.dirt) {
-								block[x][y].id = Tile.dirt;
+							if (world.get(x - 1, y - 1) == Tile.dirt) {
+								world.set(x, y, Tile.dirt);
 							}
 						} catch (Exception e) {
 						}
 					}
-					if (new Random().nextInt(100) > 30) {
+					if (random.nextInt(100) > 30) {
 						try {
-							if (block[x + 1][y - 1].id == Tile.dirt) {
-								block[x][y].id = Tile.dirt;
+							if (world.get(x + 1, y - 1) == Tile.dirt) {
+								world.set(x, y, Tile.dirt);
 							}
 						} catch (Exception e) {
 						}
 					}
 					try {
-						if (block[x][y - 1].id == Tile.dirt) {
-							block[x][y].id = Tile.dirt;
+						if (world.get(x, y - 1) == Tile.dirt) {
+							world.set(x, y, Tile.dirt);
 						}
 					} catch (Exception e) {
 					}
-					if (new Random().nextInt(100) < 2) {
-						block[x][y].id = Tile.dirt;
+					if (random.nextInt(100) < 2) {
+						world.set(x, y, Tile.dirt);
 
 					}
 
@@ -86,59 +120,59 @@ public class Level extends DoubleRectangle {
 		}
 
 		// ////////Grass
-		for (int y = 0; y < block.length; y++) {
-			for (int x = 0; x < block[0].length; x++) {
-				if (block[x][y].id == Tile.dirt && block[x][y - 1].id == Tile.air) {
-					block[x][y].id = Tile.Grass;
+		for (int y = 0; y < worldW; y++) {
+			for (int x = 0; x < worldH; x++) {
+				if (world.get(x, y) == Tile.dirt && world.get(x, y - 1) == Tile.air) {
+					world.set(x, y, Tile.Grass);
 				}
-				if (block[x][y].id == Tile.Grass) {
+				if (world.get(x, y) == Tile.Grass) {
 					for (int i = 0; i < 68; i++) {
-						block[x][y + 5 + i].id = Tile.Stone;
+						world.set(x, y + 5 + i, Tile.Stone);
 					}
-					for (int i = 0; i < new Random().nextInt(5) + 2; i++) {
-						if (new Random().nextInt(50) < 4) {
-							if (block[x][y].id == Tile.Stone) {
-								block[x - i][y].id = Tile.sanD;
+					for (int i = 0; i < random.nextInt(5) + 2; i++) {
+						if (random.nextInt(50) < 4) {
+							if (world.get(x, y) == Tile.Stone) {
+								world.set(x - i, y, Tile.sanD);
 							}
 						}
 					}
 				}
 			}
 		}
-		for (int y = 0; y < block.length; y++) {// //////////////////////////////////////////MAP
+		for (int y = 0; y < worldW; y++) {// //////////////////////////////////////////MAP
 												// PROTECT air that is solid
-			for (int x = 0; x < block[0].length; x++) {
-				if (x == 0 || y == 0 || x == block[0].length - 1 || y == block[0].length - 1) {
-					block[x][y].id = Tile.solidair;
+			for (int x = 0; x < worldH; x++) {
+				if (x == 0 || y == 0 || x == worldH - 1 || y == worldH - 1) {
+					world.set(x, y, Tile.solidair);
 				}
 			}
 		}// ////////////////////////////////////////////////
-		for (int y = 0; y < block.length; y++) {// ////////////////////////////TREE
-			for (int x = 0; x < block[0].length; x++) {
+		for (int y = 0; y < worldW; y++) {// ////////////////////////////TREE
+			for (int x = 0; x < worldH; x++) {
 				try {
-					if (block[x][y + 1].id == Tile.Grass && block[x][y].id == Tile.air) {
-						if (new Random().nextInt(100) <= 2) {
-							for (int i = 0; i < new Random().nextInt(5) + 3; i++) {
-								block[x][y - i].id = Tile.tree;
+					if (world.get(x, y + 1) == Tile.Grass && world.get(x, y) == Tile.air) {
+						if (random.nextInt(100) <= 2) {
+							for (int i = 0; i < random.nextInt(5) + 3; i++) {
+								world.set(x, y - i, Tile.tree);
 							}
-							if (block[x][y].id == Tile.tree && block[x][y - 1].id == Tile.tree) {
-								block[x - 1][y - 2].id = Tile.Leaf;
-								block[x - 1][y - 3].id = Tile.Leaf;
-								block[x + 1][y - 2].id = Tile.Leaf;
-								block[x + 1][y - 3].id = Tile.Leaf;
-								block[x - 1][y - 4].id = Tile.Leaf;
-								block[x + 1][y - 4].id = Tile.Leaf;
-								block[x + 1][y - 5].id = Tile.Leaf;
-								block[x - 1][y - 5].id = Tile.Leaf;
-								block[x - 2][y - 2].id = Tile.Leaf;
-								block[x - 2][y - 3].id = Tile.Leaf;
-								block[x + 2][y - 2].id = Tile.Leaf;
-								block[x + 2][y - 3].id = Tile.Leaf;
-								block[x - 2][y - 4].id = Tile.Leaf;
-								block[x + 2][y - 4].id = Tile.Leaf;
-								block[x][y - 4].id = Tile.Leaf;
-								block[x][y - 5].id = Tile.Leaf;
-								block[x][y - 6].id = Tile.Leaf;
+							if (world.get(x, y) == Tile.tree && world.get(x, y - 1) == Tile.tree) {
+								world.set(x - 1, y - 2, Tile.Leaf);
+								world.set(x - 1, y - 3, Tile.Leaf);
+								world.set(x + 1, y - 2, Tile.Leaf);
+								world.set(x + 1, y - 3, Tile.Leaf);
+								world.set(x - 1, y - 4, Tile.Leaf);
+								world.set(x + 1, y - 4, Tile.Leaf);
+								world.set(x + 1, y - 5, Tile.Leaf);
+								world.set(x - 1, y - 5, Tile.Leaf);
+								world.set(x - 2, y - 2, Tile.Leaf);
+								world.set(x - 2, y - 3, Tile.Leaf);
+								world.set(x + 2, y - 2, Tile.Leaf);
+								world.set(x + 2, y - 3, Tile.Leaf);
+								world.set(x - 2, y - 4, Tile.Leaf);
+								world.set(x + 2, y - 4, Tile.Leaf);
+								world.set(x, y - 4, Tile.Leaf);
+								world.set(x, y - 5, Tile.Leaf);
+								world.set(x, y - 6, Tile.Leaf);
 							}
 						}
 					}
@@ -153,10 +187,10 @@ public class Level extends DoubleRectangle {
 		for (int x = camX / Tile.tileSize; x < (camX / Tile.tileSize) + renW; x++) {
 			for (int y = (camY / Tile.tileSize); y < (camY / Tile.tileSize) + renH; y++) {
 				if (x >= 0 && y >= 0 && x < worldW && y < worldH) {
-					if (block[x][y].id == Tile.dirt) {
+					if (world.get(x, y) == Tile.dirt) {
 						for (int o = 0; o < 25; o++) {
 							if (o == 25) {
-								block[x][y].id = Tile.air;
+								world.set(x, y, Tile.air);
 							}
 							o = 0;
 						}
@@ -167,12 +201,12 @@ public class Level extends DoubleRectangle {
 	}
 
 	public void blowUpTNT(int camX, int camY, int renW, int renH) {
-		for (int x = 0; x < block.length; x++) {
-			for (int y = 0; y < block[0].length; y++) {
-				if (block[x][y].id == Tile.Dynamite) {
+		for (int x = 0; x < worldW; x++) {
+			for (int y = 0; y < worldH; y++) {
+				if (world.get(x, y) == Tile.Dynamite) {
 					if (fuse >= timer) {
 						if (boom == false) {
-							if (block[x - 1][y].id == Tile.power || block[x + 1][y].id == Tile.power || block[x][y - 1].id == Tile.power || block[x][y + 1].id == Tile.power && block[x][y].id == Tile.Dynamite) {
+							if (world.get(x - 1, y) == Tile.power || world.get(x + 1, y) == Tile.power || world.get(x, y - 1) == Tile.power || world.get(x, y + 1) == Tile.power && world.get(x, y) == Tile.Dynamite) {
 								boom = true;
 							}
 						} else if (boom == true) {
@@ -186,34 +220,34 @@ public class Level extends DoubleRectangle {
 
 					if (boomFrame >= boomTime) {
 						if (boom == true) {
-							for (int i = 0; i < new Random().nextInt(3) + 2; i++) {
-								block[x][y].id = Tile.air;
-								if (block[x][y + i].id != Tile.air && block[x][y + i].id != Tile.Dynamite) {
-									block[x][y + i].id = Tile.air;
+							for (int i = 0; i < random.nextInt(3) + 2; i++) {
+								world.set(x, y, Tile.air);
+								if (world.get(x, y + i) != Tile.air && world.get(x, y + i) != Tile.Dynamite) {
+									world.set(x, y + i, Tile.air);
 								}
-								if (block[x][y - i - i].id != Tile.air && block[x][y - i - i].id != Tile.Dynamite) {
-									block[x][y - i - 1].id = Tile.air;
+								if (world.get(x, y - i - i) != Tile.air && world.get(x, y - i - i) != Tile.Dynamite) {
+									world.set(x, y - i - 1, Tile.air);
 								}
-								if (block[x][y + i + 1].id != Tile.air && block[x][y + i + 1].id != Tile.Dynamite) {
-									block[x][y + i + 1].id = Tile.air;
+								if (world.get(x, y + i + 1) != Tile.air && world.get(x, y + i + 1) != Tile.Dynamite) {
+									world.set(x, y + i + 1, Tile.air);
 								}
-								if (block[x + i + 1][y].id != Tile.air && block[x + i + 1][y].id != Tile.Dynamite) {
-									block[x + i + 1][y].id = Tile.air;
+								if (world.get(x + i + 1, y) != Tile.air && world.get(x + i + 1, y) != Tile.Dynamite) {
+									world.set(x + i + 1, y, Tile.air);
 								}
-								if (block[x + i][y + i].id != Tile.air && block[x + i][y + i].id != Tile.Dynamite) {
-									block[x + i][y + i].id = Tile.air;
+								if (world.get(x + i, y + i) != Tile.air && world.get(x + i, y + i) != Tile.Dynamite) {
+									world.set(x + i, y + i, Tile.air);
 								}
-								if (block[x + i][y - i].id != Tile.air && block[x + i][y - i].id != Tile.Dynamite) {
-									block[x + i][y - i].id = Tile.air;
+								if (world.get(x + i, y - i) != Tile.air && world.get(x + i, y - i) != Tile.Dynamite) {
+									world.set(x + i, y - i, Tile.air);
 								}
-								if (block[x - i - 1][y].id != Tile.air && block[x - i - 1][y].id != Tile.Dynamite) {
-									block[x - i - 1][y].id = Tile.air;
+								if (world.get(x - i - 1, y) != Tile.air && world.get(x - i - 1, y) != Tile.Dynamite) {
+									world.set(x - i - 1, y, Tile.air);
 								}
-								if (block[x - i][y + i].id != Tile.air && block[x - i][y + i].id != Tile.Dynamite) {
-									block[x - i][y + i].id = Tile.air;
+								if (world.get(x - i, y + i) != Tile.air && world.get(x - i, y + i) != Tile.Dynamite) {
+									world.set(x - i, y + i, Tile.air);
 								}
-								if (block[x - i][y - i].id != Tile.air && block[x - i][y - i].id != Tile.Dynamite) {
-									block[x - i][y - i].id = Tile.air;
+								if (world.get(x - i, y - i) != Tile.air && world.get(x - i, y - i) != Tile.Dynamite) {
+									world.set(x - i, y - i, Tile.air);
 								}
 							}
 						}
@@ -231,49 +265,49 @@ public class Level extends DoubleRectangle {
 			for (int x = (camX / Tile.tileSize); x < (camX / Tile.tileSize) + renW; x++) {
 				for (int y = (camY / Tile.tileSize); y < (camY / Tile.tileSize) + renH; y++) {
 					if (x >= 0 && y >= 0 && x < worldW && y < worldH) {
-						if (block[x][y].contains(new Point((Component.mse.x / Component.pixelSize) + (int) Component.sX, (Component.mse.y / Component.pixelSize) + (int) Component.sY))) {
+						if (contains(x, y, (Component.mse.x / Component.pixelSize) + (int) Component.sX, (Component.mse.y / Component.pixelSize) + (int) Component.sY)) {
 							int st[] = Inventory.invbar[Inventory.selected].id;
 
 							if (Component.isMouseLeft && !Inventory.isOpen) {
-								if (block[x][y].id != Tile.solidair && block[x][y].id != Tile.air && block[x][y].id != Tile.Dynamite && block[x][y].id != Tile.power) {
+								if (world.get(x, y) != Tile.solidair && world.get(x, y) != Tile.air && world.get(x, y) != Tile.Dynamite && world.get(x, y) != Tile.power) {
 
 									bx++;
 									if (bx == 50) {
-										block[x][y].id = Tile.air;
+										world.set(x, y, Tile.air);
 									}
 									if (bx > 50) {
 										bx = 0;
 									}
 
-									if (block[x][y].id == Tile.dirt || block[x][y].id == Tile.Grass) {
+									if (world.get(x, y) == Tile.dirt || world.get(x, y) == Tile.Grass) {
 										Inventory.add = true;
 										if (Inventory.add == true) {
 											Inventory.add = false;
 										}
 									}
 								}
-								if (block[x][y].id == Tile.power || block[x][y].id == Tile.Dynamite) {
-									block[x][y].id = Tile.air;
+								if (world.get(x, y) == Tile.power || world.get(x, y) == Tile.Dynamite) {
+									world.set(x, y, Tile.air);
 								}
 
 							} else if (Component.isMouseRight) {
-								if (block[x][y].id == Tile.air && (block[x][y + 1].id != Tile.air || block[x + 1][y].id != Tile.air || block[x - 1][y].id != Tile.air || block[x][y - 1].id != Tile.air)) {
+								if (world.get(x, y) == Tile.air && (world.get(x, y + 1) != Tile.air || world.get(x + 1, y) != Tile.air || world.get(x - 1, y) != Tile.air || world.get(x, y - 1) != Tile.air)) {
 
 									if (st != Tile.air) {
-										block[x][y].id = st;
+										world.set(x, y, st);
 
-										if (block[x][y + 1].id == Tile.Grass) {
-											block[x][y + 1].id = Tile.dirt;
+										if (world.get(x, y + 1) == Tile.Grass) {
+											world.set(x, y + 1, Tile.dirt);
 										}
 									}
 									if (st == Tile.WaterSource) {
 										Waterb = true;
 									}
 								}
-								if (block[x][y].id == Tile.Chest) {
+								if (world.get(x, y) == Tile.Chest) {
 								}
-								if (block[x][y].id == Tile.power && block[x][y + 1].id == Tile.air) {
-									block[x][y].id = Tile.air;
+								if (world.get(x, y) == Tile.power && world.get(x, y + 1) == Tile.air) {
+									world.set(x, y, Tile.air);
 								}
 
 							}
@@ -290,31 +324,31 @@ public class Level extends DoubleRectangle {
 
 	public void tick(int camX, int camY, int renW, int renH) {
 		// //////////Water
-		for (int y = 0; y < block.length; y++) {
-			for (int x = 0; x < block[0].length; x++) {
+		for (int y = 0; y < worldW; y++) {
+			for (int x = 0; x < worldH; x++) {
 				if (fuse < timer && boom) {
-					if (block[x][y].id == Tile.Dynamite && block[x][y + 1].id == Tile.air) {
-						block[x][y + 1].id = Tile.Dynamite;
-						block[x][y].id = Tile.air;
-						block[x][y + 2].id = Tile.Dynamite;
-						block[x][y + 1].id = Tile.air;
+					if (world.get(x, y) == Tile.Dynamite && world.get(x, y + 1) == Tile.air) {
+						world.set(x, y + 1, Tile.Dynamite);
+						world.set(x, y, Tile.air);
+						world.set(x, y + 2, Tile.Dynamite);
+						world.set(x, y + 1, Tile.air);
 					}
 				}
 			}
 		}
-		for (int y = 0; y < block.length; y++) {
-			for (int x = 0; x < block[0].length; x++) {
-				if (block[x][y].id == Tile.Water) {
-					if (block[x][y + 1].id == Tile.air) {
-						block[x][y + 1].id = Tile.Water;
+		for (int y = 0; y < worldW; y++) {
+			for (int x = 0; x < worldH; x++) {
+				if (world.get(x, y) == Tile.Water) {
+					if (world.get(x, y + 1) == Tile.air) {
+						world.set(x, y + 1, Tile.Water);
 					}
 				}
-				if (block[x][y].id == Tile.sanD && block[x][y + 1].id == Tile.air) {
+				if (world.get(x, y) == Tile.sanD && world.get(x, y + 1) == Tile.air) {
 					if (isFalling == false) {
 						isFalling = true;
 					} else if (isFalling == true) {
-						block[x][y + 1].id = Tile.sanD;
-						block[x][y].id = Tile.air;
+						world.set(x, y + 1, Tile.sanD);
+						world.set(x, y, Tile.air);
 						for (int i = 0; i < 50; i++) {
 							isFalling = false;
 						}
@@ -325,17 +359,17 @@ public class Level extends DoubleRectangle {
 		int o = worldW / 2;
 		int p = worldH / 2;
 		if (lol) {
-			block[o][p].id = Tile.Chest;
+			world.set(o, p, Tile.Chest);
 		}
 
 		if (Waterb) {
-			for (int y = 0; y < block.length; y++) {
-				for (int x = 0; x < block[0].length; x++) {
+			for (int y = 0; y < worldW; y++) {
+				for (int x = 0; x < worldH; x++) {
 					for (int i = 0; i < 7; i++) {
-						if (block[x][y].id == Tile.WaterSource && block[x - i][y].id == Tile.air) {
+						if (world.get(x, y) == Tile.WaterSource && world.get(x - i, y) == Tile.air) {
 							Water += 1;
 							if (Water == 4) {
-								block[x - i][y].id = Tile.Water;
+								world.set(x - i, y, Tile.Water);
 							}
 							if (Water > 4) {
 								Water = 0;
@@ -357,17 +391,17 @@ public class Level extends DoubleRectangle {
 		for (int x = (camX / Tile.tileSize); x < (camX / Tile.tileSize) + renW; x++) {
 			for (int y = (camY / Tile.tileSize); y < (camY / Tile.tileSize) + renH; y++) {
 				if (x >= 0 && y >= 0 && x < worldW && y < worldH) {
-					block[x][y].render(g); //
-					if (block[x][y].id != Tile.air && block[x][y].id != Tile.solidair && !Inventory.isOpen && !Inventory.open && block[x][y].id != Tile.power) {
-						if (block[x][y].contains(new Point((Component.mse.x / Component.pixelSize) + (int) Component.sX, (Component.mse.y / Component.pixelSize) + (int) Component.sY))) {
+					renderBlock(g, x, y); //
+					if (world.get(x, y) != Tile.air && world.get(x, y) != Tile.solidair && !Inventory.isOpen && !Inventory.open && world.get(x, y) != Tile.power) {
+						if (contains(x, y, (Component.mse.x / Component.pixelSize) + (int) Component.sX, (Component.mse.y / Component.pixelSize) + (int) Component.sY)) {
 							g.setColor(new Color(250, 250, 250, 30));
-							g.fillRect(block[x][y].x - camX, block[x][y].y - camY, block[x][y].width - 1, block[x][y].height - 1);
+							g.fillRect(x * Tile.tileSize - camX, y * Tile.tileSize - camY, Tile.tileSize - 1, Tile.tileSize - 1);
 							g.setColor(new Color(0, 0, 0));
-							g.drawRect(block[x][y].x - camX, block[x][y].y - camY, block[x][y].width - 1, block[x][y].height - 1);
+							g.drawRect(x * Tile.tileSize - camX, y * Tile.tileSize - camY, Tile.tileSize - 1, Tile.tileSize - 1);
 
 							if (Component.isMouseLeft) {
 								g.setColor(new Color(5 * bx, 0, 0, 255));
-								g.drawRect(block[x][y].x - camX, block[x][y].y - camY, block[x][y].width - 1, block[x][y].height - 1);
+								g.drawRect(x * Tile.tileSize - camX, y * Tile.tileSize - camY, Tile.tileSize - 1, Tile.tileSize - 1);
 								g.setColor(new Color(0, 0, 0, 255));
 
 							}
@@ -0,0 +1,95 @@
+package prc.unc.BuildingGame.Level;
+
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+
+import prc.unc.BuildingGame.Misc.Tile;
+
+/**
+ * Heap cost per million blocks of the old Block[][] layout against
+ * BlockStore, and BlockStore save/load throughput.
+ */
+public class StorageBenchmark {
+	private static class OldBlock extends Rectangle {
+		private static final long serialVersionUID = 1L;
+		public int[] id;
+
+		public OldBlock(Rectangle size, int[] id) {
+			setBounds(size);
+			this.id = id;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long blocks = (long) size * size;
+		Random random = new Random(1);
+
+		long before = usedMemory();
+		OldBlock[][] old = new OldBlock[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				old[x][y] = new OldBlock(new Rectangle(x * Tile.tileSize, y * Tile.tileSize, Tile.tileSize, Tile.tileSize), typeAt(x, y, size, random));
+			}
+		}
+		long oldBytes = usedMemory() - before;
+		System.out.println("Block[][]:  " + (oldBytes * 1000000 / blocks >> 20) + " MB per million blocks");
+		old = null;
+
+		random = new Random(1);
+		before = usedMemory();
+		BlockStore store = new BlockStore(size, size);
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				store.set(x, y, typeAt(x, y, size, random));
+			}
+		}
+		long newBytes = usedMemory() - before;
+		System.out.println("BlockStore: " + (newBytes * 1000000 / blocks >> 10) + " KB per million blocks (" + (store.dataBytes() * 1000000 / blocks >> 10) + " KB palette and bit data)");
+
+		File file = File.createTempFile("world", ".bgw");
+		file.deleteOnExit();
+		int runs = 20;
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			store.save(file);
+		}
+		long save = (System.nanoTime() - start) / runs;
+		BlockStore loaded = null;
+		start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			loaded = BlockStore.load(file);
+		}
+		long load = (System.nanoTime() - start) / runs;
+
+		int wrong = 0;
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (loaded.get(x, y) != store.get(x, y)) wrong++;
+			}
+		}
+		double mb = file.length() / (1024.0 * 1024.0);
+		System.out.println("file: " + file.length() / 1024 + " KB, save " + (int) (mb / (save / 1e9)) + " MB/s (" + (long) (blocks / (save / 1e9) / 1e6) + " M blocks/s), load " + (int) (mb / (load / 1e9)) + " MB/s (" + (long) (blocks / (load / 1e9) / 1e6) + " M blocks/s), wrong blocks " + wrong);
+	}
+
+	// Sky, a grass line, dirt, then stone with some sand and water pockets.
+	private static int[] typeAt(int x, int y, int size, Random random) {
+		int surface = size / 4 + (int) (Math.sin(x / 20.0) * 8);
+		if (y < surface) return random.nextInt(200) == 0 ? Tile.Leaf : Tile.air;
+		if (y == surface) return Tile.Grass;
+		if (y < surface + 5) return Tile.dirt;
+		int r = random.nextInt(100);
+		if (r < 3) return Tile.sanD;
+		if (r < 4) return Tile.Water;
+		return Tile.Stone;
+	}
+
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
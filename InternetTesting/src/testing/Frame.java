@@ -0,0 +1,83 @@
+package testing;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/*
+ * One message on the wire for the Hub: an int length, then a byte type
+ * and the text in UTF-8 (the length counts both).
+ * Client to hub: LOGIN with the username first, then the ChatMessage types.
+ * Hub to client: TEXT, what the old Server sent as a String.
+ */
+public class Frame {
+	static final int LOGIN = 3, TEXT = 4;
+	// the longest frame we accept, type and text
+	static final int MAX_LENGTH = 64 * 1024;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private int type;
+	private String text;
+
+	public Frame(int type, String text) {
+		this.type = type;
+		this.text = text;
+	}
+	int getType() {
+		return type;
+	}
+	String getText() {
+		return text;
+	}
+
+	/*
+	 * The whole frame, ready to write
+	 */
+	ByteBuffer encode() {
+		byte[] bytes = text.getBytes(UTF8);
+		ByteBuffer bb = ByteBuffer.allocate(5 + bytes.length);
+		bb.putInt(1 + bytes.length);
+		bb.put((byte) type);
+		bb.put(bytes);
+		bb.flip();
+		return bb;
+	}
+
+	void write(OutputStream out) throws IOException {
+		ByteBuffer bb = encode();
+		out.write(bb.array(), 0, bb.limit());
+		out.flush();
+	}
+
+	/*
+	 * Read a frame from a stream, blocking until it's all there
+	 */
+	static Frame read(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 1 || length > MAX_LENGTH)
+			throw new IOException("Bad frame length " + length);
+		int type = in.readUnsignedByte();
+		byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return new Frame(type, new String(bytes, UTF8));
+	}
+
+	/*
+	 * Take a frame from a buffer ready to read from (flipped), or return
+	 * null and leave the buffer as it was if the frame isn't all there yet
+	 */
+	static Frame read(ByteBuffer in) throws IOException {
+		if(in.remaining() < 4)
+			return null;
+		int length = in.getInt(in.position());
+		if(length < 1 || length > MAX_LENGTH)
+			throw new IOException("Bad frame length " + length);
+		if(in.remaining() < 4 + length)
+			return null;
+		in.getInt();
+		int type = in.get() & 0xff;
+		byte[] bytes = new byte[length - 1];
+		in.get(bytes);
+		return new Frame(type, new String(bytes, UTF8));
+	}
+}
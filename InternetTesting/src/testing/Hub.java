@@ -0,0 +1,414 @@
+package testing;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * The chat server for lots of users: one thread with a Selector instead
+ * of a thread per client, and Frames instead of serialized objects.
+ * A broadcast is encoded once, and every client gets a read-only view
+ * of the same bytes queued. Each client's queue is bounded, and a
+ * client that lets it fill up is dropped rather than holding up
+ * everyone else. The last HISTORY messages are sent to each new client.
+ * Old Clients and ClientGUIs connect through a LegacyBridge.
+ */
+public class Hub implements Runnable {
+	// most frames waiting to go to one client before we drop it as too slow
+	static final int SEND_QUEUE = 1024;
+	// messages kept for clients that join later
+	static final int HISTORY = 50;
+	// first read buffer size, it grows for longer frames
+	static final int READ_BUFFER = 512;
+	// most buffers handed to one gathering write
+	static final int WRITE_BATCH = 64;
+
+	// a unique ID for each connection
+	private int uniqueId;
+	// the clients, replaced (never changed) when one joins or leaves,
+	// so any thread can read it without a lock
+	private AtomicReference<Subscriber[]> subscribers = new AtomicReference<Subscriber[]>(new Subscriber[0]);
+	// broadcasts from other threads, for the hub thread to send
+	private ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<String>();
+	// clients with frames queued since the last flush
+	private ArrayList<Subscriber> dirty = new ArrayList<Subscriber>();
+	// for gathering writes
+	private ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH];
+	// the last HISTORY broadcasts, the oldest at historyNext once it's full
+	private ByteBuffer[] history = new ByteBuffer[HISTORY];
+	private int historyNext, historyCount;
+
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
+	private volatile boolean keepGoing;
+	// to display time, and the time prefix for this second
+	private SimpleDateFormat sdf;
+	private long stampSecond = -1;
+	private String stamp;
+	// if false only errors are displayed
+	private boolean verbose = true;
+
+	// counters, written only by the hub thread
+	private volatile long messages, framesSent, dropped;
+
+	public Hub(int port) throws IOException {
+		sdf = new SimpleDateFormat("HH:mm:ss");
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.socket().bind(new InetSocketAddress(port), 1024);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	/*
+	 * the usernames connected, from any thread
+	 */
+	String[] getUsers() {
+		Subscriber[] subs = subscribers.get();
+		String[] users = new String[subs.length];
+		for(int i = 0; i < subs.length; ++i)
+			users[i] = subs[i].username;
+		return users;
+	}
+
+	long getMessages() {
+		return messages;
+	}
+	long getFramesSent() {
+		return framesSent;
+	}
+	long getDropped() {
+		return dropped;
+	}
+
+	/*
+	 * broadcast a message to all clients, from any thread
+	 */
+	void broadcast(String message) {
+		pending.add(message);
+		selector.wakeup();
+	}
+
+	void stop() {
+		keepGoing = false;
+		selector.wakeup();
+	}
+
+	public void run() {
+		keepGoing = true;
+		display("Hub waiting for Clients on port " + getPort() + ".");
+		while(keepGoing) {
+			try {
+				selector.select();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if(!key.isValid())
+						continue;
+					if(key.isAcceptable())
+						accept();
+					else {
+						Subscriber s = (Subscriber) key.attachment();
+						if(key.isReadable())
+							read(s);
+						if(key.isValid() && key.isWritable())
+							flush(s);
+					}
+				}
+				String message;
+				while((message = pending.poll()) != null)
+					broadcastNow(message);
+				flushDirty();
+			}
+			catch(IOException e) {
+				display("Exception in select: " + e);
+			}
+		}
+		// I was asked to stop
+		try {
+			Subscriber[] subs = subscribers.get();
+			for(int i = 0; i < subs.length; ++i)
+				subs[i].channel.close();
+			serverChannel.close();
+			selector.close();
+		}
+		catch(IOException e) {
+			display("Exception closing the hub and clients: " + e);
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while((channel = serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			Subscriber s = new Subscriber(channel);
+			s.key = channel.register(selector, SelectionKey.OP_READ, s);
+		}
+	}
+
+	/*
+	 * read what the client sent, and handle each whole frame
+	 */
+	private void read(Subscriber s) {
+		try {
+			int n = s.channel.read(s.in);
+			if(n == -1) {
+				remove(s, "disconnected");
+				return;
+			}
+			s.in.flip();
+			Frame f;
+			while(s.key.isValid() && (f = Frame.read(s.in)) != null)
+				handle(s, f);
+			s.in.compact();
+			// a frame bigger than the buffer, make room for it
+			if(!s.in.hasRemaining() && s.in.capacity() < Frame.MAX_LENGTH + 4) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.min(s.in.capacity() * 2, Frame.MAX_LENGTH + 4));
+				s.in.flip();
+				bigger.put(s.in);
+				s.in = bigger;
+			}
+		}
+		catch(IOException e) {
+			remove(s, "Exception reading: " + e);
+		}
+	}
+
+	private void handle(Subscriber s, Frame f) {
+		if(s.username == null) {
+			if(f.getType() != Frame.LOGIN) {
+				remove(s, "didn't log in");
+				return;
+			}
+			join(s, f.getText());
+			return;
+		}
+		switch(f.getType()) {
+		case ChatMessage.MESSAGE:
+			broadcastNow(s.username + ": " + f.getText());
+			break;
+		case ChatMessage.LOGOUT:
+			remove(s, "disconnected with a LOGOUT message");
+			break;
+		case ChatMessage.WHOISIN:
+			send(s, text("List of the users connected at " + sdf.format(new Date()) + "\n"));
+			Subscriber[] subs = subscribers.get();
+			for(int i = 0; i < subs.length; ++i)
+				send(s, text((i+1) + ") " + subs[i].username + " since " + subs[i].date));
+			break;
+		}
+	}
+
+	private void join(Subscriber s, String username) {
+		s.username = username;
+		s.date = new Date().toString() + "\n";
+		Subscriber[] subs = subscribers.get();
+		Subscriber[] more = Arrays.copyOf(subs, subs.length + 1);
+		more[subs.length] = s;
+		subscribers.set(more);
+		// catch them up
+		for(int i = 0; i < historyCount; ++i)
+			send(s, history[(historyNext - historyCount + i + HISTORY) % HISTORY]);
+		if(verbose)
+			display(username + " just connected.");
+	}
+
+	private void remove(Subscriber s, String why) {
+		if(s.username != null) {
+			Subscriber[] subs = subscribers.get();
+			for(int i = 0; i < subs.length; ++i) {
+				if(subs[i] == s) {
+					Subscriber[] fewer = new Subscriber[subs.length - 1];
+					System.arraycopy(subs, 0, fewer, 0, i);
+					System.arraycopy(subs, i + 1, fewer, i, subs.length - i - 1);
+					subscribers.set(fewer);
+					break;
+				}
+			}
+			if(verbose)
+				display(s.username + " " + why);
+		}
+		s.key.cancel();
+		s.out.clear();
+		try {
+			s.channel.close();
+		}
+		catch(IOException e) {
+			// not much I can do
+		}
+	}
+
+	/*
+	 * encode the message once and queue it for every client
+	 */
+	private void broadcastNow(String message) {
+		ByteBuffer frame = text(stamp() + " " + message + "\n");
+		messages++;
+		history[historyNext] = frame;
+		historyNext = (historyNext + 1) % HISTORY;
+		if(historyCount < HISTORY)
+			historyCount++;
+		Subscriber[] subs = subscribers.get();
+		for(int i = 0; i < subs.length; ++i)
+			send(subs[i], frame);
+	}
+
+	private void send(Subscriber s, ByteBuffer frame) {
+		if(!s.key.isValid())
+			return;
+		if(s.out.size() >= SEND_QUEUE) {
+			dropped++;
+			remove(s, "dropped, too slow to keep up");
+			return;
+		}
+		s.out.add(frame.duplicate());
+		if(!s.dirty) {
+			s.dirty = true;
+			dirty.add(s);
+		}
+	}
+
+	/*
+	 * write everything queued since the last time, a client at a time so
+	 * several messages go in one write
+	 */
+	private void flushDirty() {
+		for(int i = 0; i < dirty.size(); ++i) {
+			Subscriber s = dirty.get(i);
+			s.dirty = false;
+			// the ones waiting for OP_WRITE flush when they get it
+			if(s.key.isValid() && (s.key.interestOps() & SelectionKey.OP_WRITE) == 0)
+				flush(s);
+		}
+		dirty.clear();
+	}
+
+	private void flush(Subscriber s) {
+		try {
+			while(!s.out.isEmpty()) {
+				int n = 0;
+				Iterator<ByteBuffer> it = s.out.iterator();
+				while(n < WRITE_BATCH && it.hasNext())
+					batch[n++] = it.next();
+				s.channel.write(batch, 0, n);
+				int done = 0;
+				while(done < n && !batch[done].hasRemaining())
+					done++;
+				for(int i = 0; i < n; ++i)
+					batch[i] = null;
+				for(int i = 0; i < done; ++i)
+					s.out.poll();
+				framesSent += done;
+				if(done < n)
+					break;
+			}
+			if(!s.key.isValid())
+				return;
+			// wait for room in the socket if we couldn't write it all
+			if(s.out.isEmpty())
+				s.key.interestOps(SelectionKey.OP_READ);
+			else
+				s.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		catch(IOException e) {
+			remove(s, "Exception writing: " + e);
+		}
+	}
+
+	private static ByteBuffer text(String text) {
+		return new Frame(Frame.TEXT, text).encode();
+	}
+
+	/*
+	 * HH:mm:ss, formatted once a second rather than once a message
+	 */
+	private String stamp() {
+		long now = System.currentTimeMillis();
+		if(now / 1000 != stampSecond) {
+			stampSecond = now / 1000;
+			stamp = sdf.format(new Date(now));
+		}
+		return stamp;
+	}
+
+	/*
+	 * Display an event (not a message) to the console
+	 */
+	private void display(String msg) {
+		System.out.println(sdf.format(new Date()) + " " + msg);
+	}
+
+	/*
+	 *  To run as a console application:
+	 * > java Hub
+	 * > java Hub portNumber
+	 * > java Hub portNumber legacyPortNumber
+	 * The hub listens on 1501 unless a portNumber is given, and old Clients
+	 * can connect to it through a LegacyBridge on 1500, or legacyPortNumber
+	 * (0 for none). -Dhub.quiet=true stops it showing every connect
+	 */
+	public static void main(String[] args) {
+		int portNumber = 1501;
+		int legacyPortNumber = 1500;
+		try {
+			if(args.length > 0)
+				portNumber = Integer.parseInt(args[0]);
+			if(args.length > 1)
+				legacyPortNumber = Integer.parseInt(args[1]);
+		}
+		catch(Exception e) {
+			System.out.println("Invalid port number.");
+			System.out.println("Usage is: > java Hub [portNumber] [legacyPortNumber]");
+			return;
+		}
+		try {
+			Hub hub = new Hub(portNumber);
+			// with lots of users, connects and disconnects are just noise
+			hub.setVerbose(!Boolean.getBoolean("hub.quiet"));
+			if(legacyPortNumber != 0)
+				new Thread(new LegacyBridge(legacyPortNumber, "localhost", hub.getPort())).start();
+			hub.run();
+		}
+		catch(IOException e) {
+			System.out.println("Exception starting the Hub: " + e);
+		}
+	}
+
+	/** One for each client */
+	class Subscriber {
+		SocketChannel channel;
+		SelectionKey key;
+		// my unique id
+		int id;
+		// null until they've logged in
+		String username;
+		// the date I connect
+		String date;
+		ByteBuffer in = ByteBuffer.allocate(READ_BUFFER);
+		// frames to write, only ever touched by the hub thread
+		ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+		// in the dirty list?
+		boolean dirty;
+
+		Subscriber(SocketChannel channel) {
+			this.channel = channel;
+			id = ++uniqueId;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package testing;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Load test over loopback: starts a Hub (or with -legacy the old Server)
+ * in its own JVM, connects lots of simulated clients and has random ones
+ * send messages with the time in them. Every client times every message
+ * it gets, from send to receive.
+ * The hub's clients all run on one thread with a Selector. The old
+ * Server needs a thread per client on both sides, so keep those counts
+ * low.
+ *
+ * > java HubLoadTest [clients] [seconds] [messagesPerSecond]
+ * > java HubLoadTest -legacy [clients] [seconds] [messagesPerSecond]
+ */
+public class HubLoadTest {
+	// clients connecting at once
+	static final int CONNECT_BATCH = 500;
+	// one bucket per millisecond, the last one holds everything slower
+	static final int MAX_MILLIS = 60000;
+
+	private boolean legacy;
+	private int clients;
+	private InetSocketAddress address;
+	private Process server;
+	private volatile boolean keepGoing = true;
+	private volatile long measureStart = Long.MAX_VALUE, measureEnd = Long.MAX_VALUE;
+	private AtomicLongArray histogram = new AtomicLongArray(MAX_MILLIS + 1);
+	private AtomicLong received = new AtomicLong();
+	private AtomicLong disconnected = new AtomicLong();
+	private long sent;
+
+	// hub clients
+	private Selector selector;
+	private SocketChannel[] channels;
+	// legacy clients
+	private ObjectOutputStream[] outputs;
+
+	public static void main(String[] args) {
+		boolean legacy = args.length > 0 && args[0].equals("-legacy");
+		int a = legacy ? 1 : 0;
+		int clients = args.length > a ? Integer.parseInt(args[a]) : (legacy ? 500 : 10000);
+		int seconds = args.length > a + 1 ? Integer.parseInt(args[a + 1]) : 20;
+		int rate = args.length > a + 2 ? Integer.parseInt(args[a + 2]) : 10;
+		System.out.println((legacy ? "old Server" : "Hub") + ", " + clients + " clients, " + rate + 
+				" messages/s for " + seconds + " s, " + Runtime.getRuntime().availableProcessors() + " cpus");
+		HubLoadTest test = new HubLoadTest(legacy, clients);
+		try {
+			test.run(seconds, rate);
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			test.server.destroy();
+		}
+		System.exit(0);
+	}
+
+	HubLoadTest(boolean legacy, int clients) {
+		this.legacy = legacy;
+		this.clients = clients;
+	}
+
+	private void run(int seconds, int rate) throws Exception {
+		startServer();
+		long start = System.nanoTime();
+		if(legacy)
+			connectLegacy();
+		else
+			connectHub();
+		System.out.println("connected " + clients + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+		Random random = new Random(1);
+		long interval = 1000000000L / rate;
+		long next = System.nanoTime() + 1000000000L;
+		long warmupEnd = next + 2000000000L;
+		long end = next + seconds * 1000000000L;
+		while(keepGoing) {
+			long now = System.nanoTime();
+			if(now >= end)
+				break;
+			if(now < next) {
+				Thread.sleep(Math.max(0, (next - now) / 1000000), (int) ((next - now) % 1000000));
+				continue;
+			}
+			next += interval;
+			if(measureStart == Long.MAX_VALUE && now >= warmupEnd)
+				measureStart = now;
+			send(random.nextInt(clients), now);
+			if(now >= measureStart)
+				sent++;
+		}
+		measureEnd = System.nanoTime();
+		// let the last ones arrive
+		Thread.sleep(2000);
+		keepGoing = false;
+		report(measureEnd - measureStart);
+	}
+
+	/*
+	 * start the server in a new JVM, and wait until it's listening
+	 */
+	private void startServer() throws Exception {
+		ServerSocket probe = new ServerSocket(0);
+		int port = probe.getLocalPort();
+		probe.close();
+		address = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port);
+
+		ArrayList<String> cmd = new ArrayList<String>();
+		cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		cmd.add("-Dhub.quiet=true");
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		if(legacy) {
+			cmd.add(Server.class.getName());
+			cmd.add("" + port);
+		}
+		else {
+			cmd.add(Hub.class.getName());
+			cmd.add("" + port);
+			cmd.add("0");
+		}
+		server = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(new File("/dev/null")).start();
+		for(int tries = 0; ; ++tries) {
+			try {
+				new Socket(address.getAddress(), port).close();
+				return;
+			}
+			catch(IOException e) {
+				if(tries > 1000)
+					throw e;
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	/*
+	 * connect the hub clients CONNECT_BATCH at a time, log them in, and
+	 * start the thread that reads for all of them
+	 */
+	private void connectHub() throws IOException {
+		selector = Selector.open();
+		channels = new SocketChannel[clients];
+		for(int i = 0; i < clients; i += CONNECT_BATCH) {
+			int n = Math.min(CONNECT_BATCH, clients - i);
+			for(int j = i; j < i + n; ++j) {
+				channels[j] = SocketChannel.open();
+				channels[j].configureBlocking(false);
+				channels[j].connect(address);
+				channels[j].register(selector, SelectionKey.OP_CONNECT, Integer.valueOf(j));
+			}
+			while(n > 0) {
+				selector.select();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					SocketChannel c = (SocketChannel) key.channel();
+					c.finishConnect();
+					c.socket().setTcpNoDelay(true);
+					writeFully(c, new Frame(Frame.LOGIN, "user" + key.attachment()).encode());
+					key.interestOps(SelectionKey.OP_READ);
+					key.attach(ByteBuffer.allocate(4096));
+					n--;
+				}
+			}
+		}
+		Thread reader = new Thread() {
+			public void run() {
+				readHub();
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readHub() {
+		try {
+			while(keepGoing) {
+				selector.select(100);
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					SocketChannel c = (SocketChannel) key.channel();
+					ByteBuffer in = (ByteBuffer) key.attachment();
+					if(c.read(in) == -1) {
+						disconnected.incrementAndGet();
+						key.cancel();
+						c.close();
+						continue;
+					}
+					in.flip();
+					Frame f;
+					while((f = Frame.read(in)) != null)
+						received(f.getText());
+					in.compact();
+				}
+			}
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * connect the old clients, a thread each to read
+	 */
+	private void connectLegacy() throws IOException {
+		outputs = new ObjectOutputStream[clients];
+		for(int i = 0; i < clients; ++i) {
+			Socket socket = new Socket(address.getAddress(), address.getPort());
+			socket.setTcpNoDelay(true);
+			outputs[i] = new ObjectOutputStream(socket.getOutputStream());
+			outputs[i].flush();
+			final ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+			outputs[i].writeObject("user" + i);
+			outputs[i].flush();
+			Thread reader = new Thread() {
+				public void run() {
+					try {
+						while(keepGoing)
+							received((String) in.readObject());
+					}
+					catch(Exception e) {
+						if(keepGoing)
+							disconnected.incrementAndGet();
+					}
+				}
+			};
+			reader.setDaemon(true);
+			reader.start();
+		}
+	}
+
+	private void send(int client, long now) throws IOException {
+		String text = "" + now;
+		if(legacy) {
+			outputs[client].writeObject(new ChatMessage(ChatMessage.MESSAGE, text));
+			outputs[client].flush();
+		}
+		else {
+			writeFully(channels[client], new Frame(ChatMessage.MESSAGE, text).encode());
+		}
+	}
+
+	/*
+	 * "HH:mm:ss userN: sendTime\n", count it if it was sent while measuring
+	 */
+	private void received(String text) {
+		int from = text.lastIndexOf(' ') + 1;
+		int to = text.length() - 1;
+		long sendTime;
+		try {
+			sendTime = Long.parseLong(text.substring(from, to));
+		}
+		catch(NumberFormatException e) {
+			return;
+		}
+		if(sendTime < measureStart || sendTime >= measureEnd)
+			return;
+		long millis = (System.nanoTime() - sendTime) / 1000000;
+		histogram.incrementAndGet((int) Math.min(millis, MAX_MILLIS));
+		received.incrementAndGet();
+	}
+
+	private static void writeFully(SocketChannel c, ByteBuffer bb) throws IOException {
+		while(bb.hasRemaining()) {
+			if(c.write(bb) == 0)
+				Thread.yield();
+		}
+	}
+
+	private void report(long time) {
+		long n = received.get();
+		long expected = sent * clients;
+		double secs = time / 1e9;
+		System.out.println(sent + " messages in " + (long) (secs * 1000) + " ms, delivered " + n + " of " + expected + 
+				" (" + (expected == 0 ? 0 : n * 1000 / expected / 10.0) + "%), " + (long) (n / secs) + 
+				" deliveries/s, " + disconnected.get() + " clients dropped");
+		System.out.println("latency p50 " + percentile(n, 0.5) + " ms, p99 " + percentile(n, 0.99) + 
+				" ms, max " + percentile(n, 1.0) + " ms");
+	}
+
+	private long percentile(long n, double p) {
+		long target = (long) Math.ceil(n * p);
+		long count = 0;
+		for(int i = 0; i <= MAX_MILLIS; ++i) {
+			count += histogram.get(i);
+			if(count >= target && count > 0)
+				return i;
+		}
+		return -1;
+	}
+}
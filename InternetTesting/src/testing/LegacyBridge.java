@@ -0,0 +1,112 @@
+package testing;
+
+import java.io.*;
+import java.net.*;
+
+/*
+ * Lets the old Client and ClientGUI talk to a Hub: it listens where the
+ * old Server did, and for each Client it connects to the Hub and turns
+ * ChatMessages into Frames one way and Strings back the other, with
+ * a thread each way.
+ */
+public class LegacyBridge implements Runnable {
+	// the port Clients connect to
+	private int port;
+	// where the Hub is
+	private String hubHost;
+	private int hubPort;
+
+	public LegacyBridge(int port, String hubHost, int hubPort) {
+		this.port = port;
+		this.hubHost = hubHost;
+		this.hubPort = hubPort;
+	}
+
+	public void run() {
+		try {
+			ServerSocket serverSocket = new ServerSocket(port);
+			System.out.println("LegacyBridge waiting for Clients on port " + port + ".");
+			while(true) {
+				Socket socket = serverSocket.accept();
+				new ClientThread(socket).start();
+			}
+		}
+		catch(IOException e) {
+			System.out.println("Exception on LegacyBridge ServerSocket: " + e);
+		}
+	}
+
+	/** Reads from one Client and writes to the Hub */
+	class ClientThread extends Thread {
+		Socket socket, hub;
+		ObjectInputStream sInput;
+		ObjectOutputStream sOutput;
+
+		ClientThread(Socket socket) {
+			this.socket = socket;
+		}
+
+		public void run() {
+			try {
+				// create output first, as the Server did
+				sOutput = new ObjectOutputStream(socket.getOutputStream());
+				sInput  = new ObjectInputStream(socket.getInputStream());
+				String username = (String) sInput.readObject();
+
+				hub = new Socket(hubHost, hubPort);
+				hub.setTcpNoDelay(true);
+				OutputStream hubOut = new BufferedOutputStream(hub.getOutputStream());
+				new Frame(Frame.LOGIN, username).write(hubOut);
+				new HubThread(new DataInputStream(new BufferedInputStream(hub.getInputStream()))).start();
+
+				while(true) {
+					ChatMessage cm = (ChatMessage) sInput.readObject();
+					new Frame(cm.getType(), cm.getMessage()).write(hubOut);
+					if(cm.getType() == ChatMessage.LOGOUT)
+						break;
+				}
+			}
+			catch(IOException e) {
+				// one side or the other went away
+			}
+			catch(ClassNotFoundException e) {
+			}
+			close();
+		}
+
+		private void close() {
+			try {
+				if(hub != null) hub.close();
+			}
+			catch(Exception e) {}
+			try {
+				socket.close();
+			}
+			catch(Exception e) {}
+		}
+
+		/** Reads from the Hub and writes to the Client */
+		class HubThread extends Thread {
+			DataInputStream in;
+
+			HubThread(DataInputStream in) {
+				this.in = in;
+			}
+
+			public void run() {
+				try {
+					while(true) {
+						Frame f = Frame.read(in);
+						sOutput.writeObject(f.getText());
+						// or the stream keeps every String we've sent
+						sOutput.reset();
+						sOutput.flush();
+					}
+				}
+				catch(IOException e) {
+				}
+				close();
+			}
+		}
+	}
+}
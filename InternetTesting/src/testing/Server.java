@@ -155,8 +155,14 @@ public class Server {
 	 * > java Server
 	 * > java Server portNumber
 	 * If the port number is not specified 1500 is used
+	 * > java Server -hub [portNumber] [legacyPortNumber]
+	 * runs a Hub instead, for lots of users, see Hub.main()
 	 */ 
 	public static void main(String[] args) {
+		if(args.length > 0 && args[0].equals("-hub")) {
+			Hub.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		// start server on port 1500 unless a PortNumber is specified 
 		int portNumber = 1500;
 		switch(args.length) {
@@ -0,0 +1,74 @@
+package minecraft2d;
+
+import static org.lwjgl.opengl.GL11.GL_NEAREST;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.opengl.TextureLoader;
+
+/**
+ * All the block textures in one texture, side by side, so a whole chunk can
+ * be drawn with one bind. The row has a power of two number of slots, so
+ * the texture isn't padded and the texture coordinates only depend on the
+ * number of block types.
+ */
+public class BlockAtlas {
+
+    private Texture texture;
+
+    /** Loads the BlockType images into one texture. Needs a GL context. */
+    public BlockAtlas() throws IOException {
+        BlockType[] types = BlockType.values();
+        int slots = getSlots(types.length);
+        BufferedImage atlas = null;
+        for (int i = 0; i < types.length; i++) {
+            BufferedImage image = ImageIO.read(new File(types[i].location));
+            if (atlas == null) {
+                atlas = new BufferedImage(slots * image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            }
+            Graphics2D g = atlas.createGraphics();
+            g.drawImage(image, i * image.getWidth(), 0, null);
+            g.dispose();
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(atlas, "PNG", png);
+        texture = TextureLoader.getTexture("PNG", new ByteArrayInputStream(png.toByteArray()), GL_NEAREST);
+    }
+
+    public void bind() {
+        texture.bind();
+    }
+
+    /**
+     * Texture coordinates of every BlockType, by ordinal: u0, v0, u1, v1.
+     * Doesn't need GL.
+     */
+    public static float[] getTexCoords() {
+        int count = BlockType.values().length;
+        int slots = getSlots(count);
+        float[] texCoords = new float[count * 4];
+        for (int i = 0; i < count; i++) {
+            texCoords[i * 4] = (float) i / slots;
+            texCoords[i * 4 + 1] = 0;
+            texCoords[i * 4 + 2] = (float) (i + 1) / slots;
+            texCoords[i * 4 + 3] = 1;
+        }
+        return texCoords;
+    }
+
+    private static int getSlots(int count) {
+        int slots = 1;
+        while (slots < count) {
+            slots *= 2;
+        }
+        return slots;
+    }
+}
@@ -1,43 +1,95 @@
 package minecraft2d;
 
 import static minecraft2d.World.*;
+import static org.lwjgl.opengl.GL11.*;
+
 import org.jdom2.*;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.XMLOutputter;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
+/**
+ * The blocks, kept as BlockType ordinals column by column (like GridFile),
+ * and drawn in chunks of CHUNK_SIZE x CHUNK_SIZE blocks. Every chunk keeps
+ * its quads in a vertex array that's only rebuilt when one of its blocks
+ * changes, so a frame is one texture bind and one draw call per chunk.
+ */
 public class BlockGrid {
 
-    private Block[][] blocks = new Block[BLOCKS_WIDTH][BLOCKS_HEIGHT];
+    public static final int CHUNK_SIZE = 8;
+
+    private static final BlockType[] TYPES = BlockType.values();
+    private static final byte AIR = (byte) BlockType.AIR.ordinal();
+
+    private int width;
+    private int height;
+    private byte[] blocks;
+    private int chunksWide;
+    private int chunksHigh;
+    private ChunkMesh[] chunks;
+    private ChunkMesh[] dirty;
+    private int dirtyCount;
+    private MeshBuilder builder;
+    private float[] texCoords;
+    private BlockAtlas atlas;
 
     public BlockGrid(File loadFile) {
+        this();
+        load(loadFile);
     }
 
     public BlockGrid() {
-        for (int x = 0; x < BLOCKS_WIDTH - 1; x++) {
-            for (int y = 0; y < BLOCKS_HEIGHT - 1; y++) {
-                blocks[x][y] = new Block(BlockType.AIR, x * BLOCK_SIZE, y
-                        * BLOCK_SIZE);
+        this(BLOCKS_WIDTH - 1, BLOCKS_HEIGHT - 1);
+    }
+
+    public BlockGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        blocks = new byte[width * height];
+        Arrays.fill(blocks, AIR);
+
+        chunksWide = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunksHigh = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunks = new ChunkMesh[chunksWide * chunksHigh];
+        dirty = new ChunkMesh[chunks.length];
+        for (int cx = 0; cx < chunksWide; cx++) {
+            for (int cy = 0; cy < chunksHigh; cy++) {
+                int x = cx * CHUNK_SIZE;
+                int y = cy * CHUNK_SIZE;
+                chunks[cx * chunksHigh + cy] = new ChunkMesh(x, y,
+                        Math.min(CHUNK_SIZE, width - x), Math.min(CHUNK_SIZE, height - y));
             }
         }
+        setAllDirty();
+        texCoords = BlockAtlas.getTexCoords();
+        builder = new MeshBuilder(texCoords, BLOCK_SIZE);
+    }
+
+    public int getWidth() {
+        return width;
     }
 
+    public int getHeight() {
+        return height;
+    }
+
+    // Loads a GridFile, or an old XML save.
     public void load(File loadFile) {
         try {
-            SAXBuilder builder = new SAXBuilder();
-            Document document = builder.build(loadFile);
-            Element root = document.getRootElement();
-            for (Object block : root.getChildren()) {
-                Element e = (Element) block;
-                int x = Integer.parseInt(e.getAttributeValue("x"));
-                int y = Integer.parseInt(e.getAttributeValue("y"));
-                blocks[x][y] = new Block(BlockType.valueOf(e.getAttributeValue("type")), x * BLOCK_SIZE, y
-                        * BLOCK_SIZE);
+            GridFile grid;
+            if (GridFile.isXml(loadFile)) {
+                grid = GridFile.fromXml(loadFile);
+            } else {
+                grid = GridFile.load(loadFile);
             }
+            Arrays.fill(blocks, AIR);
+            int w = Math.min(grid.getWidth(), width);
+            int h = Math.min(grid.getHeight(), height);
+            for (int x = 0; x < w; x++) {
+                System.arraycopy(grid.getBlocks(), x * grid.getHeight(), blocks, x * height, h);
+            }
+            setAllDirty();
         } catch (JDOMException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -47,50 +99,113 @@ public class BlockGrid {
     }
 
     public void save(File saveFile) {
-        Document document = new Document();
-        Element root = new Element("blocks");
-        document.setRootElement(root);
-        for (int x = 0; x < BLOCKS_WIDTH - 1; x++) {
-            for (int y = 0; y < BLOCKS_HEIGHT - 1; y++) {
-                Element block = new Element("block");
-                block.setAttribute("x", String.valueOf((int) (blocks[x][y].getX() / BLOCK_SIZE)));
-                block.setAttribute("y", String.valueOf((int) (blocks[x][y].getY() / BLOCK_SIZE)));
-                block.setAttribute("type",
-                        String.valueOf(blocks[x][y].getType()));
-                root.addContent(block);
-            }
-        }
-        XMLOutputter output = new XMLOutputter();
+        save(saveFile, false);
+    }
+
+    public void save(File saveFile, boolean deflate) {
         try {
-            output.output(document, new FileOutputStream(saveFile));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            new GridFile(width, height, blocks).save(saveFile, deflate);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     public void setAt(int x, int y, BlockType b) {
-        blocks[x][y] = new Block(b, x * BLOCK_SIZE, y * BLOCK_SIZE);
+        byte type = (byte) b.ordinal();
+        int i = x * height + y;
+        if (blocks[i] != type) {
+            blocks[i] = type;
+            setDirty(chunks[(x / CHUNK_SIZE) * chunksHigh + y / CHUNK_SIZE]);
+        }
+    }
+
+    public BlockType getAt(int x, int y) {
+        return TYPES[blocks[x * height + y]];
     }
 
-    public Block getAt(int x, int y) {
-        return blocks[x][y];
+    /** Rebuilds the vertex arrays of the chunks that changed. Doesn't need GL. */
+    public int updateChunks() {
+        int rebuilt = dirtyCount;
+        for (int i = 0; i < dirtyCount; i++) {
+            dirty[i].rebuild(builder, blocks, height);
+            dirty[i] = null;
+        }
+        dirtyCount = 0;
+        return rebuilt;
     }
 
     public void draw() {
-        for (int x = 0; x < BLOCKS_WIDTH - 1; x++) {
-            for (int y = 0; y < BLOCKS_HEIGHT - 1; y++) {
-                blocks[x][y].draw();
+        draw(0, 0, width * BLOCK_SIZE, height * BLOCK_SIZE);
+    }
+
+    /** Draws the chunks that overlap the rectangle, in pixels. */
+    public void draw(float x, float y, float w, float h) {
+        // the chunks from cx0, cy0 up to but not including cx1, cy1
+        int cx0 = Math.max(0, (int) Math.floor(x / BLOCK_SIZE)) / CHUNK_SIZE;
+        int cy0 = Math.max(0, (int) Math.floor(y / BLOCK_SIZE)) / CHUNK_SIZE;
+        int cx1 = Math.min(chunksWide, ((int) Math.ceil((x + w) / BLOCK_SIZE) + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        int cy1 = Math.min(chunksHigh, ((int) Math.ceil((y + h) / BLOCK_SIZE) + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        updateChunks();
+        bindAtlas();
+        glLoadIdentity();
+        glEnableClientState(GL_VERTEX_ARRAY);
+        glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+        for (int cx = cx0; cx < cx1; cx++) {
+            for (int cy = cy0; cy < cy1; cy++) {
+                chunks[cx * chunksHigh + cy].draw();
             }
         }
+        glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        glDisableClientState(GL_VERTEX_ARRAY);
+    }
+
+    /** Draws one block of the given type at a block position, from the atlas. */
+    public void drawBlock(BlockType type, int x, int y) {
+        int t = type.ordinal() * 4;
+        float left = x * BLOCK_SIZE;
+        float top = y * BLOCK_SIZE;
+        bindAtlas();
+        glLoadIdentity();
+        glBegin(GL_QUADS);
+        glTexCoord2f(texCoords[t], texCoords[t + 1]);
+        glVertex2f(left, top);
+        glTexCoord2f(texCoords[t + 2], texCoords[t + 1]);
+        glVertex2f(left + BLOCK_SIZE, top);
+        glTexCoord2f(texCoords[t + 2], texCoords[t + 3]);
+        glVertex2f(left + BLOCK_SIZE, top + BLOCK_SIZE);
+        glTexCoord2f(texCoords[t], texCoords[t + 3]);
+        glVertex2f(left, top + BLOCK_SIZE);
+        glEnd();
     }
 
     public void clear() {
-        for (int x = 0; x < BLOCKS_WIDTH - 1; x++) {
-            for (int y = 0; y < BLOCKS_HEIGHT - 1; y++) {
-                blocks[x][y] = new Block(BlockType.AIR, x * BLOCK_SIZE, y * BLOCK_SIZE);
+        Arrays.fill(blocks, AIR);
+        setAllDirty();
+    }
+
+    private void setDirty(ChunkMesh chunk) {
+        if (!chunk.isDirty()) {
+            chunk.setDirty();
+            dirty[dirtyCount++] = chunk;
+        }
+    }
+
+    private void setAllDirty() {
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i].setDirty();
+            dirty[i] = chunks[i];
+        }
+        dirtyCount = chunks.length;
+    }
+
+    private void bindAtlas() {
+        if (atlas == null) {
+            try {
+                atlas = new BlockAtlas();
+            } catch (IOException e) {
+                throw new RuntimeException("Can't load the block textures", e);
             }
         }
+        atlas.bind();
     }
-}
\ No newline at end of file
+}
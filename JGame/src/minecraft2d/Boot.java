@@ -57,7 +57,7 @@ public class Boot {
         int y = selector_y * World.BLOCK_SIZE;
         int x2 = x + World.BLOCK_SIZE;
         int y2 = y + World.BLOCK_SIZE;
-        if (grid.getAt(selector_x, selector_y).getType() != BlockType.AIR
+        if (grid.getAt(selector_x, selector_y) != BlockType.AIR
                 || selection == BlockType.AIR) {
             glBindTexture(GL_TEXTURE_2D, 0);
             glColor4f(1f, 1f, 3f, 0.3f);
@@ -70,8 +70,7 @@ public class Boot {
             glColor4f(1f, 1f, 1f, 1f);
         } else {
             glColor4f(1f, 1f, 1f, 0.5f);
-            new Block(selection, selector_x * World.BLOCK_SIZE, selector_y
-                    * World.BLOCK_SIZE).draw();
+            grid.drawBlock(selection, selector_x, selector_y);
             glColor4f(1f, 1f, 1f, 1f);
         }
     }
@@ -118,10 +117,11 @@ public class Boot {
                 }
             }
             if (Keyboard.getEventKey() == Keyboard.KEY_S) {
-                grid.save(new File("save.xml"));
+                grid.save(new File("save.grid"));
             }
             if (Keyboard.getEventKey() == Keyboard.KEY_L) {
-                grid.load(new File("save.xml"));
+                File save = new File("save.grid");
+                grid.load(save.exists() ? save : new File("save.xml"));
             }
             if (Keyboard.getEventKey() == Keyboard.KEY_1) {
                 selection = BlockType.STONE;
@@ -0,0 +1,60 @@
+package minecraft2d;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+
+/**
+ * The cached vertex array of one chunk of a BlockGrid. It's rebuilt only
+ * after a block in the chunk changes.
+ */
+public class ChunkMesh {
+
+    private static final int STRIDE = MeshBuilder.FLOATS_PER_VERTEX * 4;
+
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private FloatBuffer vertices;
+    private FloatBuffer texCoords;
+    private int vertexCount;
+    private boolean dirty;
+
+    public ChunkMesh(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        vertices = BufferUtils.createFloatBuffer(MeshBuilder.getCapacity(width * height));
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty() {
+        dirty = true;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public void rebuild(MeshBuilder builder, byte[] blocks, int gridHeight) {
+        vertexCount = builder.build(blocks, gridHeight, x, y, width, height, vertices);
+        // the texture coordinates come after x and y in every vertex
+        texCoords = vertices.duplicate();
+        texCoords.position(2);
+        dirty = false;
+    }
+
+    /** Draws the whole chunk with one call. The atlas must be bound. */
+    public void draw() {
+        glVertexPointer(2, STRIDE, vertices);
+        glTexCoordPointer(2, STRIDE, texCoords);
+        glDrawArrays(GL_QUADS, 0, vertexCount);
+    }
+}
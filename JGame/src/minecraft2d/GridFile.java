@@ -0,0 +1,268 @@
+package minecraft2d;
+
+import org.jdom2.*;
+import org.jdom2.input.SAXBuilder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A grid of block types, saved in a streaming binary format:
+ *
+ * <pre>
+ * int    magic ("MC2D")
+ * short  version
+ * byte   flags (1 = the columns are deflated)
+ * int    width
+ * int    height
+ * byte   number of block types, then each type's name (writeUTF), so
+ *        saves still load if BlockType changes order
+ * then for every column, from x = 0, runs of blocks from the top:
+ * byte   type (index into the names above)
+ * varint run length
+ * </pre>
+ *
+ * Blocks are kept as bytes, column by column. To convert an old XML save:
+ * java minecraft2d.GridFile save.xml save.grid [-deflate]
+ */
+public class GridFile {
+
+    public static final int MAGIC = 0x4d433244;
+    public static final int VERSION = 1;
+    public static final int FLAG_DEFLATE = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int HEADER_SIZE = 15;
+    private static final BlockType[] TYPES = BlockType.values();
+
+    private int width;
+    private int height;
+    private byte[] blocks;
+
+    public GridFile(int width, int height) {
+        this(width, height, new byte[width * height]);
+    }
+
+    public GridFile(int width, int height, byte[] blocks) {
+        if (blocks.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " blocks, got " + blocks.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.blocks = blocks;
+    }
+
+    public static void main(String[] args) throws IOException, JDOMException {
+        if (args.length < 2) {
+            System.out.println("Usage: java minecraft2d.GridFile save.xml save.grid [-deflate]");
+            System.exit(1);
+        }
+        boolean deflate = args.length > 2 && args[2].equals("-deflate");
+        GridFile grid = fromXml(new File(args[0]));
+        grid.save(new File(args[1]), deflate);
+        System.out.println("Wrote " + args[1] + " (" + grid.getWidth() + "x" + grid.getHeight() + ", "
+                + new File(args[1]).length() + " bytes, was " + new File(args[0]).length() + ")");
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** The block ordinals, column by column: index x * height + y. */
+    public byte[] getBlocks() {
+        return blocks;
+    }
+
+    public BlockType getAt(int x, int y) {
+        return TYPES[blocks[x * height + y]];
+    }
+
+    public void setAt(int x, int y, BlockType type) {
+        blocks[x * height + y] = (byte) type.ordinal();
+    }
+
+    public void save(File file, boolean deflate) throws IOException {
+        FileOutputStream fileOut = new FileOutputStream(file);
+        try {
+            FileChannel channel = fileOut.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort((short) VERSION);
+            header.put((byte) (deflate ? FLAG_DEFLATE : 0));
+            header.putInt(width);
+            header.putInt(height);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            OutputStream stream = Channels.newOutputStream(channel);
+            Deflater deflater = null;
+            if (deflate) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                stream = new DeflaterOutputStream(stream, deflater, BUFFER_SIZE);
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+            out.writeByte(TYPES.length);
+            for (BlockType type : TYPES) {
+                out.writeUTF(type.name());
+            }
+            for (int x = 0; x < width; x++) {
+                int i = x * height;
+                int end = i + height;
+                while (i < end) {
+                    byte type = blocks[i];
+                    int run = 1;
+                    while (i + run < end && blocks[i + run] == type) {
+                        run++;
+                    }
+                    out.writeByte(type);
+                    writeVarInt(out, run);
+                    i += run;
+                }
+            }
+            out.flush();
+            if (deflater != null) {
+                ((DeflaterOutputStream) stream).finish();
+                deflater.end();
+            }
+        } finally {
+            fileOut.close();
+        }
+    }
+
+    public static GridFile load(File file) throws IOException {
+        FileInputStream fileIn = new FileInputStream(file);
+        try {
+            FileChannel channel = fileIn.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) == -1) {
+                    throw new IOException("Not a grid file: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a grid file: " + file);
+            }
+            int version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported grid version " + version + ": " + file);
+            }
+            int flags = header.get();
+            int width = header.getInt();
+            int height = header.getInt();
+            if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE) {
+                throw new IOException("Bad grid size " + width + "x" + height + ": " + file);
+            }
+
+            InputStream stream = Channels.newInputStream(channel);
+            Inflater inflater = null;
+            if ((flags & FLAG_DEFLATE) != 0) {
+                inflater = new Inflater();
+                stream = new InflaterInputStream(stream, inflater, BUFFER_SIZE);
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+
+            // map the saved type names to this version's ordinals
+            byte[] ordinals = new byte[in.readUnsignedByte()];
+            for (int i = 0; i < ordinals.length; i++) {
+                String name = in.readUTF();
+                try {
+                    ordinals[i] = (byte) BlockType.valueOf(name).ordinal();
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown block type " + name + ": " + file);
+                }
+            }
+
+            GridFile grid = new GridFile(width, height);
+            byte[] blocks = grid.blocks;
+            for (int x = 0; x < width; x++) {
+                int i = x * height;
+                int end = i + height;
+                while (i < end) {
+                    int type = in.readUnsignedByte();
+                    int run = readVarInt(in);
+                    if (type >= ordinals.length || run <= 0 || run > end - i) {
+                        throw new IOException("Corrupt grid file: " + file);
+                    }
+                    byte ordinal = ordinals[type];
+                    for (int n = i + run; i < n; i++) {
+                        blocks[i] = ordinal;
+                    }
+                }
+            }
+            if (inflater != null) {
+                inflater.end();
+            }
+            return grid;
+        } finally {
+            fileIn.close();
+        }
+    }
+
+    /** Reads an old XML save, one element per block. Blocks it doesn't list are air. */
+    public static GridFile fromXml(File file) throws IOException, JDOMException {
+        Element root = new SAXBuilder().build(file).getRootElement();
+        int width = 0;
+        int height = 0;
+        for (Element e : root.getChildren()) {
+            width = Math.max(width, Integer.parseInt(e.getAttributeValue("x")) + 1);
+            height = Math.max(height, Integer.parseInt(e.getAttributeValue("y")) + 1);
+        }
+        GridFile grid = new GridFile(width, height);
+        Arrays.fill(grid.blocks, (byte) BlockType.AIR.ordinal());
+        for (Element e : root.getChildren()) {
+            int x = Integer.parseInt(e.getAttributeValue("x"));
+            int y = Integer.parseInt(e.getAttributeValue("y"));
+            grid.setAt(x, y, BlockType.valueOf(e.getAttributeValue("type")));
+        }
+        return grid;
+    }
+
+    /** True if the file starts like XML rather than like a grid file. */
+    public static boolean isXml(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            int b = in.read();
+            // skip a byte order mark or white space
+            while (b == 0xef || b == 0xbb || b == 0xbf || Character.isWhitespace(b)) {
+                b = in.read();
+            }
+            return b == '<';
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad run length");
+    }
+}
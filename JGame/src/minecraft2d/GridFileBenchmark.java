@@ -0,0 +1,127 @@
+package minecraft2d;
+
+import org.jdom2.*;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Saves and loads a generated 1000x1000 grid (a million blocks) the old way,
+ * as JDOM XML with one element per block, and as a GridFile with and without
+ * deflate. Prints file sizes and times. Runs headless.
+ * Usage: java minecraft2d.GridFileBenchmark [width] [height]
+ */
+public class GridFileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        GridFile grid = createTerrain(width, height, new Random(1));
+        File xmlFile = File.createTempFile("grid", ".xml");
+        File gridFile = File.createTempFile("grid", ".grid");
+        xmlFile.deleteOnExit();
+        gridFile.deleteOnExit();
+        System.out.println(width + "x" + height + " = " + width * height + " blocks");
+
+        // the first pass warms up the JIT
+        for (int pass = 0; pass < 2; pass++) {
+            boolean print = pass == 1;
+
+            long start = System.nanoTime();
+            saveXml(grid, xmlFile);
+            long saveTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            GridFile loaded = loadXml(xmlFile, width, height);
+            long loadTime = System.nanoTime() - start;
+            check(grid, loaded);
+            if (print) {
+                report("XML", xmlFile, saveTime, loadTime);
+            }
+
+            for (int deflate = 0; deflate < 2; deflate++) {
+                start = System.nanoTime();
+                grid.save(gridFile, deflate == 1);
+                saveTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                loaded = GridFile.load(gridFile);
+                loadTime = System.nanoTime() - start;
+                check(grid, loaded);
+                if (print) {
+                    report(deflate == 1 ? "binary+deflate" : "binary", gridFile, saveTime, loadTime);
+                }
+            }
+        }
+    }
+
+    private static void report(String name, File file, long saveTime, long loadTime) {
+        System.out.println(name + ": " + file.length() + " bytes, save " + saveTime / 1000000 + " ms, load "
+                + loadTime / 1000000 + " ms");
+    }
+
+    private static void check(GridFile expected, GridFile actual) {
+        if (!Arrays.equals(expected.getBlocks(), actual.getBlocks())) {
+            throw new IllegalStateException("Loaded grid doesn't match");
+        }
+    }
+
+    /** Air over a bumpy surface of grass, then dirt, then stone with a few pockets of dirt. */
+    static GridFile createTerrain(int width, int height, Random random) {
+        GridFile grid = new GridFile(width, height);
+        int surface = height / 3;
+        for (int x = 0; x < width; x++) {
+            surface = Math.max(1, Math.min(height - 10, surface + random.nextInt(3) - 1));
+            int rock = surface + 3 + random.nextInt(3);
+            for (int y = 0; y < height; y++) {
+                BlockType type;
+                if (y < surface) {
+                    type = BlockType.AIR;
+                } else if (y == surface) {
+                    type = BlockType.GRASS;
+                } else if (y < rock || random.nextInt(50) == 0) {
+                    type = BlockType.DIRT;
+                } else {
+                    type = BlockType.STONE;
+                }
+                grid.setAt(x, y, type);
+            }
+        }
+        return grid;
+    }
+
+    /** BlockGrid.save before GridFile. */
+    private static void saveXml(GridFile grid, File file) throws Exception {
+        Document document = new Document();
+        Element root = new Element("blocks");
+        document.setRootElement(root);
+        for (int x = 0; x < grid.getWidth(); x++) {
+            for (int y = 0; y < grid.getHeight(); y++) {
+                Element block = new Element("block");
+                block.setAttribute("x", String.valueOf(x));
+                block.setAttribute("y", String.valueOf(y));
+                block.setAttribute("type", String.valueOf(grid.getAt(x, y)));
+                root.addContent(block);
+            }
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        new XMLOutputter().output(document, out);
+        out.close();
+    }
+
+    /** BlockGrid.load before GridFile, without creating the Blocks. */
+    private static GridFile loadXml(File file, int width, int height) throws Exception {
+        GridFile grid = new GridFile(width, height);
+        Element root = new SAXBuilder().build(file).getRootElement();
+        for (Element e : root.getChildren()) {
+            int x = Integer.parseInt(e.getAttributeValue("x"));
+            int y = Integer.parseInt(e.getAttributeValue("y"));
+            grid.setAt(x, y, BlockType.valueOf(e.getAttributeValue("type")));
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,71 @@
+package minecraft2d;
+
+import java.util.Random;
+
+/**
+ * Builds the chunk vertex arrays of a generated 1000x1000 grid, then times
+ * single block edits, which only rebuild the chunk they're in. Also counts
+ * the GL calls a 640x480 screen of blocks takes the old way, as one
+ * immediate mode quad per block, and as one draw call per chunk. Runs
+ * headless: building the meshes doesn't need GL.
+ * Usage: java minecraft2d.MeshBenchmark [width] [height] [edits]
+ */
+public class MeshBenchmark {
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int edits = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        GridFile terrain = GridFileBenchmark.createTerrain(width, height, new Random(1));
+        BlockType[] types = BlockType.values();
+        System.out.println(width + "x" + height + " = " + width * height + " blocks, chunks of "
+                + BlockGrid.CHUNK_SIZE + "x" + BlockGrid.CHUNK_SIZE);
+
+        // the first pass warms up the JIT
+        for (int pass = 0; pass < 2; pass++) {
+            boolean print = pass == 1;
+            BlockGrid grid = new BlockGrid(width, height);
+            long start = System.nanoTime();
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    grid.setAt(x, y, terrain.getAt(x, y));
+                }
+            }
+            long setTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            int chunks = grid.updateChunks();
+            long buildTime = System.nanoTime() - start;
+
+            Random random = new Random(2);
+            int rebuilt = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < edits; i++) {
+                grid.setAt(random.nextInt(width), random.nextInt(height), types[random.nextInt(types.length)]);
+                rebuilt += grid.updateChunks();
+            }
+            long editTime = System.nanoTime() - start;
+
+            if (print) {
+                System.out.println("setAt: " + setTime / (width * height) + " ns per block");
+                System.out.println("full build: " + chunks + " chunks in " + buildTime / 1000000 + " ms ("
+                        + buildTime / chunks + " ns per chunk)");
+                System.out.println("edits: " + edits + ", " + rebuilt + " chunks rebuilt, " + editTime / edits
+                        + " ns per edit and rebuild");
+            }
+        }
+
+        int screenBlocks = (640 / World.BLOCK_SIZE) * (480 / World.BLOCK_SIZE);
+        int screenChunks = ceil(640 / World.BLOCK_SIZE, BlockGrid.CHUNK_SIZE)
+                * ceil(480 / World.BLOCK_SIZE, BlockGrid.CHUNK_SIZE);
+        // bind, two loadIdentity, translate, begin, 4 texCoord, 4 vertex, two end
+        int oldCalls = screenBlocks * 15;
+        // bind, loadIdentity, 4 client state calls, then 2 pointers and a draw per chunk
+        int newCalls = 6 + screenChunks * 3;
+        System.out.println("640x480: " + screenBlocks + " blocks, " + oldCalls + " GL calls a frame before, "
+                + screenChunks + " chunks and " + newCalls + " GL calls now");
+    }
+
+    private static int ceil(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
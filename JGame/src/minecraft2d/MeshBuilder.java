@@ -0,0 +1,56 @@
+package minecraft2d;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Turns a rectangle of a BlockGrid into textured quads for a vertex array:
+ * x, y, u, v per vertex, four vertices per block, using the BlockAtlas
+ * texture coordinates. Plain Java, so it runs without GL.
+ */
+public class MeshBuilder {
+
+    public static final int FLOATS_PER_VERTEX = 4;
+    public static final int VERTICES_PER_BLOCK = 4;
+
+    private float[] texCoords;
+    private float blockSize;
+
+    public MeshBuilder(float[] texCoords, float blockSize) {
+        this.texCoords = texCoords;
+        this.blockSize = blockSize;
+    }
+
+    /** Floats needed for a mesh of the given number of blocks. */
+    public static int getCapacity(int blocks) {
+        return blocks * VERTICES_PER_BLOCK * FLOATS_PER_VERTEX;
+    }
+
+    /**
+     * Writes the blocks from (x0, y0), w wide and h high, into the buffer
+     * from its start, and returns the number of vertices. The blocks are
+     * ordinals, column by column, in a grid gridHeight blocks high.
+     */
+    public int build(byte[] blocks, int gridHeight, int x0, int y0, int w, int h, FloatBuffer out) {
+        out.clear();
+        for (int x = x0; x < x0 + w; x++) {
+            float left = x * blockSize;
+            float right = left + blockSize;
+            int column = x * gridHeight;
+            for (int y = y0; y < y0 + h; y++) {
+                int t = blocks[column + y] * 4;
+                float u0 = texCoords[t];
+                float v0 = texCoords[t + 1];
+                float u1 = texCoords[t + 2];
+                float v1 = texCoords[t + 3];
+                float top = y * blockSize;
+                float bottom = top + blockSize;
+                out.put(left).put(top).put(u0).put(v0);
+                out.put(right).put(top).put(u1).put(v0);
+                out.put(right).put(bottom).put(u1).put(v1);
+                out.put(left).put(bottom).put(u0).put(v1);
+            }
+        }
+        out.flip();
+        return w * h * VERTICES_PER_BLOCK;
+    }
+}
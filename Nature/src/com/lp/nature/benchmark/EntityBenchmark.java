@@ -0,0 +1,119 @@
+package com.lp.nature.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.lp.nature.entity.Entity;
+import com.lp.nature.entity.mob.Mob;
+import com.lp.nature.entity.particle.Particle;
+import com.lp.nature.level.EntityList;
+import com.lp.nature.level.SpatialHash;
+
+/**
+ * Stress test for Level entity storage: 100k particles dying off with the
+ * old ArrayList.remove(i) sweep against EntityList compaction, and mob
+ * proximity queries by linear scan against SpatialHash.
+ */
+public class EntityBenchmark {
+
+	private static class Dummy extends Mob {
+		public Dummy(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	public static void main(String[] args) {
+		int particles = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int mobs = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		for (int pass = 0; pass < 2; pass++) {
+			List<Particle> old = new ArrayList<Particle>();
+			EntityList<Particle> list = new EntityList<Particle>();
+			for (int i = 0; i < particles; i++) {
+				Particle p = new Particle(0, 0, 48);
+				old.add(p);
+				list.add(p);
+			}
+			List<Particle> copy = new ArrayList<Particle>(old);
+
+			long start = System.nanoTime();
+			int ticks = 0;
+			while (!old.isEmpty()) {
+				for (int i = 0; i < old.size(); i++) {
+					old.get(i).tick();
+				}
+				for (int i = 0; i < old.size(); i++) {
+					if (old.get(i).isRemoved()) old.remove(i);
+				}
+				ticks++;
+			}
+			long oldTime = System.nanoTime() - start;
+
+			list.clear();
+			for (int i = 0; i < copy.size(); i++) {
+				list.add(new Particle(0, 0, 48));
+			}
+			start = System.nanoTime();
+			int newTicks = 0;
+			while (list.size() > 0) {
+				for (int i = 0; i < list.size(); i++) {
+					list.get(i).tick();
+				}
+				list.compact();
+				newTicks++;
+			}
+			long newTime = System.nanoTime() - start;
+			if (pass == 1) {
+				System.out.println(particles + " particles: ArrayList " + (oldTime / 1000000) + " ms over " + ticks + " ticks, EntityList " + (newTime / 1000000) + " ms over " + newTicks + " ticks");
+			}
+		}
+
+		Random random = new Random(1);
+		Entity[] all = new Entity[mobs];
+		SpatialHash grid = new SpatialHash(2, mobs);
+		for (int i = 0; i < mobs; i++) {
+			all[i] = new Dummy(random.nextInt(4096 * 4), random.nextInt(4096 * 4));
+			grid.insert(all[i]);
+		}
+		int queries = 5000;
+		int[] qx = new int[queries], qy = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			qx[i] = random.nextInt(4096 * 4);
+			qy[i] = random.nextInt(4096 * 4);
+		}
+
+		List<Entity> result = new ArrayList<Entity>();
+		for (int pass = 0; pass < 2; pass++) {
+			long hits = 0;
+			long start = System.nanoTime();
+			for (int q = 0; q < queries; q++) {
+				for (int i = 0; i < mobs; i++) {
+					int dx = all[i].x - qx[q], dy = all[i].y - qy[q];
+					if (dx * dx + dy * dy <= 64 * 64) hits++;
+				}
+			}
+			long linear = System.nanoTime() - start;
+
+			long gridHits = 0;
+			start = System.nanoTime();
+			for (int q = 0; q < queries; q++) {
+				result.clear();
+				grid.queryRadius(qx[q], qy[q], 64, result);
+				gridHits += result.size();
+			}
+			long hashed = System.nanoTime() - start;
+
+			long rebuild = System.nanoTime();
+			grid.clear();
+			for (int i = 0; i < mobs; i++) {
+				grid.insert(all[i]);
+			}
+			rebuild = System.nanoTime() - rebuild;
+			if (pass == 1) {
+				System.out.println(mobs + " mobs, " + queries + " radius queries: linear " + (linear / queries) + " ns/query, grid " + (hashed / queries) + " ns/query (+" + (rebuild / 1000) + " us rebuild), hits " + hits + "/" + gridHits);
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.lp.nature.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.lp.nature.graphics.Screen;
+import com.lp.nature.graphics.Sprite;
+import com.lp.nature.level.Level;
+import com.lp.nature.level.tile.Tile;
+
+/**
+ * Compares the compiled tile store and scrolling background of Level/Screen
+ * against the old per-frame getTile chain and per-pixel blitting.
+ * 
+ * Needs Nature/src on the classpath for the sprite sheets.
+ */
+public class RenderBenchmark {
+
+	private static final int[] COLORS = { Tile.col_spawn_grass, Tile.col_spawn_bush, Tile.col_spawn_wood_floor, Tile.col_spawn_fresh_water, Tile.col_spawn_stone_brick, Tile.col_spawn_sp, 0xff123456 };
+
+	private static int[] levelColors;
+	private static int levelSize;
+
+	private static class BenchLevel extends Level {
+		public BenchLevel() {
+			super("bench");
+		}
+
+		protected void loadLevel(String path) {
+			width = height = levelSize;
+			tiles = levelColors;
+		}
+	}
+
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+		levelSize = 512;
+		levelColors = new int[levelSize * levelSize];
+		Random random = new Random(1);
+		for (int i = 0; i < levelColors.length; i++) {
+			levelColors[i] = COLORS[random.nextInt(COLORS.length)];
+		}
+		Level level = new BenchLevel();
+
+		int[][] resolutions = { { 300, 168 }, { 1280, 720 }, { 1920, 1080 } };
+		for (int[] res : resolutions) {
+			int w = res[0], h = res[1];
+			Screen screen = new Screen(w, h);
+			int[] reference = new int[w * h];
+
+			int mismatches = 0;
+			for (int f = 0; f < 200; f++) {
+				int xScroll = scrollX(f), yScroll = scrollY(f);
+				level.render(xScroll, yScroll, screen);
+				screen.renderSprite(w / 2, h / 2, Sprite.particle_normal, false);
+				renderReference(reference, w, h, xScroll, yScroll);
+				for (int y = 0; y < 3; y++) {
+					for (int x = 0; x < 3; x++) {
+						reference[w / 2 + x + (h / 2 + y) * w] = Sprite.particle_normal.pixels[x + y * 3];
+					}
+				}
+				if (!Arrays.equals(reference, screen.pixels)) mismatches++;
+			}
+
+			long oldTime = 0, newTime = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				long start = System.nanoTime();
+				for (int f = 0; f < frames; f++) {
+					renderReference(reference, w, h, scrollX(f), scrollY(f));
+				}
+				oldTime = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (int f = 0; f < frames; f++) {
+					level.render(scrollX(f), scrollY(f), screen);
+				}
+				newTime = System.nanoTime() - start;
+			}
+			System.out.println(w + "x" + h + ": old " + (oldTime / frames / 1000) + " us/frame, new " + (newTime / frames / 1000) + " us/frame, mismatched frames " + mismatches);
+		}
+	}
+
+	// Pans for a while, then holds still, like a player walking and stopping.
+	private static int scrollX(int frame) {
+		int t = frame % 240;
+		return 100 + (t < 120 ? t * 2 : 240) + frame / 240;
+	}
+
+	private static int scrollY(int frame) {
+		int t = frame % 240;
+		return 80 + (t < 120 ? t : 120);
+	}
+
+	private static Tile getTileReference(int x, int y) {
+		if (x < 0 || y < 0 || x >= levelSize || y >= levelSize) return Tile.voidTile;
+		int[] tiles = levelColors;
+		int width = levelSize;
+		if (tiles[x + y * width] == Tile.col_spawn_wood_floor) return Tile.spawn_wood_floor;
+		if (tiles[x + y * width] == Tile.col_spawn_stone_brick) return Tile.spawn_stone_brick;
+		if (tiles[x + y * width] == Tile.col_spawn_grass) return Tile.spawn_grass;
+		if (tiles[x + y * width] == Tile.col_spawn_bush) return Tile.spawn_bush;
+		if (tiles[x + y * width] == Tile.col_spawn_fresh_water) return Tile.spawn_fresh_water;
+		if (tiles[x + y * width] == Tile.col_spawn_sp) return Tile.spawn_sp;
+		return Tile.voidTile;
+	}
+
+	private static void renderReference(int[] pixels, int width, int height, int xScroll, int yScroll) {
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = 0;
+		}
+		int x0 = xScroll >> 4;
+		int x1 = (xScroll + width + 16) >> 4;
+		int y0 = yScroll >> 4;
+		int y1 = (yScroll + height + 16) >> 4;
+		for (int ty = y0; ty < y1; ty++) {
+			for (int tx = x0; tx < x1; tx++) {
+				Tile tile = getTileReference(tx, ty);
+				int xp = (tx << 4) - xScroll;
+				int yp = (ty << 4) - yScroll;
+				for (int y = 0; y < tile.sprite.SIZE; y++) {
+					int ya = y + yp;
+					for (int x = 0; x < tile.sprite.SIZE; x++) {
+						int xa = x + xp;
+						if (xa < -tile.sprite.SIZE || xa >= width || ya < 0 || ya >= height) break;
+						if (xa < 0) xa = 0;
+						pixels[xa + ya * width] = tile.sprite.pixels[x + y * tile.sprite.SIZE];
+					}
+				}
+			}
+		}
+	}
+}
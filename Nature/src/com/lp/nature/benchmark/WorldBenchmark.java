@@ -0,0 +1,85 @@
+package com.lp.nature.benchmark;
+
+import java.io.File;
+
+import com.lp.nature.graphics.Screen;
+import com.lp.nature.level.Chunk;
+import com.lp.nature.level.RandomLevel;
+import com.lp.nature.level.tile.Tile;
+
+/**
+ * Time to first frame and steady-state memory of a chunked 1M x 1M tile
+ * RandomLevel, plus a region file round trip.
+ */
+public class WorldBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int size = 1 << 20;
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		Screen screen = new Screen(1920, 1080);
+
+		long start = System.nanoTime();
+		RandomLevel level = new RandomLevel(size, size, 42L, 32 << 20, null);
+		int xScroll = size * 8, yScroll = size * 8;
+		int rendered = 0;
+		while (true) {
+			level.render(xScroll, yScroll, screen);
+			rendered++;
+			if (visibleResident(level, xScroll, yScroll, screen)) break;
+			Thread.sleep(1);
+		}
+		level.render(xScroll, yScroll, screen);
+		long firstFrame = System.nanoTime() - start;
+		System.out.println("world " + size + "x" + size + " tiles, flat int[] would need " + ((long) size * size * 4 >> 30) + " GB");
+		System.out.println("time to first complete frame: " + (firstFrame / 1000000) + " ms (" + rendered + " partial frames)");
+
+		start = System.nanoTime();
+		for (int f = 0; f < frames; f++) {
+			xScroll += 6;
+			yScroll += (f / 200) % 2 == 0 ? 3 : -3;
+			level.render(xScroll, yScroll, screen);
+		}
+		long steady = System.nanoTime() - start;
+		System.gc();
+		Thread.sleep(200);
+		System.gc();
+		Runtime rt = Runtime.getRuntime();
+		System.out.println("steady state: " + (steady / frames / 1000) + " us/frame over " + frames + " frames, " + level.getChunks().getResidentCount() + " resident chunks, heap used " + ((rt.totalMemory() - rt.freeMemory()) >> 20) + " MB");
+		level.close();
+
+		File dir = new File(System.getProperty("java.io.tmpdir"), "nature-regions-" + System.nanoTime());
+		RandomLevel saved = new RandomLevel(size, size, 42L, 1 << 20, dir);
+		for (int i = 0; i < 1000; i++) {
+			saved.setTile(i * 97, i * 31, 2);
+		}
+		start = System.nanoTime();
+		saved.close();
+		long saveTime = System.nanoTime() - start;
+		RandomLevel loaded = new RandomLevel(size, size, 42L, 1 << 20, dir);
+		int wrong = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < 1000; i++) {
+			loaded.getChunks().getNow((i * 97) >> Chunk.SHIFT, (i * 31) >> Chunk.SHIFT);
+			if (loaded.getTile(i * 97, i * 31) != Tile.stone_grass) wrong++;
+		}
+		long loadTime = System.nanoTime() - start;
+		loaded.close();
+		long bytes = 0;
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			bytes += files[i].length();
+			files[i].delete();
+		}
+		dir.delete();
+		System.out.println("region files: " + files.length + " files, " + (bytes >> 10) + " KB, save " + (saveTime / 1000000) + " ms, load " + (loadTime / 1000000) + " ms, wrong tiles " + wrong);
+	}
+
+	private static boolean visibleResident(RandomLevel level, int xScroll, int yScroll, Screen screen) {
+		for (int y = yScroll >> 4; y <= (yScroll + screen.height) >> 4; y += Chunk.SIZE) {
+			for (int x = xScroll >> 4; x <= (xScroll + screen.width) >> 4; x += Chunk.SIZE) {
+				if (!level.isResident(x, y)) return false;
+			}
+		}
+		return level.isResident((xScroll + screen.width) >> 4, (yScroll + screen.height) >> 4);
+	}
+}
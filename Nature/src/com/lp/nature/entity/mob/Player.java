@@ -2,7 +2,6 @@ package com.lp.nature.entity.mob;
 
 import com.lp.nature.Game;
 import com.lp.nature.entity.projectile.Mage_projectile;
-import com.lp.nature.entity.projectile.Projectile;
 import com.lp.nature.graphics.Screen;
 import com.lp.nature.graphics.Sprite;
 import com.lp.nature.input.Keyboard;
@@ -60,16 +59,6 @@ public class Player extends Mob {
 		}
 
 		shootingTick();
-		clear();
-	}
-
-	private void clear() {
-		for (int i = 0; i < level.getProjectiles().size(); i++) {
-			Projectile p = level.getProjectiles().get(i);
-			if (p.isRemoved()) {
-				level.getProjectiles().remove(i);
-			}
-		}
 	}
 
 	private void shootingTick() {
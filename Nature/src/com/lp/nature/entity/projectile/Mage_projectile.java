@@ -1,5 +1,10 @@
 package com.lp.nature.entity.projectile;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lp.nature.entity.Entity;
+import com.lp.nature.entity.mob.Mob;
 import com.lp.nature.entity.spawner.ParticleSpawner;
 import com.lp.nature.entity.spawner.Spawner;
 import com.lp.nature.graphics.Screen;
@@ -8,6 +13,9 @@ import com.lp.nature.graphics.Sprite;
 public class Mage_projectile extends Projectile {
 
 	public static final int FIRE_RATE = 10; // HIGH - SLOW // LOW - FAST
+	public static final int HIT_RADIUS = 8;
+
+	private final List<Entity> nearby = new ArrayList<Entity>();
 
 	public Mage_projectile(int x, int y, double dir) {
 		super(x, y, dir);
@@ -27,13 +35,22 @@ public class Mage_projectile extends Projectile {
 	protected void move() {
 		x += nx;
 		y += ny;
-		if (distance() > range || level.tileCollision((int) (x + nx), (int) (y + ny), 7, -4, 5)) {
+		if (distance() > range || level.tileCollision((int) (x + nx), (int) (y + ny), 7, -4, 5) || hitMob()) {
 			level.add(new ParticleSpawner((int) x, (int) y, 48, 80, level));
 
 			remove();
 		}
 	}
 
+	private boolean hitMob() {
+		nearby.clear();
+		level.getEntities((int) x, (int) y, HIT_RADIUS, nearby);
+		for (int i = 0; i < nearby.size(); i++) {
+			if (nearby.get(i) instanceof Mob) return true;
+		}
+		return false;
+	}
+
 	public void render(Screen screen) {
 		screen.renderProjectile((int) x - 12, (int) y - 3, this);
 	}
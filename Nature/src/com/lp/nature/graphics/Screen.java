@@ -1,5 +1,6 @@
 package com.lp.nature.graphics;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import com.lp.nature.entity.mob.Player;
@@ -17,12 +18,23 @@ public class Screen {
 
 	public int[] tiles = new int[MAP_SIZE * MAP_SIZE];
 
+	public int[] exposed = new int[4 * 4];
+	public int exposedCount;
+
+	private int[] background;
+	private Object backgroundOwner;
+	private int backgroundX, backgroundY;
+	private int[] dirty = new int[4 * 64];
+	private int dirtyCount;
+	private boolean presentAll = true;
+
 	private Random random = new Random();
 
 	public Screen(int width, int height) {
 		this.width = width;
 		this.height = height;
 		pixels = new int[width * height];
+		background = new int[width * height];
 
 		for (int i = 0; i < MAP_SIZE * MAP_SIZE; i++) {
 			tiles[0] = 0x000000;
@@ -31,9 +43,9 @@ public class Screen {
 	}
 
 	public void clear() {
-		for (int i = 0; i < pixels.length; i++) {
-			pixels[i] = 0;
-		}
+		Arrays.fill(pixels, 0);
+		dirtyCount = 0;
+		presentAll = true;
 	}
 
 	public void renderSprite(int xp, int yp, Sprite sprite, boolean fixed) {
@@ -41,44 +53,48 @@ public class Screen {
 			xp -= xOffset;
 			yp -= yOffset;
 		}
-		for (int y = 0; y < sprite.getHeight(); y++) {
-			int ya = y + yp;
-			for (int x = 0; x < sprite.getWidth(); x++) {
-				int xa = x + xp;
-				if (xa < 0 || xa >= width || ya < 0 || ya >= height) continue;
-				pixels[xa + ya * width] = sprite.pixels[x + y * sprite.getWidth()];
-			}
+		int w = sprite.getWidth();
+		int h = sprite.getHeight();
+		int x0 = Math.max(0, -xp), x1 = Math.min(w, width - xp);
+		int y0 = Math.max(0, -yp), y1 = Math.min(h, height - yp);
+		if (x0 >= x1 || y0 >= y1) return;
+		markDirty(xp + x0, yp + y0, xp + x1, yp + y1);
+		for (int y = y0; y < y1; y++) {
+			System.arraycopy(sprite.pixels, x0 + y * w, pixels, xp + x0 + (y + yp) * width, x1 - x0);
 		}
 	}
 
+	/**
+	 * Draws a tile into the background layer, which is only recomposited for
+	 * the regions exposed by {@link #scrollBackground}.
+	 */
 	public void renderTile(int xp, int yp, Tile tile) {
 		xp -= xOffset;
 		yp -= yOffset;
-		for (int y = 0; y < tile.sprite.SIZE; y++) {
-			int ya = y + yp;
-			for (int x = 0; x < tile.sprite.SIZE; x++) {
-				int xa = x + xp;
-				if (xa < -tile.sprite.SIZE || xa >= width || ya < 0 || ya >= height) break;
-				if (xa < 0) xa = 0;
-				pixels[xa + ya * width] = tile.sprite.pixels[x + y * tile.sprite.SIZE];
-			}
+		int size = tile.sprite.SIZE;
+		int x0 = Math.max(0, -xp), x1 = Math.min(size, width - xp);
+		int y0 = Math.max(0, -yp), y1 = Math.min(size, height - yp);
+		if (x0 >= x1 || y0 >= y1) return;
+		for (int y = y0; y < y1; y++) {
+			System.arraycopy(tile.sprite.pixels, x0 + y * size, background, xp + x0 + (y + yp) * width, x1 - x0);
 		}
 	}
 
 	public void renderProjectile(int xp, int yp, Projectile p) {
 		xp -= xOffset;
 		yp -= yOffset;
-		for (int y = 0; y < p.getSpriteSize(); y++) {
-			int ya = y + yp;
-			for (int x = 0; x < p.getSpriteSize(); x++) {
-				int xa = x + xp;
-				if (xa < -p.getSpriteSize() || xa >= width || ya < 0 || ya >= height) break;
-				if (xa < 0) xa = 0;
-				int col = p.getSprite().pixels[x + y * p.getSpriteSize()];
-				if (col != 0xFFFF00FF) {
-					pixels[xa + ya * width] = col;
-				}
-
+		int size = p.getSpriteSize();
+		int x0 = Math.max(0, -xp), x1 = Math.min(size, width - xp);
+		int y0 = Math.max(0, -yp), y1 = Math.min(size, height - yp);
+		if (x0 >= x1 || y0 >= y1) return;
+		markDirty(xp + x0, yp + y0, xp + x1, yp + y1);
+		int[] src = p.getSprite().pixels;
+		for (int y = y0; y < y1; y++) {
+			int s = x0 + y * size;
+			int d = xp + x0 + (y + yp) * width;
+			for (int x = x0; x < x1; x++, s++, d++) {
+				int col = src[s];
+				if (col != 0xFFFF00FF) pixels[d] = col;
 			}
 		}
 	}
@@ -86,20 +102,99 @@ public class Screen {
 	public void renderPlayer(int xp, int yp, Sprite sprite, int flip) {
 		xp -= xOffset;
 		yp -= yOffset;
-		for (int y = 0; y < 32; y++) {
-			int ya = y + yp;
+		int x0 = Math.max(0, -xp), x1 = Math.min(32, width - xp);
+		int y0 = Math.max(0, -yp), y1 = Math.min(32, height - yp);
+		if (x0 >= x1 || y0 >= y1) return;
+		markDirty(xp + x0, yp + y0, xp + x1, yp + y1);
+		for (int y = y0; y < y1; y++) {
 			int ys = y;
 			if (flip == 2) ys = 31 - y;
-			for (int x = 0; x < 32; x++) {
-				int xa = x + xp;
+			int d = xp + x0 + (y + yp) * width;
+			for (int x = x0; x < x1; x++, d++) {
 				int xs = x;
 				if (flip == 1) xs = 31 - x;
-				if (xa < -32 || xa >= width || ya < 0 || ya >= height) break;
-				if (xa < 0) xa = 0;
 				int col = sprite.pixels[xs + ys * 32];
-				if (col != 0xFFFF00FF) pixels[xa + ya * width] = col;
+				if (col != 0xFFFF00FF) pixels[d] = col;
+			}
+		}
+	}
+
+	/**
+	 * Moves the background layer to a new scroll position. Pixels still on
+	 * screen are shifted in place and the strips that scrolled into view are
+	 * recorded in {@link #exposed}; the owner must redraw the tiles covering
+	 * them. A different owner, or a jump larger than the screen, exposes the
+	 * whole screen.
+	 */
+	public void scrollBackground(Object owner, int xScroll, int yScroll) {
+		exposedCount = 0;
+		int dx = xScroll - backgroundX;
+		int dy = yScroll - backgroundY;
+		if (owner != backgroundOwner || Math.abs(dx) >= width || Math.abs(dy) >= height) {
+			backgroundOwner = owner;
+			addExposed(0, 0, width, height);
+		} else if (dx != 0 || dy != 0) {
+			int srcX = Math.max(dx, 0), dstX = Math.max(-dx, 0);
+			int len = width - Math.abs(dx);
+			if (dy >= 0) {
+				for (int y = 0; y < height - dy; y++) {
+					System.arraycopy(background, srcX + (y + dy) * width, background, dstX + y * width, len);
+				}
+			} else {
+				for (int y = height - 1; y >= -dy; y--) {
+					System.arraycopy(background, srcX + (y + dy) * width, background, dstX + y * width, len);
+				}
+			}
+			if (dx > 0) addExposed(width - dx, 0, width, height);
+			if (dx < 0) addExposed(0, 0, -dx, height);
+			if (dy > 0) addExposed(0, height - dy, width, height);
+			if (dy < 0) addExposed(0, 0, width, -dy);
+		}
+		backgroundX = xScroll;
+		backgroundY = yScroll;
+	}
+
+	/**
+	 * Forces the whole background to be redrawn on the next frame, e.g. after
+	 * a tile has changed.
+	 */
+	public void invalidateBackground() {
+		backgroundOwner = null;
+	}
+
+	/**
+	 * Restores the background under everything drawn since the last call. If
+	 * the background scrolled, the whole frame is copied instead.
+	 */
+	public void presentBackground() {
+		if (exposedCount > 0 || presentAll) {
+			System.arraycopy(background, 0, pixels, 0, pixels.length);
+		} else {
+			for (int i = 0; i < dirtyCount; i += 4) {
+				int x0 = dirty[i], y0 = dirty[i + 1], x1 = dirty[i + 2], y1 = dirty[i + 3];
+				for (int y = y0; y < y1; y++) {
+					System.arraycopy(background, x0 + y * width, pixels, x0 + y * width, x1 - x0);
+				}
 			}
 		}
+		dirtyCount = 0;
+		presentAll = false;
+	}
+
+	private void addExposed(int x0, int y0, int x1, int y1) {
+		exposed[exposedCount * 4] = x0;
+		exposed[exposedCount * 4 + 1] = y0;
+		exposed[exposedCount * 4 + 2] = x1;
+		exposed[exposedCount * 4 + 3] = y1;
+		exposedCount++;
+	}
+
+	private void markDirty(int x0, int y0, int x1, int y1) {
+		if (dirtyCount == dirty.length) dirty = Arrays.copyOf(dirty, dirty.length * 2);
+		dirty[dirtyCount++] = x0;
+		dirty[dirtyCount++] = y0;
+		dirty[dirtyCount++] = x1;
+		dirty[dirtyCount++] = y1;
 	}
 
 	public void setOffset(int xOffset, int yOffset) {
@@ -0,0 +1,37 @@
+package com.lp.nature.level;
+
+/**
+ * A SIZE x SIZE block of tile ids belonging to a chunked level.
+ */
+public class Chunk {
+
+	public static final int SHIFT = 6;
+	public static final int SIZE = 1 << SHIFT;
+	public static final int MASK = SIZE - 1;
+
+	/** Approximate heap cost of one resident chunk, used for the cache budget. */
+	public static final int BYTES = SIZE * SIZE + 64;
+
+	public final int cx, cy;
+	public final byte[] tiles = new byte[SIZE * SIZE];
+	/** Set by the game thread, cleared by whichever thread saves the chunk. */
+	volatile boolean dirty = false;
+
+	public Chunk(int cx, int cy) {
+		this.cx = cx;
+		this.cy = cy;
+	}
+
+	public int getTile(int xt, int yt) {
+		return tiles[(xt & MASK) + ((yt & MASK) << SHIFT)];
+	}
+
+	public void setTile(int xt, int yt, int id) {
+		tiles[(xt & MASK) + ((yt & MASK) << SHIFT)] = (byte) id;
+		dirty = true;
+	}
+
+	public static long key(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+}
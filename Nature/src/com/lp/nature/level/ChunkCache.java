@@ -0,0 +1,228 @@
+package com.lp.nature.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Resident set of a chunked level. Chunks are loaded from region files or
+ * generated on a background pool the first time they are asked for, and
+ * the least recently used ones are dropped (and written back if changed)
+ * once the memory budget is exceeded. At most MAX_REGIONS region files are
+ * kept open, least recently used ones are closed.
+ */
+public class ChunkCache {
+
+	public interface Generator {
+		void generate(Chunk chunk);
+	}
+
+	/** Region files kept open. */
+	public static final int MAX_REGIONS = 16;
+
+	private final Generator generator;
+	private final File regionDir;
+	private final int tileBits;
+	private final int capacity;
+	private final ExecutorService pool;
+
+	private final LinkedHashMap<Long, Chunk> resident;
+	private final Set<Long> pending = new HashSet<Long>();
+	private final LinkedHashMap<Long, RegionFile> regions = new LinkedHashMap<Long, RegionFile>(MAX_REGIONS * 4 / 3 + 1, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Long, RegionFile> eldest) {
+			if (size() <= MAX_REGIONS) return false;
+			RegionFile region = eldest.getValue();
+			region.evicted = true;
+			if (region.users == 0) close(region);
+			return true;
+		}
+	};
+	private volatile int loaded = 0;
+
+	/**
+	 * @param tileIds number of tile ids, the ids of a chunk are 0 to tileIds - 1
+	 * @param budget bytes of tile data to keep resident
+	 * @param regionDir directory for region files, or null to regenerate
+	 *            evicted chunks instead of saving them
+	 */
+	public ChunkCache(Generator generator, int tileIds, long budget, File regionDir, int threads) {
+		this.generator = generator;
+		this.regionDir = regionDir;
+		this.tileBits = RegionFile.bitsFor(tileIds);
+		this.capacity = (int) Math.max(16, budget / Chunk.BYTES);
+		if (regionDir != null) regionDir.mkdirs();
+		resident = new LinkedHashMap<Long, Chunk>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+				if (size() <= capacity) return false;
+				save(eldest.getValue());
+				return true;
+			}
+		};
+		pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Chunks");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Returns the chunk if it is resident. Otherwise schedules it to be
+	 * loaded and returns null.
+	 */
+	public synchronized Chunk get(int cx, int cy) {
+		Long key = Chunk.key(cx, cy);
+		Chunk chunk = resident.get(key);
+		if (chunk == null && pending.add(key)) {
+			final int x = cx, y = cy;
+			pool.execute(new Runnable() {
+				public void run() {
+					finish(load(x, y));
+				}
+			});
+		}
+		return chunk;
+	}
+
+	/**
+	 * Returns the chunk, loading it on the calling thread if needed.
+	 */
+	public Chunk getNow(int cx, int cy) {
+		Chunk chunk;
+		synchronized (this) {
+			chunk = resident.get(Chunk.key(cx, cy));
+		}
+		if (chunk != null) return chunk;
+		return finish(load(cx, cy));
+	}
+
+	public synchronized boolean isResident(int cx, int cy) {
+		return resident.containsKey(Chunk.key(cx, cy));
+	}
+
+	/**
+	 * Schedules every chunk in [cx0, cx1] x [cy0, cy1] that is not yet
+	 * resident.
+	 */
+	public void request(int cx0, int cy0, int cx1, int cy1) {
+		for (int cy = cy0; cy <= cy1; cy++) {
+			for (int cx = cx0; cx <= cx1; cx++) {
+				get(cx, cy);
+			}
+		}
+	}
+
+	/**
+	 * Number of chunks that have become resident so far. Renderers compare
+	 * it between frames to find out when streamed chunks have arrived.
+	 */
+	public int getLoadedCount() {
+		return loaded;
+	}
+
+	public synchronized int getResidentCount() {
+		return resident.size();
+	}
+
+	/**
+	 * Writes all changed chunks to their region files.
+	 */
+	public synchronized void flush() {
+		for (Iterator<Chunk> it = resident.values().iterator(); it.hasNext();) {
+			save(it.next());
+		}
+	}
+
+	public synchronized void shutdown() {
+		pool.shutdownNow();
+		flush();
+		for (RegionFile region : regions.values()) {
+			region.evicted = true;
+			if (region.users == 0) close(region);
+		}
+		regions.clear();
+	}
+
+	private Chunk load(int cx, int cy) {
+		Chunk chunk = new Chunk(cx, cy);
+		if (regionDir != null) {
+			RegionFile region = null;
+			try {
+				region = openRegion(cx, cy);
+				if (region.read(chunk)) return chunk;
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				if (region != null) releaseRegion(region);
+			}
+		}
+		generator.generate(chunk);
+		return chunk;
+	}
+
+	private synchronized Chunk finish(Chunk chunk) {
+		Long key = Chunk.key(chunk.cx, chunk.cy);
+		pending.remove(key);
+		Chunk existing = resident.get(key);
+		if (existing != null) return existing;
+		resident.put(key, chunk);
+		loaded++;
+		return chunk;
+	}
+
+	private void save(Chunk chunk) {
+		if (!chunk.dirty || regionDir == null) return;
+		// cleared first, so a tile set while writing marks it dirty again
+		chunk.dirty = false;
+		RegionFile region = null;
+		try {
+			region = openRegion(chunk.cx, chunk.cy);
+			region.write(chunk);
+		} catch (IOException e) {
+			chunk.dirty = true;
+			e.printStackTrace();
+		} finally {
+			if (region != null) releaseRegion(region);
+		}
+	}
+
+	/**
+	 * Returns the chunk's region file, opening it if needed. It stays open
+	 * until {@link #releaseRegion(RegionFile)}, even if it is evicted.
+	 */
+	private synchronized RegionFile openRegion(int cx, int cy) throws IOException {
+		int rx = cx >> RegionFile.SHIFT, ry = cy >> RegionFile.SHIFT;
+		Long key = Chunk.key(rx, ry);
+		RegionFile region = regions.get(key);
+		if (region == null) {
+			region = new RegionFile(regionDir, rx, ry, tileBits);
+			regions.put(key, region);
+		}
+		region.users++;
+		return region;
+	}
+
+	private synchronized void releaseRegion(RegionFile region) {
+		if (--region.users == 0 && region.evicted) close(region);
+	}
+
+	private static void close(RegionFile region) {
+		try {
+			region.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.lp.nature.level;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import com.lp.nature.entity.Entity;
+
+/**
+ * Array backed entity storage. Removed entities stay in place until
+ * {@link #compact()} swaps the last element into their slot, so removal is
+ * O(1) and iteration order is not stable across compactions. As a List,
+ * remove(int) keeps the order; {@link #swapRemove(int)} is the O(1) one.
+ */
+public class EntityList<T extends Entity> extends AbstractList<T> {
+
+	private Entity[] items = new Entity[64];
+	private int size;
+
+	public boolean add(T e) {
+		modCount++;
+		if (size == items.length) items = Arrays.copyOf(items, size * 2);
+		items[size++] = e;
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		if (i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		return (T) items[i];
+	}
+
+	public T remove(int i) {
+		T e = get(i);
+		modCount++;
+		System.arraycopy(items, i + 1, items, i, size - i - 1);
+		items[--size] = null;
+		return e;
+	}
+
+	/**
+	 * Swap-removes the entity at i; the last entity takes its place.
+	 */
+	public T swapRemove(int i) {
+		T e = get(i);
+		modCount++;
+		items[i] = items[--size];
+		items[size] = null;
+		return e;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		modCount++;
+		Arrays.fill(items, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Drops every entity flagged as removed.
+	 */
+	public void compact() {
+		int i = 0;
+		while (i < size) {
+			if (items[i].isRemoved()) {
+				swapRemove(i);
+			} else {
+				i++;
+			}
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package com.lp.nature.level;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.lp.nature.entity.Entity;
@@ -14,11 +13,19 @@ public class Level {
 	protected int width, height;
 	protected int[] tilesInt;
 	protected int[] tiles;
+	protected short[] tileIds;
 	public static Level spawn = new Level("/levels/spawn.png");
 
-	private List<Entity> entities = new ArrayList<Entity>();
-	private List<Projectile> projectiles = new ArrayList<Projectile>();
-	private List<Particle> particles = new ArrayList<Particle>();
+	private static final Tile[] TILE_TABLE = { Tile.voidTile, Tile.spawn_wood_floor, Tile.spawn_stone_brick, Tile.spawn_grass, Tile.spawn_bush, Tile.spawn_fresh_water, Tile.spawn_sp };
+	private static final int[] TILE_COLORS = { 0, Tile.col_spawn_wood_floor, Tile.col_spawn_stone_brick, Tile.col_spawn_grass, Tile.col_spawn_bush, Tile.col_spawn_fresh_water, Tile.col_spawn_sp };
+
+	private EntityList<Entity> entities = new EntityList<Entity>();
+	private EntityList<Projectile> projectiles = new EntityList<Projectile>();
+	private EntityList<Particle> particles = new EntityList<Particle>();
+	private SpatialHash entityGrid = new SpatialHash(2, 1024);
+
+	protected Level() {
+	}
 
 	public Level(int width, int height) {
 		this.width = width;
@@ -30,7 +37,24 @@ public class Level {
 	public Level(String path) {
 		loadLevel(path);
 		generateLevel();
+		compileTiles();
+	}
 
+	/**
+	 * Maps the loaded pixel colours to indices into TILE_TABLE once, so that
+	 * getTile is a single array lookup.
+	 */
+	protected void compileTiles() {
+		if (tiles == null) return;
+		tileIds = new short[tiles.length];
+		for (int i = 0; i < tiles.length; i++) {
+			for (short t = 1; t < TILE_COLORS.length; t++) {
+				if (tiles[i] == TILE_COLORS[t]) {
+					tileIds[i] = t;
+					break;
+				}
+			}
+		}
 	}
 
 	public void add(Entity e) {
@@ -57,6 +81,23 @@ public class Level {
 		return projectiles;
 	}
 
+	/**
+	 * Adds the entities within radius pixels of (x, y) to result. Positions
+	 * are those at the end of the previous tick.
+	 */
+	public List<Entity> getEntities(int x, int y, int radius, List<Entity> result) {
+		entityGrid.queryRadius(x, y, radius, result);
+		return result;
+	}
+
+	/**
+	 * Adds the entities standing on tiles [tx0, tx1] x [ty0, ty1] to result.
+	 */
+	public List<Entity> getEntities(TileCoordinate from, TileCoordinate to, List<Entity> result) {
+		entityGrid.queryTiles(TileCoordinate.toTile(from.x()), TileCoordinate.toTile(from.y()), TileCoordinate.toTile(to.x()), TileCoordinate.toTile(to.y()), result);
+		return result;
+	}
+
 	public void tick() {
 		for (int i = 0; i < entities.size(); i++) {
 			entities.get(i).tick();
@@ -77,17 +118,13 @@ public class Level {
 
 	public void render(int xScroll, int yScroll, Screen screen) {
 		screen.setOffset(xScroll, yScroll);
-		int x0 = xScroll >> 4;
-		int x1 = (xScroll + screen.width + 16) >> 4;
-		int y0 = yScroll >> 4;
-		int y1 = (yScroll + screen.height + 16) >> 4;
-
-		for (int y = y0; y < y1; y++) {
-			for (int x = x0; x < x1; x++) {
-				getTile(x, y).render(x, y, screen);
-
-			}
+		screen.scrollBackground(this, xScroll, yScroll);
+		for (int i = 0; i < screen.exposedCount; i++) {
+			int[] r = screen.exposed;
+			renderTiles(xScroll + r[i * 4], yScroll + r[i * 4 + 1], xScroll + r[i * 4 + 2], yScroll + r[i * 4 + 3], screen);
 		}
+		screen.presentBackground();
+
 		for (int i = 0; i < entities.size(); i++) {
 			entities.get(i).render(screen);
 		}
@@ -99,28 +136,32 @@ public class Level {
 		}
 	}
 
-	private void remove() {
-		for (int i = 0; i < entities.size(); i++) {
-			if (entities.get(i).isRemoved()) entities.remove(i);
+	private void renderTiles(int xp0, int yp0, int xp1, int yp1, Screen screen) {
+		int x0 = xp0 >> 4;
+		int x1 = (xp1 + 15) >> 4;
+		int y0 = yp0 >> 4;
+		int y1 = (yp1 + 15) >> 4;
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++) {
+				getTile(x, y).render(x, y, screen);
+			}
 		}
+	}
 
-		for (int i = 0; i < projectiles.size(); i++) {
-			if (projectiles.get(i).isRemoved()) projectiles.remove(i);
-		}
-		for (int i = 0; i < particles.size(); i++) {
-			if (particles.get(i).isRemoved()) particles.remove(i);
+	private void remove() {
+		entities.compact();
+		projectiles.compact();
+		particles.compact();
+
+		entityGrid.clear();
+		for (int i = 0; i < entities.size(); i++) {
+			entityGrid.insert(entities.get(i));
 		}
 	}
 
 	public Tile getTile(int x, int y) {
-		if (x < 0 || y < 0 || x >= width || y >= height) return Tile.voidTile;
-		if (tiles[x + y * width] == Tile.col_spawn_wood_floor) return Tile.spawn_wood_floor;
-		if (tiles[x + y * width] == Tile.col_spawn_stone_brick) return Tile.spawn_stone_brick;
-		if (tiles[x + y * width] == Tile.col_spawn_grass) return Tile.spawn_grass;
-		if (tiles[x + y * width] == Tile.col_spawn_bush) return Tile.spawn_bush;
-		if (tiles[x + y * width] == Tile.col_spawn_fresh_water) return Tile.spawn_fresh_water;
-		if (tiles[x + y * width] == Tile.col_spawn_sp) return Tile.spawn_sp;
-		return Tile.voidTile;
+		if (x < 0 || y < 0 || x >= width || y >= height || tileIds == null) return Tile.voidTile;
+		return TILE_TABLE[tileIds[x + y * width]];
 	}
 
 	public boolean tileCollision(int x, int y, int size, int xOffset, int yOffset) {
@@ -1,21 +1,122 @@
 package com.lp.nature.level;
 
+import java.io.File;
 import java.util.Random;
 
+import com.lp.nature.graphics.Screen;
+import com.lp.nature.level.tile.Tile;
+
+/**
+ * Endless random level. Tiles live in chunks that are generated from the
+ * seed on first use and streamed through a {@link ChunkCache}; rendering
+ * and collision only look at chunks that are already resident.
+ */
 public class RandomLevel extends Level {
 
 	private static final Random random = new Random();
+	private static final Tile[] TILES = { Tile.grass, Tile.flower, Tile.stone_grass, Tile.grass };
+	private static final long DEFAULT_BUDGET = 32 << 20;
+
+	private final long seed;
+	private final ChunkCache chunks;
+	private Chunk last;
+	private int lastLoaded = -1;
 
 	public RandomLevel(int width, int height) {
-		super(width, height);
+		this(width, height, random.nextLong(), DEFAULT_BUDGET, null);
 	}
 
-	protected void generateLevel() {
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				tilesInt[x + y * width] = random.nextInt(4);
+	public RandomLevel(int width, int height, long seed, long budget, File regionDir) {
+		this.width = width;
+		this.height = height;
+		this.seed = seed;
+		chunks = new ChunkCache(new ChunkCache.Generator() {
+			public void generate(Chunk chunk) {
+				generateChunk(chunk);
 			}
+		}, TILES.length, budget, regionDir, Runtime.getRuntime().availableProcessors());
+	}
+
+	protected void generateChunk(Chunk chunk) {
+		long h = seed ^ (chunk.cx * 0x9E3779B97F4A7C15L) ^ (chunk.cy * 0xC2B2AE3D27D4EB4FL);
+		for (int i = 0; i < chunk.tiles.length; i++) {
+			h += 0x9E3779B97F4A7C15L;
+			long z = h;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			z = z ^ (z >>> 31);
+			chunk.tiles[i] = (byte) (z >>> 62);
+		}
+	}
+
+	public void render(int xScroll, int yScroll, Screen screen) {
+		int margin = Chunk.SIZE << 4;
+		requestPixels(xScroll - margin, yScroll - margin, xScroll + screen.width + margin, yScroll + screen.height + margin);
+		int loaded = chunks.getLoadedCount();
+		if (loaded != lastLoaded) {
+			lastLoaded = loaded;
+			screen.invalidateBackground();
 		}
+		super.render(xScroll, yScroll, screen);
+	}
+
+	/**
+	 * Schedules the chunks under the given pixel rectangle.
+	 */
+	public void requestPixels(int x0, int y0, int x1, int y1) {
+		int cx0 = Math.max(0, x0 >> 4 >> Chunk.SHIFT), cy0 = Math.max(0, y0 >> 4 >> Chunk.SHIFT);
+		int cx1 = Math.min((width - 1) >> Chunk.SHIFT, x1 >> 4 >> Chunk.SHIFT);
+		int cy1 = Math.min((height - 1) >> Chunk.SHIFT, y1 >> 4 >> Chunk.SHIFT);
+		chunks.request(cx0, cy0, cx1, cy1);
+	}
+
+	public boolean isResident(int x, int y) {
+		return chunks.isResident(x >> Chunk.SHIFT, y >> Chunk.SHIFT);
+	}
+
+	public Tile getTile(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return Tile.voidTile;
+		Chunk chunk = chunk(x, y);
+		if (chunk == null) return Tile.voidTile;
+		return TILES[chunk.getTile(x, y)];
 	}
 
+	public void setTile(int x, int y, int id) {
+		if (id < 0 || id >= TILES.length) throw new IllegalArgumentException("no tile " + id);
+		if (x < 0 || y < 0 || x >= width || y >= height) return;
+		last = chunks.getNow(x >> Chunk.SHIFT, y >> Chunk.SHIFT);
+		last.setTile(x, y, id);
+		lastLoaded = -1;
+	}
+
+	public boolean tileCollision(int x, int y, int size, int xOffset, int yOffset) {
+		for (int c = 0; c < 4; c++) {
+			int xt = (x - c % 2 * size + xOffset) >> 4;
+			int yt = (y - c / 2 * size + yOffset) >> 4;
+			if (xt >= 0 && yt >= 0 && xt < width && yt < height && chunk(xt, yt) == null) return true;
+			if (getTile(xt, yt).solid()) return true;
+		}
+		return false;
+	}
+
+	public void save() {
+		chunks.flush();
+	}
+
+	public void close() {
+		chunks.shutdown();
+	}
+
+	public ChunkCache getChunks() {
+		return chunks;
+	}
+
+	private Chunk chunk(int x, int y) {
+		int cx = x >> Chunk.SHIFT, cy = y >> Chunk.SHIFT;
+		Chunk chunk = last;
+		if (chunk != null && chunk.cx == cx && chunk.cy == cy) return chunk;
+		chunk = chunks.get(cx, cy);
+		if (chunk != null) last = chunk;
+		return chunk;
+	}
 }
@@ -0,0 +1,103 @@
+package com.lp.nature.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * On-disk store for one REGION x REGION block of chunks. Tile ids are packed
+ * bits to a tile, the fewest of 1, 2, 4 or 8 that hold every id of the
+ * level, so every chunk has a fixed size slot after a header of the bit
+ * width and a one byte per chunk presence table.
+ */
+public class RegionFile {
+
+	public static final int SHIFT = 5;
+	public static final int REGION = 1 << SHIFT;
+
+	private static final int HEADER = 1 + REGION * REGION;
+
+	private final RandomAccessFile file;
+	private final int bits;
+	private final int chunkBytes;
+	private final byte[] present = new byte[REGION * REGION];
+	private final byte[] buffer;
+
+	/** Chunks being read or written, and whether the cache has let go of it. */
+	int users = 0;
+	boolean evicted = false;
+
+	/**
+	 * @param bits bits per tile, from {@link #bitsFor(int)}
+	 */
+	public RegionFile(File dir, int rx, int ry, int bits) throws IOException {
+		this.bits = bits;
+		chunkBytes = Chunk.SIZE * Chunk.SIZE * bits / 8;
+		buffer = new byte[chunkBytes];
+		file = new RandomAccessFile(new File(dir, "r." + rx + "." + ry + ".dat"), "rw");
+		if (file.length() >= HEADER) {
+			file.seek(0);
+			int fileBits = file.read();
+			if (fileBits != bits) {
+				file.close();
+				throw new IOException("region " + rx + "," + ry + " has " + fileBits + " bit tiles, not " + bits);
+			}
+			file.readFully(present);
+		} else {
+			file.setLength(HEADER);
+			file.seek(0);
+			file.write(bits);
+		}
+	}
+
+	/**
+	 * Returns the bits per tile needed for tile ids 0 to ids - 1.
+	 */
+	public static int bitsFor(int ids) {
+		if (ids < 1 || ids > 256) throw new IllegalArgumentException("can't store " + ids + " tile ids");
+		int bits = 1;
+		while ((1 << bits) < ids) bits <<= 1;
+		return bits;
+	}
+
+	public synchronized boolean read(Chunk chunk) throws IOException {
+		int slot = slot(chunk.cx, chunk.cy);
+		if (present[slot] == 0) return false;
+		file.seek(HEADER + (long) slot * chunkBytes);
+		file.readFully(buffer);
+		int perByte = 8 / bits;
+		int mask = (1 << bits) - 1;
+		for (int i = 0; i < chunk.tiles.length; i++) {
+			chunk.tiles[i] = (byte) ((buffer[i / perByte] >> ((i % perByte) * bits)) & mask);
+		}
+		return true;
+	}
+
+	public synchronized void write(Chunk chunk) throws IOException {
+		int slot = slot(chunk.cx, chunk.cy);
+		int perByte = 8 / bits;
+		int mask = (1 << bits) - 1;
+		Arrays.fill(buffer, (byte) 0);
+		for (int i = 0; i < chunk.tiles.length; i++) {
+			int id = chunk.tiles[i] & 0xff;
+			if (id > mask) throw new IOException("tile id " + id + " doesn't fit in " + bits + " bits");
+			buffer[i / perByte] |= id << ((i % perByte) * bits);
+		}
+		file.seek(HEADER + (long) slot * chunkBytes);
+		file.write(buffer);
+		if (present[slot] == 0) {
+			present[slot] = 1;
+			file.seek(1 + slot);
+			file.write(1);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		file.close();
+	}
+
+	private static int slot(int cx, int cy) {
+		return (cx & (REGION - 1)) + ((cy & (REGION - 1)) << SHIFT);
+	}
+}
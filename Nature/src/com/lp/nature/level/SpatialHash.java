@@ -0,0 +1,100 @@
+package com.lp.nature.level;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.lp.nature.entity.Entity;
+
+/**
+ * Uniform grid over tile coordinates. Each cell covers cellTiles x cellTiles
+ * tiles and cells are chained into a fixed size bucket table, so rebuilding
+ * the grid every tick allocates nothing once the arrays have grown.
+ */
+public class SpatialHash {
+
+	private final int cellShift;
+	private final int mask;
+	private final int[] head;
+
+	private Entity[] items = new Entity[256];
+	private int[] next = new int[256];
+	private int[] cellX = new int[256];
+	private int[] cellY = new int[256];
+	private int count;
+
+	/**
+	 * @param cellShift log2 of the cell size in tiles
+	 * @param buckets number of hash buckets, rounded up to a power of two
+	 */
+	public SpatialHash(int cellShift, int buckets) {
+		this.cellShift = cellShift;
+		int n = Integer.highestOneBit(Math.max(buckets - 1, 1)) << 1;
+		mask = n - 1;
+		head = new int[n];
+		Arrays.fill(head, -1);
+	}
+
+	public void clear() {
+		Arrays.fill(head, -1);
+		Arrays.fill(items, 0, count, null);
+		count = 0;
+	}
+
+	public void insert(Entity e) {
+		if (count == items.length) {
+			int n = count * 2;
+			items = Arrays.copyOf(items, n);
+			next = Arrays.copyOf(next, n);
+			cellX = Arrays.copyOf(cellX, n);
+			cellY = Arrays.copyOf(cellY, n);
+		}
+		int cx = TileCoordinate.toTile(e.x) >> cellShift;
+		int cy = TileCoordinate.toTile(e.y) >> cellShift;
+		int b = bucket(cx, cy);
+		items[count] = e;
+		cellX[count] = cx;
+		cellY[count] = cy;
+		next[count] = head[b];
+		head[b] = count++;
+	}
+
+	/**
+	 * Adds every entity whose position lies in the tile rectangle
+	 * [tx0, tx1] x [ty0, ty1] to result.
+	 */
+	public void queryTiles(int tx0, int ty0, int tx1, int ty1, List<Entity> result) {
+		for (int cy = ty0 >> cellShift; cy <= ty1 >> cellShift; cy++) {
+			for (int cx = tx0 >> cellShift; cx <= tx1 >> cellShift; cx++) {
+				for (int i = head[bucket(cx, cy)]; i >= 0; i = next[i]) {
+					if (cellX[i] != cx || cellY[i] != cy) continue;
+					Entity e = items[i];
+					int tx = TileCoordinate.toTile(e.x), ty = TileCoordinate.toTile(e.y);
+					if (tx >= tx0 && tx <= tx1 && ty >= ty0 && ty <= ty1) result.add(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds every entity within radius pixels of (x, y) to result.
+	 */
+	public void queryRadius(int x, int y, int radius, List<Entity> result) {
+		int r2 = radius * radius;
+		int cx0 = TileCoordinate.toTile(x - radius) >> cellShift, cx1 = TileCoordinate.toTile(x + radius) >> cellShift;
+		int cy0 = TileCoordinate.toTile(y - radius) >> cellShift, cy1 = TileCoordinate.toTile(y + radius) >> cellShift;
+		for (int cy = cy0; cy <= cy1; cy++) {
+			for (int cx = cx0; cx <= cx1; cx++) {
+				for (int i = head[bucket(cx, cy)]; i >= 0; i = next[i]) {
+					if (cellX[i] != cx || cellY[i] != cy) continue;
+					Entity e = items[i];
+					int dx = e.x - x, dy = e.y - y;
+					if (dx * dx + dy * dy <= r2) result.add(e);
+				}
+			}
+		}
+	}
+
+	private int bucket(int cx, int cy) {
+		return ((cx * 73856093) ^ (cy * 19349663)) & mask;
+	}
+}
@@ -18,6 +18,10 @@ public class TileCoordinate {
 		return y;
 	}
 
+	public static int toTile(int pixel) {
+		return pixel >> 4;
+	}
+
 	public int[] xy() {
 		int[] r = new int[2];
 		r[0] = x;
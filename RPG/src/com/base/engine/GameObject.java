@@ -35,6 +35,11 @@ public abstract class GameObject {
 		return y;
 	}
 
+	public void setPosition(float x, float y) {
+		this.x = x;
+		this.y = y;
+	}
+
 	public float getsX() {
 		return spr.getsX();
 	}
@@ -9,6 +9,7 @@ import org.lwjgl.opengl.DisplayMode;
 
 import com.base.game.Game;
 import com.base.game.Time;
+import com.base.game.nav.FlowField;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -45,6 +46,35 @@ public class Main {
 		return game.rectangleCollide(x1, y1, x2,y2);
 	}
 
+	public static int sphereCollide(float x, float y, float radius, GameObject[] out) {
+		return game.sphereCollide(x, y, radius, out);
+	}
+
+	public static int sphereCollide(float x, float y, float radius, int type, GameObject[] out) {
+		return game.sphereCollide(x, y, radius, type, out);
+	}
+
+	public static int rectangleCollide(float x1, float y1, float x2, float y2, GameObject[] out) {
+		return game.rectangleCollide(x1, y1, x2, y2, out);
+	}
+
+	public static void move(GameObject go, float dx, float dy) {
+		game.move(go, dx, dy);
+	}
+
+	public static boolean lineOfSight(float x1, float y1, float x2, float y2) {
+		return game.lineOfSight(x1, y1, x2, y2);
+	}
+
+	public static FlowField getFlowField(GameObject target) {
+		return game.getFlowField(target);
+	}
+
+	// For running a Game without a display, like the benchmarks do.
+	public static void setGame(Game g) {
+		game = g;
+	}
+
 	private static void initGame() {
 		game = new Game();
 	}
@@ -2,19 +2,72 @@ package com.base.engine;
 
 import java.awt.Rectangle;
 
+// Axis-aligned box tests on plain floats, so nothing is allocated per test.
 public class Physics {
+
 	public static GameObject checkCollision(GameObject go1, GameObject go2) {
-		Rectangle r1 = new Rectangle((int) go1.getX(), (int) go1.getY(), (int) go1.getsX(), (int) go1.getsY());
-		return checkCollision(new Rectangle((int)go1.getX(), (int)go1.getY(), (int) go1.getsX(), (int) go1.getsY()), go2);
+		if (intersects(go1.getX(), go1.getY(), go1.getsX(), go1.getsY(), go2.getX(), go2.getY(), go2.getsX(), go2.getsY()))
+			return go2;
+		return null;
 	}
+
 	public static GameObject checkCollision(Rectangle r1, GameObject go2) {
-		Rectangle r2 = new Rectangle((int) go2.getX(), (int) go2.getY(), (int) go2.getsX(), (int) go2.getsY());
-		
-		boolean res = r1.intersects(r2);
-		if (res) {
-			return go2;
-		}else{
+		// an empty rectangle never intersects anything, like Rectangle.intersects()
+		if (r1.width <= 0 || r1.height <= 0)
 			return null;
+		if (intersects(r1.x, r1.y, r1.width, r1.height, go2.getX(), go2.getY(), go2.getsX(), go2.getsY()))
+			return go2;
+		return null;
+	}
+
+	// Boxes that only touch don't intersect.
+	public static boolean intersects(float x1, float y1, float sX1, float sY1, float x2, float y2, float sX2, float sY2) {
+		return x1 < x2 + sX2 && x2 < x1 + sX1 && y1 < y2 + sY2 && y2 < y1 + sY1;
+	}
+
+	// Swept test: how far box 1 can move by (dx, dy) before it hits box 2, from
+	// 0 (it's touching and moving in) to 1 (it doesn't hit). Catches fast boxes
+	// that would jump over box 2 in one step. Boxes that already overlap don't
+	// stop each other, so they can come apart.
+	public static float sweep(float x1, float y1, float sX1, float sY1, float dx, float dy, float x2, float y2, float sX2, float sY2) {
+		float entryX;
+		float exitX;
+		if (dx > 0) {
+			entryX = (x2 - (x1 + sX1)) / dx;
+			exitX = (x2 + sX2 - x1) / dx;
+		} else if (dx < 0) {
+			entryX = (x2 + sX2 - x1) / dx;
+			exitX = (x2 - (x1 + sX1)) / dx;
+		} else {
+			if (x1 >= x2 + sX2 || x2 >= x1 + sX1)
+				return 1;
+			entryX = Float.NEGATIVE_INFINITY;
+			exitX = Float.POSITIVE_INFINITY;
+		}
+
+		float entryY;
+		float exitY;
+		if (dy > 0) {
+			entryY = (y2 - (y1 + sY1)) / dy;
+			exitY = (y2 + sY2 - y1) / dy;
+		} else if (dy < 0) {
+			entryY = (y2 + sY2 - y1) / dy;
+			exitY = (y2 - (y1 + sY1)) / dy;
+		} else {
+			if (y1 >= y2 + sY2 || y2 >= y1 + sY1)
+				return 1;
+			entryY = Float.NEGATIVE_INFINITY;
+			exitY = Float.POSITIVE_INFINITY;
 		}
+
+		float entry = Math.max(entryX, entryY);
+		float exit = Math.min(exitX, exitY);
+		if (entry >= exit || entry < 0 || entry >= 1)
+			return 1;
+		return entry;
+	}
+
+	public static float sweep(GameObject go1, float dx, float dy, GameObject go2) {
+		return sweep(go1.getX(), go1.getY(), go1.getsX(), go1.getsY(), dx, dy, go2.getX(), go2.getY(), go2.getsX(), go2.getsY());
 	}
 }
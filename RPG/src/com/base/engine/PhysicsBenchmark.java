@@ -0,0 +1,159 @@
+package com.base.engine;
+
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Times the collision code against the versions it replaced, in ns per
+// operation and bytes allocated per operation, without a display.
+// Usage: java com.base.engine.PhysicsBenchmark [objects]
+public class PhysicsBenchmark {
+
+	private static final int WORLD_SIZE = 4096;
+	private static final int QUERIES = 1000000;
+	private static final int REBUILDS = 50;
+
+	private static com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static long startTime;
+	private static long startBytes;
+	// keeps the JIT from throwing results away
+	private static int sink;
+
+	public static void main(String[] args) {
+		int numObjects = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		Random random = new Random(1);
+		ArrayList<GameObject> objects = new ArrayList<GameObject>();
+		for (int i = 0; i < numObjects; i++)
+			objects.add(new Box(random.nextInt(WORLD_SIZE), random.nextInt(WORLD_SIZE), 16 + random.nextInt(32)));
+		SpatialHash hash = new SpatialHash(128, numObjects);
+		GameObject[] results = new GameObject[256];
+		System.out.println(numObjects + " objects");
+
+		// the first passes warm up the JIT
+		for (int pass = 0; pass < 3; pass++) {
+			boolean print = (pass == 2);
+
+			start();
+			for (int i = 0; i < QUERIES; i++)
+				if (OldPhysics.checkCollision(objects.get(i % numObjects), objects.get((i * 7) % numObjects)) != null)
+					sink++;
+			stop(print, "old checkCollision", QUERIES);
+
+			start();
+			for (int i = 0; i < QUERIES; i++)
+				if (Physics.checkCollision(objects.get(i % numObjects), objects.get((i * 7) % numObjects)) != null)
+					sink++;
+			stop(print, "new checkCollision", QUERIES);
+
+			start();
+			for (int i = 0; i < QUERIES; i++)
+				sink += Physics.sweep(objects.get(i % numObjects), 300, -200, objects.get((i * 7) % numObjects)) < 1 ? 1 : 0;
+			stop(print, "sweep", QUERIES);
+
+			int queries = QUERIES / 5000;
+			start();
+			for (int i = 0; i < queries; i++) {
+				GameObject go = objects.get(i % numObjects);
+				sink += oldRectangleCollide(objects, go.getX(), go.getY(), go.getX() + 64, go.getY() + 64).size();
+			}
+			stop(print, "old rectangleCollide", queries);
+
+			start();
+			for (int r = 0; r < REBUILDS; r++) {
+				hash.clear();
+				for (GameObject go : objects)
+					hash.insert(go);
+			}
+			stop(print, "spatial hash rebuild", REBUILDS);
+
+			start();
+			for (int i = 0; i < QUERIES; i++) {
+				GameObject go = objects.get(i % numObjects);
+				sink += hash.rectangleCollide(go.getX(), go.getY(), go.getX() + 64, go.getY() + 64, results);
+			}
+			stop(print, "new rectangleCollide", QUERIES);
+
+			// remove one object in ten, like Game.update() does
+			ArrayList<GameObject> list = flagged(objects);
+			start();
+			ArrayList<GameObject> remove = new ArrayList<GameObject>();
+			for (GameObject go : list)
+				if (go.getRemove())
+					remove.add(go);
+			for (GameObject go : remove)
+				list.remove(go);
+			stop(print, "old remove(Object)", remove.size());
+
+			list = flagged(objects);
+			start();
+			int i = 0;
+			while (i < list.size()) {
+				if (!list.get(i).getRemove()) {
+					i++;
+				} else {
+					int last = list.size() - 1;
+					list.set(i, list.get(last));
+					list.remove(last);
+				}
+			}
+			stop(print, "swap-remove", remove.size());
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+
+	private static ArrayList<GameObject> flagged(ArrayList<GameObject> objects) {
+		ArrayList<GameObject> list = new ArrayList<GameObject>();
+		for (int i = 0; i < objects.size(); i++) {
+			GameObject go = new Box(objects.get(i).getX(), objects.get(i).getY(), objects.get(i).getsX());
+			if (i % 10 == 0)
+				go.remove();
+			list.add(go);
+		}
+		return list;
+	}
+
+	private static void start() {
+		startBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		startTime = System.nanoTime();
+	}
+
+	private static void stop(boolean print, String name, int count) {
+		long time = System.nanoTime() - startTime;
+		long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - startBytes;
+		if (print)
+			System.out.println(name + ": " + time / count + " ns, " + bytes / count + " bytes");
+	}
+
+	private static ArrayList<GameObject> oldRectangleCollide(ArrayList<GameObject> objects, float x1, float y1, float x2, float y2) {
+		ArrayList<GameObject> res = new ArrayList<GameObject>();
+		Rectangle collider = new Rectangle((int) x1, (int) y1, (int) (x2 - x1), (int) (y2 - y1));
+		for (GameObject go : objects) {
+			if (OldPhysics.checkCollision(collider, go) != null)
+				res.add(go);
+		}
+		return res;
+	}
+
+	// Physics before it stopped allocating Rectangles.
+	private static class OldPhysics {
+		public static GameObject checkCollision(GameObject go1, GameObject go2) {
+			Rectangle r1 = new Rectangle((int) go1.getX(), (int) go1.getY(), (int) go1.getsX(), (int) go1.getsY());
+			return checkCollision(new Rectangle((int) go1.getX(), (int) go1.getY(), (int) go1.getsX(), (int) go1.getsY()), go2);
+		}
+
+		public static GameObject checkCollision(Rectangle r1, GameObject go2) {
+			Rectangle r2 = new Rectangle((int) go2.getX(), (int) go2.getY(), (int) go2.getsX(), (int) go2.getsY());
+			if (r1.intersects(r2))
+				return go2;
+			return null;
+		}
+	}
+
+	private static class Box extends GameObject {
+		public Box(float x, float y, float size) {
+			init(x, y, 1, 1, 1, size, size, 0);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package com.base.engine;
+
+import java.util.Arrays;
+
+// Buckets GameObjects by the grid cell their position falls in. Rebuilt every
+// frame with clear() and insert(); queries fill a caller-supplied array and
+// return how many objects they found, so nothing is allocated per query.
+public class SpatialHash {
+
+	public static final int ANY_TYPE = -1;
+
+	private float cellSize;
+	private int mask;
+	private int[] heads;
+	private int[] next;
+	private int[] cellX;
+	private int[] cellY;
+	private GameObject[] objects;
+	private int count;
+	private float maxSX;
+	private float maxSY;
+
+	public SpatialHash(float cellSize, int capacity) {
+		this.cellSize = cellSize;
+		objects = new GameObject[capacity];
+		next = new int[capacity];
+		cellX = new int[capacity];
+		cellY = new int[capacity];
+		resizeTable(capacity);
+	}
+
+	public void clear() {
+		Arrays.fill(heads, -1);
+		Arrays.fill(objects, 0, count, null);
+		count = 0;
+		maxSX = 0;
+		maxSY = 0;
+	}
+
+	public void insert(GameObject go) {
+		if (count == objects.length) {
+			grow();
+		}
+		int cx = cell(go.getX());
+		int cy = cell(go.getY());
+		int slot = slot(cx, cy);
+		objects[count] = go;
+		cellX[count] = cx;
+		cellY[count] = cy;
+		next[count] = heads[slot];
+		heads[slot] = count;
+		count++;
+
+		maxSX = Math.max(maxSX, go.getsX());
+		maxSY = Math.max(maxSY, go.getsY());
+	}
+
+	public int size() {
+		return count;
+	}
+
+	// Objects whose position is closer than radius to (x, y).
+	public int sphereCollide(float x, float y, float radius, GameObject[] out) {
+		return sphereCollide(x, y, radius, ANY_TYPE, out);
+	}
+
+	// Only objects of one type, like GameObject.PLAYER_ID, or ANY_TYPE.
+	public int sphereCollide(float x, float y, float radius, int type, GameObject[] out) {
+		int found = 0;
+		int cx2 = cell(x + radius);
+		int cy2 = cell(y + radius);
+		float r2 = radius * radius;
+
+		for (int cx = cell(x - radius); cx <= cx2; cx++) {
+			for (int cy = cell(y - radius); cy <= cy2; cy++) {
+				for (int i = heads[slot(cx, cy)]; i != -1; i = next[i]) {
+					if (cellX[i] != cx || cellY[i] != cy)
+						continue;
+					GameObject go = objects[i];
+					if (type != ANY_TYPE && go.getType() != type)
+						continue;
+					float dx = go.getX() - x;
+					float dy = go.getY() - y;
+					if (dx * dx + dy * dy < r2) {
+						if (found == out.length)
+							return found;
+						out[found++] = go;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	// Objects whose bounds overlap the rectangle between two corners, given in
+	// any order.
+	public int rectangleCollide(float x1, float y1, float x2, float y2, GameObject[] out) {
+		float minX = Math.min(x1, x2);
+		float minY = Math.min(y1, y2);
+		float maxX = Math.max(x1, x2);
+		float maxY = Math.max(y1, y2);
+		int found = 0;
+
+		// objects are bucketed by their corner, so look back by the largest size
+		int cx2 = cell(maxX);
+		int cy2 = cell(maxY);
+		for (int cx = cell(minX - maxSX); cx <= cx2; cx++) {
+			for (int cy = cell(minY - maxSY); cy <= cy2; cy++) {
+				for (int i = heads[slot(cx, cy)]; i != -1; i = next[i]) {
+					if (cellX[i] != cx || cellY[i] != cy)
+						continue;
+					GameObject go = objects[i];
+					if (go.getX() < maxX && go.getX() + go.getsX() > minX && go.getY() < maxY && go.getY() + go.getsY() > minY) {
+						if (found == out.length)
+							return found;
+						out[found++] = go;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	private int cell(float v) {
+		return (int) Math.floor(v / cellSize);
+	}
+
+	private int slot(int cx, int cy) {
+		return ((cx * 92837111) ^ (cy * 689287499)) & mask;
+	}
+
+	private void grow() {
+		int capacity = objects.length * 2;
+		objects = Arrays.copyOf(objects, capacity);
+		next = Arrays.copyOf(next, capacity);
+		cellX = Arrays.copyOf(cellX, capacity);
+		cellY = Arrays.copyOf(cellY, capacity);
+		resizeTable(capacity);
+
+		for (int i = 0; i < count; i++) {
+			int slot = slot(cellX[i], cellY[i]);
+			next[i] = heads[slot];
+			heads[slot] = i;
+		}
+	}
+
+	private void resizeTable(int capacity) {
+		int size = 16;
+		while (size < capacity * 2)
+			size *= 2;
+		heads = new int[size];
+		Arrays.fill(heads, -1);
+		mask = size - 1;
+	}
+}
@@ -1,48 +1,105 @@
 package com.base.game;
 
-import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import org.lwjgl.opengl.Display;
 
 import com.base.engine.GameObject;
-import com.base.engine.Physics;
+import com.base.engine.SpatialHash;
 import com.base.game.gameObject.CookehMonster;
 import com.base.game.gameObject.Player;
 import com.base.game.gameObject.items.Cube;
+import com.base.game.nav.FlowField;
+import com.base.game.nav.NavGrid;
 
 public class Game {
 
-	private ArrayList<GameObject> remove;
+	public static final float CELL_SIZE = 32;
+	public static final float HASH_CELL_SIZE = 128;
+	// gap left between a moving object and the wall it stops at
+	private static final float SKIN = 0.01f;
+
 	private ArrayList<GameObject> objects;
 	private Player player;
+	private SpatialHash spatialHash;
+	private NavGrid navGrid;
+	private HashMap<GameObject, FlowField> flowFields;
+	private GameObject[] queryResults;
 
 	public Game() {
-		objects = new ArrayList<GameObject>();
+		this(Display.getWidth(), Display.getHeight());
 		player = new Player(Display.getWidth() / 2 - Player.SIZE / 2, Display.getHeight() / 2 - Player.SIZE / 2);
-		remove = new ArrayList<GameObject>();
 
 		objects.add(player);
 		objects.add(new Cube(32, 32, player));
 		objects.add(new CookehMonster(300, 500, 1));
 	}
 
+	// An empty world of the given size, in pixels. Doesn't need a Display.
+	public Game(int width, int height) {
+		objects = new ArrayList<GameObject>();
+		spatialHash = new SpatialHash(HASH_CELL_SIZE, 64);
+		// empty until a level blocks the cells of its walls
+		navGrid = new NavGrid((int) Math.ceil(width / CELL_SIZE), (int) Math.ceil(height / CELL_SIZE), CELL_SIZE);
+		flowFields = new HashMap<GameObject, FlowField>();
+		queryResults = new GameObject[64];
+	}
+
+	public void add(GameObject go) {
+		objects.add(go);
+	}
+
+	public NavGrid getNavGrid() {
+		return navGrid;
+	}
+
 	public void getInput() {
 
 		player.getInput();
 	}
 
 	public void update() {
-		for (GameObject go : objects) {
-			if (!go.getRemove())
+		spatialHash.clear();
+		for (GameObject go : objects)
+			spatialHash.insert(go);
+		for (GameObject target : flowFields.keySet())
+			flowFields.get(target).update(target.getX() + target.getsX() / 2, target.getY() + target.getsY() / 2);
+
+		// removed objects are swapped with the last one, so the order changes
+		int i = 0;
+		while (i < objects.size()) {
+			GameObject go = objects.get(i);
+			if (!go.getRemove()) {
 				go.update();
-			else {
-				remove.add(go);
+				i++;
+			} else {
+				int last = objects.size() - 1;
+				objects.set(i, objects.get(last));
+				objects.remove(last);
+				flowFields.remove(go);
 			}
+		}
+	}
 
+	// Moves an object one axis at a time, so it slides along walls, and stops
+	// it at the first blocked cell in its way however far it's moving.
+	public void move(GameObject go, float dx, float dy) {
+		if (dx != 0) {
+			float t = navGrid.sweep(go.getX(), go.getY(), go.getsX(), go.getsY(), dx, 0);
+			go.setPosition(go.getX() + clip(dx, t), go.getY());
 		}
-		for (GameObject go : remove)
-			objects.remove(go);
+		if (dy != 0) {
+			float t = navGrid.sweep(go.getX(), go.getY(), go.getsX(), go.getsY(), 0, dy);
+			go.setPosition(go.getX(), go.getY() + clip(dy, t));
+		}
+	}
+
+	private static float clip(float d, float t) {
+		if (t >= 1)
+			return d;
+		float moved = d * t - Math.signum(d) * SKIN;
+		return (moved * d > 0) ? moved : 0;
 	}
 
 	public void render() {
@@ -52,29 +109,56 @@ public class Game {
 		}
 	}
 
+	// The spatial hash is rebuilt at the start of every update, so objects
+	// that moved earlier in the same update are found where they started.
+	public int sphereCollide(float x, float y, float radius, GameObject[] out) {
+		return spatialHash.sphereCollide(x, y, radius, out);
+	}
+
+	public int sphereCollide(float x, float y, float radius, int type, GameObject[] out) {
+		return spatialHash.sphereCollide(x, y, radius, type, out);
+	}
+
+	public int rectangleCollide(float x1, float y1, float x2, float y2, GameObject[] out) {
+		return spatialHash.rectangleCollide(x1, y1, x2, y2, out);
+	}
+
 	public ArrayList<GameObject> sphereCollide(float x, float y, float radius) {
+		int count;
+		while ((count = sphereCollide(x, y, radius, queryResults)) == queryResults.length)
+			queryResults = new GameObject[queryResults.length * 2];
+		return toList(count);
+	}
 
-		ArrayList<GameObject> res = new ArrayList<GameObject>();
+	public ArrayList<GameObject> rectangleCollide(float x1, float y1, float x2, float y2) {
+		int count;
+		while ((count = rectangleCollide(x1, y1, x2, y2, queryResults)) == queryResults.length)
+			queryResults = new GameObject[queryResults.length * 2];
+		return toList(count);
+	}
 
-		for (GameObject go : objects) {
-			if (Util.dist(go.getX(), go.getY(), x, y) < radius)
-				res.add(go);
+	private ArrayList<GameObject> toList(int count) {
+		ArrayList<GameObject> res = new ArrayList<GameObject>(count);
+		for (int i = 0; i < count; i++) {
+			res.add(queryResults[i]);
+			queryResults[i] = null;
 		}
 		return res;
 	}
 
-	public ArrayList<GameObject> rectangleCollide(float x1, float y1, float x2, float y2) {
-		ArrayList<GameObject> res = new ArrayList<GameObject>();
-		float sx = (x2 - x1);
-		float sy = (y2 - y1);
-
-		Rectangle collider = new Rectangle((int) x1, (int) y1, (int) sx, (int) sy);
+	public boolean lineOfSight(float x1, float y1, float x2, float y2) {
+		return navGrid.lineOfSight(x1, y1, x2, y2);
+	}
 
-		for (GameObject go : objects) {
-			if(Physics.checkCollision(collider, go) != null){
-				res.add(go);
-			}
+	// Flow fields are made the first time an object is chased, and kept up to
+	// date at the start of every update until it's removed.
+	public FlowField getFlowField(GameObject target) {
+		FlowField field = flowFields.get(target);
+		if (field == null) {
+			field = new FlowField(navGrid);
+			field.update(target.getX() + target.getsX() / 2, target.getY() + target.getsY() / 2);
+			flowFields.put(target, field);
 		}
-		return res;
+		return field;
 	}
 }
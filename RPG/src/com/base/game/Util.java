@@ -1,10 +1,12 @@
 package com.base.game;
 
 import com.base.engine.GameObject;
+import com.base.engine.Main;
 
 public class Util {
+	// From center to center, over the game's NavGrid.
 	public static boolean LineOfSight(GameObject go1, GameObject go2) {
-		return true;
+		return Main.lineOfSight(go1.getX() + go1.getsX() / 2, go1.getY() + go1.getsY() / 2, go2.getX() + go2.getsX() / 2, go2.getY() + go2.getsY() / 2);
 	}
 	public static float dist(float x1, float y1, float x2, float y2){
 		double x = x2 - x1;
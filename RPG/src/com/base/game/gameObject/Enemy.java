@@ -1,16 +1,18 @@
 package com.base.game.gameObject;
 
-import java.util.ArrayList;
-
 import com.base.engine.GameObject;
 import com.base.engine.Main;
 import com.base.engine.Sprite;
 import com.base.game.Delay;
 import com.base.game.Time;
 import com.base.game.Util;
+import com.base.game.nav.FlowField;
 
 public class Enemy extends StatObject {
 
+	// shared by every enemy's look(), since they update one at a time
+	private static final GameObject[] lookResults = new GameObject[16];
+
 	private StatObject target;
 	private static float attackRange = 48f;
 	private Delay attackDelay;
@@ -34,7 +36,7 @@ public class Enemy extends StatObject {
 		if (target == null) {
 			look();
 		} else {
-			if (Util.LineOfSight(this, target) && (Util.dist(x, y, getTarget().getX(), getTarget().getY()) <= attackRange)) {
+			if ((Util.dist(x, y, getTarget().getX(), getTarget().getY()) <= attackRange) && Util.LineOfSight(this, target)) {
 				if (attackDelay.over())
 					attack();
 			} else {
@@ -57,16 +59,33 @@ public class Enemy extends StatObject {
 	}
 
 	protected void look() {
-		ArrayList<GameObject> object = Main.sphereCollide(x, y, sightRange);
+		int count = Main.sphereCollide(x, y, sightRange, PLAYER_ID, lookResults);
 
-		for (GameObject go : object) {
-			if (go.getType() == PLAYER_ID)
+		for (int i = 0; i < count; i++) {
+			GameObject go = lookResults[i];
+			lookResults[i] = null;
+			if (Util.LineOfSight(this, go))
 				setTarget((StatObject) go);
 
 		}
 	}
 
+	// Heads straight for the target when it can be seen, otherwise follows the
+	// target's flow field around whatever is in the way.
 	protected void chase() {
+		if (!Util.LineOfSight(this, getTarget())) {
+			FlowField field = Main.getFlowField(getTarget());
+			float cx = x + getsX() / 2;
+			float cy = y + getsY() / 2;
+			float dirX = field.getDirX(cx, cy);
+			float dirY = field.getDirY(cx, cy);
+			if (dirX != 0 || dirY != 0) {
+				float speed = getStats().getSpeed() * DAMPING * Time.getDelta();
+				Main.move(this, dirX * speed, dirY * speed);
+				return;
+			}
+		}
+
 		float speedX = (getTarget().getX() - x);
 		float speedY = (getTarget().getY() - y);
 		float maxSpeed = getStats().getSpeed() * DAMPING;
@@ -80,8 +99,7 @@ public class Enemy extends StatObject {
 		if (speedY < -maxSpeed)
 			speedY = -maxSpeed;
 
-		x = x + speedX * Time.getDelta();
-		y = y + speedY * Time.getDelta();
+		Main.move(this, speedX * Time.getDelta(), speedY * Time.getDelta());
 	}
 
 	public void setTarget(StatObject go) {
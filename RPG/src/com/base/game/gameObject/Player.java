@@ -114,8 +114,7 @@ public class Player extends StatObject {
 			facingDirection = (int) RIGHT;
 		}
 
-		x += getSpeed() * magX * Time.getDelta();
-		y += getSpeed() * magY * Time.getDelta();// /////MOvE
+		Main.move(this, getSpeed() * magX * Time.getDelta(), getSpeed() * magY * Time.getDelta());// /////MOvE
 	}
 
 	public void addItem(Item item) {
@@ -0,0 +1,142 @@
+package com.base.game.nav;
+
+import java.util.Arrays;
+
+// Directions toward one target for every cell of a NavGrid, so any number of
+// enemies can follow it around obstacles for the cost of a lookup. It's only
+// recomputed when the target moves to another cell or the grid changes, and
+// reuses its arrays when it is.
+public class FlowField {
+
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private NavGrid grid;
+	private int[] dist;
+	private float[] dirX;
+	private float[] dirY;
+	private int[] queue;
+	private int targetCell;
+	private int gridVersion;
+	private int recomputes;
+
+	public FlowField(NavGrid grid) {
+		this.grid = grid;
+		int cells = grid.getWidth() * grid.getHeight();
+		dist = new int[cells];
+		dirX = new float[cells];
+		dirY = new float[cells];
+		queue = new int[cells];
+		targetCell = -1;
+	}
+
+	// Returns true if the field had to be recomputed.
+	public boolean update(float targetX, float targetY) {
+		int cx = grid.cell(targetX);
+		int cy = grid.cell(targetY);
+		int cell = grid.isBlocked(cx, cy) ? -1 : cy * grid.getWidth() + cx;
+		if (cell == targetCell && grid.getVersion() == gridVersion)
+			return false;
+
+		targetCell = cell;
+		gridVersion = grid.getVersion();
+		recompute();
+		recomputes++;
+		return true;
+	}
+
+	public int getRecomputes() {
+		return recomputes;
+	}
+
+	// Steps from the cell at (x, y) to the target, or -1 if it can't get there.
+	public int getDistance(float x, float y) {
+		int i = index(x, y);
+		return (i == -1 || dist[i] == UNREACHABLE) ? -1 : dist[i];
+	}
+
+	// Unit direction to move in from (x, y); zero at the target or if it can't
+	// be reached.
+	public float getDirX(float x, float y) {
+		int i = index(x, y);
+		return i == -1 ? 0 : dirX[i];
+	}
+
+	public float getDirY(float x, float y) {
+		int i = index(x, y);
+		return i == -1 ? 0 : dirY[i];
+	}
+
+	private int index(float x, float y) {
+		int cx = grid.cell(x);
+		int cy = grid.cell(y);
+		if (cx < 0 || cy < 0 || cx >= grid.getWidth() || cy >= grid.getHeight())
+			return -1;
+		return cy * grid.getWidth() + cx;
+	}
+
+	private void recompute() {
+		int w = grid.getWidth();
+		int h = grid.getHeight();
+		Arrays.fill(dist, UNREACHABLE);
+		Arrays.fill(dirX, 0);
+		Arrays.fill(dirY, 0);
+		if (targetCell == -1)
+			return;
+
+		// breadth first from the target over the four neighbours
+		int head = 0;
+		int tail = 0;
+		dist[targetCell] = 0;
+		queue[tail++] = targetCell;
+		while (head < tail) {
+			int i = queue[head++];
+			int cx = i % w;
+			int cy = i / w;
+			int d = dist[i] + 1;
+			if (cx > 0 && dist[i - 1] == UNREACHABLE && !grid.isBlocked(cx - 1, cy)) {
+				dist[i - 1] = d;
+				queue[tail++] = i - 1;
+			}
+			if (cx < w - 1 && dist[i + 1] == UNREACHABLE && !grid.isBlocked(cx + 1, cy)) {
+				dist[i + 1] = d;
+				queue[tail++] = i + 1;
+			}
+			if (cy > 0 && dist[i - w] == UNREACHABLE && !grid.isBlocked(cx, cy - 1)) {
+				dist[i - w] = d;
+				queue[tail++] = i - w;
+			}
+			if (cy < h - 1 && dist[i + w] == UNREACHABLE && !grid.isBlocked(cx, cy + 1)) {
+				dist[i + w] = d;
+				queue[tail++] = i + w;
+			}
+		}
+
+		// point every reached cell at its closest neighbour, diagonals included
+		// as long as they don't cut a blocked corner
+		for (int q = 1; q < tail; q++) {
+			int i = queue[q];
+			int cx = i % w;
+			int cy = i / w;
+			int best = dist[i];
+			int bestX = 0;
+			int bestY = 0;
+			for (int ny = -1; ny <= 1; ny++) {
+				for (int nx = -1; nx <= 1; nx++) {
+					if ((nx == 0 && ny == 0) || grid.isBlocked(cx + nx, cy + ny))
+						continue;
+					if (nx != 0 && ny != 0 && (grid.isBlocked(cx + nx, cy) || grid.isBlocked(cx, cy + ny)))
+						continue;
+					int d = dist[i + ny * w + nx];
+					if (d < best) {
+						best = d;
+						bestX = nx;
+						bestY = ny;
+					}
+				}
+			}
+			float len = (bestX != 0 && bestY != 0) ? 0.70710677f : 1f;
+			dirX[i] = bestX * len;
+			dirY[i] = bestY * len;
+		}
+	}
+}
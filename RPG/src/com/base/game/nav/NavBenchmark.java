@@ -0,0 +1,113 @@
+package com.base.game.nav;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.base.engine.GameObject;
+import com.base.engine.Main;
+import com.base.game.Game;
+import com.base.game.Time;
+import com.base.game.Util;
+import com.base.game.gameObject.CookehMonster;
+import com.base.game.gameObject.Player;
+
+// Runs Game.update() on a walled 4096x4096 world with 5,000 enemies and a
+// player walking in a circle, without a display. Also times what look() used
+// to cost: a scan of every object, into a new list, for every enemy.
+// Usage: java com.base.game.nav.NavBenchmark [enemies] [frames]
+public class NavBenchmark {
+
+	private static final int WORLD_SIZE = 4096;
+
+	public static void main(String[] args) {
+		int numEnemies = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+		Random random = new Random(1);
+
+		Game game = new Game(WORLD_SIZE, WORLD_SIZE);
+		NavGrid grid = game.getNavGrid();
+		for (int i = 0; i < 300; i++) {
+			float x = random.nextInt(WORLD_SIZE);
+			float y = random.nextInt(WORLD_SIZE);
+			if (random.nextBoolean())
+				grid.block(x, y, 32 * (2 + random.nextInt(10)), 32);
+			else
+				grid.block(x, y, 32, 32 * (2 + random.nextInt(10)));
+		}
+
+		Player player = new Player(WORLD_SIZE / 2, WORLD_SIZE / 2);
+		game.add(player);
+		ArrayList<GameObject> enemies = new ArrayList<GameObject>();
+		while (enemies.size() < numEnemies) {
+			float x = random.nextInt(WORLD_SIZE - 32);
+			float y = random.nextInt(WORLD_SIZE - 32);
+			if (grid.isBlocked(grid.cell(x), grid.cell(y)))
+				continue;
+			CookehMonster enemy = new CookehMonster(x, y, 1);
+			// see further than usual, so more of them chase
+			enemy.setSightRange(256);
+			enemies.add(enemy);
+			game.add(enemy);
+		}
+		Main.setGame(game);
+
+		// enemies print every hit
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+
+		Time.init();
+		long updateTime = 0;
+		for (int frame = 0; frame < frames; frame++) {
+			double angle = frame * 0.02;
+			player.setPosition((float) (WORLD_SIZE / 2 + Math.cos(angle) * 600), (float) (WORLD_SIZE / 2 + Math.sin(angle) * 600));
+			Time.update();
+			long start = System.nanoTime();
+			game.update();
+			if (frame >= frames / 2)
+				updateTime += System.nanoTime() - start;
+		}
+
+		long oldLookTime = 0;
+		int oldLookFrames = 3;
+		for (int frame = 0; frame < oldLookFrames; frame++) {
+			long start = System.nanoTime();
+			for (GameObject enemy : enemies)
+				oldSphereCollide(enemies, enemy.getX(), enemy.getY(), 256);
+			oldLookTime += System.nanoTime() - start;
+		}
+
+		long losTime = System.nanoTime();
+		int visible = 0;
+		for (GameObject enemy : enemies)
+			if (Util.LineOfSight(enemy, player))
+				visible++;
+		losTime = System.nanoTime() - losTime;
+
+		FlowField field = game.getFlowField(player);
+		long flowTime = System.nanoTime();
+		for (int i = 0; i < 100; i++)
+			field.update(64 + i * 32, 64);
+		flowTime = System.nanoTime() - flowTime;
+
+		System.setOut(out);
+		System.out.println(numEnemies + " enemies, " + grid.getWidth() + "x" + grid.getHeight() + " grid");
+		System.out.println("Game.update: " + updateTime / (frames - frames / 2) / 1000 + " us/frame");
+		System.out.println("old look() scans: " + oldLookTime / oldLookFrames / 1000 + " us/frame");
+		System.out.println("line of sight: " + losTime / numEnemies + " ns/check (" + visible + " can see the player)");
+		System.out.println("flow field recompute: " + flowTime / 100 / 1000 + " us (" + field.getRecomputes() + " in total)");
+	}
+
+	private static ArrayList<GameObject> oldSphereCollide(ArrayList<GameObject> objects, float x, float y, float radius) {
+		ArrayList<GameObject> res = new ArrayList<GameObject>();
+		for (GameObject go : objects) {
+			if (Util.dist(go.getX(), go.getY(), x, y) < radius)
+				res.add(go);
+		}
+		return res;
+	}
+}
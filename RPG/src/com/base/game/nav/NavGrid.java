@@ -0,0 +1,139 @@
+package com.base.game.nav;
+
+import com.base.engine.Physics;
+
+// Occupancy grid of the level: which cells can be walked through and seen
+// through. isBlocked() counts everything outside the grid as blocked, so flow
+// fields stay on the level, but sweep() and lineOfSight() only stop at blocked
+// cells inside the grid: objects can still move off the edge of the level as
+// they always could, and still see each other out there.
+//
+// The grid starts out open. The game doesn't have any walls yet, so nothing
+// blocks cells but NavBenchmark: until a level supplies its obstacles through
+// block(), line of sight is always clear and enemies head straight for the
+// player.
+public class NavGrid {
+
+	private int width;
+	private int height;
+	private float cellSize;
+	private boolean[] blocked;
+	private int version;
+
+	public NavGrid(int width, int height, float cellSize) {
+		this.width = width;
+		this.height = height;
+		this.cellSize = cellSize;
+		blocked = new boolean[width * height];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	// Goes up every time a cell changes, so flow fields know to recompute.
+	public int getVersion() {
+		return version;
+	}
+
+	public boolean isBlocked(int cx, int cy) {
+		if (cx < 0 || cy < 0 || cx >= width || cy >= height)
+			return true;
+		return blocked[cy * width + cx];
+	}
+
+	public void setBlocked(int cx, int cy, boolean b) {
+		if (blocked[cy * width + cx] != b) {
+			blocked[cy * width + cx] = b;
+			version++;
+		}
+	}
+
+	// Blocks every cell the rectangle touches.
+	public void block(float x, float y, float sX, float sY) {
+		int cx2 = cell(x + sX - 0.001f);
+		int cy2 = cell(y + sY - 0.001f);
+		for (int cx = Math.max(0, cell(x)); cx <= cx2 && cx < width; cx++)
+			for (int cy = Math.max(0, cell(y)); cy <= cy2 && cy < height; cy++)
+				setBlocked(cx, cy, true);
+	}
+
+	public int cell(float v) {
+		return (int) Math.floor(v / cellSize);
+	}
+
+	// How far a box can move by (dx, dy) before it runs into a blocked cell,
+	// from 0 to 1. Cells outside the grid don't stop it.
+	public float sweep(float x, float y, float sX, float sY, float dx, float dy) {
+		int cx1 = Math.max(0, cell(Math.min(x, x + dx)));
+		int cy1 = Math.max(0, cell(Math.min(y, y + dy)));
+		int cx2 = Math.min(width - 1, cell(Math.max(x, x + dx) + sX));
+		int cy2 = Math.min(height - 1, cell(Math.max(y, y + dy) + sY));
+		float t = 1;
+		for (int cy = cy1; cy <= cy2; cy++) {
+			for (int cx = cx1; cx <= cx2; cx++) {
+				if (blocked[cy * width + cx])
+					t = Math.min(t, Physics.sweep(x, y, sX, sY, dx, dy, cx * cellSize, cy * cellSize, cellSize, cellSize));
+			}
+		}
+		return t;
+	}
+
+	// Walks every cell the segment passes through (a DDA grid traversal, like
+	// Bresenham but without skipping the cells it clips at corners) and stops at
+	// the first blocked one. Cells outside the grid don't block it.
+	public boolean lineOfSight(float x1, float y1, float x2, float y2) {
+		int cx = cell(x1);
+		int cy = cell(y1);
+		int endX = cell(x2);
+		int endY = cell(y2);
+		if (blocksSight(cx, cy))
+			return false;
+
+		float dx = x2 - x1;
+		float dy = y2 - y1;
+		int stepX = dx > 0 ? 1 : -1;
+		int stepY = dy > 0 ? 1 : -1;
+		// distance along the segment, from 0 to 1, to the next cell edge
+		float tMaxX = Float.MAX_VALUE;
+		float tMaxY = Float.MAX_VALUE;
+		float tDeltaX = Float.MAX_VALUE;
+		float tDeltaY = Float.MAX_VALUE;
+		if (dx != 0) {
+			float edge = (stepX > 0 ? cx + 1 : cx) * cellSize;
+			tMaxX = (edge - x1) / dx;
+			tDeltaX = cellSize / Math.abs(dx);
+		}
+		if (dy != 0) {
+			float edge = (stepY > 0 ? cy + 1 : cy) * cellSize;
+			tMaxY = (edge - y1) / dy;
+			tDeltaY = cellSize / Math.abs(dy);
+		}
+
+		int steps = Math.abs(endX - cx) + Math.abs(endY - cy);
+		for (int i = 0; i < steps; i++) {
+			if (tMaxX < tMaxY) {
+				cx += stepX;
+				tMaxX += tDeltaX;
+			} else {
+				cy += stepY;
+				tMaxY += tDeltaY;
+			}
+			if (blocksSight(cx, cy))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean blocksSight(int cx, int cy) {
+		return cx >= 0 && cy >= 0 && cx < width && cy < height && blocked[cy * width + cx];
+	}
+}
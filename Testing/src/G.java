@@ -27,6 +27,7 @@ public class G extends Applet implements Runnable
 
         Random random = new Random();
         int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        LightEngine lights = new LightEngine(Runtime.getRuntime().availableProcessors());
         int[] sprites = new int[18 * 4 * 16 * 12 * 12];
         int pix = 0;
         for (int i = 0; i < 18; i++)
@@ -233,15 +234,9 @@ public class G extends Applet implements Runnable
                 long lastTime = System.nanoTime();
 
                 int[] lightmap = new int[240 * 240];
-                int[] brightness = new int[512];
+                lights.setMap(map);
 
-                double offs = 30;
                 double playerDir = 0;
-                for (int i = 0; i < 512; i++)
-                {
-                    brightness[i] = (int) (255.0 * offs / (i + offs));
-                    if (i < 4) brightness[i] = brightness[i] * i / 4;
-                }
 
                 Graphics sg = getGraphics();
                 random = new Random();
@@ -267,57 +262,7 @@ public class G extends Applet implements Runnable
                         int xCam = monsterData[0];
                         int yCam = monsterData[1];
 
-                        for (int i = 0; i < 960; i++)
-                        {
-                            int xt = i % 240 - 120;
-                            int yt = (i / 240 % 2) * 239 - 120;
-
-                            if (i >= 480)
-                            {
-                                int tmp = xt;
-                                xt = yt;
-                                yt = tmp;
-                            }
-
-                            double dd = Math.atan2(yt, xt) - playerDir;
-                            if (dd < -Math.PI) dd += Math.PI * 2;
-                            if (dd >= Math.PI) dd -= Math.PI * 2;
-
-                            int brr = (int) ((1 - dd * dd) * 255);
-
-                            int dist = 120;
-                            if (brr < 0)
-                            {
-                                brr = 0;
-                                dist = 32;
-                            }
-                            if (tick < 60) brr = brr * tick / 60;
-
-                            int j = 0;
-                            for (; j < dist; j++)
-                            {
-                                int xx = xt * j / 120 + 120;
-                                int yy = yt * j / 120 + 120;
-                                int xm = xx + xCam - 120;
-                                int ym = yy + yCam - 120;
-
-                                if (map[(xm + ym * 1024) & (1024 * 1024 - 1)] == 0xffffff) break;
-
-                                int xd = (xx - 120) * 256 / 120;
-                                int yd = (yy - 120) * 256 / 120;
-
-                                int ddd = (xd * xd + yd * yd) / 256;
-                                int br = brightness[ddd] * brr / 255;
-
-                                if (ddd < 16)
-                                {
-                                    int tmp = 128 * (16 - ddd) / 16;
-                                    br = br + tmp * (255 - br) / 255;
-                                }
-
-                                lightmap[xx + yy * 240] = br;
-                            }
-                        }
+                        lights.cast(lightmap, xCam, yCam, playerDir, tick);
                         for (int y = 0; y < 240; y++)
                         {
                             int xm = xCam - 120;
@@ -681,24 +626,9 @@ public class G extends Applet implements Runnable
                     bonusTime = bonusTime * 8 / 9;
                     hurtTime /= 2;
 
+                    lights.composite(pixels, lightmap, gameStarted, hurtTime, bonusTime);
                     for (int y = 0; y < 240; y++)
                     {
-                        for (int x = 0; x < 240; x++)
-                        {
-                            int noise = random.nextInt(16) * random.nextInt(16) / 16;
-                            if (!gameStarted) noise *= 4;
-
-                            int c = pixels[x + y * 240];
-                            int l = lightmap[x + y * 240];
-                            lightmap[x + y * 240] = 0;
-                            int r = ((c >> 16) & 0xff) * l / 255 + noise;
-                            int g = ((c >> 8) & 0xff) * l / 255 + noise;
-                            int b = ((c) & 0xff) * l / 255 + noise;
-
-                            r = r * (255 - hurtTime) / 255 + hurtTime;
-                            g = g * (255 - bonusTime) / 255 + bonusTime;
-                            pixels[x + y * 240] = r << 16 | g << 8 | b;
-                        }
                         if (y % 2 == 0 && (y >= damage && y < 220))
                         {
                             for (int x = 232; x < 238; x++)
@@ -744,7 +674,11 @@ public class G extends Applet implements Runnable
                         Thread.yield();
                     }
                     while (System.nanoTime() - lastTime < 0);
-                    if (!isActive()) return;
+                    if (!isActive())
+                    {
+                        lights.shutdown();
+                        return;
+                    }
 
                     lastTime += (1000000000 / 30);
                 }
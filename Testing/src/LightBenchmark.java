@@ -0,0 +1,209 @@
+import java.util.*;
+
+/**
+ * Checks LightEngine against the original per-frame lighting code of G and
+ * times both. Run with: java LightBenchmark [frames] [threads]
+ */
+public class LightBenchmark
+{
+    public static void main(String[] args)
+    {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        int[] map = createMap(new Random(4330));
+        int[] brightness = createBrightness();
+        LightEngine engine = new LightEngine(threads);
+        engine.setMap(map);
+
+        Random random = new Random(1);
+        int[] expected = new int[240 * 240];
+        int[] actual = new int[240 * 240];
+        int[] expectedPixels = new int[240 * 240];
+        int[] actualPixels = new int[240 * 240];
+        int mismatches = 0;
+        for (int f = 0; f < 500; f++)
+        {
+            int xCam = random.nextInt(1024);
+            int yCam = random.nextInt(1024);
+            double playerDir = (random.nextDouble() * 2 - 1) * Math.PI;
+            int tick = random.nextInt(120);
+            boolean gameStarted = random.nextInt(4) != 0;
+            int hurtTime = random.nextInt(4) == 0 ? random.nextInt(256) : 0;
+            int bonusTime = random.nextInt(4) == 0 ? random.nextInt(256) : 0;
+
+            for (int i = 0; i < expectedPixels.length; i++)
+            {
+                expectedPixels[i] = actualPixels[i] = map[(xCam + i % 240 + (yCam + i / 240) * 1024) & (1024 * 1024 - 1)];
+            }
+
+            castReference(map, brightness, expected, xCam, yCam, playerDir, tick);
+            engine.cast(actual, xCam, yCam, playerDir, tick);
+            if (!Arrays.equals(expected, actual)) mismatches++;
+
+            int[] noise = new int[240 * 240];
+            for (int i = 0; i < noise.length; i++)
+            {
+                noise[i] = engine.peekNoise(i % 240, i / 240);
+            }
+            compositeReference(expectedPixels, expected, noise, gameStarted, hurtTime, bonusTime);
+            engine.composite(actualPixels, actual, gameStarted, hurtTime, bonusTime);
+            if (!Arrays.equals(expectedPixels, actualPixels) || !Arrays.equals(expected, actual)) mismatches++;
+        }
+        System.out.println("mismatched frames: " + mismatches);
+
+        Random noiseRandom = new Random();
+        int[] noise = new int[240 * 240];
+        long reference = 0;
+        long optimized = 0;
+        for (int pass = 0; pass < 2; pass++)
+        {
+            random = new Random(2);
+            long start = System.nanoTime();
+            for (int f = 0; f < frames; f++)
+            {
+                int xCam = random.nextInt(1024);
+                int yCam = random.nextInt(1024);
+                double playerDir = (random.nextDouble() * 2 - 1) * Math.PI;
+                castReference(map, brightness, expected, xCam, yCam, playerDir, 100);
+                for (int i = 0; i < noise.length; i++)
+                {
+                    noise[i] = noiseRandom.nextInt(16) * noiseRandom.nextInt(16) / 16;
+                }
+                compositeReference(expectedPixels, expected, noise, true, 0, 0);
+            }
+            reference = System.nanoTime() - start;
+
+            random = new Random(2);
+            start = System.nanoTime();
+            for (int f = 0; f < frames; f++)
+            {
+                int xCam = random.nextInt(1024);
+                int yCam = random.nextInt(1024);
+                double playerDir = (random.nextDouble() * 2 - 1) * Math.PI;
+                engine.cast(actual, xCam, yCam, playerDir, 100);
+                engine.composite(actualPixels, actual, true, 0, 0);
+            }
+            optimized = System.nanoTime() - start;
+        }
+        engine.shutdown();
+
+        System.out.println("threads: " + threads);
+        System.out.println("reference: " + (reference / frames / 1000) + " us/frame");
+        System.out.println("engine:    " + (optimized / frames / 1000) + " us/frame");
+    }
+
+    private static int[] createMap(Random random)
+    {
+        int[] map = new int[1024 * 1024];
+        for (int i = 0; i < map.length; i++)
+        {
+            int br = random.nextInt(32) + 112;
+            map[i] = (br / 3) << 16 | (br) << 8;
+        }
+        for (int i = 0; i < 4000; i++)
+        {
+            int x0 = random.nextInt(1024);
+            int y0 = random.nextInt(1024);
+            int len = random.nextInt(60) + 4;
+            boolean horizontal = random.nextBoolean();
+            for (int j = 0; j < len; j++)
+            {
+                int x = horizontal ? x0 + j : x0;
+                int y = horizontal ? y0 : y0 + j;
+                map[(x + y * 1024) & (1024 * 1024 - 1)] = 0xffffff;
+            }
+        }
+        return map;
+    }
+
+    private static int[] createBrightness()
+    {
+        int[] brightness = new int[512];
+        double offs = 30;
+        for (int i = 0; i < 512; i++)
+        {
+            brightness[i] = (int) (255.0 * offs / (i + offs));
+            if (i < 4) brightness[i] = brightness[i] * i / 4;
+        }
+        return brightness;
+    }
+
+    private static void castReference(int[] map, int[] brightness, int[] lightmap, int xCam, int yCam, double playerDir, int tick)
+    {
+        for (int i = 0; i < 960; i++)
+        {
+            int xt = i % 240 - 120;
+            int yt = (i / 240 % 2) * 239 - 120;
+
+            if (i >= 480)
+            {
+                int tmp = xt;
+                xt = yt;
+                yt = tmp;
+            }
+
+            double dd = Math.atan2(yt, xt) - playerDir;
+            if (dd < -Math.PI) dd += Math.PI * 2;
+            if (dd >= Math.PI) dd -= Math.PI * 2;
+
+            int brr = (int) ((1 - dd * dd) * 255);
+
+            int dist = 120;
+            if (brr < 0)
+            {
+                brr = 0;
+                dist = 32;
+            }
+            if (tick < 60) brr = brr * tick / 60;
+
+            int j = 0;
+            for (; j < dist; j++)
+            {
+                int xx = xt * j / 120 + 120;
+                int yy = yt * j / 120 + 120;
+                int xm = xx + xCam - 120;
+                int ym = yy + yCam - 120;
+
+                if (map[(xm + ym * 1024) & (1024 * 1024 - 1)] == 0xffffff) break;
+
+                int xd = (xx - 120) * 256 / 120;
+                int yd = (yy - 120) * 256 / 120;
+
+                int ddd = (xd * xd + yd * yd) / 256;
+                int br = brightness[ddd] * brr / 255;
+
+                if (ddd < 16)
+                {
+                    int tmp = 128 * (16 - ddd) / 16;
+                    br = br + tmp * (255 - br) / 255;
+                }
+
+                lightmap[xx + yy * 240] = br;
+            }
+        }
+    }
+
+    private static void compositeReference(int[] pixels, int[] lightmap, int[] noiseValues, boolean gameStarted, int hurtTime, int bonusTime)
+    {
+        for (int y = 0; y < 240; y++)
+        {
+            for (int x = 0; x < 240; x++)
+            {
+                int noise = noiseValues[x + y * 240];
+                if (!gameStarted) noise *= 4;
+
+                int c = pixels[x + y * 240];
+                int l = lightmap[x + y * 240];
+                lightmap[x + y * 240] = 0;
+                int r = ((c >> 16) & 0xff) * l / 255 + noise;
+                int g = ((c >> 8) & 0xff) * l / 255 + noise;
+                int b = ((c) & 0xff) * l / 255 + noise;
+
+                r = r * (255 - hurtTime) / 255 + hurtTime;
+                g = g * (255 - bonusTime) / 255 + bonusTime;
+                pixels[x + y * 240] = r << 16 | g << 8 | b;
+            }
+        }
+    }
+}
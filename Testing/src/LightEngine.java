@@ -0,0 +1,309 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Lighting and composite pipeline for G. Casts the 960 view rays against a
+ * one-bit-per-cell wall bitmap of the 1024x1024 map and blends the result
+ * with a precomputed noise texture.
+ *
+ * Every per-ray quantity that does not depend on the camera or the aim
+ * direction (angles, screen offsets, map offsets, falloff) is computed once
+ * in the constructor. Rays are split by angle into one sector per worker, and
+ * the sectors are merged so that the lightmap is identical to casting the
+ * rays one after another in index order.
+ */
+public class LightEngine
+{
+    public static final int SIZE = 240;
+    public static final int HALF = 120;
+    public static final int RAYS = 960;
+    public static final int MAP_SIZE = 1024;
+    public static final int MAP_MASK = MAP_SIZE * MAP_SIZE - 1;
+    public static final int WALL = 0xffffff;
+
+    private static final int NOISE_SIZE = 512;
+    private static final int NOISE_FRAMES = 64;
+
+    private int[] map;
+    private final long[] walls = new long[MAP_SIZE * MAP_SIZE / 64];
+
+    private final int[] brightness = new int[512];
+    private final double[] rayAngle = new double[RAYS];
+    private final int[][] rayScreen = new int[RAYS][HALF];
+    private final int[][] rayMap = new int[RAYS][HALF];
+    private final int[][] rayFalloff = new int[RAYS][HALF];
+    private final int[][] rayGlow = new int[RAYS][HALF];
+
+    private final int[] noise = new int[NOISE_SIZE * NOISE_SIZE];
+    private final int[] noiseOffset = new int[NOISE_FRAMES];
+    private int frame;
+
+    private final Sector[] sectors;
+    private final ExecutorService pool;
+
+    public LightEngine(int threads)
+    {
+        double offs = 30;
+        for (int i = 0; i < 512; i++)
+        {
+            brightness[i] = (int) (255.0 * offs / (i + offs));
+            if (i < 4) brightness[i] = brightness[i] * i / 4;
+        }
+
+        Integer[] order = new Integer[RAYS];
+        for (int i = 0; i < RAYS; i++)
+        {
+            int xt = i % SIZE - HALF;
+            int yt = (i / SIZE % 2) * (SIZE - 1) - HALF;
+            if (i >= RAYS / 2)
+            {
+                int tmp = xt;
+                xt = yt;
+                yt = tmp;
+            }
+            rayAngle[i] = Math.atan2(yt, xt);
+            order[i] = i;
+
+            for (int j = 0; j < HALF; j++)
+            {
+                int xx = xt * j / HALF + HALF;
+                int yy = yt * j / HALF + HALF;
+                int xd = (xx - HALF) * 256 / HALF;
+                int yd = (yy - HALF) * 256 / HALF;
+                int ddd = (xd * xd + yd * yd) / 256;
+
+                rayScreen[i][j] = xx + yy * SIZE;
+                rayMap[i][j] = xx + yy * MAP_SIZE;
+                rayFalloff[i][j] = brightness[ddd];
+                rayGlow[i][j] = ddd < 16 ? 128 * (16 - ddd) / 16 : 0;
+            }
+        }
+
+        Random random = new Random(4329);
+        for (int i = 0; i < noise.length; i++)
+        {
+            noise[i] = random.nextInt(16) * random.nextInt(16) / 16;
+        }
+        for (int i = 0; i < NOISE_FRAMES; i++)
+        {
+            noiseOffset[i] = random.nextInt(NOISE_SIZE - SIZE) + random.nextInt(NOISE_SIZE - SIZE) * NOISE_SIZE;
+        }
+
+        if (threads < 1) threads = 1;
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Double.compare(rayAngle[a], rayAngle[b]);
+            }
+        });
+        sectors = new Sector[threads];
+        for (int s = 0; s < threads; s++)
+        {
+            int from = RAYS * s / threads;
+            int to = RAYS * (s + 1) / threads;
+            int[] rays = new int[to - from];
+            for (int i = from; i < to; i++)
+            {
+                rays[i - from] = order[i];
+            }
+            Arrays.sort(rays);
+            sectors[s] = new Sector(rays);
+        }
+
+        if (threads > 1)
+        {
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "LightEngine");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        else
+        {
+            pool = null;
+        }
+    }
+
+    /**
+     * Switches to a freshly generated level and rebuilds the wall bitmap.
+     * Walls are only placed during level generation, so the bitmap stays
+     * valid for the rest of the level.
+     */
+    public void setMap(int[] map)
+    {
+        this.map = map;
+        rebuildWalls();
+    }
+
+    public void rebuildWalls()
+    {
+        Arrays.fill(walls, 0);
+        for (int i = 0; i < map.length; i++)
+        {
+            if (map[i] == WALL) walls[i >>> 6] |= 1L << i;
+        }
+    }
+
+    public boolean isWall(int index)
+    {
+        index &= MAP_MASK;
+        return (walls[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Casts the view cone from the camera at (xCam, yCam) into lightmap.
+     * Pixels no ray reaches are left untouched.
+     */
+    public void cast(int[] lightmap, int xCam, int yCam, double playerDir, int tick)
+    {
+        int base = xCam - HALF + (yCam - HALF) * MAP_SIZE;
+
+        if (pool == null)
+        {
+            castRays(sectors[0].rays, lightmap, null, base, playerDir, tick);
+            return;
+        }
+
+        for (Sector sector : sectors)
+        {
+            sector.prepare(base, playerDir, tick);
+        }
+        try
+        {
+            pool.invokeAll(Arrays.asList(sectors));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        for (int p = 0; p < SIZE * SIZE; p++)
+        {
+            int best = 0;
+            int value = 0;
+            for (Sector sector : sectors)
+            {
+                int o = sector.owner[p];
+                if (o > best)
+                {
+                    best = o;
+                    value = sector.light[p];
+                }
+                sector.owner[p] = 0;
+            }
+            if (best > 0) lightmap[p] = value;
+        }
+    }
+
+    private void castRays(int[] rays, int[] light, int[] owner, int base, double playerDir, int tick)
+    {
+        for (int n = 0; n < rays.length; n++)
+        {
+            int i = rays[n];
+            double dd = rayAngle[i] - playerDir;
+            if (dd < -Math.PI) dd += Math.PI * 2;
+            if (dd >= Math.PI) dd -= Math.PI * 2;
+
+            int brr = (int) ((1 - dd * dd) * 255);
+            int dist = HALF;
+            if (brr < 0)
+            {
+                brr = 0;
+                dist = 32;
+            }
+            if (tick < 60) brr = brr * tick / 60;
+
+            int[] screen = rayScreen[i];
+            int[] mapOff = rayMap[i];
+            int[] falloff = rayFalloff[i];
+            int[] glow = rayGlow[i];
+            for (int j = 0; j < dist; j++)
+            {
+                int m = (base + mapOff[j]) & MAP_MASK;
+                if ((walls[m >>> 6] & (1L << m)) != 0) break;
+
+                int br = falloff[j] * brr / 255;
+                br = br + glow[j] * (255 - br) / 255;
+
+                light[screen[j]] = br;
+                if (owner != null) owner[screen[j]] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Multiplies pixels by the lightmap, adds film grain and the hurt/bonus
+     * tints, and clears the lightmap for the next frame.
+     */
+    public void composite(int[] pixels, int[] lightmap, boolean gameStarted, int hurtTime, int bonusTime)
+    {
+        int offset = noiseOffset[frame++ & (NOISE_FRAMES - 1)];
+        int noiseScale = gameStarted ? 1 : 4;
+        for (int y = 0; y < SIZE; y++)
+        {
+            int n = offset + y * NOISE_SIZE;
+            int p = y * SIZE;
+            for (int x = 0; x < SIZE; x++, n++, p++)
+            {
+                int grain = noise[n] * noiseScale;
+                int c = pixels[p];
+                int l = lightmap[p];
+                lightmap[p] = 0;
+                int r = ((c >> 16) & 0xff) * l / 255 + grain;
+                int g = ((c >> 8) & 0xff) * l / 255 + grain;
+                int b = ((c) & 0xff) * l / 255 + grain;
+
+                r = r * (255 - hurtTime) / 255 + hurtTime;
+                g = g * (255 - bonusTime) / 255 + bonusTime;
+                pixels[p] = r << 16 | g << 8 | b;
+            }
+        }
+    }
+
+    /**
+     * Noise value composite() will use at (x, y) on the next frame.
+     */
+    int peekNoise(int x, int y)
+    {
+        return noise[noiseOffset[frame & (NOISE_FRAMES - 1)] + x + y * NOISE_SIZE];
+    }
+
+    public void shutdown()
+    {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private class Sector implements Callable<Object>
+    {
+        private final int[] rays;
+        private final int[] light = new int[SIZE * SIZE];
+        private final int[] owner = new int[SIZE * SIZE];
+        private int base;
+        private double playerDir;
+        private int tick;
+
+        private Sector(int[] rays)
+        {
+            this.rays = rays;
+        }
+
+        private void prepare(int base, double playerDir, int tick)
+        {
+            this.base = base;
+            this.playerDir = playerDir;
+            this.tick = tick;
+        }
+
+        public Object call()
+        {
+            castRays(rays, light, owner, base, playerDir, tick);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.brackeen.javagamebook.sound;
+
+import javax.sound.sampled.*;
+
+/**
+    The LineSink class is an AudioSink that plays the mixed
+    samples on a SourceDataLine from the default mixer.
+*/
+public class LineSink implements AudioSink {
+
+    private SourceDataLine line;
+
+    public void open(AudioFormat format, int bufferSize)
+        throws LineUnavailableException
+    {
+        DataLine.Info lineInfo = new DataLine.Info(
+            SourceDataLine.class, format);
+        line = (SourceDataLine)AudioSystem.getLine(lineInfo);
+        line.open(format, bufferSize);
+        line.start();
+    }
+
+
+    public void write(byte[] samples, int offset, int length) {
+        if (line != null) {
+            line.write(samples, offset, length);
+        }
+    }
+
+
+    public void drain() {
+        if (line != null) {
+            line.drain();
+        }
+    }
+
+
+    public void close() {
+        if (line != null) {
+            line.close();
+            line = null;
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.brackeen.javagamebook.sound;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+    The NullSink class is an AudioSink that discards everything
+    written to it. It only counts the bytes it receives. Useful
+    for running a SoundMixer headless, like in a benchmark or on
+    a machine without a sound card.
+    <p>By default, write() blocks like a real line would, so the
+    mixing thread runs at the rate of the output instead of
+    spinning. A NullSink that isn't paced never blocks.
+*/
+public class NullSink implements AudioSink {
+
+    private boolean paced;
+    private long bytesWritten;
+    private float bytesPerMilli;
+    private int bufferSize;
+    private long startTime;
+
+    /**
+        Creates a new NullSink that is paced to real time.
+    */
+    public NullSink() {
+        this(true);
+    }
+
+
+    /**
+        Creates a new NullSink, optionally paced to real time.
+    */
+    public NullSink(boolean paced) {
+        this.paced = paced;
+    }
+
+
+    public void open(AudioFormat format, int bufferSize) {
+        bytesPerMilli = format.getFrameSize() *
+            format.getFrameRate() / 1000;
+        this.bufferSize = bufferSize;
+        bytesWritten = 0;
+        startTime = System.currentTimeMillis();
+    }
+
+
+    /**
+        Discards a block of samples. If this sink is paced and
+        open, waits until the samples written so far, less a
+        buffer's worth, would have been played.
+    */
+    public void write(byte[] samples, int offset, int length) {
+        bytesWritten+=length;
+        if (paced && bytesPerMilli > 0) {
+            long playTime = startTime + Math.round(
+                (bytesWritten - bufferSize) / bytesPerMilli);
+            long sleepTime = playTime - System.currentTimeMillis();
+            if (sleepTime > 0) {
+                try {
+                    Thread.sleep(sleepTime);
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+
+    public void drain() {
+        // do nothing
+    }
+
+
+    public void close() {
+        bytesPerMilli = 0;
+    }
+
+
+    /**
+        Gets the number of bytes written to this sink.
+    */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+}
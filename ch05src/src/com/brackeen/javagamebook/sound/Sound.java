@@ -1,13 +1,23 @@
 package com.brackeen.javagamebook.sound;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import com.brackeen.javagamebook.util.LoopingByteInputStream;
+
 /**
     The Sound class is a container for sound samples. The sound
     samples are format-agnostic and are stored as a byte array.
+    The array is never modified, so one Sound can be played any
+    number of times at once.
 */
 public class Sound {
 
     private byte[] samples;
 
+    // set by the SoundCache that holds this Sound
+    Object cacheKey;
+    int refCount;
+
     /**
         Create a new Sound object with the specified byte array.
         The array is not copied.
@@ -24,4 +34,27 @@ public class Sound {
         return samples;
     }
 
+
+    /**
+        Opens a stream of this Sound's samples, optionally
+        looping.
+    */
+    public InputStream openStream(boolean loop) {
+        if (loop) {
+            return new LoopingByteInputStream(samples);
+        }
+        else {
+            return new ByteArrayInputStream(samples);
+        }
+    }
+
+
+    /**
+        Gets the number of bytes of samples this Sound keeps in
+        memory.
+    */
+    public int getResidentSize() {
+        return samples.length;
+    }
+
 }
@@ -0,0 +1,182 @@
+package com.brackeen.javagamebook.sound;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+    The SoundCache class keeps decoded Sounds in memory, keyed by
+    file name, up to a memory budget. Sounds are shared: every
+    get() of the same key returns the same Sound and its samples
+    are never copied.
+    <p>Each Sound has a reference count. get() and put() acquire
+    a reference and release() gives it back; the SoundManager
+    also holds a reference while a Sound is playing. When the
+    cache is over budget, the least recently used Sounds with no
+    references are evicted. Referenced Sounds are never evicted,
+    so the cache can go over budget if they don't fit.
+    @see SoundManager
+*/
+public class SoundCache {
+
+    private LinkedHashMap sounds;
+    private long budget;
+    private long residentBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+        Creates a new SoundCache with the specified memory
+        budget, in bytes.
+    */
+    public SoundCache(long budget) {
+        this.budget = budget;
+        // access order, so iteration starts at the least
+        // recently used Sound
+        sounds = new LinkedHashMap(16, 0.75f, true);
+    }
+
+
+    /**
+        Gets a cached Sound and acquires a reference to it.
+        Returns null if the Sound isn't cached.
+    */
+    public synchronized Sound get(Object key) {
+        Sound sound = (Sound)sounds.get(key);
+        if (sound == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        sound.refCount++;
+        return sound;
+    }
+
+
+    /**
+        Adds a Sound to this cache and acquires a reference to
+        it. If another Sound was already cached with the same
+        key, that Sound is returned instead.
+    */
+    public synchronized Sound put(Object key, Sound sound) {
+        Sound cached = (Sound)sounds.get(key);
+        if (cached != null) {
+            cached.refCount++;
+            return cached;
+        }
+        sound.cacheKey = key;
+        sound.refCount = 1;
+        sounds.put(key, sound);
+        residentBytes+=sound.getResidentSize();
+        evict();
+        return sound;
+    }
+
+
+    /**
+        Acquires another reference to a cached Sound. Does
+        nothing if the Sound isn't in this cache.
+    */
+    public synchronized void acquire(Sound sound) {
+        if (contains(sound)) {
+            sound.refCount++;
+        }
+    }
+
+
+    /**
+        Releases a reference to a cached Sound. Once no one holds
+        a reference, the Sound can be evicted. Does nothing if
+        the Sound isn't in this cache.
+    */
+    public synchronized void release(Sound sound) {
+        if (contains(sound) && sound.refCount > 0) {
+            sound.refCount--;
+            if (sound.refCount == 0) {
+                evict();
+            }
+        }
+    }
+
+
+    private boolean contains(Sound sound) {
+        return (sound != null && sound.cacheKey != null &&
+            sounds.get(sound.cacheKey) == sound);
+    }
+
+
+    /**
+        Removes unreferenced Sounds, least recently used first,
+        until the resident size is within the budget.
+    */
+    private void evict() {
+        Iterator i = sounds.values().iterator();
+        while (residentBytes > budget && i.hasNext()) {
+            Sound sound = (Sound)i.next();
+            if (sound.refCount == 0) {
+                i.remove();
+                sound.cacheKey = null;
+                residentBytes-=sound.getResidentSize();
+                evictions++;
+            }
+        }
+    }
+
+
+    /**
+        Sets the memory budget, in bytes, and evicts Sounds if
+        needed.
+    */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+
+    /**
+        Gets the number of bytes of samples held by this cache.
+    */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+
+    /**
+        Gets the number of Sounds in this cache.
+    */
+    public synchronized int size() {
+        return sounds.size();
+    }
+
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+
+    /**
+        Gets the fraction of get() calls that found a cached
+        Sound, from 0 to 1.
+    */
+    public synchronized float getHitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0 : (float)hits / total;
+    }
+
+}
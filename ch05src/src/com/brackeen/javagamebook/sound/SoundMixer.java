@@ -0,0 +1,445 @@
+package com.brackeen.javagamebook.sound;
+
+import java.io.InputStream;
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+
+/**
+    The SoundMixer class mixes a fixed number of voices into one
+    stream of samples, so any number of sounds can be played on a
+    single line from a single thread.
+    <p>Each call to mix() reads one block from every playing
+    voice, scales it by the voice's volume, sums everything in a
+    preallocated int buffer and saturates the sum back to 16-bit
+    samples. A voice is just an InputStream, so SoundFilters are
+    applied per voice by playing a FilteredSoundStream. Voices
+    that finish, are stopped, or are taken over close their
+    InputStream.
+    <p>When all voices are busy, a new sound takes over the
+    oldest voice with the lowest priority, as long as that
+    priority isn't higher than its own. Otherwise the new sound
+    isn't played, and its InputStream is closed.
+    <p>mix() only holds the mixer's lock while it looks at the
+    voices, not while it reads them, so a slow InputStream
+    doesn't hold up play(), stop() or setVolume().
+    <p>Assumes all samples are 16-bit, signed, little-endian
+    format.
+    @see SoundManager
+*/
+public class SoundMixer {
+
+    // volume 1.0 in the fixed-point gain of a voice
+    private static final int GAIN_SHIFT = 12;
+    private static final int UNITY_GAIN = 1 << GAIN_SHIFT;
+    private static final float MAX_VOLUME = 8.0f;
+
+    // number of frames to shift when changing the volume
+    private static final int NUM_RAMP_FRAMES = 256;
+
+    private int channels;
+    private int frameSize;
+    private Voice[] voices;
+    private InputStream[] reading;
+    private boolean mixing;
+    private int[] mixBuffer;
+    private long nextStart;
+
+    private long voicesMixed;
+    private long voicesStolen;
+    private long soundsRejected;
+    private long samplesClipped;
+
+    /**
+        Creates a new SoundMixer for the specified format with
+        the specified number of voices.
+    */
+    public SoundMixer(AudioFormat format, int numVoices) {
+        channels = format.getChannels();
+        frameSize = format.getFrameSize();
+        voices = new Voice[Math.max(1, numVoices)];
+        for (int i=0; i<voices.length; i++) {
+            voices[i] = new Voice();
+            voices[i].index = i;
+        }
+        reading = new InputStream[voices.length];
+        mixBuffer = new int[0];
+    }
+
+
+    /**
+        Starts playing a sound from an InputStream with the
+        specified priority. Returns false if all voices are
+        playing sounds with a higher priority, in which case the
+        InputStream is closed.
+    */
+    public boolean play(InputStream source, int priority) {
+        if (source == null) {
+            return false;
+        }
+
+        InputStream stolen;
+        synchronized (this) {
+            // find a free voice, or else the oldest one with the
+            // lowest priority
+            Voice victim = null;
+            for (int i=0; i<voices.length; i++) {
+                Voice voice = voices[i];
+                if (voice.source == null) {
+                    victim = voice;
+                    break;
+                }
+                if (victim == null ||
+                    voice.priority < victim.priority ||
+                    (voice.priority == victim.priority &&
+                    voice.start < victim.start))
+                {
+                    victim = voice;
+                }
+            }
+
+            stolen = victim.source;
+            if (stolen != null) {
+                if (victim.priority > priority) {
+                    soundsRejected++;
+                    stolen = source;
+                    source = null;
+                }
+                else {
+                    voicesStolen++;
+                    // a voice that is being read is closed by mix()
+                    if (mixing && reading[victim.index] == stolen) {
+                        stolen = null;
+                    }
+                }
+            }
+
+            if (source != null) {
+                victim.source = source;
+                victim.priority = priority;
+                victim.start = nextStart++;
+                victim.stopping = false;
+                // fade in to avoid a click when taking over a voice
+                victim.gain = 0;
+                victim.setTarget(UNITY_GAIN);
+            }
+        }
+
+        close(stolen);
+        return (source != null);
+    }
+
+
+    /**
+        Sets the volume of a playing sound, from 0 (silent) to 1
+        (unchanged). Volumes above 1 amplify the sound. The
+        change is ramped in over a few milliseconds.
+    */
+    public synchronized void setVolume(InputStream source,
+        float volume)
+    {
+        Voice voice = find(source);
+        if (voice != null && !voice.stopping) {
+            volume = Math.max(0, Math.min(volume, MAX_VOLUME));
+            voice.setTarget(Math.round(volume * UNITY_GAIN));
+        }
+    }
+
+
+    /**
+        Fades out and stops a playing sound. Does nothing if the
+        sound isn't playing.
+    */
+    public synchronized void stop(InputStream source) {
+        Voice voice = find(source);
+        if (voice != null) {
+            voice.stopping = true;
+            voice.setTarget(0);
+        }
+    }
+
+
+    /**
+        Returns true if the sound from the specified
+        InputStream is still playing.
+    */
+    public synchronized boolean isPlaying(InputStream source) {
+        return (find(source) != null);
+    }
+
+
+    private Voice find(InputStream source) {
+        if (source != null) {
+            for (int i=0; i<voices.length; i++) {
+                if (voices[i].source == source) {
+                    return voices[i];
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+        Mixes the next block of every playing voice into the
+        specified array. The length should be a multiple of the
+        frame size. Returns the number of voices that were mixed.
+        <p>Only one thread at a time should call this method.
+    */
+    public int mix(byte[] samples, int offset, int length) {
+        int numSamples = length / 2;
+        if (mixBuffer.length < numSamples) {
+            mixBuffer = new int[numSamples];
+        }
+        for (int i=0; i<numSamples; i++) {
+            mixBuffer[i] = 0;
+        }
+
+        // see which voices are playing
+        synchronized (this) {
+            for (int i=0; i<voices.length; i++) {
+                reading[i] = voices[i].source;
+            }
+            mixing = true;
+        }
+
+        // read them without holding the lock
+        for (int i=0; i<voices.length; i++) {
+            if (reading[i] != null) {
+                voices[i].read(reading[i], length);
+            }
+        }
+
+        InputStream[] finished = null;
+        int numMixed = 0;
+        synchronized (this) {
+            mixing = false;
+            for (int i=0; i<voices.length; i++) {
+                Voice voice = voices[i];
+                InputStream source = reading[i];
+                reading[i] = null;
+                if (source == null) {
+                    continue;
+                }
+                if (voice.source == source) {
+                    if (voice.bytesRead > 0) {
+                        accumulate(voice, voice.bytesRead / 2);
+                        numMixed++;
+                    }
+                    if (voice.bytesRead < length ||
+                        (voice.stopping && voice.ramp == 0))
+                    {
+                        voice.release();
+                    }
+                    else {
+                        continue;
+                    }
+                }
+                // the voice finished, or was taken over while it
+                // was being read
+                if (finished == null) {
+                    finished = new InputStream[voices.length];
+                }
+                finished[i] = source;
+            }
+            voicesMixed+=numMixed;
+        }
+
+        if (finished != null) {
+            for (int i=0; i<finished.length; i++) {
+                close(finished[i]);
+            }
+        }
+
+        // saturate the sum to 16-bit samples
+        int numClipped = 0;
+        for (int i=0, p=offset; i<numSamples; i++, p+=2) {
+            int sample = mixBuffer[i];
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+                numClipped++;
+            }
+            else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+                numClipped++;
+            }
+            samples[p] = (byte)sample;
+            samples[p+1] = (byte)(sample >> 8);
+        }
+        if (numClipped > 0) {
+            synchronized (this) {
+                samplesClipped+=numClipped;
+            }
+        }
+
+        return numMixed;
+    }
+
+
+    private static void close(InputStream source) {
+        if (source != null) {
+            try {
+                source.close();
+            }
+            catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+        Adds the samples in a voice's buffer to the mix buffer.
+    */
+    private void accumulate(Voice voice, int numSamples) {
+        byte[] buffer = voice.buffer;
+
+        // common case: full volume, no ramp
+        if (voice.ramp == 0 && voice.gain == UNITY_GAIN) {
+            for (int i=0, p=0; i<numSamples; i++, p+=2) {
+                mixBuffer[i] += (short)(((buffer[p+1] & 0xff) << 8) |
+                    (buffer[p] & 0xff));
+            }
+            return;
+        }
+
+        int gain = voice.gain;
+        int ramp = voice.ramp;
+        for (int i=0, p=0; i<numSamples; i+=channels) {
+            if (ramp > 0) {
+                ramp--;
+                gain = (ramp == 0) ? voice.target :
+                    gain + voice.step;
+            }
+            for (int c=0; c<channels; c++, p+=2) {
+                int sample = (short)(((buffer[p+1] & 0xff) << 8) |
+                    (buffer[p] & 0xff));
+                mixBuffer[i+c] += (sample * gain) >> GAIN_SHIFT;
+            }
+        }
+        voice.gain = gain;
+        voice.ramp = ramp;
+    }
+
+
+    /**
+        Gets the number of voices currently playing a sound.
+    */
+    public synchronized int getActiveVoices() {
+        int count = 0;
+        for (int i=0; i<voices.length; i++) {
+            if (voices[i].source != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+        Gets the total number of voices.
+    */
+    public int getNumVoices() {
+        return voices.length;
+    }
+
+
+    /**
+        Gets the total number of voice blocks mixed.
+    */
+    public synchronized long getVoicesMixed() {
+        return voicesMixed;
+    }
+
+
+    /**
+        Gets the number of sounds that took over a busy voice.
+    */
+    public synchronized long getVoicesStolen() {
+        return voicesStolen;
+    }
+
+
+    /**
+        Gets the number of sounds that weren't played because
+        every voice was playing something more important.
+    */
+    public synchronized long getSoundsRejected() {
+        return soundsRejected;
+    }
+
+
+    /**
+        Gets the number of mixed samples that had to be clipped.
+    */
+    public synchronized long getSamplesClipped() {
+        return samplesClipped;
+    }
+
+
+    /**
+        A Voice is one sound being mixed: its source, its block
+        buffer, and its volume ramp. The buffer is only touched
+        by the thread calling mix().
+    */
+    private class Voice {
+
+        int index;
+        InputStream source;
+        int priority;
+        long start;
+        boolean stopping;
+        byte[] buffer = new byte[0];
+        int bytesRead;
+
+        // fixed-point gain, and the ramp towards the target
+        int gain;
+        int target;
+        int step;
+        int ramp;
+
+        void setTarget(int newTarget) {
+            target = newTarget;
+            ramp = NUM_RAMP_FRAMES;
+            step = (target - gain) / NUM_RAMP_FRAMES;
+        }
+
+
+        /**
+            Reads up to length bytes from the source into the
+            buffer, stopping early only at the end of the stream.
+            Sets bytesRead to the number of whole frames read, in
+            bytes.
+        */
+        void read(InputStream source, int length) {
+            if (buffer.length < length) {
+                buffer = new byte[length];
+            }
+            int count = 0;
+            try {
+                while (count < length) {
+                    int n = source.read(buffer, count,
+                        length - count);
+                    if (n == -1) {
+                        break;
+                    }
+                    count+=n;
+                }
+            }
+            catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            bytesRead = count / frameSize * frameSize;
+        }
+
+
+        /**
+            Frees this voice. The caller closes the source.
+        */
+        void release() {
+            source = null;
+            stopping = false;
+            ramp = 0;
+        }
+    }
+
+}
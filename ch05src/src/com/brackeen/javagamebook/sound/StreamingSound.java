@@ -0,0 +1,104 @@
+package com.brackeen.javagamebook.sound;
+
+import java.io.InputStream;
+import java.io.IOException;
+import javax.sound.sampled.AudioInputStream;
+import com.brackeen.javagamebook.util.ReadAheadInputStream;
+
+/**
+    The StreamingSound class is a Sound that isn't kept in
+    memory. Every time it's played, the file is decoded again
+    from disk, with about a second read ahead on a background
+    thread. The SoundManager uses it for sounds, like music,
+    that are too large to cache.
+*/
+public class StreamingSound extends Sound {
+
+    private SoundManager soundManager;
+    private String filename;
+    private int readAheadSize;
+
+    /**
+        Creates a new StreamingSound for the specified file. The
+        SoundManager decodes the file to its playback format.
+    */
+    public StreamingSound(SoundManager soundManager, String filename,
+        int readAheadSize)
+    {
+        super(null);
+        this.soundManager = soundManager;
+        this.filename = filename;
+        this.readAheadSize = readAheadSize;
+    }
+
+
+    /**
+        Gets the file this Sound is streamed from.
+    */
+    public String getFilename() {
+        return filename;
+    }
+
+
+    /**
+        Opens a new stream decoding the file, optionally looping.
+        Returns null if the file can't be opened.
+    */
+    public InputStream openStream(boolean loop) {
+        AudioInputStream stream =
+            soundManager.getAudioInputStream(filename);
+        if (stream == null) {
+            return null;
+        }
+        return new ReadAheadInputStream(
+            new FileStream(stream, loop), readAheadSize);
+    }
+
+
+    /**
+        A StreamingSound keeps no samples in memory.
+    */
+    public int getResidentSize() {
+        return 0;
+    }
+
+
+    /**
+        Reads the decoded file, starting it over at the end if
+        looping.
+    */
+    private class FileStream extends InputStream {
+
+        private AudioInputStream stream;
+        private boolean loop;
+
+        public FileStream(AudioInputStream stream, boolean loop) {
+            this.stream = stream;
+            this.loop = loop;
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        public int read(byte[] b, int offset, int length)
+            throws IOException
+        {
+            int numBytesRead = stream.read(b, offset, length);
+            if (numBytesRead == -1 && loop) {
+                stream.close();
+                stream = soundManager.getAudioInputStream(filename);
+                if (stream == null) {
+                    throw new IOException("Can't reopen " + filename);
+                }
+                numBytesRead = stream.read(b, offset, length);
+            }
+            return numBytesRead;
+        }
+
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.brackeen.javagamebook.test;
+
+import java.io.InputStream;
+import javax.sound.sampled.AudioFormat;
+
+import com.brackeen.javagamebook.sound.*;
+import com.brackeen.javagamebook.util.LoopingByteInputStream;
+
+/**
+    Runs the SoundMixer headless into a NullSink and reports how
+    many voices it mixes per millisecond, with and without
+    per-voice echo filters. No sound hardware is needed.
+    <p>Usage: java MixerBenchmark [seconds of audio]
+*/
+public class MixerBenchmark {
+
+    // uncompressed, 44100Hz, 16-bit, mono, signed, little-endian
+    private static final AudioFormat FORMAT =
+        new AudioFormat(44100, 16, 1, true, false);
+
+    private static final int[] VOICE_COUNTS = { 1, 8, 32, 64 };
+
+    public static void main(String[] args) {
+        int seconds = (args.length > 0) ?
+            Integer.parseInt(args[0]) : 60;
+
+        Sound sound = createTone(440, 1);
+        for (int filtered=0; filtered<2; filtered++) {
+            for (int i=0; i<VOICE_COUNTS.length; i++) {
+                // the first run warms up the JIT
+                run(sound, VOICE_COUNTS[i], seconds, filtered == 1);
+                run(sound, VOICE_COUNTS[i], seconds, filtered == 1);
+                System.out.println();
+            }
+        }
+    }
+
+
+    private static void run(Sound sound, int numVoices, int seconds,
+        boolean filtered)
+    {
+        SoundMixer mixer = new SoundMixer(FORMAT, numVoices);
+        NullSink sink = new NullSink(false);
+
+        // looping voices at different volumes
+        for (int i=0; i<numVoices; i++) {
+            InputStream is = new LoopingByteInputStream(
+                sound.getSamples());
+            if (filtered) {
+                is = new FilteredSoundStream(is,
+                    new EchoFilter(11025, .6f));
+            }
+            mixer.play(is, SoundManager.DEFAULT_PRIORITY);
+            mixer.setVolume(is, (i % 4 + 1) / 4f);
+        }
+
+        // 10ms blocks, like the SoundManager
+        int blockSize = FORMAT.getFrameSize() *
+            Math.round(FORMAT.getSampleRate() / 100);
+        byte[] buffer = new byte[blockSize];
+        int numBlocks = seconds * 100;
+
+        long start = System.nanoTime();
+        for (int i=0; i<numBlocks; i++) {
+            mixer.mix(buffer, 0, blockSize);
+            sink.write(buffer, 0, blockSize);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double ms = elapsed / 1e6;
+        System.out.println(numVoices + " voices" +
+            (filtered ? " (echo)" : "") + ": " +
+            Math.round(mixer.getVoicesMixed() / ms) +
+            " voice blocks/ms, " +
+            Math.round(seconds * 1000 / ms) + "x real time, " +
+            mixer.getSamplesClipped() + " samples clipped, " +
+            sink.getBytesWritten() / 1024 + " KB written");
+    }
+
+
+    /**
+        Creates a sine wave Sound.
+    */
+    private static Sound createTone(int frequency, int seconds) {
+        int numSamples = Math.round(FORMAT.getSampleRate()) *
+            seconds;
+        byte[] samples = new byte[numSamples * 2];
+        for (int i=0; i<numSamples; i++) {
+            short sample = (short)(1000 * Math.sin(
+                2 * Math.PI * frequency * i / FORMAT.getSampleRate()));
+            SoundFilter.setSample(samples, i * 2, sample);
+        }
+        return new Sound(samples);
+    }
+
+}
@@ -17,7 +17,9 @@ import com.brackeen.javagamebook.tilegame.sprites.*;
 /**
     GameManager manages all parts of the game.
 */
-public class GameManager extends GameCore {
+public class GameManager extends GameCore
+    implements SpriteRegions.Updater
+{
 
     public static void main(String[] args) {
         new GameManager().run();
@@ -146,6 +148,14 @@ public class GameManager extends GameCore {
     }
 
 
+    /**
+        Sets the current map.
+    */
+    public void setMap(TileMap map) {
+        this.map = map;
+    }
+
+
     /**
         Turns on/off drum playback in the midi music (track 1).
     */
@@ -236,8 +246,11 @@ public class GameManager extends GameCore {
     */
     public Sprite getSpriteCollision(Sprite sprite) {
 
-        // run through the list of Sprites
-        Iterator i = map.getSprites();
+        // run through the Sprites in the same columns
+        int fromTileX = TileMapRenderer.pixelsToTiles(sprite.getX());
+        int toTileX = TileMapRenderer.pixelsToTiles(
+            sprite.getX() + sprite.getWidth() - 1);
+        Iterator i = map.getSprites(fromTileX, toTileX);
         while (i.hasNext()) {
             Sprite otherSprite = (Sprite)i.next();
             if (isCollision(sprite, otherSprite)) {
@@ -273,21 +286,47 @@ public class GameManager extends GameCore {
         player.update(elapsedTime);
 
         // update other sprites
-        Iterator i = map.getSprites();
-        while (i.hasNext()) {
-            Sprite sprite = (Sprite)i.next();
-            if (sprite instanceof Creature) {
-                Creature creature = (Creature)sprite;
-                if (creature.getState() == Creature.STATE_DEAD) {
-                    i.remove();
-                }
-                else {
-                    updateCreature(creature, elapsedTime);
-                }
+        updateSprites(elapsedTime, screen.getWidth());
+    }
+
+
+    /**
+        Updates the Sprites in the current map other than the
+        player. Sprites are spawned as the screen approaches
+        them, and only the Sprites near the screen are updated
+        every frame.
+        @see SpriteSpawner
+        @see SpriteRegions
+    */
+    public void updateSprites(long elapsedTime, int screenWidth) {
+        int offsetX = TileMapRenderer.getOffsetX(map, screenWidth);
+        int firstTileX = TileMapRenderer.pixelsToTiles(-offsetX);
+        int lastTileX = firstTileX +
+            TileMapRenderer.pixelsToTiles(screenWidth) + 1;
+        SpriteSpawner spawner = map.getSpawner();
+        if (spawner != null) {
+            spawner.update(map, firstTileX, lastTileX);
+        }
+        map.getRegions().update(elapsedTime, firstTileX, lastTileX,
+            this);
+    }
+
+
+    /**
+        Updates a Sprite other than the player. Returns false if
+        it's a dead Creature that should be removed from the map.
+    */
+    public boolean updateSprite(Sprite sprite, long elapsedTime) {
+        if (sprite instanceof Creature) {
+            Creature creature = (Creature)sprite;
+            if (creature.getState() == Creature.STATE_DEAD) {
+                return false;
             }
-            // normal update
-            sprite.update(elapsedTime);
+            updateCreature(creature, elapsedTime);
         }
+        // normal update
+        sprite.update(elapsedTime);
+        return true;
     }
 
 
@@ -0,0 +1,193 @@
+package com.brackeen.javagamebook.tilegame;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.brackeen.javagamebook.graphics.Animation;
+import com.brackeen.javagamebook.graphics.Sprite;
+import com.brackeen.javagamebook.tilegame.sprites.*;
+
+/**
+    Times loading a generated text map the old way (parsing the
+    text and cloning every Sprite up front) against reading the
+    text into a MapFile, reading the binary format, and reloading
+    a cached MapFile. Runs headless and writes its maps to the
+    temp directory.
+    <p>Usage: java MapBenchmark [width]
+*/
+public class MapBenchmark {
+
+    private static final int MAP_HEIGHT = 15;
+    private static final int RUNS = 10;
+
+    private static Image[] tileImages;
+    private static Sprite[] hosts;
+
+    public static void main(String[] args) throws IOException {
+        int width = (args.length > 0) ?
+            Integer.parseInt(args[0]) : 100000;
+
+        tileImages = new Image[9];
+        for (int i=0; i<tileImages.length; i++) {
+            tileImages[i] = new BufferedImage(64, 64,
+                BufferedImage.TYPE_INT_RGB);
+        }
+        Animation anim = new Animation();
+        anim.addFrame(new BufferedImage(48, 48,
+            BufferedImage.TYPE_INT_ARGB), 100);
+        hosts = new Sprite[128];
+        hosts['o'] = new PowerUp.Star(anim);
+        hosts['!'] = new PowerUp.Music(anim);
+        hosts['*'] = new PowerUp.Goal(anim);
+        hosts['1'] = new Grub(anim, anim, anim, anim);
+        hosts['2'] = new Fly(anim, anim, anim, anim);
+
+        File textFile = File.createTempFile("map", ".txt");
+        File binaryFile = File.createTempFile("map", ".map");
+        textFile.deleteOnExit();
+        binaryFile.deleteOnExit();
+        writeTextMap(textFile, width, new Random(1));
+        MapFile.readText(textFile.getPath()).write(
+            binaryFile.getPath());
+
+        MapFile cached = MapFile.read(binaryFile.getPath());
+        System.out.println(width + "x" + MAP_HEIGHT + ", " +
+            cached.getNumSpawns() + " spawns");
+        System.out.println("text file:   " + textFile.length() +
+            " bytes");
+        System.out.println("binary file: " + binaryFile.length() +
+            " bytes");
+
+        // the first pass warms up the JIT
+        for (int pass=0; pass<2; pass++) {
+            long oldTime = 0;
+            long textTime = 0;
+            long binaryTime = 0;
+            long reloadTime = 0;
+            for (int i=0; i<RUNS; i++) {
+                long start = System.nanoTime();
+                loadOldWay(textFile.getPath());
+                oldTime+=System.nanoTime() - start;
+
+                start = System.nanoTime();
+                load(MapFile.readText(textFile.getPath()));
+                textTime+=System.nanoTime() - start;
+
+                start = System.nanoTime();
+                load(MapFile.read(binaryFile.getPath()));
+                binaryTime+=System.nanoTime() - start;
+
+                start = System.nanoTime();
+                load(cached);
+                reloadTime+=System.nanoTime() - start;
+            }
+            if (pass == 1) {
+                System.out.println("old text loader: " +
+                    oldTime / RUNS / 1000 + " us");
+                System.out.println("text MapFile:    " +
+                    textTime / RUNS / 1000 + " us");
+                System.out.println("binary MapFile:  " +
+                    binaryTime / RUNS / 1000 + " us");
+                System.out.println("cached reload:   " +
+                    reloadTime / RUNS / 1000 + " us");
+            }
+        }
+    }
+
+
+    /**
+        Creates a TileMap from a MapFile and spawns the first
+        screen of Sprites, like the first frame of the game.
+    */
+    private static TileMap load(MapFile mapFile) {
+        TileMap map = mapFile.createMap(tileImages, hosts);
+        map.getSpawner().update(map, 0, 13);
+        return map;
+    }
+
+
+    /**
+        Loads a text map like ResourceManager did before MapFile.
+    */
+    private static TileMap loadOldWay(String filename)
+        throws IOException
+    {
+        ArrayList lines = new ArrayList();
+        int width = 0;
+        BufferedReader reader = new BufferedReader(
+            new FileReader(filename));
+        while (true) {
+            String line = reader.readLine();
+            if (line == null) {
+                reader.close();
+                break;
+            }
+            if (!line.startsWith("#")) {
+                lines.add(line);
+                width = Math.max(width, line.length());
+            }
+        }
+
+        int height = lines.size();
+        TileMap newMap = new TileMap(width, height);
+        for (int y=0; y<height; y++) {
+            String line = (String)lines.get(y);
+            for (int x=0; x<line.length(); x++) {
+                char ch = line.charAt(x);
+                int tile = ch - 'A';
+                if (tile >= 0 && tile < tileImages.length) {
+                    newMap.setTile(x, y, tileImages[tile]);
+                }
+                else if (ch < hosts.length && hosts[ch] != null) {
+                    Sprite sprite = (Sprite)hosts[ch].clone();
+                    sprite.setX(TileMapRenderer.tilesToPixels(x) +
+                        (TileMapRenderer.tilesToPixels(1) -
+                        sprite.getWidth()) / 2);
+                    sprite.setY(TileMapRenderer.tilesToPixels(y + 1) -
+                        sprite.getHeight());
+                    newMap.addSprite(sprite);
+                }
+            }
+        }
+        return newMap;
+    }
+
+
+    /**
+        Writes a map with ground, blocks, and a Sprite about every
+        three columns.
+    */
+    private static void writeTextMap(File file, int width,
+        Random random) throws IOException
+    {
+        char[][] cells = new char[MAP_HEIGHT][width];
+        String spawns = "oooo!12";
+        for (int x=0; x<width; x++) {
+            for (int y=0; y<MAP_HEIGHT; y++) {
+                cells[y][x] = ' ';
+            }
+            cells[MAP_HEIGHT - 1][x] = 'B';
+            if (random.nextInt(8) == 0) {
+                cells[MAP_HEIGHT - 2][x] = (char)('A' +
+                    random.nextInt(tileImages.length));
+            }
+            else if (random.nextInt(3) == 0) {
+                cells[MAP_HEIGHT - 2 - random.nextInt(6)][x] =
+                    spawns.charAt(random.nextInt(spawns.length()));
+            }
+        }
+        cells[MAP_HEIGHT - 2][width - 2] = '*';
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+            new FileWriter(file)));
+        out.println("# generated by MapBenchmark");
+        for (int y=0; y<MAP_HEIGHT; y++) {
+            out.println(new String(cells[y]));
+        }
+        out.close();
+    }
+
+}
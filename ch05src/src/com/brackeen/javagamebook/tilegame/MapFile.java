@@ -0,0 +1,376 @@
+package com.brackeen.javagamebook.tilegame;
+
+import java.awt.Image;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.brackeen.javagamebook.graphics.Sprite;
+
+/**
+    The MapFile class is a parsed tile map: the tiles and the
+    places Sprites spawn, without any Images or Sprites. It's
+    read once and can create any number of TileMaps.
+    <p>Maps can be read from the text format (see maps/map1.txt)
+    or from a compact binary format, which is memory-mapped and
+    expanded into the tiles with one fill per run. Run this class
+    to convert a text map to the binary format:
+    <pre>java com.brackeen.javagamebook.tilegame.MapFile
+    maps/map1.txt maps/map1.map</pre>
+    <p>The binary format is big-endian:
+    <pre>
+    int    magic ('TMAP')
+    short  version
+    int    width
+    int    height
+    int    number of runs
+    then for each run of equal tiles, column by column (a run
+    can continue into the next column):
+    byte   length, 1 to 255
+    byte   tile; 0 is empty, 1 is tile A, 2 is tile B, etc.
+    int    number of spawns
+    then for each spawn, ordered by x:
+    byte   type (the character from the text map, like 'o')
+    int    x
+    short  y
+    </pre>
+    <p>Most of a column is sky or ground, so it takes a few runs
+    rather than a byte per cell.
+*/
+public class MapFile {
+
+    private static final int MAGIC = 0x544d4150;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 14;
+    private static final int MAX_RUN = 255;
+    private static final int SPAWN_SIZE = 7;
+
+    private int width;
+    private int height;
+    private byte[] tiles;
+    private int numSpawns;
+    private byte[] spawnTypes;
+    private int[] spawnX;
+    private int[] spawnY;
+
+    /**
+        Converts a text map to the binary format.
+        <p>Usage: java MapFile textfile [binaryfile]
+    */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println(
+                "Usage: java MapFile textfile [binaryfile]");
+            System.exit(1);
+        }
+        String outFile = (args.length > 1) ? args[1] :
+            args[0].replaceFirst("\\.txt$", "") + ".map";
+        MapFile mapFile = readText(args[0]);
+        mapFile.write(outFile);
+        System.out.println("Wrote " + outFile + " (" +
+            mapFile.getWidth() + "x" + mapFile.getHeight() + ", " +
+            mapFile.getNumSpawns() + " spawns)");
+    }
+
+
+    private MapFile(int width, int height, int numSpawns) {
+        this.width = width;
+        this.height = height;
+        this.numSpawns = numSpawns;
+        tiles = new byte[width * height];
+        spawnTypes = new byte[numSpawns];
+        spawnX = new int[numSpawns];
+        spawnY = new int[numSpawns];
+    }
+
+
+    /**
+        Reads a map in the text format. Lines that start with '#'
+        are comments; 'A' to 'Z' are tiles, spaces are empty, and
+        any other character is a Sprite spawn.
+    */
+    public static MapFile readText(String filename)
+        throws IOException
+    {
+        ArrayList lines = new ArrayList();
+        int width = 0;
+        int numSpawns = 0;
+
+        // read every line in the text file into the list
+        BufferedReader reader = new BufferedReader(
+            new FileReader(filename));
+        try {
+            while (true) {
+                String line = reader.readLine();
+                // no more lines to read
+                if (line == null) {
+                    break;
+                }
+
+                // add every line except for comments
+                if (!line.startsWith("#")) {
+                    lines.add(line);
+                    width = Math.max(width, line.length());
+                    for (int x=0; x<line.length(); x++) {
+                        if (isSpawn(line.charAt(x))) {
+                            numSpawns++;
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        // go column by column, so the spawns are ordered by x
+        int height = lines.size();
+        MapFile mapFile = new MapFile(width, height, numSpawns);
+        int spawn = 0;
+        for (int x=0; x<width; x++) {
+            for (int y=0; y<height; y++) {
+                String line = (String)lines.get(y);
+                if (x >= line.length()) {
+                    continue;
+                }
+                char ch = line.charAt(x);
+                if (ch >= 'A' && ch <= 'Z') {
+                    mapFile.tiles[x * height + y] =
+                        (byte)(ch - 'A' + 1);
+                }
+                else if (isSpawn(ch)) {
+                    mapFile.spawnTypes[spawn] = (byte)ch;
+                    mapFile.spawnX[spawn] = x;
+                    mapFile.spawnY[spawn] = y;
+                    spawn++;
+                }
+            }
+        }
+        return mapFile;
+    }
+
+
+    private static boolean isSpawn(char ch) {
+        return (ch > ' ' && ch < 128 && !(ch >= 'A' && ch <= 'Z'));
+    }
+
+
+    /**
+        Reads a map in the binary format. The file is
+        memory-mapped and each run of tiles is filled in at once.
+    */
+    public static MapFile read(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE ||
+                buffer.getInt() != MAGIC)
+            {
+                throw new IOException("Not a map file: " + filename);
+            }
+            int version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported map version " +
+                    version + ": " + filename);
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            if (width <= 0 || height <= 0 ||
+                (long)width * height > Integer.MAX_VALUE)
+            {
+                throw new IOException("Bad map size " + width + "x" +
+                    height + ": " + filename);
+            }
+            // the spawn count follows the runs
+            int numRuns = (buffer.remaining() < 4) ? -1 :
+                buffer.getInt();
+            if (numRuns < 0 ||
+                (long)numRuns * 2 > buffer.remaining() - 4)
+            {
+                throw new IOException("Bad map size " + width + "x" +
+                    height + ": " + filename);
+            }
+            int tilesEnd = buffer.position() + numRuns * 2;
+            int numSpawns = buffer.getInt(tilesEnd);
+            if (numSpawns < 0 || (long)numSpawns * SPAWN_SIZE >
+                buffer.limit() - tilesEnd - 4)
+            {
+                throw new IOException("Bad spawn count " + numSpawns +
+                    ": " + filename);
+            }
+            MapFile mapFile = new MapFile(width, height, numSpawns);
+            if (!mapFile.readRuns(buffer, numRuns)) {
+                throw new IOException("Runs don't fill the map: " +
+                    filename);
+            }
+            buffer.getInt();
+            for (int i=0; i<numSpawns; i++) {
+                mapFile.spawnTypes[i] = buffer.get();
+                mapFile.spawnX[i] = buffer.getInt();
+                mapFile.spawnY[i] = buffer.getShort() & 0xffff;
+            }
+            return mapFile;
+        }
+        finally {
+            file.close();
+        }
+    }
+
+
+    /**
+        Fills in the tiles from the runs at the buffer's
+        position. Returns false if the runs don't cover the map
+        exactly.
+    */
+    private boolean readRuns(ByteBuffer buffer, int numRuns) {
+        int cell = 0;
+        for (int i=0; i<numRuns; i++) {
+            int length = buffer.get() & 0xff;
+            byte tile = buffer.get();
+            if (length == 0 || cell + length > tiles.length) {
+                return false;
+            }
+            // the array starts out empty
+            if (tile != 0) {
+                Arrays.fill(tiles, cell, cell + length, tile);
+            }
+            cell+=length;
+        }
+        return (cell == tiles.length);
+    }
+
+
+    /**
+        Gets the number of runs the tiles take in the binary
+        format.
+    */
+    private int countRuns() {
+        int numRuns = 0;
+        for (int cell=0; cell<tiles.length; numRuns++) {
+            cell+=runLength(cell);
+        }
+        return numRuns;
+    }
+
+
+    private int runLength(int cell) {
+        int end = Math.min(tiles.length, cell + MAX_RUN);
+        int next = cell + 1;
+        while (next < end && tiles[next] == tiles[cell]) {
+            next++;
+        }
+        return next - cell;
+    }
+
+
+    /**
+        Writes this map in the binary format.
+    */
+    public void write(String filename) throws IOException {
+        if (height > 0xffff) {
+            throw new IOException("Map too tall: " + height);
+        }
+        int numRuns = countRuns();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 +
+            numRuns * 2 + 4 + numSpawns * SPAWN_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short)VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(numRuns);
+        for (int cell=0; cell<tiles.length; ) {
+            int length = runLength(cell);
+            buffer.put((byte)length);
+            buffer.put(tiles[cell]);
+            cell+=length;
+        }
+        buffer.putInt(numSpawns);
+        for (int i=0; i<numSpawns; i++) {
+            buffer.put(spawnTypes[i]);
+            buffer.putInt(spawnX[i]);
+            buffer.putShort((short)spawnY[i]);
+        }
+        buffer.flip();
+
+        FileOutputStream out = new FileOutputStream(filename);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+
+    /**
+        Creates a new TileMap from this map. The tiles are filled
+        in right away, using the specified tile Images. The
+        Sprites are cloned from the host Sprites (indexed by
+        spawn type, like hosts['o']) later, as the player
+        approaches them. The player isn't set.
+    */
+    public TileMap createMap(Image[] tileImages, Sprite[] hosts) {
+        TileMap map = new TileMap(width, height);
+        map.setTiles(tiles, tileImages);
+        map.setSpawner(new SpriteSpawner(this, hosts));
+        return map;
+    }
+
+
+    /**
+        Gets the width of this map, in tiles.
+    */
+    public int getWidth() {
+        return width;
+    }
+
+
+    /**
+        Gets the height of this map, in tiles.
+    */
+    public int getHeight() {
+        return height;
+    }
+
+
+    /**
+        Gets the number of Sprite spawns in this map.
+    */
+    public int getNumSpawns() {
+        return numSpawns;
+    }
+
+
+    /**
+        Gets the type of a spawn: the character from the text
+        map.
+    */
+    public char getSpawnType(int i) {
+        return (char)(spawnTypes[i] & 0xff);
+    }
+
+
+    /**
+        Gets the column of a spawn. Spawns are ordered by column.
+    */
+    public int getSpawnX(int i) {
+        return spawnX[i];
+    }
+
+
+    /**
+        Gets the row of a spawn.
+    */
+    public int getSpawnY(int i) {
+        return spawnY[i];
+    }
+
+}
@@ -4,6 +4,7 @@ import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import javax.swing.ImageIcon;
 
 import com.brackeen.javagamebook.graphics.*;
@@ -14,12 +15,19 @@ import com.brackeen.javagamebook.tilegame.sprites.*;
     The ResourceManager class loads and manages tile Images and
     "host" Sprites used in the game. Game Sprites are cloned from
     "host" Sprites.
+    <p>Maps are read from maps/mapN.map (the binary format) if it
+    exists, otherwise from maps/mapN.txt. Each map is parsed
+    once; reloading it only creates a new TileMap.
+    @see MapFile
 */
 public class ResourceManager {
 
     private ArrayList tiles;
     private int currentMap;
     private GraphicsConfiguration gc;
+    // parsed maps, keyed by name
+    private HashMap mapFiles;
+    private long lastLoadTime;
 
     // host sprites used for cloning
     private Sprite playerSprite;
@@ -28,6 +36,8 @@ public class ResourceManager {
     private Sprite goalSprite;
     private Sprite grubSprite;
     private Sprite flySprite;
+    // host sprites indexed by map character
+    private Sprite[] hosts;
 
     /**
         Creates a new ResourceManager with the specified
@@ -38,6 +48,13 @@ public class ResourceManager {
         loadTileImages();
         loadCreatureSprites();
         loadPowerUpSprites();
+        mapFiles = new HashMap();
+        hosts = new Sprite[128];
+        hosts['o'] = coinSprite;
+        hosts['!'] = musicSprite;
+        hosts['*'] = goalSprite;
+        hosts['1'] = grubSprite;
+        hosts['2'] = flySprite;
     }
 
 
@@ -89,8 +106,7 @@ public class ResourceManager {
         while (map == null) {
             currentMap++;
             try {
-                map = loadMap(
-                    "maps/map" + currentMap + ".txt");
+                map = loadMap("maps/map" + currentMap);
             }
             catch (IOException ex) {
                 if (currentMap == 1) {
@@ -108,8 +124,7 @@ public class ResourceManager {
 
     public TileMap reloadMap() {
         try {
-            return loadMap(
-                "maps/map" + currentMap + ".txt");
+            return loadMap("maps/map" + currentMap);
         }
         catch (IOException ex) {
             ex.printStackTrace();
@@ -118,63 +133,38 @@ public class ResourceManager {
     }
 
 
-    private TileMap loadMap(String filename)
+    /**
+        Gets the time, in milliseconds, the last map took to load
+        or reload.
+    */
+    public float getLastLoadTime() {
+        return lastLoadTime / 1000000f;
+    }
+
+
+    /**
+        Loads a map, without the file extension. The map is only
+        read and parsed the first time.
+    */
+    private TileMap loadMap(String name)
         throws IOException
     {
-        ArrayList lines = new ArrayList();
-        int width = 0;
-        int height = 0;
-
-        // read every line in the text file into the list
-        BufferedReader reader = new BufferedReader(
-            new FileReader(filename));
-        while (true) {
-            String line = reader.readLine();
-            // no more lines to read
-            if (line == null) {
-                reader.close();
-                break;
+        long startTime = System.nanoTime();
+        MapFile mapFile = (MapFile)mapFiles.get(name);
+        if (mapFile == null) {
+            File binaryFile = new File(name + ".map");
+            if (binaryFile.exists()) {
+                mapFile = MapFile.read(binaryFile.getPath());
             }
-
-            // add every line except for comments
-            if (!line.startsWith("#")) {
-                lines.add(line);
-                width = Math.max(width, line.length());
+            else {
+                mapFile = MapFile.readText(name + ".txt");
             }
+            mapFiles.put(name, mapFile);
         }
 
-        // parse the lines to create a TileEngine
-        height = lines.size();
-        TileMap newMap = new TileMap(width, height);
-        for (int y=0; y<height; y++) {
-            String line = (String)lines.get(y);
-            for (int x=0; x<line.length(); x++) {
-                char ch = line.charAt(x);
-
-                // check if the char represents tile A, B, C etc.
-                int tile = ch - 'A';
-                if (tile >= 0 && tile < tiles.size()) {
-                    newMap.setTile(x, y, (Image)tiles.get(tile));
-                }
-
-                // check if the char represents a sprite
-                else if (ch == 'o') {
-                    addSprite(newMap, coinSprite, x, y);
-                }
-                else if (ch == '!') {
-                    addSprite(newMap, musicSprite, x, y);
-                }
-                else if (ch == '*') {
-                    addSprite(newMap, goalSprite, x, y);
-                }
-                else if (ch == '1') {
-                    addSprite(newMap, grubSprite, x, y);
-                }
-                else if (ch == '2') {
-                    addSprite(newMap, flySprite, x, y);
-                }
-            }
-        }
+        Image[] tileImages = new Image[tiles.size()];
+        tiles.toArray(tileImages);
+        TileMap newMap = mapFile.createMap(tileImages, hosts);
 
         // add the player to the map
         Sprite player = (Sprite)playerSprite.clone();
@@ -182,34 +172,11 @@ public class ResourceManager {
         player.setY(0);
         newMap.setPlayer(player);
 
+        lastLoadTime = System.nanoTime() - startTime;
         return newMap;
     }
 
 
-    private void addSprite(TileMap map,
-        Sprite hostSprite, int tileX, int tileY)
-    {
-        if (hostSprite != null) {
-            // clone the sprite from the "host"
-            Sprite sprite = (Sprite)hostSprite.clone();
-
-            // center the sprite
-            sprite.setX(
-                TileMapRenderer.tilesToPixels(tileX) +
-                (TileMapRenderer.tilesToPixels(1) -
-                sprite.getWidth()) / 2);
-
-            // bottom-justify the sprite
-            sprite.setY(
-                TileMapRenderer.tilesToPixels(tileY + 1) -
-                sprite.getHeight());
-
-            // add it to the map
-            map.addSprite(sprite);
-        }
-    }
-
-
     // -----------------------------------------------------------
     // code for loading sprites and images
     // -----------------------------------------------------------
@@ -0,0 +1,143 @@
+package com.brackeen.javagamebook.tilegame;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.Random;
+
+import com.brackeen.javagamebook.graphics.Animation;
+import com.brackeen.javagamebook.graphics.Sprite;
+import com.brackeen.javagamebook.tilegame.sprites.*;
+
+/**
+    Times the sprite updates and player collision checks of a
+    generated 10,000-column map with thousands of awake Grubs
+    and Flys, updating every sprite every frame (the old way)
+    against the SpriteRegions scheduler. Runs headless.
+    <p>Usage: java SimulationBenchmark [frames]
+*/
+public class SimulationBenchmark {
+
+    private static final int MAP_WIDTH = 10000;
+    private static final int MAP_HEIGHT = 15;
+    private static final int SCREEN_WIDTH = 800;
+    private static final int FRAME_TIME = 16;
+
+    public static void main(String[] args) {
+        int numFrames = (args.length > 0) ?
+            Integer.parseInt(args[0]) : 2000;
+
+        for (int pass=0; pass<2; pass++) {
+            GameManager game = new GameManager();
+            game.setMap(createMap(new Random(1)));
+            long start = System.nanoTime();
+            for (int i=0; i<numFrames; i++) {
+                updateAll(game, FRAME_TIME);
+            }
+            long all = System.nanoTime() - start;
+
+            game = new GameManager();
+            game.setMap(createMap(new Random(1)));
+            start = System.nanoTime();
+            for (int i=0; i<numFrames; i++) {
+                game.updateSprites(FRAME_TIME, SCREEN_WIDTH);
+                game.getSpriteCollision(game.getMap().getPlayer());
+            }
+            long regions = System.nanoTime() - start;
+
+            // the first pass warms up the JIT
+            if (pass == 1) {
+                System.out.println(
+                    game.getMap().getRegions().size() + " sprites");
+                System.out.println("every sprite: " +
+                    all / numFrames / 1000 + " us/frame");
+                System.out.println("regions:      " +
+                    regions / numFrames / 1000 + " us/frame");
+            }
+        }
+    }
+
+
+    /**
+        Updates every sprite and checks every sprite against the
+        player, like GameManager did before SpriteRegions.
+    */
+    private static void updateAll(GameManager game, long elapsedTime) {
+        TileMap map = game.getMap();
+        Iterator i = map.getSprites();
+        while (i.hasNext()) {
+            Sprite sprite = (Sprite)i.next();
+            if (!game.updateSprite(sprite, elapsedTime)) {
+                i.remove();
+            }
+        }
+
+        Sprite player = map.getPlayer();
+        i = map.getSprites();
+        while (i.hasNext()) {
+            if (game.isCollision(player, (Sprite)i.next())) {
+                break;
+            }
+        }
+    }
+
+
+    /**
+        Creates a map with ground, walls, and a Grub or a Fly
+        about every four columns, all awake.
+    */
+    private static TileMap createMap(Random random) {
+        Image tile = new BufferedImage(64, 64,
+            BufferedImage.TYPE_INT_RGB);
+        Animation anim = createAnim(new BufferedImage(48, 48,
+            BufferedImage.TYPE_INT_ARGB));
+
+        TileMap map = new TileMap(MAP_WIDTH, MAP_HEIGHT);
+        for (int x=0; x<MAP_WIDTH; x++) {
+            map.setTile(x, MAP_HEIGHT - 1, tile);
+            map.setTile(x, MAP_HEIGHT - 2, tile);
+            if (x == 0 || x == MAP_WIDTH - 1 ||
+                random.nextInt(20) == 0)
+            {
+                map.setTile(x, MAP_HEIGHT - 3, tile);
+            }
+        }
+
+        for (int x=1; x<MAP_WIDTH - 1; x++) {
+            if (random.nextInt(4) != 0 ||
+                map.getTile(x, MAP_HEIGHT - 3) != null)
+            {
+                continue;
+            }
+            Creature creature;
+            int y;
+            if (random.nextBoolean()) {
+                creature = new Grub(anim, anim, anim, anim);
+                y = MAP_HEIGHT - 3;
+            }
+            else {
+                creature = new Fly(anim, anim, anim, anim);
+                y = MAP_HEIGHT - 6;
+            }
+            creature.setX(TileMapRenderer.tilesToPixels(x) + 8);
+            creature.setY(TileMapRenderer.tilesToPixels(y + 1) -
+                creature.getHeight());
+            creature.wakeUp();
+            map.addSprite(creature);
+        }
+
+        Player player = new Player(anim, anim, anim, anim);
+        player.setX(TileMapRenderer.tilesToPixels(MAP_WIDTH / 2));
+        player.setY(TileMapRenderer.tilesToPixels(MAP_HEIGHT - 9));
+        map.setPlayer(player);
+        return map;
+    }
+
+
+    private static Animation createAnim(Image image) {
+        Animation anim = new Animation();
+        anim.addFrame(image, 100);
+        return anim;
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.brackeen.javagamebook.tilegame;
+
+import java.util.*;
+
+import com.brackeen.javagamebook.graphics.Sprite;
+
+/**
+    The SpriteRegions class keeps the Sprites of a TileMap in
+    buckets of columns, and schedules their updates by distance
+    from the screen.
+    <ul><li>Buckets on the screen, plus a margin, are updated
+        every frame.
+    <li>The next few buckets on each side are updated a few times
+        a second, in fixed steps.
+    <li>Buckets further away are asleep and not updated at all.
+    </ul>
+    <p>Each Sprite remembers how far it has been simulated. When
+    a sleeping Sprite is updated again, it catches up on the
+    time it missed in fixed steps (up to a limit), so where it
+    ends up doesn't depend on the frame rate.
+    <p>Sprites are moved to a new bucket as soon as they cross
+    into it.
+*/
+public class SpriteRegions {
+
+    /**
+        The number of tile columns in a bucket. Sprites should be
+        narrower than this.
+    */
+    public static final int BUCKET_COLUMNS = 16;
+
+    // columns beyond the screen updated every frame
+    private static final int ACTIVE_MARGIN = 16;
+    // buckets beyond the active ones updated at a reduced rate
+    private static final int NEAR_BUCKETS = 4;
+    // the fixed step for reduced updates and catching up
+    private static final int STEP = 100;
+    // the most time a Sprite catches up on when it wakes up
+    private static final int MAX_CATCH_UP = 5000;
+
+    /**
+        The Updater interface updates one Sprite.
+    */
+    public interface Updater {
+
+        /**
+            Updates the Sprite for the specified amount of time.
+            Returns false if the Sprite should be removed from
+            the map.
+        */
+        public boolean updateSprite(Sprite sprite, long elapsedTime);
+    }
+
+    private ArrayList[] buckets;
+    private IdentityHashMap entries;
+    private long time;
+    private long lastReducedTime;
+
+    /**
+        Creates a new SpriteRegions for a map with the specified
+        width, in tiles.
+    */
+    public SpriteRegions(int width) {
+        buckets = new ArrayList[(width + BUCKET_COLUMNS - 1) /
+            BUCKET_COLUMNS];
+        for (int i=0; i<buckets.length; i++) {
+            buckets[i] = new ArrayList();
+        }
+        entries = new IdentityHashMap();
+    }
+
+
+    /**
+        Adds a Sprite, as simulated up to now.
+    */
+    public void add(Sprite sprite) {
+        Entry entry = new Entry(sprite, getBucket(sprite), time);
+        entries.put(sprite, entry);
+        buckets[entry.bucket].add(entry);
+    }
+
+
+    /**
+        Removes a Sprite.
+    */
+    public void remove(Sprite sprite) {
+        Entry entry = (Entry)entries.remove(sprite);
+        if (entry != null) {
+            buckets[entry.bucket].remove(entry);
+        }
+    }
+
+
+    /**
+        Gets the number of Sprites.
+    */
+    public int size() {
+        return entries.size();
+    }
+
+
+    /**
+        Gets an Iterator of all the Sprites, bucket by bucket.
+    */
+    public Iterator getSprites() {
+        return getSprites(0, buckets.length * BUCKET_COLUMNS);
+    }
+
+
+    /**
+        Gets an Iterator of the Sprites that might overlap the
+        specified range of columns (inclusive). It can also
+        return Sprites just outside the range.
+    */
+    public Iterator getSprites(int fromTileX, int toTileX) {
+        return new SpriteIterator(
+            getBucketForTile(fromTileX - BUCKET_COLUMNS),
+            getBucketForTile(toTileX));
+    }
+
+
+    /**
+        Advances the clock and updates the Sprites, depending on
+        how far they are from the visible columns.
+    */
+    public void update(long elapsedTime, int firstTileX,
+        int lastTileX, Updater updater)
+    {
+        time+=elapsedTime;
+
+        int firstActive = getBucketForTile(firstTileX - ACTIVE_MARGIN);
+        int lastActive = getBucketForTile(lastTileX + ACTIVE_MARGIN);
+        boolean reducedTick = (time - lastReducedTime >= STEP);
+        if (reducedTick) {
+            lastReducedTime = time;
+        }
+
+        int first = Math.max(0, firstActive - NEAR_BUCKETS);
+        int last = Math.min(buckets.length - 1,
+            lastActive + NEAR_BUCKETS);
+        for (int b=first; b<=last; b++) {
+            boolean active = (b >= firstActive && b <= lastActive);
+            if (active || reducedTick) {
+                updateBucket(b, active, updater);
+            }
+        }
+    }
+
+
+    private void updateBucket(int b, boolean active,
+        Updater updater)
+    {
+        ArrayList bucket = buckets[b];
+        int i = 0;
+        while (i < bucket.size()) {
+            Entry entry = (Entry)bucket.get(i);
+            if (!catchUp(entry, active, updater)) {
+                entries.remove(entry.sprite);
+                bucket.remove(i);
+                continue;
+            }
+
+            // move to a new bucket if needed. Sprites that move
+            // ahead are skipped later, since they're up to date.
+            int newBucket = getBucket(entry.sprite);
+            if (newBucket != b) {
+                bucket.remove(i);
+                entry.bucket = newBucket;
+                buckets[newBucket].add(entry);
+                continue;
+            }
+            i++;
+        }
+    }
+
+
+    /**
+        Simulates a Sprite up to the current time. Active Sprites
+        finish with one step of whatever time is left; others
+        keep it for later. Returns false if the Sprite should be
+        removed.
+    */
+    private boolean catchUp(Entry entry, boolean active,
+        Updater updater)
+    {
+        if (time - entry.time > MAX_CATCH_UP) {
+            entry.time = time - MAX_CATCH_UP;
+        }
+        long behind = time - entry.time;
+        if (active && behind <= STEP) {
+            entry.time = time;
+            return (behind == 0 ||
+                updater.updateSprite(entry.sprite, behind));
+        }
+
+        while (time - entry.time >= STEP) {
+            entry.time+=STEP;
+            if (!updater.updateSprite(entry.sprite, STEP)) {
+                return false;
+            }
+        }
+        if (active && entry.time < time) {
+            long remaining = time - entry.time;
+            entry.time = time;
+            return updater.updateSprite(entry.sprite, remaining);
+        }
+        return true;
+    }
+
+
+    private int getBucket(Sprite sprite) {
+        return getBucketForTile(
+            TileMapRenderer.pixelsToTiles(sprite.getX()));
+    }
+
+
+    private int getBucketForTile(int tileX) {
+        int b = (tileX < 0) ? 0 : tileX / BUCKET_COLUMNS;
+        return Math.min(b, buckets.length - 1);
+    }
+
+
+    /**
+        A Sprite, its bucket, and the time it's simulated up to.
+    */
+    private static class Entry {
+
+        Sprite sprite;
+        int bucket;
+        long time;
+
+        Entry(Sprite sprite, int bucket, long time) {
+            this.sprite = sprite;
+            this.bucket = bucket;
+            this.time = time;
+        }
+    }
+
+
+    /**
+        Iterates the Sprites in a range of buckets.
+    */
+    private class SpriteIterator implements Iterator {
+
+        private int bucket;
+        private int lastBucket;
+        private Iterator i;
+        private Entry current;
+
+        public SpriteIterator(int firstBucket, int lastBucket) {
+            bucket = firstBucket;
+            this.lastBucket = lastBucket;
+            i = buckets[bucket].iterator();
+        }
+
+        public boolean hasNext() {
+            while (!i.hasNext() && bucket < lastBucket) {
+                bucket++;
+                i = buckets[bucket].iterator();
+            }
+            return i.hasNext();
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = (Entry)i.next();
+            return current.sprite;
+        }
+
+        public void remove() {
+            i.remove();
+            entries.remove(current.sprite);
+        }
+    }
+}
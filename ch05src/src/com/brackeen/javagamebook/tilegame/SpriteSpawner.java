@@ -0,0 +1,116 @@
+package com.brackeen.javagamebook.tilegame;
+
+import com.brackeen.javagamebook.graphics.Sprite;
+
+/**
+    The SpriteSpawner class adds the Sprites of a MapFile to a
+    TileMap as the player approaches them, instead of all at
+    once when the map is loaded. Sprites are cloned from "host"
+    Sprites when they come within SPAWN_MARGIN columns of the
+    screen, so they're in place before they're seen or updated.
+    <p>Each TileMap has its own SpriteSpawner, so reloading a
+    map starts its spawns over.
+*/
+public class SpriteSpawner {
+
+    /**
+        The number of columns beyond the screen that Sprites are
+        spawned.
+    */
+    public static final int SPAWN_MARGIN = 32;
+
+    private MapFile mapFile;
+    private Sprite[] hosts;
+    private boolean started;
+    // spawns lo to hi-1 have been spawned
+    private int lo;
+    private int hi;
+
+    /**
+        Creates a new SpriteSpawner for the spawns of a MapFile.
+        The host Sprites are indexed by spawn type.
+    */
+    public SpriteSpawner(MapFile mapFile, Sprite[] hosts) {
+        this.mapFile = mapFile;
+        this.hosts = hosts;
+    }
+
+
+    /**
+        Spawns the Sprites near the specified range of visible
+        columns (inclusive) that haven't been spawned yet.
+    */
+    public void update(TileMap map, int firstTileX, int lastTileX) {
+        int from = firstTileX - SPAWN_MARGIN;
+        int to = lastTileX + SPAWN_MARGIN;
+        if (!started) {
+            started = true;
+            lo = findFirst(from);
+            hi = lo;
+        }
+        while (hi < mapFile.getNumSpawns() &&
+            mapFile.getSpawnX(hi) <= to)
+        {
+            spawn(map, hi);
+            hi++;
+        }
+        while (lo > 0 && mapFile.getSpawnX(lo - 1) >= from) {
+            lo--;
+            spawn(map, lo);
+        }
+    }
+
+
+    /**
+        Gets the number of Sprites that haven't been spawned yet.
+    */
+    public int getNumRemaining() {
+        return mapFile.getNumSpawns() - (hi - lo);
+    }
+
+
+    /**
+        Finds the first spawn at or after the specified column.
+    */
+    private int findFirst(int tileX) {
+        int low = 0;
+        int high = mapFile.getNumSpawns();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mapFile.getSpawnX(mid) < tileX) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    private void spawn(TileMap map, int i) {
+        char type = mapFile.getSpawnType(i);
+        Sprite hostSprite = (type < hosts.length) ? hosts[type] : null;
+        if (hostSprite != null) {
+            // clone the sprite from the "host"
+            Sprite sprite = (Sprite)hostSprite.clone();
+            int tileX = mapFile.getSpawnX(i);
+            int tileY = mapFile.getSpawnY(i);
+
+            // center the sprite
+            sprite.setX(
+                TileMapRenderer.tilesToPixels(tileX) +
+                (TileMapRenderer.tilesToPixels(1) -
+                sprite.getWidth()) / 2);
+
+            // bottom-justify the sprite
+            sprite.setY(
+                TileMapRenderer.tilesToPixels(tileY + 1) -
+                sprite.getHeight());
+
+            // add it to the map
+            map.addSprite(sprite);
+        }
+    }
+
+}
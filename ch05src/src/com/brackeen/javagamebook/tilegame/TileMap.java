@@ -1,7 +1,6 @@
 package com.brackeen.javagamebook.tilegame;
 
 import java.awt.Image;
-import java.util.LinkedList;
 import java.util.Iterator;
 
 import com.brackeen.javagamebook.graphics.Sprite;
@@ -11,11 +10,13 @@ import com.brackeen.javagamebook.graphics.Sprite;
     map, including Sprites. Each tile is a reference to an
     Image. Of course, Images are used multiple times in the tile
     map.
+    <p>The Sprites are kept in SpriteRegions, bucketed by column.
 */
 public class TileMap {
 
     private Image[][] tiles;
-    private LinkedList sprites;
+    private SpriteRegions sprites;
+    private SpriteSpawner spawner;
     private Sprite player;
 
     /**
@@ -24,7 +25,7 @@ public class TileMap {
     */
     public TileMap(int width, int height) {
         tiles = new Image[width][height];
-        sprites = new LinkedList();
+        sprites = new SpriteRegions(width);
     }
 
 
@@ -69,6 +70,25 @@ public class TileMap {
     }
 
 
+    /**
+        Sets all the tiles at once from tile codes, column by
+        column: 0 is empty, 1 is the first Image, 2 the second,
+        and so on. Codes without an Image are left empty.
+    */
+    public void setTiles(byte[] codes, Image[] images) {
+        int height = getHeight();
+        int i = 0;
+        for (int x=0; x<tiles.length; x++) {
+            Image[] column = tiles[x];
+            for (int y=0; y<height; y++) {
+                int code = codes[i++] & 0xff;
+                column[y] = (code > 0 && code <= images.length) ?
+                    images[code - 1] : null;
+            }
+        }
+    }
+
+
     /**
         Gets the player Sprite.
     */
@@ -106,7 +126,42 @@ public class TileMap {
         excluding the player Sprite.
     */
     public Iterator getSprites() {
-        return sprites.iterator();
+        return sprites.getSprites();
+    }
+
+
+    /**
+        Gets an Iterator of the Sprites in this map that might
+        overlap the specified range of columns (inclusive),
+        excluding the player Sprite.
+    */
+    public Iterator getSprites(int fromTileX, int toTileX) {
+        return sprites.getSprites(fromTileX, toTileX);
+    }
+
+
+    /**
+        Gets the SpriteSpawner that adds Sprites to this map as
+        the player approaches them, or null if there isn't one.
+    */
+    public SpriteSpawner getSpawner() {
+        return spawner;
+    }
+
+
+    /**
+        Sets the SpriteSpawner for this map.
+    */
+    public void setSpawner(SpriteSpawner spawner) {
+        this.spawner = spawner;
+    }
+
+
+    /**
+        Gets the SpriteRegions that hold the Sprites in this map.
+    */
+    public SpriteRegions getRegions() {
+        return sprites;
     }
 
 }
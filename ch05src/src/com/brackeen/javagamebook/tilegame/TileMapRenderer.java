@@ -72,6 +72,22 @@ public class TileMapRenderer {
     }
 
 
+    /**
+        Gets the horizontal scrolling position of the map, based
+        on the player's position.
+    */
+    public static int getOffsetX(TileMap map, int screenWidth) {
+        Sprite player = map.getPlayer();
+        int mapWidth = tilesToPixels(map.getWidth());
+
+        int offsetX = screenWidth / 2 -
+            Math.round(player.getX()) - TILE_SIZE;
+        offsetX = Math.min(offsetX, 0);
+        offsetX = Math.max(offsetX, screenWidth - mapWidth);
+        return offsetX;
+    }
+
+
     /**
         Draws the specified TileMap.
     */
@@ -83,10 +99,7 @@ public class TileMapRenderer {
 
         // get the scrolling position of the map
         // based on player's position
-        int offsetX = screenWidth / 2 -
-            Math.round(player.getX()) - TILE_SIZE;
-        offsetX = Math.min(offsetX, 0);
-        offsetX = Math.max(offsetX, screenWidth - mapWidth);
+        int offsetX = getOffsetX(map, screenWidth);
 
         // get the y offset to draw all sprites and tiles
         int offsetY = screenHeight -
@@ -132,8 +145,8 @@ public class TileMapRenderer {
             Math.round(player.getY()) + offsetY,
             null);
 
-        // draw sprites
-        Iterator i = map.getSprites();
+        // draw the sprites near the screen
+        Iterator i = map.getSprites(firstTileX, lastTileX);
         while (i.hasNext()) {
             Sprite sprite = (Sprite)i.next();
             int x = Math.round(sprite.getX()) + offsetX;
@@ -0,0 +1,151 @@
+package com.brackeen.javagamebook.util;
+
+import java.io.InputStream;
+import java.io.IOException;
+
+/**
+    The ReadAheadInputStream class reads an InputStream ahead of
+    time on a daemon thread into a circular buffer, so that a
+    reader that can't wait for the disk (like the sound mixer)
+    usually finds the data already there. Reads only block when
+    the buffer has run dry.
+*/
+public class ReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private InputStream in;
+    private byte[] buffer;
+    private int head;
+    private int count;
+    private boolean endOfStream;
+    private boolean closed;
+    private IOException error;
+
+    /**
+        Creates a new ReadAheadInputStream that reads up to
+        bufferSize bytes ahead of the reader.
+    */
+    public ReadAheadInputStream(InputStream in, int bufferSize) {
+        this.in = in;
+        buffer = new byte[Math.max(bufferSize, CHUNK_SIZE)];
+        Thread thread = new Thread(new Reader(), "ReadAhead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+    }
+
+
+    /**
+        Reads bytes that have already been read ahead, waiting
+        only if there are none.
+    */
+    public synchronized int read(byte[] b, int offset, int length)
+        throws IOException
+    {
+        while (count == 0 && !endOfStream && !closed &&
+            error == null)
+        {
+            try {
+                wait();
+            }
+            catch (InterruptedException ex) {
+                // treat an interrupted reader like the end of the
+                // stream
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        if (count == 0) {
+            if (error != null && !closed) {
+                throw error;
+            }
+            return -1;
+        }
+
+        length = Math.min(length, count);
+        int first = Math.min(length, buffer.length - head);
+        System.arraycopy(buffer, head, b, offset, first);
+        System.arraycopy(buffer, 0, b, offset + first, length - first);
+        head = (head + length) % buffer.length;
+        count-=length;
+        notifyAll();
+        return length;
+    }
+
+
+    public synchronized int available() {
+        return count;
+    }
+
+
+    /**
+        Closes this stream. The underlying stream is closed by
+        the read-ahead thread.
+    */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+
+    /**
+        Fills the buffer until the end of the underlying stream
+        or until this stream is closed.
+    */
+    private class Reader implements Runnable {
+
+        public void run() {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            try {
+                while (true) {
+                    int numBytesRead = in.read(chunk, 0, chunk.length);
+                    synchronized (ReadAheadInputStream.this) {
+                        if (numBytesRead == -1) {
+                            endOfStream = true;
+                            ReadAheadInputStream.this.notifyAll();
+                            return;
+                        }
+                        // wait for room in the buffer
+                        while (!closed &&
+                            buffer.length - count < numBytesRead)
+                        {
+                            ReadAheadInputStream.this.wait();
+                        }
+                        if (closed) {
+                            return;
+                        }
+                        int tail = (head + count) % buffer.length;
+                        int first = Math.min(numBytesRead,
+                            buffer.length - tail);
+                        System.arraycopy(chunk, 0, buffer, tail, first);
+                        System.arraycopy(chunk, first, buffer, 0,
+                            numBytesRead - first);
+                        count+=numBytesRead;
+                        ReadAheadInputStream.this.notifyAll();
+                    }
+                }
+            }
+            catch (IOException ex) {
+                synchronized (ReadAheadInputStream.this) {
+                    error = ex;
+                    ReadAheadInputStream.this.notifyAll();
+                }
+            }
+            catch (InterruptedException ex) {
+                // stop reading
+            }
+            finally {
+                try {
+                    in.close();
+                }
+                catch (IOException ex) { }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.hypefiend.javagamebook.client;
+
+import com.hypefiend.javagamebook.common.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.net.*;
+import java.io.*;
+
+import org.apache.log4j.*;
+
+/**
+ * UdpClient.java
+ *
+ * The client end of the server's UdpTransport.  Start it with the token 
+ * from the server's S_UDP_TOKEN event; it says hello until the server 
+ * answers, then events sent with send() go over UDP, and the ones it 
+ * receives go on the same queue as the NIOEventReader's.
+ * 
+ * @version 1.0
+ */
+public class UdpClient extends Thread implements UdpConnection.PacketSink, UdpConnection.PayloadHandler {
+    /** log4j logger */
+    private Logger log = Logger.getLogger(UdpClient.class);
+
+    /** how often to say hello until the server answers, in ms */
+    private static final long HELLO_INTERVAL = 250L;
+
+    /** reference to the game client */
+    private GameClient gameClient;
+
+    /** queue for incoming events */
+    private EventQueue queue;
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private UdpConnection connection;
+    private ConcurrentLinkedQueue outgoing = new ConcurrentLinkedQueue();
+    private ByteBuffer readBuff = ByteBuffer.allocate(UdpConnection.HEADER_SIZE + Globals.MAX_EVENT_SIZE);
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+    private volatile boolean running;
+
+    /** 
+     * constructor.  server is the server's UDP address, 
+     * usually its host on Globals.UDP_PORT
+     */
+    public UdpClient(GameClient gc, SocketAddress server, int token, EventQueue queue) throws IOException {
+	super("UdpClient");
+	this.gameClient = gc;
+	this.queue = queue;
+	channel = DatagramChannel.open();
+	channel.configureBlocking(false);
+	channel.connect(server);
+	connection = new UdpConnection(token, server, Globals.UDP_CHANNEL_MODES);
+    }
+
+    /**
+     * has the server bound our session yet?
+     */
+    public boolean isBound() {
+	return connection.isHelloReceived();
+    }
+
+    public UdpConnection getConnection() {
+	return connection;
+    }
+
+    /**
+     * send an event on one of Globals.UDP_CHANNEL_MODES
+     */
+    public void send(GameEvent event, int udpChannel) {
+	byte payload[];
+	synchronized (writeBuffer) {
+	    writeBuffer.clear();
+	    writeBuffer.putInt(event.getGameName() != null ? event.getGameName().hashCode() : 0);
+	    event.write(writeBuffer);
+	    writeBuffer.flip();
+	    payload = new byte[writeBuffer.remaining()];
+	    writeBuffer.get(payload);
+	}
+	outgoing.add(new Object[] { Integer.valueOf(udpChannel), payload });
+	if (selector != null)
+	    selector.wakeup();
+    }
+
+    public void run() {
+	try {
+	    selector = Selector.open();
+	    channel.register(selector, SelectionKey.OP_READ);
+	}
+	catch (IOException ioe) {
+	    log.error("ioexception while registering udp channel with selector", ioe);
+	    return;
+	}
+
+	long lastHello = 0;
+	running = true;
+	while (running) {
+	    try {
+		selector.select(Globals.UDP_UPDATE_INTERVAL);
+		selector.selectedKeys().clear();
+		long now = System.currentTimeMillis();
+
+		while (true) {
+		    readBuff.clear();
+		    if (channel.receive(readBuff) == null)
+			break;
+		    readBuff.flip();
+		    if (readBuff.remaining() >= UdpConnection.HEADER_SIZE && 
+			readBuff.getInt(0) == connection.getToken())
+			connection.receive(readBuff, this, this, now);
+		}
+
+		if (!connection.isHelloReceived()) {
+		    if (now - lastHello >= HELLO_INTERVAL) {
+			connection.sendHello(this);
+			lastHello = now;
+		    }
+		    continue;
+		}
+		Object o[];
+		while ((o = (Object[]) outgoing.poll()) != null) 
+		    connection.send(((Integer) o[0]).intValue(), ByteBuffer.wrap((byte[]) o[1]), this, now);
+		connection.update(this, now);
+	    }
+	    catch (IOException ioe) {
+		log.warn("error during udp select(): " + ioe.getMessage());
+	    }
+	    catch (Exception e) {
+		log.error("exception during udp select()", e);
+	    }
+	}
+	try {
+	    channel.close();
+	}
+	catch (IOException ioe) {
+	}
+    }
+
+    /**
+     * UdpConnection.PacketSink
+     */
+    public void sendPacket(ByteBuffer packet, SocketAddress to) {
+	try {
+	    channel.write(packet);
+	}
+	catch (IOException ioe) {
+	    // nobody listening yet, or a full socket buffer: it's UDP, carry on
+	}
+    }
+
+    /**
+     * UdpConnection.PayloadHandler
+     */
+    public void deliver(UdpConnection conn, int udpChannel, ByteBuffer payload) {
+	payload.getInt();
+	GameEvent event = gameClient.createGameEvent();
+	event.read(payload);
+	queue.enQueue(event);
+    }
+
+    public void shutdown() {
+	running = false;
+	if (selector != null)
+	    selector.wakeup();
+    }
+}// UdpClient
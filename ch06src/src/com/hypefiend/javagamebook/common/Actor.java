@@ -0,0 +1,80 @@
+package com.hypefiend.javagamebook.common;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.log4j.Logger;
+
+/**
+ * Actor.java
+ *
+ * A lightweight alternative to Wrap: a mailbox of GameEvents that
+ * runs on a shared Executor instead of its own threads.
+ * Events posted to one Actor are processed one at a time, in the
+ * order they were posted, so the state an Actor owns needs no locks.
+ * Different Actors run in parallel on the executor's threads.
+ *
+ * @version 1.0
+ */
+public abstract class Actor implements Runnable, EventHandler {
+    /** log4j logger */
+    private static Logger log = Logger.getLogger("Actor");
+
+    /** max events to process before giving other actors a turn */
+    public static final int BATCH_SIZE = 64;
+
+    /** incoming events */
+    private ConcurrentLinkedQueue mailbox = new ConcurrentLinkedQueue();
+
+    /** are we queued on (or running on) the executor? */
+    private AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** where we run */
+    private Executor executor;
+
+    public Actor(Executor executor) {
+	this.executor = executor;
+    }
+
+    /**
+     * queue the event, and schedule the actor if it isn't already
+     */
+    public void handleEvent(GameEvent event) {
+	mailbox.offer(event);
+	if (scheduled.compareAndSet(false, true))
+	    executor.execute(this);
+    }
+
+    /**
+     * process a batch of events, then reschedule if more came in
+     */
+    public void run() {
+	for (int i=0; i<BATCH_SIZE; i++) {
+	    GameEvent event = (GameEvent) mailbox.poll();
+	    if (event == null)
+		break;
+	    try {
+		processEvent(event);
+	    }
+	    catch (Exception e) {
+		log.error("exception processing event type " + event.getType(), e);
+	    }
+	}
+	scheduled.set(false);
+	if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+	    executor.execute(this);
+    }
+
+    /**
+     * get the current # of events waiting
+     */
+    public int size() {
+	return mailbox.size();
+    }
+
+    /**
+     * subclasses must implement to do their processing
+     */
+    protected abstract void processEvent(GameEvent event);
+
+}// Actor
@@ -2,6 +2,7 @@ package com.hypefiend.javagamebook.common;
 
 import com.hypefiend.javagamebook.common.GameEvent;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.nio.BufferUnderflowException;
 import java.net.InetAddress;
 
@@ -40,6 +41,20 @@ public class Attachment {
 
      /** temporary storage of the payload before it is read into an event  */
      public byte payload[];
+
+    // admission control state, used by the server's SelectAndRead
+
+    /** limits the events this client can send, null if unlimited */
+    public TokenBucket bucket;
+    /** TokenBuckets for event types with their own limits, by type */
+    public HashMap typeBuckets;
+    /** events read lately, halved every second, to find the noisiest clients */
+    public int recentEvents;
+    /** not reading because the client is over its rate, until this nanoTime */
+    public boolean rateLimited;
+    public long resumeAt;
+    /** not reading because the server is overloaded */
+    public boolean overloadPaused;
     
     /** 
      * constructor. initiales the payload array and the read buffer 
@@ -0,0 +1,40 @@
+package com.hypefiend.javagamebook.common;
+
+/**
+ * BitReader.java
+ *
+ * Reads values written by a BitWriter.
+ *
+ * @version 1.0
+ */
+public class BitReader {
+    private byte buf[];
+    private int pos;
+    private int end;
+    private long acc;
+    private int accBits;
+
+    public BitReader(byte buf[], int offset, int length) {
+	this.buf = buf;
+	pos = offset;
+	end = offset + length;
+    }
+
+    /**
+     * read an unsigned value of the given width
+     */
+    public int read(int bits) {
+	while (accBits < bits) {
+	    if (pos == end)
+		throw new IllegalArgumentException("read past the end of the buffer");
+	    acc = (acc << 8) | (buf[pos++] & 0xff);
+	    accBits += 8;
+	}
+	accBits -= bits;
+	return (int) ((acc >>> accBits) & ((1L << bits) - 1));
+    }
+
+    public boolean readBit() {
+	return read(1) == 1;
+    }
+}// BitReader
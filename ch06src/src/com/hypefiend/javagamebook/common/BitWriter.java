@@ -0,0 +1,74 @@
+package com.hypefiend.javagamebook.common;
+
+/**
+ * BitWriter.java
+ *
+ * Packs values of any width (up to 32 bits) into a byte array,
+ * most significant bit first.  Reusable: call reset() and write again.
+ *
+ * @version 1.0
+ */
+public class BitWriter {
+    private byte buf[];
+    private int bytes;
+    /** bits waiting to be written, in the low bits */
+    private long acc;
+    private int accBits;
+
+    public BitWriter(int capacity) {
+	buf = new byte[capacity];
+    }
+
+    public void reset() {
+	bytes = 0;
+	acc = 0;
+	accBits = 0;
+    }
+
+    /**
+     * write the low bits of value
+     */
+    public void write(int value, int bits) {
+	acc = (acc << bits) | (value & ((1L << bits) - 1));
+	accBits += bits;
+	while (accBits >= 8) {
+	    accBits -= 8;
+	    if (bytes == buf.length) {
+		byte b[] = new byte[buf.length * 2];
+		System.arraycopy(buf, 0, b, 0, bytes);
+		buf = b;
+	    }
+	    buf[bytes++] = (byte) (acc >>> accBits);
+	}
+    }
+
+    public void writeBit(boolean b) {
+	write(b ? 1 : 0, 1);
+    }
+
+    /** 
+     * pad the last byte with zeros
+     */
+    public void flush() {
+	if (accBits > 0) 
+	    write(0, 8 - accBits);
+    }
+
+    /**
+     * get the number of bits written so far
+     */
+    public int getBitCount() {
+	return bytes * 8 + accBits;
+    }
+
+    /**
+     * the buffer, valid up to getByteCount() after flush()
+     */
+    public byte[] getBytes() {
+	return buf;
+    }
+
+    public int getByteCount() {
+	return bytes;
+    }
+}// BitWriter
@@ -1,5 +1,6 @@
 package com.hypefiend.javagamebook.common;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 import org.apache.log4j.Logger;
 
@@ -7,30 +8,60 @@ import org.apache.log4j.Logger;
  * EventQueue.java
  *
  * Blocking queue of GameEvents.
+ * It can have a capacity, and then when it's full it sheds either the 
+ * event being added (SHED_NEWEST) or the oldest one (SHED_OLDEST).
+ * Control events (see GameEventDefault.isControl()) are never shed, 
+ * they're added even to a full queue.
  *
  * @author <a href="mailto:bret@hypefiend.com">bret barker</a>
  * @version 1.0
  */
 public class EventQueue {
+    /** when full, drop the event being added */
+    public static final int SHED_NEWEST = 0;
+    /** when full, drop the oldest event to make room */
+    public static final int SHED_OLDEST = 1;
+
     private Logger log;
     private LinkedList events;
     private int count = 0;
+    private int capacity;
+    private int shedPolicy;
+    private long shed;
 
     /** 
      * Constructor.  Initializes the logger and event list
      */
     public EventQueue (String name){
+	this(name, 0, SHED_NEWEST);
+    }
+    
+    /** 
+     * a queue that holds at most capacity events, 0 for no limit
+     * @param shedPolicy SHED_NEWEST or SHED_OLDEST
+     */
+    public EventQueue (String name, int capacity, int shedPolicy){
 	log = Logger.getLogger("EventQueue: " + name);
 	events = new LinkedList();
+	this.capacity = capacity;
+	this.shedPolicy = shedPolicy;
     }
     
     /** 
      * add an event to the queue
+     * @return false if it was shed because the queue is full
      */
-    public synchronized void enQueue(GameEvent event) {
+    public synchronized boolean enQueue(GameEvent event) {
 	//	log.debug("enQueue " + event.hashCode());
+	// control events go over capacity rather than be lost
+	if (capacity > 0 && events.size() >= capacity && !GameEventDefault.isControl(event.getType())) {
+	    shed++;
+	    if (shedPolicy == SHED_NEWEST || !removeOldest())
+		return false;
+	}
 	events.addLast(event);
 	notifyAll();
+	return true;
     }
 
     /** 
@@ -51,6 +82,22 @@ public class EventQueue {
 	return e;
     }
 
+    /**
+     * drop the oldest event that isn't a control event
+     * @return false if they're all control events
+     */
+    private boolean removeOldest() {
+	Iterator i = events.iterator();
+	while (i.hasNext()) {
+	    GameEvent e = (GameEvent) i.next();
+	    if (!GameEventDefault.isControl(e.getType())) {
+		i.remove();
+		return true;
+	    }
+	}
+	return false;
+    }
+
     /**
      * get the current # of events in the queue
      */
@@ -58,4 +105,11 @@ public class EventQueue {
 	return events.size();
     }
 
+    /**
+     * the # of events shed because the queue was full
+     */
+    public synchronized long getShedCount() {
+	return shed;
+    }
+
 }// EventQueue
@@ -1,22 +1,80 @@
 package com.hypefiend.javagamebook.common;
 
+import java.io.*;
+import java.util.Properties;
 import org.apache.log4j.*;
 
 /**
  * GameConfig.java
  *
- * todo: gameconfig
+ * Settings for one game, read from <gameName>.properties in 
+ * Globals.CONFIG_DIR, or conf/<gameName>.properties on the 
+ * classpath if there's no such file.  A game with neither 
+ * gets the defaults.
  *
  * @author <a href="mailto:bret@hypefiend.com">bret barker</a>
  * @version 1.0
  */
 
 public class GameConfig {
+    /** log4j Logger */
+    private static Logger log = Logger.getLogger("GameConfig");
+
+    private Properties props;
+
+    /**
+     * an empty config, everything is the default
+     */
+    public GameConfig() {
+	this(new Properties());
+    }
+
+    public GameConfig(Properties props) {
+	this.props = props;
+    }
+
+    /**
+     * read the config for a game
+     */
+    public static GameConfig load(String gameName) throws IOException {
+	Properties props = new Properties();
+	String name = gameName + ".properties";
+	InputStream in = null;
+	File f = new File(Globals.CONFIG_DIR, name);
+	if (f.exists())
+	    in = new FileInputStream(f);
+	else
+	    in = GameConfig.class.getClassLoader().getResourceAsStream("conf/" + name);
+	if (in == null)
+	    return new GameConfig(props);
+	try {
+	    props.load(in);
+	}
+	finally {
+	    in.close();
+	}
+	log.info("loaded config for " + gameName + ": " + props.size() + " settings");
+	return new GameConfig(props);
+    }
+
     public int getInt(String key, int defaultValue) {
-	return 0;
+	String value = props.getProperty(key);
+	if (value == null)
+	    return defaultValue;
+	try {
+	    return Integer.parseInt(value.trim());
+	}
+	catch (NumberFormatException e) {
+	    log.warn("bad number for " + key + ": " + value);
+	    return defaultValue;
+	}
+    }
+
+    public String getString(String key, String defaultValue) {
+	return props.getProperty(key, defaultValue);
     }
 
     public String getString(String key, int defaultValue) {
-	return null;
+	return props.getProperty(key);
     }
 }
@@ -66,6 +66,14 @@ public class GameEventDefault implements GameEvent {
     /** game over notice */
     public static final int S_GAME_OVER = 1305;
 
+    /** state snapshot, see SnapshotEvent */
+    public static final int S_SNAPSHOT = 1351;
+    /** client received a snapshot, the message is its tick */
+    public static final int C_SNAPSHOT_ACK = 1352;
+
+    /** the message is the player's session token for UdpTransport */
+    public static final int S_UDP_TOKEN = 1361;
+
     /** used internally in client */
     public static final int C_CMD_ACK = 1401;
     /** generic ok response */
@@ -76,6 +84,24 @@ public class GameEventDefault implements GameEvent {
     /** first id that a subclass should use for events */    
     public static final int SUBCLASS_FIRST_CMD_ID = 2000;
 
+    /**
+     * session and control events, that queues never shed: losing a 
+     * login or join leaves the client waiting for an ack, and losing a 
+     * logout or quit leaves the player in the game for good
+     */
+    public static boolean isControl(int type) {
+	switch (type) {
+	case C_LOGIN:
+	case C_LOGOUT:
+	case S_DISCONNECT:
+	case C_JOIN_GAME:
+	case C_QUIT_GAME:
+	    return true;
+	default:
+	    return false;
+	}
+    }
+
     //-----------------------------------------------------
 
     /** event type */
@@ -163,7 +189,7 @@ public class GameEventDefault implements GameEvent {
     }
     public void setRecipients(String[] recipients) {
 	this.recipients = recipients;
-	numRecipients = recipients.length;
+	numRecipients = (recipients == null) ? 0 : recipients.length;
     }
 
     /** 
@@ -181,9 +207,9 @@ public class GameEventDefault implements GameEvent {
 	NIOUtils.putStr(buff, sessionId);
 	buff.putInt(gameId);
 	NIOUtils.putStr(buff, gameName);
-	buff.putInt(numRecipients);
-	for (int i=0;i<numRecipients;i++) 
-	    NIOUtils.putStr(buff, recipients[i]);
+	// recipients are only used by the server's EventWriter to route the event,
+	// so they aren't sent: a broadcast to N players would carry N ids to each one
+	buff.putInt(0);
 	NIOUtils.putStr(buff, message);
 
 	// return the length of the event, this will get inserted at the beginning of the buffer
@@ -12,6 +12,107 @@ public class Globals {
     /** port the server listens on */
     public static final int PORT = 8398;
 
+    /** port for UDP, see UdpTransport */
+    public static final int UDP_PORT = PORT + 1;
+
+    /** 
+     * also carry events over UDP, for players that bind a session.
+     * set with -Djavagamebook.udp=true
+     */
+    public static final boolean UDP = Boolean.getBoolean("javagamebook.udp");
+
+    /** UDP channels, with the delivery mode of each in UDP_CHANNEL_MODES */
+    public static final int UDP_UNRELIABLE = 0;
+    public static final int UDP_SEQUENCED = 1;
+    public static final int UDP_RELIABLE = 2;
+    public static final int UDP_CHANNEL_MODES[] = { 
+	UdpConnection.UNRELIABLE, UdpConnection.UNRELIABLE_SEQUENCED, UdpConnection.RELIABLE_ORDERED };
+
+    /** how often UDP resends and acks go out, in ms */
+    public static final long UDP_UPDATE_INTERVAL = 10L;
+
+    /** 
+     * how GameServer finds its GameControllers, see ControllerRegistry: 
+     * "lazy" (the default) inits each one on the first event for it, 
+     * "eager" inits them all at startup, and "scan" is the old way, 
+     * loading every class in GameController's directory at startup.
+     * set with -Djavagamebook.controllers=...
+     */
+    public static final String CONTROLLER_LOADING = System.getProperty("javagamebook.controllers", "lazy");
+
+    /** 
+     * directory of <gameName>.properties GameConfigs, 
+     * set with -Djavagamebook.conf=dir
+     */
+    public static final String CONFIG_DIR = System.getProperty("javagamebook.conf", "conf");
+
+    /** most GameConfigs loading at once */
+    public static final int CONFIG_LOADERS = 4;
+
+    /** 
+     * record counters and latencies, see Metrics.
+     * on unless turned off with -Djavagamebook.metricsOff=true
+     */
+    public static final boolean METRICS = !Boolean.getBoolean("javagamebook.metricsOff");
+
+    /** 
+     * port for the plain text metrics page, on localhost only, see MetricsServer.
+     * off unless set with -Djavagamebook.metricsPort=n
+     */
+    public static final int METRICS_PORT = Integer.getInteger("javagamebook.metricsPort", 0).intValue();
+
+    /** time one event in this many for the handle.ns histograms, a power of two */
+    public static final int METRICS_TIME_EVERY = 64;
+
+    /** 
+     * directory to journal every event in, see EventJournal.
+     * off unless set with -Djavagamebook.journal=dir
+     */
+    public static final String JOURNAL_DIR = System.getProperty("javagamebook.journal");
+
+    /** size of each EventJournal segment file */
+    public static final int JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** ms between EventJournal forces to disk */
+    public static final long JOURNAL_FLUSH_INTERVAL = 5L;
+
+    /** 
+     * max events waiting for each GameController, 0 for no limit.
+     * set with -Djavagamebook.queueLimit=n
+     */
+    public static final int CONTROLLER_QUEUE_LIMIT = Integer.getInteger("javagamebook.queueLimit", 10000).intValue();
+
+    /** 
+     * which events a full GameController queue sheds, EventQueue.SHED_NEWEST 
+     * unless set with -Djavagamebook.shed=oldest
+     */
+    public static final int QUEUE_SHED_POLICY = "oldest".equals(System.getProperty("javagamebook.shed")) ? 
+	EventQueue.SHED_OLDEST : EventQueue.SHED_NEWEST;
+
+    /** 
+     * events per second each client may send, 0 for no limit.
+     * set with -Djavagamebook.playerRate=n
+     */
+    public static final double PLAYER_EVENT_RATE = getDouble("javagamebook.playerRate", 50);
+    /** how many events at once each client may send */
+    public static final int PLAYER_EVENT_BURST = 100;
+
+    /** 
+     * chat messages per second each client may send, 0 (the default) 
+     * for no limit.  set with -Djavagamebook.chatRate=n
+     */
+    public static final double CHAT_EVENT_RATE = getDouble("javagamebook.chatRate", 0);
+    /** how many chat messages at once each client may send */
+    public static final int CHAT_EVENT_BURST = 5;
+
+    /** 
+     * SelectAndRead stops reading from the noisiest clients when a 
+     * GameController's queue is this full, and starts again when it's 
+     * down to OVERLOAD_LOW.  fractions of CONTROLLER_QUEUE_LIMIT
+     */
+    public static final double OVERLOAD_HIGH = 0.75;
+    public static final double OVERLOAD_LOW = 0.25;
+
     /** size of ByteBuffer for reading/writing from channels */
     public static final int NET_BUFFER_SIZE=512;
 
@@ -26,6 +127,44 @@ public class Globals {
 
     /** default number of workers for GameControllers */
     public static final int DEFAULT_CONTROLLER_WORKERS = 5;
+
+    /** 
+     * run GameControllers as actors, one per match plus the lobby shards,
+     * instead of on a pool of workers. set with -Djavagamebook.actors=true
+     */
+    public static final boolean CONTROLLER_ACTORS = Boolean.getBoolean("javagamebook.actors");
+
+    /** number of lobby actors a GameController shards its players over */
+    public static final int LOBBY_SHARDS = 16;
+
+    /** 
+     * what GameControllers and the EventWriter run events on, see WorkerPools.
+     * "platform" (their own worker threads) or "virtual" (a thread per event).
+     * set with -Djavagamebook.executor=virtual
+     */
+    public static final String EXECUTOR = System.getProperty("javagamebook.executor", "platform");
+
+    /** size of the InterestGrid cells, in world units */
+    public static final float INTEREST_CELL_SIZE = 100f;
+
+    /** 
+     * max events at once for each "virtual" executor.
+     * set with -Djavagamebook.maxConcurrent=n
+     */
+    public static final int MAX_CONCURRENT_EVENTS = Integer.getInteger("javagamebook.maxConcurrent", 1000).intValue();
+
+    /** 
+     * a double system property, or def if it isn't set or isn't a number
+     */
+    private static double getDouble(String name, double def) {
+	try {
+	    String value = System.getProperty(name);
+	    return (value == null) ? def : Double.parseDouble(value);
+	}
+	catch (NumberFormatException e) {
+	    return def;
+	}
+    }
 }
 
 
@@ -0,0 +1,88 @@
+package com.hypefiend.javagamebook.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram.java
+ *
+ * Counts values (usually nanoseconds) in log-linear buckets, like 
+ * HdrHistogram: exact below 32, then 16 buckets per power of two, so 
+ * any percentile is within about 6% of the real value.  Recording is a 
+ * couple of atomic adds, with no locks and no allocation, from any 
+ * number of threads.  Reading walks all the buckets, so it's for 
+ * reporting, not the hot path.
+ *
+ * @version 1.0
+ */
+public class LatencyHistogram {
+    private static final int LINEAR = 32;
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - 5 + 1) * SUB_BUCKETS;
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private LongAdder sum = new LongAdder();
+    private AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+	if (value < 0)
+	    value = 0;
+	counts.incrementAndGet(bucket(value));
+	sum.add(value);
+	long m = max.get();
+	while (value > m && !max.compareAndSet(m, value))
+	    m = max.get();
+    }
+
+    public long getCount() {
+	long n = 0;
+	for (int i=0; i<BUCKETS; i++)
+	    n += counts.get(i);
+	return n;
+    }
+
+    public long getMax() {
+	return max.get();
+    }
+
+    public long getMean() {
+	long n = getCount();
+	return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * the value p (0 to 1) of the values are at or under, 
+     * to the top of its bucket
+     */
+    public long getPercentile(double p) {
+	long total = getCount();
+	if (total == 0)
+	    return 0;
+	long target = Math.max(1, (long) Math.ceil(total * p));
+	long seen = 0;
+	for (int i=0; i<BUCKETS; i++) {
+	    seen += counts.get(i);
+	    if (seen >= target)
+		return Math.min(bucketTop(i), max.get());
+	}
+	return max.get();
+    }
+
+    private static int bucket(long v) {
+	if (v < LINEAR)
+	    return (int) v;
+	int msb = 63 - Long.numberOfLeadingZeros(v);
+	int top = (int) (v >>> (msb - SUB_BITS));
+	return LINEAR + (msb - 5) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+    private static long bucketTop(int i) {
+	if (i < LINEAR)
+	    return i;
+	int msb = 5 + (i - LINEAR) / SUB_BUCKETS;
+	long top = SUB_BUCKETS + (i - LINEAR) % SUB_BUCKETS;
+	return ((top + 1) << (msb - SUB_BITS)) - 1;
+    }
+}// LatencyHistogram
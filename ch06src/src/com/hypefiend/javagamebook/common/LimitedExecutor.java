@@ -0,0 +1,91 @@
+package com.hypefiend.javagamebook.common;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LimitedExecutor.java
+ *
+ * Runs tasks on another Executor, but no more than maxConcurrent
+ * of them at once. Extra tasks wait in a queue, without a thread,
+ * and execute() never blocks, so it's safe to call from the 
+ * SelectAndRead thread.
+ * Use it to put a bound on a virtual-thread-per-task executor, so
+ * a burst of events can't start an unbounded number of blocking calls.
+ *
+ * @version 1.0
+ */
+public class LimitedExecutor implements Executor {
+    /** where the tasks run */
+    private Executor executor;
+
+    /** max tasks running at once */
+    private int maxConcurrent;
+
+    /** tasks running, or handed to the executor */
+    private AtomicInteger running = new AtomicInteger();
+
+    /** tasks waiting for a turn */
+    private ConcurrentLinkedQueue waiting = new ConcurrentLinkedQueue();
+
+    public LimitedExecutor(Executor executor, int maxConcurrent) {
+	this.executor = executor;
+	this.maxConcurrent = maxConcurrent;
+    }
+
+    public void execute(Runnable task) {
+	waiting.offer(task);
+	drain();
+    }
+
+    /**
+     * get the # of tasks waiting for a turn
+     */
+    public int getWaiting() {
+	return waiting.size();
+    }
+
+    /**
+     * get the # of tasks running
+     */
+    public int getRunning() {
+	return running.get();
+    }
+
+    public int getMaxConcurrent() {
+	return maxConcurrent;
+    }
+
+    /**
+     * hand waiting tasks to the executor while there's room.
+     * called after every offer and after every task finishes, 
+     * so a task can't be left waiting with nothing running
+     */
+    private void drain() {
+	while (!waiting.isEmpty()) {
+	    int n = running.get();
+	    if (n >= maxConcurrent)
+		return;
+	    if (!running.compareAndSet(n, n + 1))
+		continue;
+	    final Runnable task = (Runnable) waiting.poll();
+	    if (task == null) {
+		running.decrementAndGet();
+		continue;
+	    }
+	    executor.execute(new Runnable() {
+		    public void run() {
+			try {
+			    task.run();
+			}
+			finally {
+			    running.decrementAndGet();
+			    drain();
+			}
+		    }
+		});
+	}
+    }
+
+}// LimitedExecutor
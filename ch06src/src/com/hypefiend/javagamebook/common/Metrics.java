@@ -0,0 +1,304 @@
+package com.hypefiend.javagamebook.common;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+import org.apache.log4j.Logger;
+
+/**
+ * Metrics.java
+ *
+ * Registry of named counters (LongAdders, striped so threads don't 
+ * contend), LatencyHistograms, Gauges and Sources that are read when 
+ * someone asks.  Code keeps a reference to its counters and histograms, 
+ * so recording never touches the registry.  Read it with snapshot(), 
+ * over JMX (registerMBean()) or from the server's MetricsServer.
+ *
+ * Recording is skipped where Globals.METRICS is false (it's a 
+ * constant, so the JIT drops the checks), to measure what it costs.
+ *
+ * @version 1.0
+ */
+public class Metrics {
+    /** log4j logger */
+    private static Logger log = Logger.getLogger("Metrics");
+
+    /** JMX name of the registry */
+    public static final String MBEAN_NAME = "com.hypefiend.javagamebook:type=Metrics";
+
+    /**
+     * a value computed when it's read
+     */
+    public interface Gauge {
+	public long getValue();
+    }
+
+    /**
+     * adds any number of values when read, for things like per-player 
+     * figures that come and go
+     */
+    public interface Source {
+	public void addValues(Map out);
+    }
+
+    private static Map metrics = new ConcurrentHashMap();
+    private static Map sources = new ConcurrentHashMap();
+    private static boolean jvmRegistered;
+
+    // sampled once a second by registerJvm()'s timer
+    private static volatile long gcPerSec;
+    private static volatile long gcMillisPerSec;
+    private static volatile long allocBytesPerSec;
+
+    /**
+     * the counter with this name, created if need be
+     */
+    public static LongAdder counter(String name) {
+	synchronized (metrics) {
+	    Object o = metrics.get(name);
+	    if (!(o instanceof LongAdder)) {
+		o = new LongAdder();
+		metrics.put(name, o);
+	    }
+	    return (LongAdder) o;
+	}
+    }
+
+    /**
+     * the histogram with this name, created if need be
+     */
+    public static LatencyHistogram histogram(String name) {
+	synchronized (metrics) {
+	    Object o = metrics.get(name);
+	    if (!(o instanceof LatencyHistogram)) {
+		o = new LatencyHistogram();
+		metrics.put(name, o);
+	    }
+	    return (LatencyHistogram) o;
+	}
+    }
+
+    /**
+     * register a gauge, replacing any metric with the same name
+     */
+    public static void gauge(String name, Gauge g) {
+	metrics.put(name, g);
+    }
+
+    /**
+     * register a source, replacing any with the same name
+     */
+    public static void source(String name, Source s) {
+	sources.put(name, s);
+    }
+
+    public static void remove(String name) {
+	metrics.remove(name);
+	sources.remove(name);
+    }
+
+    /**
+     * every value by name, in order.  histograms give name.count, 
+     * .mean, .p50, .p99, .p999 and .max
+     */
+    public static SortedMap snapshot() {
+	TreeMap out = new TreeMap();
+	Iterator i = metrics.entrySet().iterator();
+	while (i.hasNext()) {
+	    Map.Entry e = (Map.Entry) i.next();
+	    String name = (String) e.getKey();
+	    Object o = e.getValue();
+	    if (o instanceof LongAdder) {
+		out.put(name, Long.valueOf(((LongAdder) o).sum()));
+	    }
+	    else if (o instanceof Gauge) {
+		out.put(name, Long.valueOf(((Gauge) o).getValue()));
+	    }
+	    else if (o instanceof LatencyHistogram) {
+		LatencyHistogram h = (LatencyHistogram) o;
+		out.put(name + ".count", Long.valueOf(h.getCount()));
+		out.put(name + ".mean", Long.valueOf(h.getMean()));
+		out.put(name + ".p50", Long.valueOf(h.getPercentile(0.5)));
+		out.put(name + ".p99", Long.valueOf(h.getPercentile(0.99)));
+		out.put(name + ".p999", Long.valueOf(h.getPercentile(0.999)));
+		out.put(name + ".max", Long.valueOf(h.getMax()));
+	    }
+	}
+	i = sources.values().iterator();
+	while (i.hasNext()) 
+	    ((Source) i.next()).addValues(out);
+	return out;
+    }
+
+    /**
+     * the snapshot as "name value" lines
+     */
+    public static String toText() {
+	StringBuffer sb = new StringBuffer();
+	Iterator i = snapshot().entrySet().iterator();
+	while (i.hasNext()) {
+	    Map.Entry e = (Map.Entry) i.next();
+	    sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+	}
+	return sb.toString();
+    }
+
+    /**
+     * add GC, heap and allocation gauges, with rates sampled every second
+     */
+    public static synchronized void registerJvm() {
+	if (jvmRegistered)
+	    return;
+	jvmRegistered = true;
+	gauge("jvm.gc.count", new Gauge() {
+		public long getValue() {
+		    return gcCount();
+		}
+	    });
+	gauge("jvm.gc.time.ms", new Gauge() {
+		public long getValue() {
+		    return gcMillis();
+		}
+	    });
+	gauge("jvm.heap.used", new Gauge() {
+		public long getValue() {
+		    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		}
+	    });
+	gauge("jvm.alloc.bytes", new Gauge() {
+		public long getValue() {
+		    return allocatedBytes();
+		}
+	    });
+	gauge("jvm.gc.per.sec", new Gauge() {
+		public long getValue() {
+		    return gcPerSec;
+		}
+	    });
+	gauge("jvm.gc.ms.per.sec", new Gauge() {
+		public long getValue() {
+		    return gcMillisPerSec;
+		}
+	    });
+	gauge("jvm.alloc.bytes.per.sec", new Gauge() {
+		public long getValue() {
+		    return allocBytesPerSec;
+		}
+	    });
+
+	new Timer("Metrics-jvm", true).scheduleAtFixedRate(new TimerTask() {
+		long lastGc = gcCount();
+		long lastGcMillis = gcMillis();
+		long lastAlloc = allocatedBytes();
+		long last = System.nanoTime();
+
+		public void run() {
+		    long now = System.nanoTime();
+		    long gc = gcCount();
+		    long gcMs = gcMillis();
+		    long alloc = allocatedBytes();
+		    double secs = (now - last) / 1e9;
+		    gcPerSec = (long) ((gc - lastGc) / secs);
+		    gcMillisPerSec = (long) ((gcMs - lastGcMillis) / secs);
+		    allocBytesPerSec = (long) ((alloc - lastAlloc) / secs);
+		    lastGc = gc;
+		    lastGcMillis = gcMs;
+		    lastAlloc = alloc;
+		    last = now;
+		}
+	    }, 1000, 1000);
+    }
+
+    /**
+     * register the registry with the platform MBeanServer, every 
+     * metric is a read-only attribute
+     */
+    public static void registerMBean() {
+	try {
+	    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	    ObjectName name = new ObjectName(MBEAN_NAME);
+	    if (!server.isRegistered(name))
+		server.registerMBean(new MetricsMBean(), name);
+	}
+	catch (Exception e) {
+	    log.error("error registering metrics MBean", e);
+	}
+    }
+
+    private static long gcCount() {
+	long n = 0;
+	Iterator i = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+	while (i.hasNext())
+	    n += Math.max(0, ((GarbageCollectorMXBean) i.next()).getCollectionCount());
+	return n;
+    }
+
+    private static long gcMillis() {
+	long n = 0;
+	Iterator i = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+	while (i.hasNext())
+	    n += Math.max(0, ((GarbageCollectorMXBean) i.next()).getCollectionTime());
+	return n;
+    }
+
+    /**
+     * bytes allocated by the live threads, where the JVM can tell us, 
+     * so it goes down when threads die, but the rate is still good
+     */
+    private static long allocatedBytes() {
+	ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	if (!(threads instanceof com.sun.management.ThreadMXBean))
+	    return -1;
+	long bytes[] = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds());
+	long n = 0;
+	for (int i=0; i<bytes.length; i++)
+	    n += Math.max(0, bytes[i]);
+	return n;
+    }
+
+    /**
+     * the JMX view of the registry
+     */
+    private static class MetricsMBean implements DynamicMBean {
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+	    Object v = snapshot().get(attribute);
+	    if (v == null)
+		throw new AttributeNotFoundException(attribute);
+	    return v;
+	}
+
+	public AttributeList getAttributes(String attributes[]) {
+	    SortedMap values = snapshot();
+	    AttributeList list = new AttributeList();
+	    for (int i=0; i<attributes.length; i++) {
+		Object v = values.get(attributes[i]);
+		if (v != null)
+		    list.add(new Attribute(attributes[i], v));
+	    }
+	    return list;
+	}
+
+	public MBeanInfo getMBeanInfo() {
+	    SortedMap values = snapshot();
+	    MBeanAttributeInfo attrs[] = new MBeanAttributeInfo[values.size()];
+	    Iterator i = values.keySet().iterator();
+	    for (int k=0; i.hasNext(); k++) 
+		attrs[k] = new MBeanAttributeInfo((String) i.next(), "java.lang.Long", "", true, false, false);
+	    return new MBeanInfo(getClass().getName(), "javagamebook metrics", attrs, null, null, null);
+	}
+
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+	    throw new AttributeNotFoundException("metrics are read only");
+	}
+
+	public AttributeList setAttributes(AttributeList attributes) {
+	    return new AttributeList();
+	}
+
+	public Object invoke(String actionName, Object params[], String signature[]) throws ReflectionException {
+	    throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+    }
+}// Metrics
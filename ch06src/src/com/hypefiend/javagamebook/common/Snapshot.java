@@ -0,0 +1,112 @@
+package com.hypefiend.javagamebook.common;
+
+/**
+ * Snapshot.java
+ *
+ * The replicated state of a match at one simulation tick: a fixed 
+ * number of entities, each with a position, a heading and a small
+ * state value (e.g. health, 0 for an inactive entity).
+ * Values are stored quantized, as they're sent, so the server and 
+ * clients agree on them exactly: positions to 1/POSITION_SCALE of a 
+ * unit, headings to 1/256 of a turn.
+ *
+ * @version 1.0
+ */
+public class Snapshot {
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int ANGLE = 2;
+    public static final int STATE = 3;
+    public static final int FIELDS = 4;
+
+    /** width of each field in bits */
+    public static final int BITS[] = {20, 20, 8, 8};
+
+    /** quantization steps per unit of position */
+    public static final float POSITION_SCALE = 16f;
+
+    /** largest position that can be sent */
+    public static final float MAX_POSITION = ((1 << 20) - 1) / POSITION_SCALE;
+
+    private static final float ANGLE_SCALE = (float) (256 / (2 * Math.PI));
+
+    /** the tick this is the state of */
+    private int tick;
+
+    /** quantized values, by field then entity */
+    private int values[][];
+
+    public Snapshot(int numEntities) {
+	values = new int[FIELDS][numEntities];
+    }
+
+    public int getTick() {
+	return tick;
+    }
+    public void setTick(int tick) {
+	this.tick = tick;
+    }
+
+    public int getNumEntities() {
+	return values[0].length;
+    }
+
+    public int get(int field, int entity) {
+	return values[field][entity];
+    }
+    public void set(int field, int entity, int value) {
+	values[field][entity] = value & ((1 << BITS[field]) - 1);
+    }
+
+    /**
+     * set a position, clamped to 0..MAX_POSITION
+     */
+    public void setPosition(int entity, float x, float y) {
+	values[X][entity] = quantizePosition(x);
+	values[Y][entity] = quantizePosition(y);
+    }
+    public float getX(int entity) {
+	return values[X][entity] / POSITION_SCALE;
+    }
+    public float getY(int entity) {
+	return values[Y][entity] / POSITION_SCALE;
+    }
+
+    /**
+     * set the heading in radians
+     */
+    public void setAngle(int entity, float radians) {
+	values[ANGLE][entity] = Math.round(radians * ANGLE_SCALE) & 0xff;
+    }
+    public float getAngle(int entity) {
+	return values[ANGLE][entity] / ANGLE_SCALE;
+    }
+
+    public void setState(int entity, int state) {
+	set(STATE, entity, state);
+    }
+    public int getState(int entity) {
+	return values[STATE][entity];
+    }
+
+    public void copyFrom(Snapshot s) {
+	tick = s.tick;
+	for (int f=0; f<FIELDS; f++) 
+	    System.arraycopy(s.values[f], 0, values[f], 0, values[f].length);
+    }
+
+    /**
+     * same values, ignoring the tick
+     */
+    public boolean sameState(Snapshot s) {
+	for (int f=0; f<FIELDS; f++) 
+	    if (!java.util.Arrays.equals(values[f], s.values[f]))
+		return false;
+	return true;
+    }
+
+    private static int quantizePosition(float v) {
+	int q = Math.round(v * POSITION_SCALE);
+	return Math.max(0, Math.min((1 << 20) - 1, q));
+    }
+}// Snapshot
@@ -0,0 +1,116 @@
+package com.hypefiend.javagamebook.common;
+
+/**
+ * SnapshotCodec.java
+ *
+ * Bit-packs a Snapshot as a delta against a baseline snapshot that 
+ * the client has acknowledged, or in full when there's no baseline.
+ *
+ * <pre>
+ * 32 bits  tick
+ * 1 bit    full snapshot?
+ * 8 bits   tick - baseline tick (delta snapshots only)
+ * 16 bits  number of entities
+ * per entity:
+ *   1 bit  changed? (delta snapshots only, always changed in a full one)
+ *   per field:
+ *     1 bit  changed?
+ *     2 bits size class, then the zigzagged difference in 4, 8 or 12
+ *            bits, or the field's width + 1 bits
+ * </pre>
+ *
+ * A full snapshot is a delta against all zeros, so one decoder does both.
+ *
+ * @version 1.0
+ */
+public class SnapshotCodec {
+    /** size classes of the differences */
+    private static final int SMALL_BITS[] = {4, 8, 12};
+
+    /** max ticks between a snapshot and its baseline */
+    public static final int MAX_BASELINE_AGE = 255;
+
+    /**
+     * @param baseline an acknowledged snapshot, or null for a full snapshot
+     */
+    public static void encode(Snapshot s, Snapshot baseline, BitWriter out) {
+	int n = s.getNumEntities();
+	out.write(s.getTick(), 32);
+	out.writeBit(baseline == null);
+	if (baseline != null)
+	    out.write(s.getTick() - baseline.getTick(), 8);
+	out.write(n, 16);
+
+	for (int i=0; i<n; i++) {
+	    if (baseline != null) {
+		boolean changed = false;
+		for (int f=0; f<Snapshot.FIELDS && !changed; f++) 
+		    changed = s.get(f, i) != baseline.get(f, i);
+		out.writeBit(changed);
+		if (!changed)
+		    continue;
+	    }
+	    for (int f=0; f<Snapshot.FIELDS; f++) {
+		int d = s.get(f, i) - ((baseline == null) ? 0 : baseline.get(f, i));
+		out.writeBit(d != 0);
+		if (d != 0)
+		    writeDelta(out, d, Snapshot.BITS[f] + 1);
+	    }
+	}
+	out.flush();
+    }
+
+    /**
+     * decode a snapshot, looking up its baseline in history
+     * @return false if the baseline isn't in history any more
+     */
+    public static boolean decode(byte data[], int length, SnapshotHistory history, Snapshot s) {
+	BitReader in = new BitReader(data, 0, length);
+	int tick = in.read(32);
+	Snapshot baseline = null;
+	if (!in.readBit()) {
+	    baseline = history.get(tick - in.read(8));
+	    if (baseline == null)
+		return false;
+	}
+	int n = in.read(16);
+	if (n != s.getNumEntities())
+	    throw new IllegalArgumentException("snapshot has " + n + " entities, expected " + s.getNumEntities());
+
+	for (int i=0; i<n; i++) {
+	    if (baseline != null && !in.readBit()) {
+		for (int f=0; f<Snapshot.FIELDS; f++)
+		    s.set(f, i, baseline.get(f, i));
+		continue;
+	    }
+	    for (int f=0; f<Snapshot.FIELDS; f++) {
+		int v = (baseline == null) ? 0 : baseline.get(f, i);
+		if (in.readBit())
+		    v += readDelta(in, Snapshot.BITS[f] + 1);
+		s.set(f, i, v);
+	    }
+	}
+	s.setTick(tick);
+	return true;
+    }
+
+    private static void writeDelta(BitWriter out, int d, int fullBits) {
+	// zigzag, so small negative numbers are small too
+	int z = (d << 1) ^ (d >> 31);
+	for (int c=0; c<SMALL_BITS.length; c++) {
+	    if ((z >>> SMALL_BITS[c]) == 0) {
+		out.write(c, 2);
+		out.write(z, SMALL_BITS[c]);
+		return;
+	    }
+	}
+	out.write(3, 2);
+	out.write(z, fullBits);
+    }
+
+    private static int readDelta(BitReader in, int fullBits) {
+	int c = in.read(2);
+	int z = in.read((c < 3) ? SMALL_BITS[c] : fullBits);
+	return (z >>> 1) ^ -(z & 1);
+    }
+}// SnapshotCodec
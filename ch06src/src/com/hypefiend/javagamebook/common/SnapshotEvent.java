@@ -0,0 +1,51 @@
+package com.hypefiend.javagamebook.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SnapshotEvent.java
+ *
+ * A GameEventDefault that also carries binary data, for
+ * S_SNAPSHOT events from ReplicatedMatch.  The client answers
+ * each snapshot it decodes with a C_SNAPSHOT_ACK, whose message
+ * is the tick.
+ *
+ * @version 1.0
+ */
+public class SnapshotEvent extends GameEventDefault {
+    /** encoded snapshot */
+    protected byte data[];
+    protected int length;
+
+    public SnapshotEvent() {
+    }
+
+    public SnapshotEvent(byte data[], int length) {
+	super(S_SNAPSHOT);
+	this.data = data;
+	this.length = length;
+    }
+
+    public byte[] getData() {
+	return data;
+    }
+
+    public int getLength() {
+	return length;
+    }
+
+    public int write(ByteBuffer buff) {
+	int pos = buff.position();
+	super.write(buff);
+	buff.putShort((short) length);
+	buff.put(data, 0, length);
+	return buff.position() - pos;
+    }
+
+    public void read(ByteBuffer buff) {
+	super.read(buff);
+	length = buff.getShort() & 0xffff;
+	data = new byte[length];
+	buff.get(data);
+    }
+}// SnapshotEvent
@@ -0,0 +1,51 @@
+package com.hypefiend.javagamebook.common;
+
+/**
+ * SnapshotHistory.java
+ *
+ * The last few Snapshots, by tick, so deltas can be encoded
+ * (on the server) and decoded (on the client) against them.
+ * Snapshots are copied in, so the slots are allocated once.
+ *
+ * @version 1.0
+ */
+public class SnapshotHistory {
+    private Snapshot slots[];
+    private boolean used[];
+
+    public SnapshotHistory(int size, int numEntities) {
+	slots = new Snapshot[size];
+	used = new boolean[size];
+	for (int i=0; i<size; i++) 
+	    slots[i] = new Snapshot(numEntities);
+    }
+
+    public int size() {
+	return slots.length;
+    }
+
+    /**
+     * copy s into the history, replacing the oldest one
+     */
+    public void store(Snapshot s) {
+	int i = slot(s.getTick());
+	slots[i].copyFrom(s);
+	used[i] = true;
+    }
+
+    /**
+     * the snapshot of the given tick, or null if it's been replaced
+     */
+    public Snapshot get(int tick) {
+	if (tick < 0)
+	    return null;
+	int i = slot(tick);
+	if (!used[i] || slots[i].getTick() != tick)
+	    return null;
+	return slots[i];
+    }
+
+    private int slot(int tick) {
+	return (tick & 0x7fffffff) % slots.length;
+    }
+}// SnapshotHistory
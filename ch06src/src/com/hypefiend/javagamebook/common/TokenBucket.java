@@ -0,0 +1,63 @@
+package com.hypefiend.javagamebook.common;
+
+/**
+ * TokenBucket.java
+ *
+ * Rate limiter: holds up to burst tokens, refilled at rate per second.
+ * Not thread safe, each one is meant for a single thread (the 
+ * SelectAndRead reactor).  Times are System.nanoTime().
+ *
+ * @version 1.0
+ */
+public class TokenBucket {
+    private double ratePerNano;
+    private double burst;
+    private double tokens;
+    private long last;
+
+    /**
+     * starts full
+     */
+    public TokenBucket(double ratePerSecond, int burst, long now) {
+	this.ratePerNano = ratePerSecond / 1e9;
+	this.burst = burst;
+	tokens = burst;
+	last = now;
+    }
+
+    /**
+     * is there a token to take?
+     */
+    public boolean hasToken(long now) {
+	refill(now);
+	return tokens >= 1;
+    }
+
+    /**
+     * take a token if there is one
+     */
+    public boolean tryTake(long now) {
+	refill(now);
+	if (tokens < 1)
+	    return false;
+	tokens -= 1;
+	return true;
+    }
+
+    /**
+     * nanoseconds until there'll be a token
+     */
+    public long nanosUntilToken(long now) {
+	refill(now);
+	if (tokens >= 1)
+	    return 0;
+	return (long) ((1 - tokens) / ratePerNano) + 1;
+    }
+
+    private void refill(long now) {
+	if (now > last) {
+	    tokens = Math.min(burst, tokens + (now - last) * ratePerNano);
+	    last = now;
+	}
+    }
+}// TokenBucket
@@ -0,0 +1,353 @@
+package com.hypefiend.javagamebook.common;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+/**
+ * UdpConnection.java
+ *
+ * One end of a UDP session: numbered channels, each with a delivery mode,
+ * over datagrams.  It does no I/O itself, packets go out through a
+ * PacketSink and received ones are passed to receive(), so the same code
+ * runs on the server's reactor, in a client, and over a simulated link.
+ *
+ * Delivery modes:
+ * UNRELIABLE           every packet that arrives is delivered
+ * UNRELIABLE_SEQUENCED only packets newer than the last one delivered,
+ *                      for state where only the latest value matters
+ * RELIABLE_ORDERED     everything, in order.  Up to WINDOW packets are in
+ *                      flight; they're acknowledged with a cumulative ack
+ *                      plus a bitfield of the packets received past it, and
+ *                      resent after a timeout based on the measured RTT
+ *
+ * <pre>
+ * int   session token (from the server over TCP, binds us to the player)
+ * byte  channel
+ * byte  flags (DATA, ACK, HELLO)
+ * short sequence
+ * short ack: every reliable sequence up to this one was received
+ * int   ack bits: bit i set if ack + 2 + i was received too
+ * then the payload
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class UdpConnection {
+    public static final int UNRELIABLE = 0;
+    public static final int UNRELIABLE_SEQUENCED = 1;
+    public static final int RELIABLE_ORDERED = 2;
+
+    public static final int HEADER_SIZE = 14;
+
+    public static final int FLAG_DATA = 1;
+    public static final int FLAG_ACK = 2;
+    public static final int FLAG_HELLO = 4;
+
+    /** max unacknowledged reliable packets per channel */
+    public static final int WINDOW = 32;
+
+    /** resend timeout before we have an RTT, and the least it can be */
+    public static final long INITIAL_RTO_MILLIS = 200;
+    public static final long MIN_RTO_MILLIS = 20;
+
+    /**
+     * where packets go
+     */
+    public interface PacketSink {
+	public void sendPacket(ByteBuffer packet, SocketAddress to);
+    }
+
+    /**
+     * where received payloads go
+     */
+    public interface PayloadHandler {
+	public void deliver(UdpConnection connection, int channel, ByteBuffer payload);
+    }
+
+    private static class Channel {
+	int mode;
+	int nextSeq;
+
+	/** last sequence delivered, for UNRELIABLE_SEQUENCED */
+	int lastSeq = -1;
+
+	// reliable sending: oldest unacknowledged sequence, and packets by sequence % WINDOW
+	int sendBase;
+	byte sendBuf[][] = new byte[WINDOW][];
+	long sentAt[] = new long[WINDOW];
+	boolean resent[] = new boolean[WINDOW];
+	LinkedList pending = new LinkedList();
+
+	// reliable receiving: next sequence to deliver, and early packets by sequence % WINDOW
+	int nextExpected;
+	byte recvBuf[][] = new byte[WINDOW][];
+	boolean needAck;
+    }
+
+    private int token;
+    private SocketAddress address;
+    private Channel channels[];
+    private ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + Globals.MAX_EVENT_SIZE);
+    private long srtt = -1;
+    private boolean helloReceived;
+    private Object attachment;
+
+    // stats
+    private long packetsSent;
+    private long packetsResent;
+    private long packetsReceived;
+    private long packetsDropped;
+
+    /**
+     * @param modes the delivery mode of each channel
+     */
+    public UdpConnection(int token, SocketAddress address, int modes[]) {
+	// address may be null until the other end says hello
+	this.token = token;
+	this.address = address;
+	channels = new Channel[modes.length];
+	for (int i=0; i<modes.length; i++) {
+	    channels[i] = new Channel();
+	    channels[i].mode = modes[i];
+	}
+    }
+
+    public int getToken() {
+	return token;
+    }
+
+    public synchronized SocketAddress getAddress() {
+	return address;
+    }
+
+    /**
+     * where we send to, set when the other end says hello
+     */
+    public synchronized void setAddress(SocketAddress address) {
+	this.address = address;
+    }
+
+    public Object getAttachment() {
+	return attachment;
+    }
+    public void setAttachment(Object attachment) {
+	this.attachment = attachment;
+    }
+
+    /**
+     * has the other end answered our hello?
+     */
+    public synchronized boolean isHelloReceived() {
+	return helloReceived;
+    }
+
+    public synchronized void sendHello(PacketSink sink) {
+	write(sink, 0, FLAG_HELLO, 0, null, 0);
+    }
+
+    /**
+     * send the remaining bytes of payload on a channel
+     */
+    public synchronized void send(int ch, ByteBuffer payload, PacketSink sink, long now) {
+	Channel c = channels[ch];
+	byte data[] = new byte[payload.remaining()];
+	payload.get(data);
+	if (c.mode != RELIABLE_ORDERED) {
+	    write(sink, ch, FLAG_DATA, c.nextSeq, data, now);
+	    c.nextSeq = (c.nextSeq + 1) & 0xffff;
+	}
+	else if (((c.nextSeq - c.sendBase) & 0xffff) >= WINDOW) {
+	    c.pending.addLast(data);
+	}
+	else {
+	    sendReliable(ch, c, data, sink, now);
+	}
+    }
+
+    /**
+     * handle a packet from the other end, positioned at its start.
+     * the caller has already checked that it's from our address and token
+     */
+    public synchronized void receive(ByteBuffer packet, PayloadHandler handler, PacketSink sink, long now) {
+	packet.getInt();
+	int ch = packet.get() & 0xff;
+	int flags = packet.get();
+	int seq = packet.getShort() & 0xffff;
+	int ack = packet.getShort() & 0xffff;
+	int ackBits = packet.getInt();
+	packetsReceived++;
+
+	if ((flags & FLAG_HELLO) != 0) {
+	    helloReceived = true;
+	    return;
+	}
+	if (ch >= channels.length) {
+	    packetsDropped++;
+	    return;
+	}
+	Channel c = channels[ch];
+	if ((flags & FLAG_ACK) != 0 && c.mode == RELIABLE_ORDERED) 
+	    processAck(ch, c, ack, ackBits, sink, now);
+	if ((flags & FLAG_DATA) == 0) 
+	    return;
+
+	switch (c.mode) {
+	case UNRELIABLE:
+	    handler.deliver(this, ch, packet);
+	    break;
+	case UNRELIABLE_SEQUENCED:
+	    if (c.lastSeq != -1 && !isNewer(seq, c.lastSeq)) {
+		packetsDropped++;
+		return;
+	    }
+	    c.lastSeq = seq;
+	    handler.deliver(this, ch, packet);
+	    break;
+	case RELIABLE_ORDERED:
+	    c.needAck = true;
+	    if (((seq - c.nextExpected) & 0xffff) >= WINDOW) {
+		// already delivered, the ack we owe will tell them
+		packetsDropped++;
+		return;
+	    }
+	    if (c.recvBuf[seq % WINDOW] == null) {
+		byte data[] = new byte[packet.remaining()];
+		packet.get(data);
+		c.recvBuf[seq % WINDOW] = data;
+	    }
+	    while (c.recvBuf[c.nextExpected % WINDOW] != null) {
+		byte data[] = c.recvBuf[c.nextExpected % WINDOW];
+		c.recvBuf[c.nextExpected % WINDOW] = null;
+		c.nextExpected = (c.nextExpected + 1) & 0xffff;
+		handler.deliver(this, ch, ByteBuffer.wrap(data));
+	    }
+	    break;
+	}
+    }
+
+    /**
+     * resend reliable packets that timed out, and send the acks we owe.
+     * call every few milliseconds
+     */
+    public synchronized void update(PacketSink sink, long now) {
+	long rto = getRto();
+	for (int ch=0; ch<channels.length; ch++) {
+	    Channel c = channels[ch];
+	    if (c.mode != RELIABLE_ORDERED)
+		continue;
+	    for (int seq=c.sendBase; seq!=c.nextSeq; seq=(seq + 1) & 0xffff) {
+		int slot = seq % WINDOW;
+		if (c.sendBuf[slot] != null && now - c.sentAt[slot] >= rto) {
+		    c.sentAt[slot] = now;
+		    c.resent[slot] = true;
+		    packetsResent++;
+		    write(sink, ch, FLAG_DATA | FLAG_ACK, seq, c.sendBuf[slot], now);
+		    c.needAck = false;
+		}
+	    }
+	    if (c.needAck) {
+		write(sink, ch, FLAG_ACK, 0, null, now);
+		c.needAck = false;
+	    }
+	}
+    }
+
+    /**
+     * smoothed round trip time in ms, -1 until measured
+     */
+    public synchronized long getRtt() {
+	return srtt;
+    }
+
+    /**
+     * reliable packets sent but not acknowledged yet, or waiting for room
+     */
+    public synchronized int getUnacked() {
+	int n = 0;
+	for (int ch=0; ch<channels.length; ch++) {
+	    Channel c = channels[ch];
+	    n += ((c.nextSeq - c.sendBase) & 0xffff) + c.pending.size();
+	}
+	return n;
+    }
+
+    public synchronized long getPacketsSent() {
+	return packetsSent;
+    }
+    public synchronized long getPacketsResent() {
+	return packetsResent;
+    }
+    public synchronized long getPacketsReceived() {
+	return packetsReceived;
+    }
+    public synchronized long getPacketsDropped() {
+	return packetsDropped;
+    }
+
+    private void sendReliable(int ch, Channel c, byte data[], PacketSink sink, long now) {
+	int seq = c.nextSeq;
+	int slot = seq % WINDOW;
+	c.sendBuf[slot] = data;
+	c.sentAt[slot] = now;
+	c.resent[slot] = false;
+	c.nextSeq = (seq + 1) & 0xffff;
+	write(sink, ch, FLAG_DATA | FLAG_ACK, seq, data, now);
+	c.needAck = false;
+    }
+
+    private void processAck(int ch, Channel c, int ack, int ackBits, PacketSink sink, long now) {
+	for (int seq=c.sendBase; seq!=c.nextSeq; seq=(seq + 1) & 0xffff) {
+	    int slot = seq % WINDOW;
+	    if (c.sendBuf[slot] == null)
+		continue;
+	    int bit = (seq - ack - 2) & 0xffff;
+	    if (!isNewer(seq, ack) || (bit < 32 && (ackBits & (1 << bit)) != 0)) {
+		// Karn: only time packets that weren't resent
+		if (!c.resent[slot]) {
+		    long rtt = now - c.sentAt[slot];
+		    srtt = (srtt < 0) ? rtt : (7 * srtt + rtt) / 8;
+		}
+		c.sendBuf[slot] = null;
+	    }
+	}
+	while (c.sendBase != c.nextSeq && c.sendBuf[c.sendBase % WINDOW] == null)
+	    c.sendBase = (c.sendBase + 1) & 0xffff;
+	while (!c.pending.isEmpty() && ((c.nextSeq - c.sendBase) & 0xffff) < WINDOW) 
+	    sendReliable(ch, c, (byte[]) c.pending.removeFirst(), sink, now);
+    }
+
+    private long getRto() {
+	if (srtt < 0)
+	    return INITIAL_RTO_MILLIS;
+	return Math.max(MIN_RTO_MILLIS, 2 * srtt);
+    }
+
+    private void write(PacketSink sink, int ch, int flags, int seq, byte data[], long now) {
+	Channel c = channels[ch];
+	out.clear();
+	out.putInt(token);
+	out.put((byte) ch);
+	out.put((byte) flags);
+	out.putShort((short) seq);
+	out.putShort((short) (c.nextExpected - 1));
+	int bits = 0;
+	for (int i=0; i<WINDOW - 1; i++) 
+	    if (c.recvBuf[(c.nextExpected + 1 + i) % WINDOW] != null)
+		bits |= 1 << i;
+	out.putInt(bits);
+	if (data != null)
+	    out.put(data);
+	out.flip();
+	packetsSent++;
+	sink.sendPacket(out, address);
+    }
+
+    /**
+     * is sequence a after b, allowing for wrap around?
+     */
+    private static boolean isNewer(int a, int b) {
+	int d = (a - b) & 0xffff;
+	return d != 0 && d < 0x8000;
+    }
+}// UdpConnection
@@ -0,0 +1,102 @@
+package com.hypefiend.javagamebook.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * WorkerPools.java
+ *
+ * Creates the Executors that Wrap-based classes (GameControllers, 
+ * the EventWriter) run on, as set by Globals.EXECUTOR:
+ * "platform" keeps the Wrap's own worker threads,
+ * "virtual" runs every event on its own virtual thread, limited
+ * to Globals.MAX_CONCURRENT_EVENTS at once.
+ *
+ * Virtual threads are looked up by reflection so this still builds 
+ * and runs on JVMs without them (before java 21), where "virtual" 
+ * falls back to a cached pool of daemon platform threads, still limited.
+ *
+ * @version 1.0
+ */
+public class WorkerPools {
+    /** log4j logger */
+    private static Logger log = Logger.getLogger("WorkerPools");
+
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    /** 
+     * the executor for the named Wrap, or null to use its own workers
+     */
+    public static Executor createExecutor(String name) {
+	return createExecutor(name, Globals.EXECUTOR, Globals.MAX_CONCURRENT_EVENTS);
+    }
+
+    public static Executor createExecutor(String name, String mode, int maxConcurrent) {
+	if (VIRTUAL.equals(mode)) 
+	    return new LimitedExecutor(newVirtualThreadExecutor(name), maxConcurrent);
+	if (!PLATFORM.equals(mode))
+	    log.warn("unknown executor: " + mode + ", using platform workers for " + name);
+	return null;
+    }
+
+    /**
+     * does this JVM have virtual threads?
+     */
+    public static boolean hasVirtualThreads() {
+	return getVirtualThreadFactory() != null;
+    }
+
+    /**
+     * an executor that starts a virtual thread per task,
+     * or a cached pool of daemon threads if there are no virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor(String name) {
+	Method m = getVirtualThreadFactory();
+	if (m != null) {
+	    try {
+		return (ExecutorService) m.invoke(null, new Object[0]);
+	    }
+	    catch (Exception e) {
+		log.warn("couldn't create a virtual thread executor", e);
+	    }
+	}
+	else {
+	    log.warn("no virtual threads in this JVM, using a cached thread pool for " + name);
+	}
+	return Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+    }
+
+    private static Method getVirtualThreadFactory() {
+	try {
+	    return Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class[0]);
+	}
+	catch (NoSuchMethodException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * names threads like the Wrap workers, and makes them daemons
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+	private String name;
+	private AtomicInteger count = new AtomicInteger();
+
+	DaemonThreadFactory(String name) {
+	    this.name = name;
+	}
+
+	public Thread newThread(Runnable r) {
+	    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+	    t.setDaemon(true);
+	    return t;
+	}
+    }
+
+}// WorkerPools
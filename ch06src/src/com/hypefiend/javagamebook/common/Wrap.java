@@ -1,12 +1,18 @@
 package com.hypefiend.javagamebook.common;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 
 /**
  * Wrap.java
  * 
  * Wrap is a thread pool with an incoming BlockingQueue
- * of GameEvents
+ * of GameEvents.
+ * Or, if it's given an Executor, it runs every event as 
+ * a task on that instead.
+ * Either way the events waiting can be limited, see setQueueLimit().
  *
  * @author <a href="mailto:bret@hypefiend.com">bret barker</a>
  * @version 1.0
@@ -27,10 +33,25 @@ public abstract class Wrap implements Runnable, EventHandler {
     /** our pool of worker threads */
     private Thread workers[];
 
+    /** runs our events instead of the workers, if set */
+    private Executor executor;
+
     /** number of idle workers */
     private int spareCount;
     private Object countLock = new Object();
 
+    /** max events waiting, 0 for no limit, and what to shed when there are */
+    private int queueLimit;
+    private int shedPolicy;
+
+    /** events handed to the executor but not processed yet */
+    private AtomicInteger backlog = new AtomicInteger();
+    private AtomicLong shed = new AtomicLong();
+
+    /** how long processEvent takes, in ns, if set */
+    private LatencyHistogram handleTimes;
+    private int untimed;
+
     /** short Class name of the implementing class */
     private String shortname;
 
@@ -38,12 +59,7 @@ public abstract class Wrap implements Runnable, EventHandler {
      * @param numWorkers number of worker threads to spawn
      */
     public final void initWrap(int numWorkers) {
-	// setup the log4j Logger
-	shortname = this.getClass().getName().substring(this.getClass().getName().lastIndexOf(".") + 1);
-	log = Logger.getLogger(shortname);
-	log.info("initWrap - " + shortname);
-
-	eventQueue = new EventQueue(shortname + "-in");
+	initLogAndQueue();
 
 	// spawn worker threads
 	workers = new Thread[numWorkers];
@@ -54,6 +70,128 @@ public abstract class Wrap implements Runnable, EventHandler {
 	}
     }
 
+    /**
+     * @param executor runs each event as a task, instead of worker threads
+     */
+    public final void initWrap(Executor executor) {
+	initLogAndQueue();
+	this.executor = executor;
+    }
+
+    private void initLogAndQueue() {
+	// setup the log4j Logger
+	shortname = this.getClass().getName().substring(this.getClass().getName().lastIndexOf(".") + 1);
+	log = Logger.getLogger(shortname);
+	log.info("initWrap - " + shortname);
+
+	eventQueue = new EventQueue(shortname + "-in", queueLimit, shedPolicy);
+    }
+
+    /**
+     * limit the events waiting to be processed, call before initWrap().
+     * with an executor only the newest events can be shed, since the 
+     * ones already handed over can't be taken back
+     * @param limit max events waiting, 0 for no limit
+     * @param policy EventQueue.SHED_NEWEST or SHED_OLDEST
+     */
+    protected void setQueueLimit(int limit, int policy) {
+	queueLimit = limit;
+	shedPolicy = policy;
+    }
+
+    /**
+     * max events waiting, 0 for no limit
+     */
+    public int getQueueLimit() {
+	return queueLimit;
+    }
+
+    /**
+     * events waiting to be processed
+     */
+    public int getBacklog() {
+	// only one of these is in use
+	return backlog.get() + (eventQueue == null ? 0 : eventQueue.size());
+    }
+
+    /**
+     * events dropped because too many were waiting
+     */
+    public long getShedCount() {
+	return shed.get() + (eventQueue == null ? 0 : eventQueue.getShedCount());
+    }
+
+    /**
+     * count an event we're about to hand to something other than
+     * our eventQueue, or shed it if there are too many waiting.
+     * control events (see GameEventDefault.isControl()) are never shed.
+     * every event it returns true for must be followed by finished()
+     */
+    protected boolean admit(GameEvent event) {
+	if (queueLimit > 0 && backlog.get() >= queueLimit && 
+	    !GameEventDefault.isControl(event.getType())) {
+	    shed.incrementAndGet();
+	    return false;
+	}
+	backlog.incrementAndGet();
+	return true;
+    }
+
+    /**
+     * an admitted event has been processed
+     */
+    protected void finished() {
+	backlog.decrementAndGet();
+    }
+
+    /**
+     * record how long each processEvent takes, null to stop
+     */
+    protected void setHandleTimes(LatencyHistogram handleTimes) {
+	this.handleTimes = handleTimes;
+    }
+
+    /**
+     * processEvent, timed into the handleTimes if there are any
+     */
+    protected final void processTimed(GameEvent event) {
+	long start = startTimer();
+	try {
+	    processEvent(event);
+	}
+	finally {
+	    stopTimer(start);
+	}
+    }
+
+    /**
+     * start timing an event, if it's one of the Globals.METRICS_TIME_EVERY 
+     * we time, since reading the clock costs more than the rest of the 
+     * metrics put together
+     * @return the start time for stopTimer(), or 0 if we're not timing it
+     */
+    protected final long startTimer() {
+	// not atomic, a lost count just moves the sample along one
+	if (handleTimes == null || (untimed++ & (Globals.METRICS_TIME_EVERY - 1)) != 0)
+	    return 0;
+	return System.nanoTime();
+    }
+
+    /**
+     * record the time since startTimer(), if it timed the event
+     */
+    protected final void stopTimer(long start) {
+	if (start != 0)
+	    handleTimes.record(System.nanoTime() - start);
+    }
+
+    /**
+     * the executor we run on, or null if we have our own workers
+     */
+    public Executor getExecutor() {
+	return executor;
+    }
+
     /**
      * shutdown the worker threads
      */
@@ -70,7 +208,12 @@ public abstract class Wrap implements Runnable, EventHandler {
      * queue the event for later processing by worker threads
      */
     public void handleEvent(GameEvent event) {
-	eventQueue.enQueue(event);
+	if (executor != null) {
+	    if (admit(event))
+		executor.execute(new EventTask(event));
+	}
+	else
+	    eventQueue.enQueue(event);
     }
 
     /** 
@@ -82,7 +225,7 @@ public abstract class Wrap implements Runnable, EventHandler {
 	while (running) {
 	    try {
 		if ((event = eventQueue.deQueue()) != null) {
-		    processEvent(event);
+		    processTimed(event);
 		}
 	    }
 	    catch (InterruptedException e) {
@@ -90,6 +233,29 @@ public abstract class Wrap implements Runnable, EventHandler {
 	}
     }
 
+    /**
+     * processes one event, when running on an executor
+     */
+    private class EventTask implements Runnable {
+	private GameEvent event;
+
+	EventTask(GameEvent event) {
+	    this.event = event;
+	}
+
+	public void run() {
+	    try {
+		processTimed(event);
+	    }
+	    catch (Exception e) {
+		log.error("exception processing event type " + event.getType(), e);
+	    }
+	    finally {
+		finished();
+	    }
+	}
+    }
+
     /**
      * subclasses must implement to do their processing
      */
@@ -0,0 +1,146 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import com.hypefiend.javagamebook.server.controller.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.*;
+
+/**
+ * ControllerBenchmark.java
+ *
+ * Plays many RPS matches at once through an RPSController, with the
+ * Wrap workers and in actor mode, and prints the throughput.
+ * There's no network: this GameServer catches the controller's
+ * outgoing events and answers them the way RPSClients would, so each
+ * player sends its next move only after the last round completes.
+ * Every match is a join, some rounds of two moves each, and a quit.
+ *
+ * usage: ControllerBenchmark [matches] [rounds]
+ *
+ * @version 1.0
+ */
+public class ControllerBenchmark extends GameServer {
+    private static final String moves[] = {"rock", "paper", "scissors"};
+
+    private Controller controller;
+    private int rounds;
+    private AtomicIntegerArray roundsPlayed;
+    private AtomicLong eventsIn = new AtomicLong();
+    private AtomicLong eventsOut = new AtomicLong();
+    private CountDownLatch done;
+
+    /**
+     * RPSController that lets us add players without logging 
+     * them in, logins broadcast to every player
+     */
+    private static class Controller extends RPSController {
+	void addPlayer(Player p) {
+	    p.setLoggedIn(true);
+	    players.put(p.getPlayerId(), p);
+	}
+
+	/** every match's join is queued at once, so don't shed any */
+	protected void setQueueLimit(int limit, int policy) {
+	    super.setQueueLimit(0, policy);
+	}
+    }
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	int matches = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+	int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+	System.out.println(matches + " matches, " + rounds + " rounds each, " + 
+			   Runtime.getRuntime().availableProcessors() + " cpus");
+
+	// a small run of each first, to warm up the JIT
+	for (int pass=0; pass<2; pass++) {
+	    int n = (pass == 0) ? matches / 10 : matches;
+	    for (int mode=0; mode<2; mode++) {
+		ControllerBenchmark b = new ControllerBenchmark(n, rounds, mode == 1);
+		long time = b.play();
+		if (pass == 1) 
+		    b.report(mode == 1 ? "actors" : "workers (" + Globals.DEFAULT_CONTROLLER_WORKERS + ")", time);
+	    }
+	}
+    }
+
+    public ControllerBenchmark(int matches, int rounds, boolean actors) {
+	this.rounds = rounds;
+	controller = new Controller();
+	controller.init(this, null, actors);
+	for (int i=0; i<matches*2; i++) {
+	    PlayerDefault p = new PlayerDefault();
+	    p.setPlayerId("p" + i);
+	    controller.addPlayer(p);
+	}
+	roundsPlayed = new AtomicIntegerArray(matches * 2);
+	done = new CountDownLatch(matches * 2);
+    }
+
+    /**
+     * start every match, and wait for all of them to finish
+     * @return elapsed nanoseconds
+     */
+    private long play() {
+	int players = roundsPlayed.length();
+	long start = System.nanoTime();
+	for (int i=0; i<players; i+=2) 
+	    send(GameEventDefault.C_JOIN_GAME, i, "p" + (i + 1));
+	try {
+	    done.await();
+	}
+	catch (InterruptedException e) {
+	}
+	long time = System.nanoTime() - start;
+	controller.shutdown();
+	return time;
+    }
+
+    private void report(String name, long time) {
+	double secs = time / 1e9;
+	System.out.println(name + ": " + (roundsPlayed.length() / 2) + " matches in " + (int) (secs * 1000) + " ms, " + 
+			   (long) (eventsIn.get() / secs) + " events/s in, " + 
+			   (long) (eventsOut.get() / secs) + " events/s out");
+    }
+
+    private void send(int type, int player, String message) {
+	GameEventDefault e = new GameEventDefault(type, message);
+	e.setPlayerId("p" + player);
+	eventsIn.incrementAndGet();
+	controller.handleEvent(e);
+    }
+
+    /**
+     * play the clients' side: move after the join and after each round,
+     * then the first player quits
+     */
+    public void writeEvent(GameEvent e) {
+	eventsOut.incrementAndGet();
+	int player;
+	switch (e.getType()) {
+	case GameEventDefault.S_JOIN_GAME_ACK_OK:
+	    player = Integer.parseInt(e.getPlayerId().substring(1));
+	    send(GameEventDefault.C_MOVE, player, moves[player % 3]);
+	    break;
+	case GameEventDefault.S_ROUND_COMPLETE:
+	    player = Integer.parseInt(e.getPlayerId().substring(1));
+	    int played = roundsPlayed.incrementAndGet(player);
+	    if (played < rounds) 
+		send(GameEventDefault.C_MOVE, player, moves[(player + played) % 3]);
+	    else if (player % 2 == 0)
+		send(GameEventDefault.C_QUIT_GAME, player, null);
+	    break;
+	case GameEventDefault.SB_PLAYER_QUIT:
+	    done.countDown();
+	    break;
+	case GameEventDefault.S_JOIN_GAME_ACK_FAIL:
+	case GameEventDefault.S_MOVE_ACK_FAIL:
+	    throw new IllegalStateException("unexpected failure for " + e.getPlayerId() + ": " + e.getMessage());
+	}
+    }
+
+}// ControllerBenchmark
@@ -0,0 +1,194 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import com.hypefiend.javagamebook.server.controller.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.apache.log4j.Logger;
+
+/**
+ * ControllerRegistry.java
+ *
+ * The GameControllers a GameServer knows about, keyed by gameName 
+ * hash.  They're listed in 
+ * META-INF/services/com.hypefiend.javagamebook.server.controller.GameController
+ * and found with a ServiceLoader, so it works from a jar, and no 
+ * classes are loaded but the controllers themselves.  
+ * 
+ * Each one's GameConfig starts loading as soon as it's found, all 
+ * of them at once on a small pool, and the controller isn't init'd 
+ * (no queue, no threads) until the first event for its game, unless 
+ * initAll() is called.
+ *
+ * @version 1.0
+ */
+public class ControllerRegistry {
+    /** log4j Logger */
+    private Logger log = Logger.getLogger("ControllerRegistry");
+
+    /** base class path, to find its directory for scan() */
+    private static final String BASE_CLASS = "com/hypefiend/javagamebook/server/controller/GameController.class";
+
+    /** classname prefix used for scanned GameControllers */
+    private static final String CONTROLLER_CLASS_PREFIX = 
+	"com.hypefiend.javagamebook.server.controller.";
+
+    private GameServer gameServer;
+
+    /** Entries keyed by "" + gameName hash */
+    private Hashtable entries = new Hashtable();
+
+    /** the init'd GameControllers, same keys */
+    private Hashtable controllers = new Hashtable();
+
+    private ExecutorService configLoader;
+
+    /**
+     * a controller, its config loading, and whether it's init'd yet
+     */
+    private class Entry {
+	String key;
+	GameController controller;
+	Future config;
+	volatile boolean ready;
+
+	synchronized GameController init() {
+	    if (!ready) {
+		controller.init(gameServer, getConfig());
+		controllers.put(key, controller);
+		ready = true;
+		log.info("init controller for gameName: " + controller.getGameName());
+	    }
+	    return controller;
+	}
+
+	private GameConfig getConfig() {
+	    try {
+		return (GameConfig) config.get();
+	    }
+	    catch (Exception e) {
+		log.error("error loading config for " + controller.getGameName() + ", using defaults", e);
+		return new GameConfig();
+	    }
+	}
+    }
+
+    public ControllerRegistry(GameServer gameServer) {
+	this.gameServer = gameServer;
+	configLoader = Executors.newFixedThreadPool(Globals.CONFIG_LOADERS, new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+		    Thread t = new Thread(r, "ConfigLoader");
+		    t.setDaemon(true);
+		    return t;
+		}
+	    });
+    }
+
+    /**
+     * add the controllers listed for the ServiceLoader
+     * @return how many were added
+     */
+    public int discover() {
+	int n = 0;
+	Iterator i = ServiceLoader.load(GameController.class, getClass().getClassLoader()).iterator();
+	while (true) {
+	    try {
+		if (!i.hasNext())
+		    break;
+		add((GameController) i.next());
+		n++;
+	    }
+	    catch (ServiceConfigurationError e) {
+		log.error("error loading GameController", e);
+	    }
+	}
+	return n;
+    }
+
+    /**
+     * add every GameController class in GameController's directory, 
+     * the old way, which only works when it's a directory and not a jar
+     * @return how many were added
+     */
+    public int scan() {
+	File f = new File(getClass().getClassLoader().getResource(BASE_CLASS).getPath());
+	File[] files = f.getParentFile().listFiles();
+	if (files == null) {
+	    log.error("error getting GameController directory");
+	    return 0;
+	}
+
+	int n = 0;
+	for (int i=0; i<files.length; i++) {
+	    String file = files[i].getName();
+	    if (file.indexOf(".class") == -1 || file.equals("GameController.class"))
+		continue;
+	    try {
+		Class cl = Class.forName(CONTROLLER_CLASS_PREFIX + file.substring(0, file.indexOf(".class")));
+		// make sure it extends GameController
+		if (!GameController.class.isAssignableFrom(cl) || cl.isInterface() || 
+		    java.lang.reflect.Modifier.isAbstract(cl.getModifiers()))
+		    continue;
+		add((GameController) cl.getDeclaredConstructor().newInstance());
+		n++;
+	    }
+	    catch (Exception e) {
+		log.error("Error instantiating GameController from file: " + file, e);
+	    }
+	}
+	return n;
+    }
+
+    /**
+     * add an un-init'd controller, and start loading its config
+     */
+    public void add(final GameController gc) {
+	final String gameName = gc.getGameName();
+	Entry e = new Entry();
+	e.key = "" + gameName.hashCode();
+	e.controller = gc;
+	e.config = configLoader.submit(new Callable() {
+		public Object call() {
+		    return gameServer.getGameConfig(gameName);
+		}
+	    });
+	if (entries.put(e.key, e) != null)
+	    log.warn("more than one controller for gameName: " + gameName);
+	log.info("found controller for gameName: " + gameName + ", hash: " + gameName.hashCode());
+    }
+
+    /**
+     * the controller for a gameName hash, init'd on the first call
+     */
+    public GameController get(int gameNameHash) {
+	Entry e = (Entry) entries.get("" + gameNameHash);
+	if (e == null)
+	    return null;
+	return e.ready ? e.controller : e.init();
+    }
+
+    /**
+     * init every controller now
+     */
+    public void initAll() {
+	Iterator i = entries.values().iterator();
+	while (i.hasNext())
+	    ((Entry) i.next()).init();
+    }
+
+    /**
+     * the controllers that have been init'd
+     */
+    public Collection getControllers() {
+	return controllers.values();
+    }
+
+    /**
+     * how many controllers we know about, init'd or not
+     */
+    public int size() {
+	return entries.size();
+    }
+
+}// ControllerRegistry
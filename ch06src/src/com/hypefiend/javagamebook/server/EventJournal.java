@@ -0,0 +1,554 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import org.apache.log4j.Logger;
+
+/**
+ * EventJournal.java
+ *
+ * Append-only record of the events a server reads and writes, for crash
+ * recovery, for reproducing bugs, and as a benchmark (see EventReplay).
+ *
+ * Records go into memory-mapped segment files, journal-NNNNNN.seg in the
+ * journal directory.  Each record is:
+ * <pre>
+ * int   length of the rest of the record, 0 marks the end of a segment
+ * long  time, in ms
+ * byte  direction, IN or OUT
+ * int   match id, or NO_MATCH
+ * then  the event framed by NIOUtils.prepBuffer(): clientId, 
+ *       gameName hash, payload size, payload
+ * </pre>
+ * The length is written last, after a 0 end marker past the record, so a
+ * record is only there once it's whole and a reader always stops after
+ * the last one.  Reopening the journal zeroes anything after the last 
+ * whole record, so the bytes of a torn record can't be read later as 
+ * one.
+ * Since the pages are the file's, records survive the process crashing
+ * as soon as append() returns.  To survive the machine crashing they're 
+ * forced to disk by a flusher thread every flushInterval, one force for 
+ * however many records came in meanwhile (group commit); commit() waits 
+ * for that.
+ *
+ * journal.idx indexes the segments: an entry for the first record of 
+ * every INDEX_INTERVAL ms, and for the first record of each match in 
+ * each segment.  Each entry is a long time, int match (NO_MATCH for the 
+ * time entries), int segment and int offset.  The Reader uses it to 
+ * seek by time or match.
+ *
+ * @version 1.0
+ */
+public class EventJournal implements Runnable {
+    /** log4j logger */
+    private static Logger log = Logger.getLogger("EventJournal");
+
+    /** the server read the event */
+    public static final int IN = 0;
+    /** the server wrote the event */
+    public static final int OUT = 1;
+
+    /** match id of events that aren't part of one */
+    public static final int NO_MATCH = -1;
+
+    /** bytes before the framed event */
+    public static final int RECORD_HEADER_SIZE = 17;
+
+    /** ms between index entries by time */
+    public static final long INDEX_INTERVAL = 100L;
+
+    private static final int INDEX_ENTRY_SIZE = 20;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_FILE = "journal.idx";
+
+    private File dir;
+    private int segmentSize;
+    private long flushInterval;
+
+    private int segmentNumber;
+    private MappedByteBuffer segment;
+    private FileChannel indexChannel;
+    private ByteBuffer pendingIndex = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 64);
+    private long nextIndexTime;
+    private HashSet matchesInSegment = new HashSet();
+
+    /** records appended, and how many of them are on disk */
+    private long written;
+    private long committed;
+    private long forces;
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    private static ThreadLocal encodeBuffers = new ThreadLocal() {
+	    protected Object initialValue() {
+		return ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+	    }
+	};
+
+    /**
+     * open the journal in dir, creating it if need be, and carry on
+     * after the last whole record
+     * @param segmentSize bytes in each new segment file
+     * @param flushInterval ms between forces to disk
+     */
+    public EventJournal(File dir, int segmentSize, long flushInterval) throws IOException {
+	this.dir = dir;
+	this.segmentSize = segmentSize;
+	this.flushInterval = flushInterval;
+	dir.mkdirs();
+
+	List entries = readIndex(dir);
+	File segments[] = listSegments(dir);
+	if (segments.length == 0) {
+	    openSegment(0);
+	}
+	else {
+	    // find the end of the last segment, from its last index entry
+	    segmentNumber = segments.length - 1;
+	    segment = map(segments[segmentNumber], FileChannel.MapMode.READ_WRITE);
+	    int pos = 0;
+	    for (int i=0; i<entries.size(); i++) {
+		IndexEntry e = (IndexEntry) entries.get(i);
+		if (e.segment == segmentNumber && e.offset <= segment.limit())
+		    pos = Math.max(pos, e.offset);
+	    }
+	    pos = recover(segment, pos);
+	    segment.position(pos);
+	    // wipe what's left of a torn record
+	    clear(segment, pos);
+	    segment.force();
+	    // entries past it are for records that didn't make it
+	    for (Iterator i=entries.iterator(); i.hasNext(); ) {
+		IndexEntry e = (IndexEntry) i.next();
+		if (e.segment > segmentNumber || (e.segment == segmentNumber && e.offset >= pos))
+		    i.remove();
+		else if (e.segment == segmentNumber && e.match != NO_MATCH)
+		    matchesInSegment.add(Integer.valueOf(e.match));
+		else if (e.match == NO_MATCH)
+		    nextIndexTime = Math.max(nextIndexTime, e.time - e.time % INDEX_INTERVAL + INDEX_INTERVAL);
+	    }
+	    log.info("journal reopened at segment " + segmentNumber + ", offset " + pos);
+	}
+
+	// rewrite the index with just the good entries
+	indexChannel = new RandomAccessFile(new File(dir, INDEX_FILE), "rw").getChannel();
+	indexChannel.truncate((long) entries.size() * INDEX_ENTRY_SIZE);
+	indexChannel.position(indexChannel.size());
+
+	running = true;
+	flusher = new Thread(this, "EventJournal-flusher");
+	flusher.setDaemon(true);
+	flusher.start();
+    }
+
+    /**
+     * append an event, framed with NIOUtils.prepBuffer()
+     * @return its sequence number, for commit()
+     */
+    public long append(int direction, GameEvent event, int matchId) {
+	ByteBuffer frame = (ByteBuffer) encodeBuffers.get();
+	NIOUtils.prepBuffer(event, frame);
+	return append(direction, frame, matchId, System.currentTimeMillis());
+    }
+
+    /**
+     * append a framed event
+     */
+    public synchronized long append(int direction, ByteBuffer frame, int matchId, long time) {
+	int length = RECORD_HEADER_SIZE + frame.remaining();
+	// leave room for the end marker
+	if (segment.remaining() < length + 4) {
+	    if (length + 4 > segmentSize)
+		throw new IllegalArgumentException("event too big for the journal: " + length);
+	    nextSegment();
+	}
+
+	int pos = segment.position();
+	if (time >= nextIndexTime) {
+	    addIndex(time, NO_MATCH, pos);
+	    nextIndexTime = time - time % INDEX_INTERVAL + INDEX_INTERVAL;
+	}
+	if (matchId != NO_MATCH && matchesInSegment.add(Integer.valueOf(matchId)))
+	    addIndex(time, matchId, pos);
+
+	segment.position(pos + 4);
+	segment.putLong(time);
+	segment.put((byte) direction);
+	segment.putInt(matchId);
+	segment.put(frame);
+	segment.putInt(pos + length, 0);
+	segment.putInt(pos, length - 4);
+	return ++written;
+    }
+
+    /**
+     * wait until the record with this sequence number is on disk
+     */
+    public synchronized void commit(long seq) throws InterruptedException {
+	while (committed < seq && running) {
+	    notifyAll();
+	    wait();
+	}
+    }
+
+    /**
+     * records appended so far
+     */
+    public synchronized long getWritten() {
+	return written;
+    }
+
+    /**
+     * times the segment has been forced to disk
+     */
+    public synchronized long getForces() {
+	return forces;
+    }
+
+    /**
+     * force everything to disk and stop the flusher
+     */
+    public void close() throws IOException {
+	// not interrupt(), that would close the index channel under it
+	synchronized (this) {
+	    running = false;
+	    notifyAll();
+	}
+	try {
+	    flusher.join();
+	}
+	catch (InterruptedException e) {
+	}
+	synchronized (this) {
+	    if (segment.remaining() >= 4)
+		segment.putInt(segment.position(), 0);
+	}
+	flush();
+	segment.force();
+	indexChannel.close();
+    }
+
+    /**
+     * the flusher: force new records every flushInterval,
+     * or sooner if someone's waiting in commit()
+     */
+    public void run() {
+	while (running) {
+	    try {
+		synchronized (this) {
+		    if (running)
+			wait(flushInterval);
+		}
+	    }
+	    catch (InterruptedException e) {
+	    }
+	    try {
+		flush();
+	    }
+	    catch (IOException ioe) {
+		log.error("error flushing journal", ioe);
+	    }
+	}
+    }
+
+    private void flush() throws IOException {
+	MappedByteBuffer s;
+	long seq;
+	byte index[];
+	synchronized (this) {
+	    if (written == committed)
+		return;
+	    s = segment;
+	    seq = written;
+	    pendingIndex.flip();
+	    index = new byte[pendingIndex.remaining()];
+	    pendingIndex.get(index);
+	    pendingIndex.clear();
+	}
+	// records are written before their index entries, 
+	// so a crash can't leave entries pointing at nothing
+	s.force();
+	if (index.length > 0) {
+	    ByteBuffer bb = ByteBuffer.wrap(index);
+	    while (bb.hasRemaining())
+		indexChannel.write(bb);
+	    indexChannel.force(false);
+	}
+	synchronized (this) {
+	    committed = Math.max(committed, seq);
+	    forces++;
+	    notifyAll();
+	}
+    }
+
+    private void addIndex(long time, int matchId, int offset) {
+	if (pendingIndex.remaining() < INDEX_ENTRY_SIZE) {
+	    ByteBuffer bigger = ByteBuffer.allocate(pendingIndex.capacity() * 2);
+	    pendingIndex.flip();
+	    bigger.put(pendingIndex);
+	    pendingIndex = bigger;
+	}
+	pendingIndex.putLong(time);
+	pendingIndex.putInt(matchId);
+	pendingIndex.putInt(segmentNumber);
+	pendingIndex.putInt(offset);
+    }
+
+    /**
+     * finish this segment and start the next.  
+     * the old one is forced here, it's only every segmentSize bytes
+     */
+    private void nextSegment() {
+	try {
+	    segment.putInt(segment.position(), 0);
+	    segment.force();
+	    openSegment(segmentNumber + 1);
+	}
+	catch (IOException ioe) {
+	    throw new IllegalStateException("can't create journal segment " + (segmentNumber + 1) + ": " + ioe);
+	}
+	matchesInSegment.clear();
+	// index the new segment's first record by time too
+	nextIndexTime = 0;
+    }
+
+    private void openSegment(int n) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(segmentFile(dir, n), "rw");
+	try {
+	    file.setLength(segmentSize);
+	    segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+	}
+	finally {
+	    // the mapping stays valid without the file open
+	    file.close();
+	}
+	segmentNumber = n;
+    }
+
+    /**
+     * the end of the whole records in a segment, starting at a known record
+     */
+    private static int recover(ByteBuffer seg, int pos) {
+	while (pos + 4 <= seg.limit()) {
+	    int len = seg.getInt(pos);
+	    if (len < RECORD_HEADER_SIZE - 4 || pos + 4 + len > seg.limit())
+		break;
+	    pos += 4 + len;
+	}
+	return pos;
+    }
+
+    /**
+     * zero a segment from pos to its end
+     */
+    private static void clear(ByteBuffer seg, int pos) {
+	byte zeros[] = new byte[8192];
+	ByteBuffer b = seg.duplicate();
+	b.position(pos);
+	while (b.hasRemaining())
+	    b.put(zeros, 0, Math.min(zeros.length, b.remaining()));
+    }
+
+    private static File segmentFile(File dir, int n) {
+	String s = "00000" + n;
+	return new File(dir, SEGMENT_PREFIX + s.substring(s.length() - 6) + SEGMENT_SUFFIX);
+    }
+
+    private static File[] listSegments(File dir) {
+	ArrayList files = new ArrayList();
+	for (int n=0; segmentFile(dir, n).exists(); n++) 
+	    files.add(segmentFile(dir, n));
+	return (File[]) files.toArray(new File[files.size()]);
+    }
+
+    private static MappedByteBuffer map(File f, FileChannel.MapMode mode) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(f, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+	try {
+	    return file.getChannel().map(mode, 0, file.length());
+	}
+	finally {
+	    file.close();
+	}
+    }
+
+    private static class IndexEntry {
+	long time;
+	int match;
+	int segment;
+	int offset;
+    }
+
+    private static List readIndex(File dir) throws IOException {
+	ArrayList entries = new ArrayList();
+	File f = new File(dir, INDEX_FILE);
+	if (!f.exists())
+	    return entries;
+	DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+	try {
+	    long n = f.length() / INDEX_ENTRY_SIZE;
+	    for (long i=0; i<n; i++) {
+		IndexEntry e = new IndexEntry();
+		e.time = in.readLong();
+		e.match = in.readInt();
+		e.segment = in.readInt();
+		e.offset = in.readInt();
+		entries.add(e);
+	    }
+	}
+	finally {
+	    in.close();
+	}
+	return entries;
+    }
+
+    /**
+     * reads a journal, from the start or from a seek
+     */
+    public static class Reader {
+	private File dir;
+	private List index;
+	private int segmentNumber = -1;
+	private MappedByteBuffer segment;
+	private int matchFilter = NO_MATCH;
+	/** segments that have the match we're filtering on */
+	private HashSet matchSegments;
+
+	// the current record
+	private long time;
+	private int direction;
+	private int matchId;
+	private ByteBuffer frame;
+
+	public Reader(File dir) throws IOException {
+	    this.dir = dir;
+	    index = readIndex(dir);
+	    openSegment(0);
+	}
+
+	/**
+	 * move to the next record, false at the end of the journal
+	 */
+	public boolean next() throws IOException {
+	    while (segment != null) {
+		int pos = segment.position();
+		int len = (pos + 4 <= segment.limit()) ? segment.getInt(pos) : 0;
+		if (len < RECORD_HEADER_SIZE - 4 || pos + 4 + len > segment.limit()) {
+		    if (!openSegment(nextSegment(segmentNumber + 1)))
+			return false;
+		    continue;
+		}
+		segment.position(pos + 4);
+		time = segment.getLong();
+		direction = segment.get();
+		matchId = segment.getInt();
+		int end = pos + 4 + len;
+		frame = segment.duplicate();
+		frame.limit(end);
+		segment.position(end);
+		if (matchFilter == NO_MATCH || matchId == matchFilter)
+		    return true;
+	    }
+	    return false;
+	}
+
+	/**
+	 * go to the first record at or after this time
+	 */
+	public void seekTime(long t) throws IOException {
+	    IndexEntry best = null;
+	    for (int i=0; i<index.size(); i++) {
+		IndexEntry e = (IndexEntry) index.get(i);
+		if (e.match == NO_MATCH && e.time <= t && (best == null || e.time >= best.time))
+		    best = e;
+	    }
+	    openSegment(best == null ? 0 : best.segment);
+	    if (best != null && segment != null)
+		segment.position(best.offset);
+	    // scan forward to it, then step back to the start of that record
+	    while (segment != null) {
+		int pos = segment.position();
+		int seg = segmentNumber;
+		if (!next())
+		    return;
+		if (time >= t) {
+		    if (segmentNumber != seg) 
+			openSegment(segmentNumber);
+		    else
+			segment.position(pos);
+		    return;
+		}
+	    }
+	}
+
+	/**
+	 * from now on only read records for this match, 
+	 * starting from its first one
+	 */
+	public void seekMatch(int match) throws IOException {
+	    matchFilter = match;
+	    matchSegments = new HashSet();
+	    IndexEntry first = null;
+	    for (int i=0; i<index.size(); i++) {
+		IndexEntry e = (IndexEntry) index.get(i);
+		if (e.match != match)
+		    continue;
+		matchSegments.add(Integer.valueOf(e.segment));
+		if (first == null)
+		    first = e;
+	    }
+	    if (first == null) {
+		segment = null;
+		return;
+	    }
+	    openSegment(first.segment);
+	    segment.position(first.offset);
+	}
+
+	public long getTime() {
+	    return time;
+	}
+	public int getDirection() {
+	    return direction;
+	}
+	public int getMatchId() {
+	    return matchId;
+	}
+
+	/**
+	 * the framed event: clientId, gameName hash, payload size, payload.
+	 * only good until the next call to next()
+	 */
+	public ByteBuffer getFrame() {
+	    return frame;
+	}
+
+	/**
+	 * the next segment to read from n on, skipping ones without our match
+	 */
+	private int nextSegment(int n) {
+	    if (matchSegments == null)
+		return n;
+	    while (n < Integer.MAX_VALUE && segmentFile(dir, n).exists() && 
+		   !matchSegments.contains(Integer.valueOf(n)))
+		n++;
+	    return n;
+	}
+
+	private boolean openSegment(int n) throws IOException {
+	    File f = segmentFile(dir, n);
+	    if (!f.exists()) {
+		segment = null;
+		return false;
+	    }
+	    segment = map(f, FileChannel.MapMode.READ_ONLY);
+	    segmentNumber = n;
+	    return true;
+	}
+    }
+
+}// EventJournal
@@ -0,0 +1,174 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import com.hypefiend.javagamebook.server.controller.*;
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.Executor;
+import org.apache.log4j.*;
+
+/**
+ * EventReplay.java
+ *
+ * Feeds the inbound events of an EventJournal back through a 
+ * GameController as fast as it will take them, and reports how fast 
+ * that was.  Events are handled one at a time on the replaying thread, 
+ * in journal order, so a run is repeatable: the same journal makes a 
+ * benchmark, or reproduces a bug.  The controller's outgoing events are 
+ * counted, not sent.  Given a journal with setJournal(), a replay 
+ * records itself the way a server would.
+ *
+ * usage: EventReplay journalDir [controllerClass] [-from ms] [-match id] [-dump]
+ *
+ * controllerClass defaults to RPSController.  -from starts at a time, 
+ * -match only replays one match's events, -dump prints the records 
+ * instead of replaying them.
+ *
+ * @version 1.0
+ */
+public class EventReplay extends GameServer {
+    /** runs each event on the thread that handed it over */
+    private static final Executor CALLER_RUNS = new Executor() {
+	    public void execute(Runnable r) {
+		r.run();
+	    }
+	};
+
+    private GameController controller;
+    private int gameNameHash;
+    private long eventsIn;
+    private long eventsOut;
+    private long recordedOut;
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	if (args.length < 1) {
+	    System.out.println("usage: EventReplay journalDir [controllerClass] [-from ms] [-match id] [-dump]");
+	    System.exit(1);
+	}
+	String className = "com.hypefiend.javagamebook.server.controller.RPSController";
+	long from = -1;
+	int match = EventJournal.NO_MATCH;
+	boolean dump = false;
+	for (int i=1; i<args.length; i++) {
+	    if (args[i].equals("-from"))
+		from = Long.parseLong(args[++i]);
+	    else if (args[i].equals("-match"))
+		match = Integer.parseInt(args[++i]);
+	    else if (args[i].equals("-dump"))
+		dump = true;
+	    else
+		className = args[i];
+	}
+
+	try {
+	    EventJournal.Reader reader = new EventJournal.Reader(new File(args[0]));
+	    if (from != -1)
+		reader.seekTime(from);
+	    if (match != EventJournal.NO_MATCH)
+		reader.seekMatch(match);
+	    if (dump) {
+		dump(reader);
+		return;
+	    }
+	    GameController gc = (GameController) Class.forName(className).newInstance();
+	    EventReplay replay = new EventReplay(gc);
+	    long time = replay.replay(reader);
+	    replay.report(time);
+	    gc.shutdown();
+	}
+	catch (Exception e) {
+	    e.printStackTrace();
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * a GameServer for nothing but replaying to this controller
+     */
+    public EventReplay(GameController gc) {
+	controller = gc;
+	gameNameHash = gc.getGameName().hashCode();
+	gc.init(this, null, CALLER_RUNS, false);
+    }
+
+    /**
+     * replay the rest of the journal
+     * @return elapsed nanoseconds
+     */
+    public long replay(EventJournal.Reader reader) throws IOException {
+	long start = System.nanoTime();
+	while (reader.next()) {
+	    if (reader.getDirection() != EventJournal.IN) {
+		recordedOut++;
+		continue;
+	    }
+	    ByteBuffer frame = reader.getFrame();
+	    frame.getInt(); // clientId
+	    int hash = frame.getInt();
+	    frame.getInt(); // payload size
+	    if (hash != gameNameHash)
+		continue;
+	    GameEvent event = controller.createGameEvent();
+	    event.read(frame);
+
+	    // what SelectAndRead does the first time it sees a player
+	    if (getPlayerById(event.getPlayerId()) == null) {
+		Player p = controller.createPlayer();
+		p.setPlayerId(event.getPlayerId());
+		if (p.getSessionId() == null)
+		    p.setSessionId(nextSessionId());
+		addPlayer(p);
+	    }
+	    eventsIn++;
+	    journalEvent(EventJournal.IN, event);
+	    controller.countDecoded();
+	    controller.handleEvent(event);
+	}
+	return System.nanoTime() - start;
+    }
+
+    public GameController getGameControllerByHash(int hash) {
+	return hash == gameNameHash ? controller : null;
+    }
+
+    /**
+     * count the controller's events
+     */
+    public void writeEvent(GameEvent e) {
+	journalEvent(EventJournal.OUT, e);
+	eventsOut++;
+    }
+
+    public long getEventsIn() {
+	return eventsIn;
+    }
+    public long getEventsOut() {
+	return eventsOut;
+    }
+    public long getRecordedOut() {
+	return recordedOut;
+    }
+
+    public void report(long time) {
+	double secs = time / 1e9;
+	System.out.println("replayed " + eventsIn + " events in " + time / 1000000 + " ms, " + 
+			   (long) (eventsIn / secs) + " events/s, " + (eventsIn == 0 ? 0 : time / eventsIn) + " ns/event");
+	System.out.println("events out: " + eventsOut + ", recorded: " + recordedOut);
+    }
+
+    private static void dump(EventJournal.Reader reader) throws IOException {
+	GameEventDefault e = new GameEventDefault();
+	while (reader.next()) {
+	    ByteBuffer frame = reader.getFrame();
+	    frame.position(frame.position() + 12);
+	    e.read(frame);
+	    System.out.println(reader.getTime() + " " + (reader.getDirection() == EventJournal.IN ? "in " : "out") + 
+			       " match=" + reader.getMatchId() + " type=" + e.getType() + 
+			       " player=" + e.getPlayerId() + " msg=" + e.getMessage());
+	}
+    }
+
+}// EventReplay
@@ -4,6 +4,12 @@ import com.hypefiend.javagamebook.common.*;
 import java.io.*;
 import java.nio.*;
 import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.log4j.Logger;
 
 /**
@@ -16,6 +22,21 @@ import org.apache.log4j.Logger;
 public class EventWriter extends Wrap {
     /** reference to the GameServer */
     private static GameServer gameServer;
+
+    /** 
+     * write buffers not in use, when running on an executor.
+     * there are never more than the number of events being written at once
+     */
+    private ConcurrentLinkedQueue spareBuffers = new ConcurrentLinkedQueue();
+
+    /** most players listed by writer.backlog.player */
+    private static final int TOP_PLAYERS = 10;
+
+    /** bytes written, null when metrics are off */
+    private LongAdder bytesOut;
+
+    /** writes waiting, AtomicIntegers keyed by playerId */
+    private Map pending = new ConcurrentHashMap();
     
     /** 
      * contructor.
@@ -23,6 +44,99 @@ public class EventWriter extends Wrap {
     public EventWriter(GameServer gameServer, int numWorkers) {
 	this.gameServer = gameServer;
 	initWrap(numWorkers);
+	if (Globals.METRICS)
+	    initMetrics();
+    }
+
+    /** 
+     * contructor for running on an executor, see WorkerPools
+     */
+    public EventWriter(GameServer gameServer, Executor executor) {
+	this.gameServer = gameServer;
+	initWrap(executor);
+	if (Globals.METRICS)
+	    initMetrics();
+    }
+
+    /**
+     * register our counters as writer.*, with the players that have 
+     * the most writes waiting as writer.backlog.player.<playerId>
+     */
+    private void initMetrics() {
+	bytesOut = Metrics.counter("net.bytes.out");
+	setHandleTimes(Metrics.histogram("writer.handle.ns"));
+	Metrics.gauge("writer.backlog", new Metrics.Gauge() {
+		public long getValue() {
+		    return getBacklog();
+		}
+	    });
+	Metrics.source("writer.backlog.player", new Metrics.Source() {
+		public void addValues(Map out) {
+		    addPlayerBacklogs(out);
+		}
+	    });
+    }
+
+    /**
+     * queue the event, counting a write for each recipient
+     */
+    public void handleEvent(GameEvent event) {
+	if (bytesOut != null) {
+	    String recipients[] = event.getRecipients();
+	    if (recipients == null) {
+		pending(event.getPlayerId()).incrementAndGet();
+	    }
+	    else {
+		String sender = event.getPlayerId();
+		for (int i = 0; i < recipients.length; i++) {
+		    if (recipients[i] != null && !recipients[i].equals(sender))
+			pending(recipients[i]).incrementAndGet();
+		}
+	    }
+	}
+	super.handleEvent(event);
+    }
+
+    /**
+     * the count of writes waiting for a player
+     */
+    private AtomicInteger pending(String playerId) {
+	AtomicInteger n = (AtomicInteger) pending.get(playerId);
+	if (n == null) {
+	    n = new AtomicInteger();
+	    AtomicInteger old = (AtomicInteger) ((ConcurrentHashMap) pending).putIfAbsent(playerId, n);
+	    if (old != null)
+		n = old;
+	}
+	return n;
+    }
+
+    /**
+     * add writer.backlog.players, the number of players with writes 
+     * waiting, and the TOP_PLAYERS of them with the most
+     */
+    private void addPlayerBacklogs(Map out) {
+	ArrayList waiting = new ArrayList();
+	Iterator i = pending.entrySet().iterator();
+	while (i.hasNext()) {
+	    Map.Entry e = (Map.Entry) i.next();
+	    int n = ((AtomicInteger) e.getValue()).get();
+	    if (n > 0)
+		waiting.add(new Object[] { e.getKey(), Integer.valueOf(n) });
+	    else if (gameServer.getPlayerById((String) e.getKey()) == null)
+		// gone, and nothing more will be queued for them
+		i.remove();
+	}
+	Collections.sort(waiting, new Comparator() {
+		public int compare(Object a, Object b) {
+		    return ((Integer) ((Object[]) b)[1]).compareTo((Integer) ((Object[]) a)[1]);
+		}
+	    });
+	out.put("writer.backlog.players", Long.valueOf(waiting.size()));
+	for (int k=0; k<waiting.size() && k<TOP_PLAYERS; k++) {
+	    Object w[] = (Object[]) waiting.get(k);
+	    out.put("writer.backlog.player." + w[0], Long.valueOf(((Integer) w[1]).longValue()));
+	}
     }
 
     /** 
@@ -39,7 +153,9 @@ public class EventWriter extends Wrap {
 	while (running) {
 	    try {
 		if ((event = eventQueue.deQueue()) != null) {
+		    long start = startTimer();
 		    processEvent(event, writeBuffer);
+		    stopTimer(start);
 		}
 	    }
 	    catch(InterruptedException e) {
@@ -47,8 +163,20 @@ public class EventWriter extends Wrap {
 	}
     }
 
-    /** unused */
+    /** 
+     * used when running on an executor, where there's no 
+     * thread of our own to keep a writeBuffer in
+     */
     protected void processEvent(GameEvent event) {
+	ByteBuffer writeBuffer = (ByteBuffer) spareBuffers.poll();
+	if (writeBuffer == null)
+	    writeBuffer = ByteBuffer.allocateDirect(Globals.MAX_EVENT_SIZE);
+	try {
+	    processEvent(event, writeBuffer);
+	}
+	finally {
+	    spareBuffers.offer(writeBuffer);
+	}
     }
 
     /** 
@@ -66,8 +194,11 @@ public class EventWriter extends Wrap {
 	    write(playerId, writeBuffer);
 	}
 	else {
+	    // recipients may be a shared list, such as an InterestGrid's,
+	    // that includes the sender
+	    String sender = event.getPlayerId();
 	    for (int i = 0; i < recipients.length; i++) {
-		if (recipients[i] != null) {
+		if (recipients[i] != null && !recipients[i].equals(sender)) {
 		    log.info("writeEvent(B): type=" + event.getType() + ", id=" + 
 			     recipients[i] + ", msg=" + event.getMessage());
 		    write(recipients[i], writeBuffer);
@@ -81,6 +212,8 @@ public class EventWriter extends Wrap {
      * write the event to the given playerId's channel
      */
     private void write( String playerId, ByteBuffer writeBuffer) {	
+	if (bytesOut != null)
+	    pending(playerId).decrementAndGet();
 	Player player = gameServer.getPlayerById(playerId);
 	SocketChannel channel = player.getChannel();
 	
@@ -89,6 +222,8 @@ public class EventWriter extends Wrap {
 	    return;
 	}
 	
+	if (bytesOut != null)
+	    bytesOut.add(writeBuffer.remaining());
 	NIOUtils.channelWrite(channel, writeBuffer);
     }
     
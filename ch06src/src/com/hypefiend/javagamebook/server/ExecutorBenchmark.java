@@ -0,0 +1,145 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.log4j.*;
+
+/**
+ * ExecutorBenchmark.java
+ *
+ * Measures event latency through a Wrap whose handler blocks for 5 ms
+ * (like a database call), with the Wrap's own platform workers and on
+ * a limited virtual-thread executor from WorkerPools.
+ * Each simulated player sends an event, waits for it to be handled,
+ * thinks for a second and sends the next one. Latency is measured
+ * from send to the end of the handler, after a warmup.
+ *
+ * usage: ExecutorBenchmark [players] [seconds] [maxConcurrent]
+ *
+ * @version 1.0
+ */
+public class ExecutorBenchmark extends Wrap {
+    private static final long HANDLER_MILLIS = 5;
+    private static final long THINK_MILLIS = 1000;
+    private static final long WARMUP_MILLIS = 5000;
+
+    /** one bucket per millisecond, the last one holds everything slower */
+    private static final int MAX_MILLIS = 60000;
+
+    private ScheduledExecutorService timer;
+    private long sendTimes[];
+    private volatile boolean measuring;
+    private volatile boolean running;
+    private AtomicLongArray histogram = new AtomicLongArray(MAX_MILLIS + 1);
+    private AtomicLong handled = new AtomicLong();
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	int players = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+	int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+	int maxConcurrent = (args.length > 2) ? Integer.parseInt(args[2]) : Globals.MAX_CONCURRENT_EVENTS;
+	System.out.println(players + " players, " + HANDLER_MILLIS + " ms handler, " + THINK_MILLIS + 
+			   " ms think time, measuring " + (seconds - WARMUP_MILLIS / 1000) + " s after " + 
+			   WARMUP_MILLIS / 1000 + " s warmup");
+
+	new ExecutorBenchmark(null).run("platform, " + Globals.DEFAULT_CONTROLLER_WORKERS + " workers", players, seconds);
+
+	Executor virtual = WorkerPools.createExecutor("Benchmark", WorkerPools.VIRTUAL, maxConcurrent);
+	String name = WorkerPools.hasVirtualThreads() ? "virtual threads" : "virtual (no virtual threads, cached pool)";
+	new ExecutorBenchmark(virtual).run(name + ", limit " + maxConcurrent, players, seconds);
+    }
+
+    public ExecutorBenchmark(Executor executor) {
+	if (executor == null)
+	    initWrap(Globals.DEFAULT_CONTROLLER_WORKERS);
+	else
+	    initWrap(executor);
+	timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    private void run(String name, int players, int seconds) {
+	sendTimes = new long[players];
+	running = true;
+	Random random = new Random(1);
+	// spread the first events over one think time
+	for (int i=0; i<players; i++) 
+	    schedule(i, random.nextInt((int) THINK_MILLIS));
+	
+	sleep(WARMUP_MILLIS);
+	measuring = true;
+	long start = System.nanoTime();
+	sleep(seconds * 1000L - WARMUP_MILLIS);
+	measuring = false;
+	long time = System.nanoTime() - start;
+	running = false;
+	timer.shutdownNow();
+	shutdown();
+	report(name, time);
+    }
+
+    private void schedule(final int player, long delay) {
+	timer.schedule(new Runnable() {
+		public void run() {
+		    GameEventDefault e = new GameEventDefault(GameEventDefault.C_CHAT_MSG);
+		    e.setPlayerId("" + player);
+		    sendTimes[player] = System.nanoTime();
+		    handleEvent(e);
+		}
+	    }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * block like a slow lookup would, then let the player think
+     */
+    protected void processEvent(GameEvent event) {
+	try {
+	    Thread.sleep(HANDLER_MILLIS);
+	}
+	catch (InterruptedException e) {
+	    return;
+	}
+	int player = Integer.parseInt(event.getPlayerId());
+	if (measuring) {
+	    long millis = (System.nanoTime() - sendTimes[player]) / 1000000;
+	    histogram.incrementAndGet((int) Math.min(millis, MAX_MILLIS));
+	    handled.incrementAndGet();
+	}
+	if (running)
+	    schedule(player, THINK_MILLIS);
+    }
+
+    private void report(String name, long time) {
+	long n = handled.get();
+	System.out.println(name + ": " + (long) (n / (time / 1e9)) + " events/s, latency p50 " + 
+			   percentile(n, 0.5) + " ms, p99 " + percentile(n, 0.99) + " ms, max " + 
+			   percentile(n, 1.0) + " ms");
+    }
+
+    private long percentile(long n, double p) {
+	long target = (long) Math.ceil(n * p);
+	long count = 0;
+	for (int i=0; i<=MAX_MILLIS; i++) {
+	    count += histogram.get(i);
+	    if (count >= target && count > 0)
+		return i;
+	}
+	return -1;
+    }
+
+    private static void sleep(long millis) {
+	try {
+	    Thread.sleep(millis);
+	}
+	catch (InterruptedException e) {
+	}
+    }
+
+}// ExecutorBenchmark
@@ -0,0 +1,279 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import com.hypefiend.javagamebook.server.controller.*;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.log4j.*;
+
+/**
+ * FloodBenchmark.java
+ *
+ * Floods a real SelectAndRead over loopback TCP and measures what it 
+ * does to everyone else.  The GameController spends WORK_MICROS on each
+ * event.  NORMAL clients each send a move every 100 ms and we measure 
+ * their latency, FLOODERS send moves as fast as the socket will take 
+ * them, and one client spams chat at 20 a second.
+ *
+ * Three runs: no admission control (the old behavior), overload 
+ * pausing and queue shedding without rate limits, and everything.
+ *
+ * usage: FloodBenchmark [seconds]
+ *
+ * @version 1.0
+ */
+public class FloodBenchmark extends GameServer {
+    private static final String GAME_NAME = "FloodBenchmark";
+    private static final int NORMAL = 20;
+    private static final int FLOODERS = 4;
+    private static final long WORK_MICROS = 1000;
+    private static final int QUEUE_LIMIT = 1000;
+    private static final int MAX_MILLIS = 60000;
+    /** limits for the rate limited run, events per second */
+    private static final double PLAYER_RATE = 50;
+    private static final double CHAT_RATE = 2;
+
+    private Controller controller;
+    private SelectAndRead selectAndRead;
+    private ServerSocketChannel server;
+    private ArrayList channels = new ArrayList();
+    private volatile boolean running = true;
+    private volatile long measureStart = Long.MAX_VALUE;
+    private volatile long measureEnd = Long.MAX_VALUE;
+    private volatile int maxBacklog;
+
+    private AtomicLongArray histogram = new AtomicLongArray(MAX_MILLIS + 1);
+    private AtomicLong normalSent = new AtomicLong();
+    private AtomicLong normalHandled = new AtomicLong();
+    private AtomicLong floodHandled = new AtomicLong();
+    private AtomicLong chatHandled = new AtomicLong();
+
+    /** burns WORK_MICROS per event, and times the normal clients' */
+    private class Controller extends GameController {
+	int limit;
+
+	Controller(int limit) {
+	    this.limit = limit;
+	}
+	protected void setQueueLimit(int l, int policy) {
+	    super.setQueueLimit(limit, policy);
+	}
+	protected void initController(GameConfig gc) {
+	}
+	public String getGameName() {
+	    return GAME_NAME;
+	}
+	public Player createPlayer() {
+	    PlayerDefault p = new PlayerDefault();
+	    p.setSessionId(nextSessionId());
+	    return p;
+	}
+	public GameEvent createGameEvent() {
+	    return new GameEventDefault();
+	}
+	protected void processEvent(GameEvent e) {
+	    long end = System.nanoTime() + WORK_MICROS * 1000;
+	    while (System.nanoTime() < end)
+		;
+	    char c = e.getPlayerId().charAt(0);
+	    if (c == 'f') {
+		floodHandled.incrementAndGet();
+	    }
+	    else if (c == 'c') {
+		chatHandled.incrementAndGet();
+	    }
+	    else {
+		// count the events sent while we were measuring
+		long sent = Long.parseLong(e.getMessage());
+		if (sent < measureStart || sent >= measureEnd)
+		    return;
+		long millis = (System.nanoTime() - sent) / 1000000;
+		histogram.incrementAndGet((int) Math.min(millis, MAX_MILLIS));
+		normalHandled.incrementAndGet();
+	    }
+	}
+    }
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.ERROR);
+
+	int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+	System.out.println(NORMAL + " clients at 10 events/s, " + FLOODERS + " flooders, 1 chat spammer at 20/s, " + 
+			   WORK_MICROS + " us per event, " + Runtime.getRuntime().availableProcessors() + " cpus");
+	try {
+	    new FloodBenchmark(false, false).run("no admission control", seconds);
+	    new FloodBenchmark(true, false).run("overload + shedding, no rate limits", seconds);
+	    new FloodBenchmark(true, true).run("rate limits + overload + shedding", seconds);
+	}
+	catch (Exception e) {
+	    e.printStackTrace();
+	}
+	System.exit(0);
+    }
+
+    public FloodBenchmark(boolean admission, boolean rateLimits) throws IOException {
+	controller = new Controller(admission ? QUEUE_LIMIT : 0);
+	controller.init(this, null, false);
+	selectAndRead = new SelectAndRead(this);
+	selectAndRead.setAdmissionControl(admission);
+	if (rateLimits) {
+	    selectAndRead.setPlayerRate(PLAYER_RATE, 2 * (int) PLAYER_RATE);
+	    selectAndRead.setEventTypeRate(GameEventDefault.C_CHAT_MSG, CHAT_RATE, 5);
+	}
+	else {
+	    selectAndRead.setPlayerRate(0, 0);
+	    selectAndRead.setEventTypeRate(GameEventDefault.C_CHAT_MSG, 1e9, 1000000);
+	}
+	selectAndRead.start();
+
+	server = ServerSocketChannel.open();
+	server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+    }
+
+    public GameController getGameControllerByHash(int hash) {
+	return hash == GAME_NAME.hashCode() ? controller : null;
+    }
+
+    public Collection getGameControllers() {
+	return Collections.singletonList(controller);
+    }
+
+    public void writeEvent(GameEvent e) {
+    }
+
+    private SocketChannel connect() throws IOException {
+	SocketChannel c = SocketChannel.open(server.socket().getLocalSocketAddress());
+	c.socket().setTcpNoDelay(true);
+	SocketChannel accepted = server.accept();
+	selectAndRead.addNewClient(accepted);
+	channels.add(c);
+	return c;
+    }
+
+    private void run(String name, int seconds) throws Exception {
+	final SocketChannel normal[] = new SocketChannel[NORMAL];
+	for (int i=0; i<NORMAL; i++)
+	    normal[i] = connect();
+	for (int i=0; i<FLOODERS; i++) {
+	    final SocketChannel c = connect();
+	    final String id = "f" + i;
+	    startThread(new Runnable() {
+		    public void run() {
+			ByteBuffer bb = ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+			while (running) {
+			    write(c, event(GameEventDefault.C_MOVE, id, "rock"), bb);
+			}
+		    }
+		});
+	}
+	final SocketChannel chat = connect();
+	startThread(new Runnable() {
+		public void run() {
+		    ByteBuffer bb = ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+		    while (running) {
+			write(chat, event(GameEventDefault.C_CHAT_MSG, "c0", "spam"), bb);
+			nap(50);
+		    }
+		}
+	    });
+	startThread(new Runnable() {
+		public void run() {
+		    ByteBuffer bb = ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+		    while (running) {
+			for (int i=0; i<NORMAL; i++) {
+			    long t = System.nanoTime();
+			    write(normal[i], event(GameEventDefault.C_MOVE, "n" + i, "" + t), bb);
+			    if (t >= measureStart && t < measureEnd)
+				normalSent.incrementAndGet();
+			}
+			nap(100);
+		    }
+		}
+	    });
+
+	startThread(new Runnable() {
+		public void run() {
+		    while (running) {
+			maxBacklog = Math.max(maxBacklog, controller.getBacklog());
+			nap(10);
+		    }
+		}
+	    });
+
+	nap(1000);
+	measureStart = System.nanoTime();
+	nap(seconds * 1000L - 1000);
+	measureEnd = System.nanoTime();
+	// give the last ones a moment to get handled
+	nap(500);
+	running = false;
+
+	long n = normalHandled.get();
+	System.out.println(name + ":");
+	System.out.println("  normal clients: " + n + "/" + normalSent.get() + " handled, latency p50 " + 
+			   percentile(n, 0.5) + " ms, p99 " + percentile(n, 0.99) + " ms, max " + 
+			   percentile(n, 1.0) + " ms");
+	System.out.println("  flood events handled: " + floodHandled.get() + ", chat handled: " + chatHandled.get() + 
+			   ", backlog now " + controller.getBacklog() + ", max " + maxBacklog);
+	System.out.println("  read " + selectAndRead.getEventsRead() + ", shed " + controller.getShedCount() + 
+			   ", rate limit pauses " + selectAndRead.getRateLimitPauses() + 
+			   ", chat dropped " + selectAndRead.getTypeDropped() + 
+			   ", overloads " + selectAndRead.getOverloads() + 
+			   ", overload pauses " + selectAndRead.getOverloadPauses());
+
+	controller.shutdown();
+	for (int i=0; i<channels.size(); i++)
+	    ((SocketChannel) channels.get(i)).close();
+	server.close();
+    }
+
+    private static GameEvent event(int type, String player, String msg) {
+	GameEventDefault e = new GameEventDefault(type, msg);
+	e.setGameName(GAME_NAME);
+	e.setPlayerId(player);
+	return e;
+    }
+
+    private void write(SocketChannel c, GameEvent e, ByteBuffer bb) {
+	NIOUtils.prepBuffer(e, bb);
+	try {
+	    while (bb.hasRemaining())
+		c.write(bb);
+	}
+	catch (IOException ioe) {
+	    running = false;
+	}
+    }
+
+    private static void startThread(Runnable r) {
+	Thread t = new Thread(r);
+	t.setDaemon(true);
+	t.start();
+    }
+
+    private long percentile(long n, double p) {
+	long target = (long) Math.ceil(n * p);
+	long count = 0;
+	for (int i=0; i<=MAX_MILLIS; i++) {
+	    count += histogram.get(i);
+	    if (count >= target && count > 0)
+		return i;
+	}
+	return -1;
+    }
+
+    private static void nap(long millis) {
+	try {
+	    Thread.sleep(millis);
+	}
+	catch (InterruptedException e) {
+	}
+    }
+
+}// FloodBenchmark
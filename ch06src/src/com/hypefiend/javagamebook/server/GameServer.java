@@ -6,6 +6,8 @@ import com.hypefiend.javagamebook.server.controller.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import java.net.*;
 import java.io.*;
 import org.apache.log4j.*;
@@ -33,11 +35,7 @@ public class GameServer extends Thread {
     private Selector selector;
 
     /** GameControllers keyed by GameName */
-    private Hashtable gameControllers;
-
-    /** classname prefix used for dynamically loading GameControllers */
-    private static final String CONTROLLER_CLASS_PREFIX = 
-	"com.hypefiend.javagamebook.server.controller.";
+    private ControllerRegistry gameControllers;
 
     /** players keyed by playerId */
     private static Hashtable playersByPlayerId;
@@ -48,6 +46,12 @@ public class GameServer extends Thread {
     private boolean running;
     private SelectAndRead selectAndRead;
     private EventWriter eventWriter;
+    private UdpTransport udpTransport;
+    private EventJournal journal;
+    private MetricsServer metricsServer;
+
+    /** connections accepted, null when metrics are off */
+    private LongAdder accepts;
 
     private static long nextSessionId = 0;
 
@@ -65,7 +69,7 @@ public class GameServer extends Thread {
      * constructor, just initialize our hashtables
      */
     public GameServer() {
-	gameControllers = new Hashtable();
+	gameControllers = new ControllerRegistry(this);
 	playersByPlayerId = new Hashtable();
   	playersBySessionId = new Hashtable();
     }
@@ -76,13 +80,23 @@ public class GameServer extends Thread {
     public void init() {
 	log.info("GameServer initializing");
 
+	if (Globals.METRICS)
+	    initMetrics();
+	if (Globals.JOURNAL_DIR != null)
+	    initJournal();
 	loadGameControllers();
 	initServerSocket();
+	if (Globals.UDP)
+	    initUdp();
 
 	selectAndRead = new SelectAndRead(this);
 	selectAndRead.start();
 
-	eventWriter = new EventWriter(this, Globals.EVENT_WRITER_WORKERS); 
+	Executor writerExecutor = WorkerPools.createExecutor("EventWriter");
+	if (writerExecutor != null)
+	    eventWriter = new EventWriter(this, writerExecutor);
+	else
+	    eventWriter = new EventWriter(this, Globals.EVENT_WRITER_WORKERS); 
     }
 
     /**
@@ -112,6 +126,78 @@ public class GameServer extends Thread {
 	}
     }
 
+    /**
+     * register our counters and the JVM's, over JMX too, 
+     * and serve them on Globals.METRICS_PORT if it's set
+     */
+    private void initMetrics() {
+	accepts = Metrics.counter("server.accepts");
+	Metrics.gauge("server.players", new Metrics.Gauge() {
+		public long getValue() {
+		    return playersByPlayerId.size();
+		}
+	    });
+	Metrics.source("server", new Metrics.Source() {
+		public void addValues(Map out) {
+		    if (udpTransport != null)
+			out.put("udp.packets.dropped", Long.valueOf(udpTransport.getPacketsDropped()));
+		    if (journal != null) {
+			out.put("journal.written", Long.valueOf(journal.getWritten()));
+			out.put("journal.forces", Long.valueOf(journal.getForces()));
+		    }
+		}
+	    });
+
+	// JMX takes longer to start than the rest of the server does, 
+	// so do it on the side rather than keep players waiting
+	Thread t = new Thread("MetricsInit") {
+		public void run() {
+		    Metrics.registerJvm();
+		    Metrics.registerMBean();
+		    if (Globals.METRICS_PORT > 0) {
+			try {
+			    metricsServer = new MetricsServer(Globals.METRICS_PORT);
+			    metricsServer.start();
+			}
+			catch (IOException ioe) {
+			    log.error("error starting MetricsServer", ioe);
+			}
+		    }
+		}
+	    };
+	t.setDaemon(true);
+	t.setPriority(Thread.MIN_PRIORITY);
+	t.start();
+    }
+
+    /**
+     * open the EventJournal in Globals.JOURNAL_DIR
+     */
+    private void initJournal() {
+	try {
+	    journal = new EventJournal(new File(Globals.JOURNAL_DIR), Globals.JOURNAL_SEGMENT_SIZE, 
+				       Globals.JOURNAL_FLUSH_INTERVAL);
+	    log.info("journaling events to: " + Globals.JOURNAL_DIR);
+	}
+	catch (IOException ioe) {
+	    log.error("error opening journal, not journaling", ioe);
+	}
+    }
+
+    /**
+     * open the UDP transport on Globals.UDP_PORT, 
+     * SelectAndRead registers it with its selector
+     */
+    private void initUdp() {
+	try {
+	    InetAddress addr = InetAddress.getLocalHost();
+	    udpTransport = new UdpTransport(this, new InetSocketAddress(addr, Globals.UDP_PORT));
+	}
+	catch (IOException ioe) {
+	    log.error("error initializing udp, using TCP only", ioe);
+	}
+    }
+
     /**
      * Here's the meat, loop over the select() call to 
      * accept socket connections and hand them off to SelectAndRead
@@ -142,6 +228,8 @@ public class GameServer extends Thread {
 		    
 		    ServerSocketChannel ssChannel = (ServerSocketChannel) key.channel();
 		    SocketChannel clientChannel = ssChannel.accept();
+		    if (accepts != null)
+			accepts.increment();
 		    
 		    // add to the list in SelectAndRead for processing
 		    selectAndRead.addNewClient(clientChannel);
@@ -182,62 +270,42 @@ public class GameServer extends Thread {
      * finds the GameController for a given GameName hash code
      */
     public GameController getGameControllerByHash(int gameNameHash) {
-	GameController gc = (GameController) gameControllers.get("" + gameNameHash);
+	GameController gc = gameControllers.get(gameNameHash);
 	if (gc == null) 
 	    log.error("no gamecontroller for gameNameHash: " + gameNameHash);
 	return gc;
     }
 
     /**
-     *  Dynamically loads GameControllers
+     * all the GameControllers that have been init'd
      */
-    private void loadGameControllers() {
-	log.info("loading GameControllers");
+    public Collection getGameControllers() {
+	return gameControllers.getControllers();
+    }
 
-	// grab all class files in the same directory as GameController
-	String baseClass = "com/hypefiend/javagamebook/server/controller/GameController.class";
-	File f = new File( this.getClass( ).getClassLoader().getResource(baseClass).getPath());
-	File[] files = f.getParentFile().listFiles( );
+    /**
+     * the thread reading from clients
+     */
+    public SelectAndRead getSelectAndRead() {
+	return selectAndRead;
+    }
 
-	if (files == null) {
-	    log.error("error getting GameController directory");
-	    return;
+    /**
+     *  Finds the GameControllers, see ControllerRegistry and
+     *  Globals.CONTROLLER_LOADING
+     */
+    private void loadGameControllers() {
+	log.info("loading GameControllers");
+	if (Globals.CONTROLLER_LOADING.equals("scan")) {
+	    gameControllers.scan();
 	}
-     
-	for( int i = 0; ( i < files.length); i++) {
-	    String file = files[i].getName( );
-	    if (file.indexOf( ".class") == -1)
-		continue;
-	    if (file.equals("GameController.class"))
-		continue;
-
-	    try {
-		// grab the class
-		String controllerClassName = CONTROLLER_CLASS_PREFIX + file.substring(0, file.indexOf(".class"));
-		log.info("loading class: " + controllerClassName);
-
-		Class cl = Class.forName(controllerClassName);
-		
-		// make sure it extends GameController
-		if (!GameController.class.isAssignableFrom(cl)) {
-		    log.warn("class file does not extend GameController: " + file);
-		    continue;
-		}
-		
-		// get an instance and initialize
-		GameController gc = (GameController) cl.newInstance();
-		String gameName = gc.getGameName();
-		gc.init(this, getGameConfig(gameName));
-		
-		// add to our controllers hash
-		gameControllers.put("" + gameName.hashCode(), gc);
-		
-		log.info("loaded controller for gameName: " + gameName + ", hash: " + gameName.hashCode());
-	    } 
-	    catch (Exception e) {
-		log.error("Error instantiating GameController from file: " + file, e);
-	    }
+	else if (gameControllers.discover() == 0) {
+	    log.warn("no GameControllers registered, scanning for them");
+	    gameControllers.scan();
 	}
+	if (!Globals.CONTROLLER_LOADING.equals("lazy"))
+	    gameControllers.initAll();
+	log.info("found " + gameControllers.size() + " GameControllers");
     }
 
 
@@ -245,15 +313,76 @@ public class GameServer extends Thread {
      * pass the event on to the EventWriter
      */
     public void writeEvent(GameEvent e) {
+	journalEvent(EventJournal.OUT, e);
 	eventWriter.handleEvent(e);
     }
 
+    /**
+     * record an event in the journal, if there is one.  it's filed under
+     * the match its player is in
+     */
+    public void journalEvent(int direction, GameEvent e) {
+	if (journal == null)
+	    return;
+	int match = EventJournal.NO_MATCH;
+	Player p = (e.getPlayerId() == null) ? null : getPlayerById(e.getPlayerId());
+	if (p != null && p.inGame())
+	    match = p.getGameId();
+	journal.append(direction, e, match);
+    }
+
+    /**
+     * the EventJournal, or null if we're not journaling
+     */
+    public EventJournal getJournal() {
+	return journal;
+    }
+
+    /**
+     * journal to this, or null to stop
+     */
+    public void setJournal(EventJournal journal) {
+	this.journal = journal;
+    }
+
+    /**
+     * send the event over UDP on one of Globals.UDP_CHANNEL_MODES,
+     * or over TCP to players that don't have a UDP session
+     */
+    public void writeUdpEvent(GameEvent e, int udpChannel) {
+	UdpTransport udp = getUdpTransport();
+	if (udp == null) {
+	    writeEvent(e);
+	    return;
+	}
+	journalEvent(EventJournal.OUT, e);
+	String unbound[] = udp.send(e, udpChannel);
+	if (unbound != null) {
+	    // already journaled
+	    if (e.getRecipients() != null)
+		e.setRecipients(unbound);
+	    eventWriter.handleEvent(e);
+	}
+    }
+
+    /**
+     * the UDP transport, or null if it's off
+     */
+    public UdpTransport getUdpTransport() {
+	return udpTransport;
+    }
+
     /**
      * returns the GameConfig object for the given gameName
      */
     public GameConfig getGameConfig(String gameName) {
-	// todo: implement getGameConfig()
-	return null;
+	try {
+	    return GameConfig.load(gameName);
+	}
+	catch (IOException ioe) {
+	    log.error("error loading config for " + gameName + ", using defaults", ioe);
+	    return new GameConfig();
+	}
     }
    
     /**
@@ -0,0 +1,171 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import org.apache.log4j.*;
+
+/**
+ * InterestBenchmark.java
+ *
+ * 10k players wander a 10000 x 10000 world; every tick a tenth of them
+ * broadcast their position.  Compares broadcasting to every player
+ * (as sendBroadcastEvent does, with the recipient list in the payload
+ * as GameEventDefault used to send it) with sendAreaEvent's
+ * InterestGrid lookup, and prints the bytes that would be sent and 
+ * the CPU time spent finding recipients.
+ *
+ * usage: InterestBenchmark [players] [ticks] [radius]
+ *
+ * @version 1.0
+ */
+public class InterestBenchmark {
+    private static final float WORLD = 10000f;
+    private static final float SPEED = 1.5f;
+    private static final int BROADCASTERS = 10;
+
+    private int numPlayers;
+    private String ids[];
+    private float x[];
+    private float y[];
+    private float angle[];
+    private Random random;
+    private Hashtable players;
+    private ByteBuffer buff = ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	int numPlayers = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+	int ticks = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+	float radius = (args.length > 2) ? Float.parseFloat(args[2]) : 300f;
+	System.out.println(numPlayers + " players, " + ticks + " ticks, " + numPlayers / BROADCASTERS + 
+			   " broadcasts per tick, radius " + radius + ", cells " + Globals.INTEREST_CELL_SIZE);
+
+	// the first pass warms up the JIT
+	for (int pass=0; pass<2; pass++) {
+	    int n = (pass == 0) ? ticks / 3 : ticks;
+	    new InterestBenchmark(numPlayers).runBroadcast(n, pass == 1);
+	    new InterestBenchmark(numPlayers).runArea(n, radius, pass == 1);
+	}
+    }
+
+    public InterestBenchmark(int numPlayers) {
+	this.numPlayers = numPlayers;
+	random = new Random(1);
+	ids = new String[numPlayers];
+	x = new float[numPlayers];
+	y = new float[numPlayers];
+	angle = new float[numPlayers];
+	players = new Hashtable();
+	for (int i=0; i<numPlayers; i++) {
+	    ids[i] = "player" + i;
+	    x[i] = random.nextFloat() * WORLD;
+	    y[i] = random.nextFloat() * WORLD;
+	    angle[i] = (float) (random.nextFloat() * 2 * Math.PI);
+	    PlayerDefault p = new PlayerDefault();
+	    p.setPlayerId(ids[i]);
+	    players.put(ids[i], p);
+	}
+    }
+
+    /**
+     * everyone gets every broadcast, with the old recipient list in the payload
+     */
+    private void runBroadcast(int ticks, boolean print) {
+	long bytes = 0;
+	long bytesWithoutIds = 0;
+	long nanos = 0;
+	long sent = 0;
+	for (int t=0; t<ticks; t++) {
+	    move();
+	    for (int i=t % BROADCASTERS; i<numPlayers; i+=BROADCASTERS) {
+		GameEvent e = createEvent(i);
+		long start = System.nanoTime();
+		// what sendBroadcastEvent does
+		ArrayList recipients = new ArrayList(players.size());
+		for (Iterator it = players.values().iterator(); it.hasNext(); ) {
+		    Player p = (Player) it.next();
+		    if (!p.getPlayerId().equals(e.getPlayerId()))
+			recipients.add(p.getPlayerId());
+		}
+		String r[] = (String[]) recipients.toArray(new String[recipients.size()]);
+		nanos += System.nanoTime() - start;
+
+		// the ids went in the payload as putStr()s
+		int idBytes = 0;
+		for (int j=0; j<r.length; j++) 
+		    idBytes += 2 + r[j].length();
+		bytes += (long) (size(e) + idBytes) * r.length;
+		bytesWithoutIds += (long) size(e) * r.length;
+		sent += r.length;
+	    }
+	}
+	if (print) {
+	    report("broadcast to all", ticks, bytes, sent, nanos, null);
+	    System.out.println("  (" + bytesWithoutIds / ticks / 1024 + " KB per tick without the recipient ids)");
+	}
+    }
+
+    /**
+     * each broadcast goes to the players around the sender
+     */
+    private void runArea(int ticks, float radius, boolean print) {
+	InterestGrid grid = new InterestGrid(Globals.INTEREST_CELL_SIZE);
+	long bytes = 0;
+	long nanos = 0;
+	long sent = 0;
+	for (int t=0; t<ticks; t++) {
+	    move();
+	    long start = System.nanoTime();
+	    for (int i=0; i<numPlayers; i++) 
+		grid.move(ids[i], x[i], y[i]);
+	    nanos += System.nanoTime() - start;
+
+	    for (int i=t % BROADCASTERS; i<numPlayers; i+=BROADCASTERS) {
+		GameEvent e = createEvent(i);
+		start = System.nanoTime();
+		String r[] = grid.getRecipients(x[i], y[i], radius);
+		nanos += System.nanoTime() - start;
+		// EventWriter skips the sender
+		bytes += (long) size(e) * (r.length - 1);
+		sent += r.length - 1;
+	    }
+	}
+	if (print)
+	    report("area of interest", ticks, bytes, sent, nanos, grid);
+    }
+
+    private void move() {
+	for (int i=0; i<numPlayers; i++) {
+	    angle[i] += (random.nextFloat() - 0.5f) * 0.2f;
+	    x[i] = Math.max(0, Math.min(WORLD, x[i] + (float) Math.cos(angle[i]) * SPEED));
+	    y[i] = Math.max(0, Math.min(WORLD, y[i] + (float) Math.sin(angle[i]) * SPEED));
+	}
+    }
+
+    private GameEvent createEvent(int i) {
+	GameEventDefault e = new GameEventDefault(GameEventDefault.SB_CHAT_MSG, (int) x[i] + "," + (int) y[i]);
+	e.setPlayerId(ids[i]);
+	e.setGameName("World");
+	return e;
+    }
+
+    /**
+     * bytes on the wire for one recipient, header included
+     */
+    private int size(GameEvent e) {
+	NIOUtils.prepBuffer(e, buff);
+	return buff.remaining();
+    }
+
+    private void report(String name, int ticks, long bytes, long sent, long nanos, InterestGrid grid) {
+	String hits = "";
+	if (grid != null)
+	    hits = ", " + (100 * grid.getCacheHits() / grid.getQueryCount()) + "% cached";
+	System.out.println(name + ": " + sent / ticks + " messages, " + bytes / ticks / 1024 + " KB and " + 
+			   nanos / ticks / 1000 + " us of recipient lookups per tick" + hits);
+    }
+
+}// InterestBenchmark
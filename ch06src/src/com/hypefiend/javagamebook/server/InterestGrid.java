@@ -0,0 +1,216 @@
+package com.hypefiend.javagamebook.server;
+
+import java.util.*;
+
+/**
+ * InterestGrid.java
+ *
+ * Interest management for area broadcasts: a grid of cells that
+ * tracks which players are in each, so an event at a point only goes
+ * to the players in the cells around it instead of to everyone.
+ * Recipients are found by whole cells, so players up to one cell
+ * past the radius may get the event too.
+ *
+ * Recipient lists are cached by center cell and radius, and reused
+ * until a player enters or leaves one of the cells they cover; moving
+ * around inside a cell doesn't invalidate anything.  The cached arrays
+ * are shared, so they must not be changed, and they include the sender
+ * (EventWriter skips it).  Only the MAX_QUERIES most recently used 
+ * lists are kept, and a cell is dropped as soon as it's empty, so the
+ * grid stays the size of the area the players are in.
+ *
+ * @version 1.0
+ */
+public class InterestGrid {
+    /** most recipient lists to keep cached */
+    public static final int MAX_QUERIES = 4096;
+
+    private float cellSize;
+
+    /** cells by key */
+    private HashMap cells = new HashMap();
+
+    /** members by playerId */
+    private HashMap members = new HashMap();
+
+    /** cached queries by center cell and radius in cells, least recently used first */
+    private LinkedHashMap queries = new LinkedHashMap(16, 0.75f, true) {
+	    protected boolean removeEldestEntry(Map.Entry eldest) {
+		return size() > MAX_QUERIES;
+	    }
+	};
+
+    /** 
+     * last cell version handed out.  versions come from one counter, so a 
+     * cell that's dropped and made again never reuses one
+     */
+    private int lastVersion;
+
+    /** cells of the current query */
+    private Cell scratch[] = new Cell[0];
+
+    private long queryCount;
+    private long cacheHits;
+
+    private static class Cell {
+	ArrayList players = new ArrayList();
+	/** goes up whenever a player enters or leaves */
+	int version;
+    }
+
+    private static class Member {
+	Cell cell;
+	int cx;
+	int cy;
+    }
+
+    private static class Query {
+	String recipients[];
+	/** 
+	 * sum of the versions of the cells it covers when computed, and how 
+	 * many there were.  every change gives a cell a version above all 
+	 * the old ones, so after any change the sum is higher or there are 
+	 * fewer cells
+	 */
+	long stamp;
+	int numCells;
+    }
+
+    public InterestGrid(float cellSize) {
+	this.cellSize = cellSize;
+    }
+
+    /**
+     * place a player, or move one that's already placed
+     */
+    public synchronized void move(String playerId, float x, float y) {
+	int cx = cell(x);
+	int cy = cell(y);
+	Member m = (Member) members.get(playerId);
+	if (m == null) {
+	    m = new Member();
+	    members.put(playerId, m);
+	}
+	else if (m.cx == cx && m.cy == cy) {
+	    return;
+	}
+	else {
+	    leave(m, playerId);
+	}
+	m.cx = cx;
+	m.cy = cy;
+	m.cell = getCell(cx, cy, true);
+	m.cell.players.add(playerId);
+	m.cell.version = ++lastVersion;
+    }
+
+    public synchronized void remove(String playerId) {
+	Member m = (Member) members.remove(playerId);
+	if (m != null)
+	    leave(m, playerId);
+    }
+
+    /**
+     * the players in the cells within radius of (x, y)
+     */
+    public synchronized String[] getRecipients(float x, float y, float radius) {
+	int cx = cell(x);
+	int cy = cell(y);
+	int r = (int) Math.ceil(radius / cellSize);
+	queryCount++;
+
+	// look the cells up once, for the stamp and maybe the recipients
+	int side = 2 * r + 1;
+	if (scratch.length < side * side)
+	    scratch = new Cell[side * side];
+	int numCells = 0;
+	int total = 0;
+	long stamp = 0;
+	for (int i=cx-r; i<=cx+r; i++) 
+	    for (int j=cy-r; j<=cy+r; j++) {
+		Cell c = getCell(i, j, false);
+		if (c != null) {
+		    scratch[numCells++] = c;
+		    stamp += c.version;
+		    total += c.players.size();
+		}
+	    }
+
+	// cell coordinates in 24 bits each, then the radius
+	Long key = Long.valueOf(((long) (cx & 0xffffff) << 40) | ((long) (cy & 0xffffff) << 16) | (r & 0xffff));
+	Query q = (Query) queries.get(key);
+	if (q != null && q.stamp == stamp && q.numCells == numCells) {
+	    cacheHits++;
+	    return q.recipients;
+	}
+
+	String found[] = new String[total];
+	int n = 0;
+	for (int i=0; i<numCells; i++) {
+	    ArrayList players = scratch[i].players;
+	    for (int j=0; j<players.size(); j++) 
+		found[n++] = (String) players.get(j);
+	}
+	if (q == null) {
+	    q = new Query();
+	    queries.put(key, q);
+	}
+	q.recipients = found;
+	q.stamp = stamp;
+	q.numCells = numCells;
+	return found;
+    }
+
+    public synchronized int size() {
+	return members.size();
+    }
+
+    public synchronized long getQueryCount() {
+	return queryCount;
+    }
+
+    public synchronized long getCacheHits() {
+	return cacheHits;
+    }
+
+    public synchronized int getCellCount() {
+	return cells.size();
+    }
+
+    public synchronized int getCachedQueries() {
+	return queries.size();
+    }
+
+    /** 
+     * take a player out of their cell, and drop the cell if they were 
+     * the last one in it
+     */
+    private void leave(Member m, String playerId) {
+	// swap-remove, order doesn't matter
+	ArrayList players = m.cell.players;
+	int i = players.indexOf(playerId);
+	players.set(i, players.get(players.size() - 1));
+	players.remove(players.size() - 1);
+	m.cell.version = ++lastVersion;
+	if (players.isEmpty())
+	    cells.remove(cellKey(m.cx, m.cy));
+    }
+
+    private static Long cellKey(int cx, int cy) {
+	return Long.valueOf(((long) cx << 32) | (cy & 0xffffffffL));
+    }
+
+    private Cell getCell(int cx, int cy, boolean create) {
+	Long key = cellKey(cx, cy);
+	Cell c = (Cell) cells.get(key);
+	if (c == null && create) {
+	    c = new Cell();
+	    cells.put(key, c);
+	}
+	return c;
+    }
+
+    private int cell(float v) {
+	return (int) Math.floor(v / cellSize);
+    }
+}// InterestGrid
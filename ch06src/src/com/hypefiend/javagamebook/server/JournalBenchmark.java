@@ -0,0 +1,214 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import com.hypefiend.javagamebook.server.controller.*;
+import java.io.*;
+import java.nio.*;
+import org.apache.log4j.*;
+
+/**
+ * JournalBenchmark.java
+ *
+ * What does an EventJournal cost per event?  Writes a journal of RPS 
+ * traffic, replays it through an RPSController with EventReplay with and 
+ * without journaling (in and out, the way GameServer does), then times 
+ * bare appends, reading, seeking and reopening.
+ *
+ * usage: JournalBenchmark [matches] [rounds]
+ *
+ * @version 1.0
+ */
+public class JournalBenchmark {
+    private static final String moves[] = {"rock", "paper", "scissors"};
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String GAME_NAME = new RPSController().getGameName();
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	int matches = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+	int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+	File base = new File(System.getProperty("java.io.tmpdir"), "JournalBenchmark-" + System.currentTimeMillis());
+	try {
+	    run(base, matches, rounds);
+	}
+	catch (Exception e) {
+	    e.printStackTrace();
+	}
+	finally {
+	    delete(base);
+	}
+	System.exit(0);
+    }
+
+    private static void run(File base, int matches, int rounds) throws Exception {
+	File traffic = new File(base, "traffic");
+	EventJournal j = new EventJournal(traffic, SEGMENT_SIZE, Globals.JOURNAL_FLUSH_INTERVAL);
+	long n = writeTraffic(j, matches, rounds);
+	j.close();
+	System.out.println(matches + " matches, " + rounds + " rounds: " + n + " events in");
+
+	// replays, alternating, best of 3 after a warmup
+	long best[] = { Long.MAX_VALUE, Long.MAX_VALUE };
+	long out[] = new long[2];
+	long records = 0;
+	File recorded = null;
+	for (int pass=0; pass<4; pass++) {
+	    for (int mode=0; mode<2; mode++) {
+		EventReplay replay = new EventReplay(new RPSController());
+		EventJournal rj = null;
+		if (mode == 1) {
+		    recorded = new File(base, "replay" + pass);
+		    rj = new EventJournal(recorded, SEGMENT_SIZE, Globals.JOURNAL_FLUSH_INTERVAL);
+		    replay.setJournal(rj);
+		}
+		long time = replay.replay(new EventJournal.Reader(traffic));
+		if (rj != null) {
+		    records = rj.getWritten();
+		    rj.close();
+		    if (pass < 3)
+			delete(recorded);
+		}
+		if (pass > 0)
+		    best[mode] = Math.min(best[mode], time);
+		out[mode] = replay.getEventsOut();
+	    }
+	}
+	System.out.println("replay, no journal:       " + best[0] / n + " ns/event in, " + out[0] + " events out");
+	System.out.println("replay, journal in+out:   " + best[1] / n + " ns/event in, " + out[1] + " events out, " + 
+			   records + " records");
+	System.out.println("journaling overhead:      " + (best[1] - best[0]) / records + " ns/record, " + 
+			   (best[1] - best[0]) / n + " ns per event in");
+
+	// bare appends of a typical event, and just encoding it for comparison
+	GameEventDefault e = new GameEventDefault(GameEventDefault.C_MOVE, "paper");
+	e.setGameName(GAME_NAME);
+	e.setPlayerId("p12345");
+	ByteBuffer bb = ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+	for (int pass=0; pass<2; pass++) {
+	    long count = 2000000;
+	    long start = System.nanoTime();
+	    for (long k=0; k<count; k++)
+		NIOUtils.prepBuffer(e, bb);
+	    if (pass == 1)
+		System.out.println("prepBuffer only:  " + (System.nanoTime() - start) / count + " ns/event");
+	}
+	for (int threads=1; threads<=4; threads*=4) {
+	    File dir = new File(base, "append" + threads);
+	    EventJournal aj = new EventJournal(dir, SEGMENT_SIZE, Globals.JOURNAL_FLUSH_INTERVAL);
+	    appendAll(aj, e, 200000, threads);
+	    long count = 2000000;
+	    long time = appendAll(aj, e, count, threads);
+	    System.out.println("append, " + threads + " thread" + (threads > 1 ? "s: " : ":  ") + 
+			       time / count + " ns/event, " + aj.getForces() + " forces");
+	    aj.close();
+	    delete(dir);
+	}
+
+	// reading and seeking the recorded replay
+	EventJournal.Reader r = new EventJournal.Reader(recorded);
+	long start = System.nanoTime();
+	long count = 0;
+	long first = -1, last = 0;
+	int midMatch = EventJournal.NO_MATCH;
+	while (r.next()) {
+	    if (first == -1)
+		first = r.getTime();
+	    last = r.getTime();
+	    if (count++ >= records / 2 && midMatch == EventJournal.NO_MATCH) 
+		midMatch = r.getMatchId();
+	}
+	long time = System.nanoTime() - start;
+	System.out.println("read: " + count + " records, " + time / count + " ns/record, " + 
+			   recorded.list().length + " files");
+
+	r = new EventJournal.Reader(recorded);
+	long mid = (first + last) / 2;
+	start = System.nanoTime();
+	r.seekTime(mid);
+	r.next();
+	time = System.nanoTime() - start;
+	System.out.println("seek to time: " + time / 1000 + " us" + (r.getTime() >= mid ? "" : " WRONG"));
+
+	if (midMatch != EventJournal.NO_MATCH) {
+	    r = new EventJournal.Reader(recorded);
+	    start = System.nanoTime();
+	    r.seekMatch(midMatch);
+	    int found = 0;
+	    while (r.next())
+		found++;
+	    time = System.nanoTime() - start;
+	    System.out.println("seek to match " + midMatch + ": " + found + " records in " + time / 1000 + " us");
+	}
+
+	start = System.nanoTime();
+	EventJournal reopened = new EventJournal(recorded, SEGMENT_SIZE, Globals.JOURNAL_FLUSH_INTERVAL);
+	time = System.nanoTime() - start;
+	reopened.append(EventJournal.OUT, e, EventJournal.NO_MATCH);
+	reopened.close();
+	count = 0;
+	r = new EventJournal.Reader(recorded);
+	while (r.next())
+	    count++;
+	System.out.println("reopen: " + time / 1000 + " us, " + count + " records after one more append");
+    }
+
+    /**
+     * login, join, rounds of moves, quit and logout, one match after another
+     */
+    private static long writeTraffic(EventJournal j, int matches, int rounds) {
+	long n = 0;
+	for (int m=0; m<matches; m++) {
+	    String a = "a" + m;
+	    String b = "b" + m;
+	    n += append(j, GameEventDefault.C_LOGIN, a, null);
+	    n += append(j, GameEventDefault.C_LOGIN, b, null);
+	    n += append(j, GameEventDefault.C_JOIN_GAME, a, b);
+	    for (int i=0; i<rounds; i++) {
+		n += append(j, GameEventDefault.C_MOVE, a, moves[(m + i) % 3]);
+		n += append(j, GameEventDefault.C_MOVE, b, moves[i % 3]);
+	    }
+	    n += append(j, GameEventDefault.C_QUIT_GAME, a, null);
+	    n += append(j, GameEventDefault.C_LOGOUT, a, null);
+	    n += append(j, GameEventDefault.C_LOGOUT, b, null);
+	}
+	return n;
+    }
+
+    private static int append(EventJournal j, int type, String player, String msg) {
+	GameEventDefault e = new GameEventDefault(type, msg);
+	e.setGameName(GAME_NAME);
+	e.setPlayerId(player);
+	j.append(EventJournal.IN, e, EventJournal.NO_MATCH);
+	return 1;
+    }
+
+    private static long appendAll(final EventJournal j, final GameEvent e, final long count, final int threads) 
+	throws InterruptedException {
+	Thread t[] = new Thread[threads];
+	for (int i=0; i<threads; i++) {
+	    t[i] = new Thread() {
+		    public void run() {
+			for (long k=0; k<count / threads; k++)
+			    j.append(EventJournal.IN, e, (int) (k & 1023));
+		    }
+		};
+	}
+	long start = System.nanoTime();
+	for (int i=0; i<threads; i++)
+	    t[i].start();
+	for (int i=0; i<threads; i++)
+	    t[i].join();
+	return System.nanoTime() - start;
+    }
+
+    private static void delete(File f) {
+	File files[] = f.listFiles();
+	if (files != null)
+	    for (int i=0; i<files.length; i++)
+		delete(files[i]);
+	f.delete();
+    }
+
+}// JournalBenchmark
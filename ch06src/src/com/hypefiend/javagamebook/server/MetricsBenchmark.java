@@ -0,0 +1,251 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.*;
+
+/**
+ * MetricsBenchmark.java
+ *
+ * What recording metrics costs at peak load.  First it times what 
+ * the metrics add to each event, the GameController's decoded event 
+ * counter and the Wrap's sampled handle.ns timer, around an empty handler.
+ * Then it runs ControllerBenchmark 
+ * in fresh JVMs, alternately with -Djavagamebook.metricsOff=true and 
+ * with metrics on, while scraping a MetricsServer once a second, 
+ * and compares the best and median throughputs (the best is steadier, 
+ * one slow run is usually GC or the neighbours, not us).  Globals.METRICS is a constant, 
+ * so each setting needs its own JVM.
+ *
+ * usage: MetricsBenchmark [runs] [matches] [rounds]
+ *
+ * @version 1.0
+ */
+public class MetricsBenchmark {
+    private static final String MODES[] = {"workers", "actors"};
+
+    public static void main(String args[]) {
+	if (args.length > 0 && args[0].equals("-child")) {
+	    child(args);
+	    return;
+	}
+	int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+	String matches = (args.length > 1) ? args[1] : "200000";
+	String rounds = (args.length > 2) ? args[2] : "10";
+	System.out.println(runs + " runs of ControllerBenchmark " + matches + " " + rounds + 
+			   " each way, " + Runtime.getRuntime().availableProcessors() + " cpus");
+
+	long cost = instrumentationCost();
+	System.out.println("metrics add " + cost / 10.0 + " ns per event");
+
+	// rates[on][mode][run]
+	long rates[][][] = new long[2][MODES.length][runs];
+	try {
+	    for (int run=0; run<runs; run++) {
+		for (int on=0; on<2; on++) {
+		    long r[] = runChild(on == 1, matches, rounds);
+		    for (int m=0; m<MODES.length; m++)
+			rates[on][m][run] = r[m];
+		}
+	    }
+	}
+	catch (Exception e) {
+	    e.printStackTrace();
+	    System.exit(1);
+	}
+
+	for (int m=0; m<MODES.length; m++) {
+	    long off = best(rates[0][m]);
+	    long on = best(rates[1][m]);
+	    long offMedian = median(rates[0][m]);
+	    long onMedian = median(rates[1][m]);
+	    System.out.println(MODES[m] + ": best metrics off " + off + " events/s, on " + on + 
+			       ", overhead " + percent(off - on, off) + "%; median off " + offMedian + 
+			       ", on " + onMedian + ", overhead " + percent(offMedian - onMedian, offMedian) + "%");
+	    System.out.println("  " + cost / 10.0 + " ns per event is " + percent(cost * off, 10000000000L) + 
+			       "% of the time at the best off rate");
+	    System.out.println("  off " + list(rates[0][m]) + "\n  on  " + list(rates[1][m]));
+	}
+	System.exit(0);
+    }
+
+    /**
+     * a Wrap with an empty handler, to time the metrics around it
+     */
+    private static class Empty extends Wrap {
+	AtomicLong decoded;
+
+	Empty(boolean metrics) {
+	    if (metrics) {
+		decoded = new AtomicLong();
+		setHandleTimes(new LatencyHistogram());
+	    }
+	}
+	void handle(GameEvent e) {
+	    // as GameController.countDecoded()
+	    if (decoded != null)
+		decoded.lazySet(decoded.get() + 1);
+	    processTimed(e);
+	}
+	protected void processEvent(GameEvent e) {
+	}
+    }
+
+    /**
+     * @return tenths of a ns the metrics add to each event, 
+     * between the best of 5 runs each way
+     */
+    private static long instrumentationCost() {
+	int n = 20000000;
+	GameEvent e = new GameEventDefault();
+	Empty off = new Empty(false);
+	Empty on = new Empty(true);
+	long bestOff = Long.MAX_VALUE;
+	long bestOn = Long.MAX_VALUE;
+	for (int pass=0; pass<5; pass++) {
+	    long start = System.nanoTime();
+	    for (int i=0; i<n; i++)
+		off.handle(e);
+	    long mid = System.nanoTime();
+	    for (int i=0; i<n; i++)
+		on.handle(e);
+	    long end = System.nanoTime();
+	    bestOff = Math.min(bestOff, mid - start);
+	    bestOn = Math.min(bestOn, end - mid);
+	}
+	return Math.max(0, (bestOn - bestOff) * 10 / n);
+    }
+
+    /**
+     * run ControllerBenchmark in a new JVM
+     * @return events/s in for each of MODES
+     */
+    private static long[] runChild(boolean metrics, String matches, String rounds) throws Exception {
+	ArrayList cmd = new ArrayList();
+	cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+	if (!metrics)
+	    cmd.add("-Djavagamebook.metricsOff=true");
+	cmd.add("-cp");
+	cmd.add(System.getProperty("java.class.path"));
+	cmd.add(MetricsBenchmark.class.getName());
+	cmd.add("-child");
+	cmd.add(matches);
+	cmd.add(rounds);
+	Process p = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+
+	long rates[] = new long[MODES.length];
+	BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
+	String line;
+	while ((line = in.readLine()) != null) {
+	    for (int m=0; m<MODES.length; m++) {
+		int end = line.indexOf(" events/s in");
+		if (line.startsWith(MODES[m]) && end > 0) 
+		    rates[m] = Long.parseLong(line.substring(line.lastIndexOf(' ', end - 1) + 1, end));
+	    }
+	    if (line.startsWith("scraped"))
+		System.out.println("  " + line);
+	}
+	if (p.waitFor() != 0)
+	    throw new IOException("ControllerBenchmark exited with " + p.exitValue());
+	return rates;
+    }
+
+    /**
+     * in the new JVM: serve and scrape the metrics if they're on, 
+     * and run ControllerBenchmark
+     */
+    private static void child(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+	final MetricsServer server[] = new MetricsServer[1];
+	final long scrapes[] = new long[2];
+	if (Globals.METRICS) {
+	    try {
+		Metrics.registerJvm();
+		Metrics.registerMBean();
+		server[0] = new MetricsServer(0);
+		server[0].start();
+	    }
+	    catch (IOException ioe) {
+		ioe.printStackTrace();
+		System.exit(1);
+	    }
+	    Thread scraper = new Thread() {
+		    public void run() {
+			while (true) {
+			    try {
+				Thread.sleep(1000);
+				scrapes[1] += scrape(server[0].getPort());
+				scrapes[0]++;
+			    }
+			    catch (Exception e) {
+				return;
+			    }
+			}
+		    }
+		};
+	    scraper.setDaemon(true);
+	    scraper.start();
+	}
+
+	// it configures log4j itself
+	Logger.getRootLogger().removeAllAppenders();
+	ControllerBenchmark.main(new String[] {args[1], args[2]});
+	if (Globals.METRICS) 
+	    System.out.println("scraped " + scrapes[0] + " times, " + scrapes[1] / Math.max(1, scrapes[0]) + 
+			       " bytes each");
+	System.exit(0);
+    }
+
+    /**
+     * GET /metrics
+     * @return bytes read
+     */
+    private static long scrape(int port) throws IOException {
+	Socket s = new Socket("127.0.0.1", port);
+	try {
+	    s.getOutputStream().write("GET /metrics HTTP/1.0\r\n\r\n".getBytes("ISO-8859-1"));
+	    InputStream in = s.getInputStream();
+	    byte buf[] = new byte[8192];
+	    long total = 0;
+	    int n;
+	    while ((n = in.read(buf)) > 0)
+		total += n;
+	    return total;
+	}
+	finally {
+	    s.close();
+	}
+    }
+
+    private static long best(long values[]) {
+	long best = 0;
+	for (int i=0; i<values.length; i++)
+	    best = Math.max(best, values[i]);
+	return best;
+    }
+
+    private static long median(long values[]) {
+	long sorted[] = (long[]) values.clone();
+	Arrays.sort(sorted);
+	return sorted[sorted.length / 2];
+    }
+
+    private static String percent(long part, long whole) {
+	return "" + Math.round(part * 1000.0 / whole) / 10.0;
+    }
+
+    private static String list(long values[]) {
+	StringBuffer sb = new StringBuffer();
+	for (int i=0; i<values.length; i++) {
+	    if (i > 0)
+		sb.append(' ');
+	    sb.append(values[i]);
+	}
+	return sb.toString();
+    }
+
+}// MetricsBenchmark
@@ -0,0 +1,161 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.Metrics;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import org.apache.log4j.Logger;
+
+/**
+ * MetricsServer.java
+ *
+ * Serves Metrics.toText() over HTTP on localhost, from its own thread 
+ * and Selector so a slow or stuck reader can't hold up the game.  
+ * GET / or /metrics gives "name value" lines, anything else is a 404.
+ *
+ *   curl http://127.0.0.1:port/metrics
+ *
+ * @version 1.0
+ */
+public class MetricsServer extends Thread {
+    /** log4j Logger */
+    private Logger log = Logger.getLogger("MetricsServer");
+
+    /** biggest request we'll read, we only need the first line */
+    private static final int MAX_REQUEST = 4096;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private volatile boolean running = true;
+
+    /**
+     * bind to port on 127.0.0.1, 0 for any free port
+     */
+    public MetricsServer(int port) throws IOException {
+	super("MetricsServer");
+	setDaemon(true);
+	selector = Selector.open();
+	server = ServerSocketChannel.open();
+	server.configureBlocking(false);
+	server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+	server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * the port we're listening on
+     */
+    public int getPort() {
+	return server.socket().getLocalPort();
+    }
+
+    public void run() {
+	log.info("serving metrics on port " + getPort());
+	while (running) {
+	    try {
+		selector.select();
+		Iterator i = selector.selectedKeys().iterator();
+		while (i.hasNext()) {
+		    SelectionKey key = (SelectionKey) i.next();
+		    i.remove();
+		    try {
+			if (!key.isValid())
+			    continue;
+			if (key.isAcceptable())
+			    accept();
+			else if (key.isReadable())
+			    read(key);
+			else if (key.isWritable())
+			    write(key);
+		    }
+		    catch (IOException ioe) {
+			key.channel().close();
+		    }
+		}
+	    }
+	    catch (ClosedSelectorException cse) {
+		break;
+	    }
+	    catch (IOException ioe) {
+		log.warn("IOException during select(): " + ioe.getMessage());
+	    }
+	}
+    }
+
+    /**
+     * stop serving
+     */
+    public void shutdown() {
+	running = false;
+	try {
+	    selector.close();
+	    server.close();
+	}
+	catch (IOException ioe) {
+	}
+    }
+
+    private void accept() throws IOException {
+	SocketChannel channel = server.accept();
+	if (channel == null)
+	    return;
+	channel.configureBlocking(false);
+	channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(MAX_REQUEST));
+    }
+
+    /**
+     * read until the end of the request headers, then answer
+     */
+    private void read(SelectionKey key) throws IOException {
+	SocketChannel channel = (SocketChannel) key.channel();
+	ByteBuffer request = (ByteBuffer) key.attachment();
+	if (channel.read(request) == -1) {
+	    channel.close();
+	    return;
+	}
+	String text = new String(request.array(), 0, request.position(), "ISO-8859-1");
+	if (text.indexOf("\r\n\r\n") < 0 && text.indexOf("\n\n") < 0 && request.hasRemaining())
+	    return;
+
+	ByteBuffer response = respond(text);
+	key.attach(response);
+	key.interestOps(SelectionKey.OP_WRITE);
+	write(key);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+	SocketChannel channel = (SocketChannel) key.channel();
+	ByteBuffer response = (ByteBuffer) key.attachment();
+	channel.write(response);
+	if (!response.hasRemaining())
+	    channel.close();
+    }
+
+    private ByteBuffer respond(String request) throws UnsupportedEncodingException {
+	StringTokenizer st = new StringTokenizer(request);
+	String method = st.hasMoreTokens() ? st.nextToken() : "";
+	String path = st.hasMoreTokens() ? st.nextToken() : "";
+
+	String status;
+	byte body[];
+	if (method.equals("GET") && (path.equals("/") || path.equals("/metrics"))) {
+	    status = "200 OK";
+	    body = Metrics.toText().getBytes("UTF-8");
+	}
+	else {
+	    status = "404 Not Found";
+	    body = "not found, try /metrics\n".getBytes("UTF-8");
+	}
+	byte head[] = ("HTTP/1.0 " + status + "\r\n" + 
+		       "Content-Type: text/plain; charset=utf-8\r\n" + 
+		       "Content-Length: " + body.length + "\r\n" + 
+		       "Connection: close\r\n\r\n").getBytes("ISO-8859-1");
+	ByteBuffer bb = ByteBuffer.allocate(head.length + body.length);
+	bb.put(head);
+	bb.put(body);
+	bb.flip();
+	return bb;
+    }
+
+}// MetricsServer
@@ -0,0 +1,188 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.log4j.Logger;
+
+/**
+ * ReplicatedMatch.java
+ *
+ * A server-authoritative simulation, stepped at a fixed rate by a
+ * TickLoop, that replicates its state to the match's clients.
+ * Every tick each client gets a SnapshotEvent that is a delta against
+ * the last snapshot it acknowledged (with a C_SNAPSHOT_ACK), so lost
+ * snapshots are simply covered by the next one.  If a client hasn't
+ * acknowledged anything still in our history, it gets a full snapshot.
+ * Clients that acknowledged the same tick share one encoding.
+ *
+ * Subclasses implement simulate() to move the entities.
+ *
+ * @version 1.0
+ */
+public abstract class ReplicatedMatch implements Runnable {
+    /** log4j logger */
+    private static Logger log = Logger.getLogger("ReplicatedMatch");
+
+    /** number of past snapshots kept to encode deltas against */
+    public static final int HISTORY_SIZE = 32;
+
+    /** reference to the GameServer */
+    protected GameServer gameServer;
+
+    /** the current state, only touched by simulate() */
+    protected Snapshot state;
+
+    private int ticksPerSecond;
+    private int tick;
+    private SnapshotHistory history;
+    private List clients = new CopyOnWriteArrayList();
+    private BitWriter writer = new BitWriter(1024);
+
+    /** this tick's encodings, by baseline slot (the last one is the full snapshot) */
+    private int encodedTick[] = new int[HISTORY_SIZE + 1];
+    private int encodedBaseline[] = new int[HISTORY_SIZE + 1];
+    private byte encoded[][] = new byte[HISTORY_SIZE + 1][];
+
+    // stats, only touched by tick()
+    private long encodeNanos;
+    private long encodes;
+    private long bytesSent;
+    private long fullSnapshots;
+    private long deltaSnapshots;
+
+    /** 
+     * a client of the match and the last tick it acknowledged
+     */
+    private static class Client {
+	String playerId;
+	volatile int ackedTick = -1;
+
+	Client(String playerId) {
+	    this.playerId = playerId;
+	}
+    }
+
+    public ReplicatedMatch(GameServer gameServer, int numEntities, int ticksPerSecond) {
+	this.gameServer = gameServer;
+	this.ticksPerSecond = ticksPerSecond;
+	state = new Snapshot(numEntities);
+	history = new SnapshotHistory(HISTORY_SIZE, numEntities);
+	Arrays.fill(encodedTick, -1);
+    }
+
+    public int getTicksPerSecond() {
+	return ticksPerSecond;
+    }
+
+    public int getTick() {
+	return tick;
+    }
+
+    public void addClient(String playerId) {
+	clients.add(new Client(playerId));
+    }
+
+    public void removeClient(String playerId) {
+	Client c = getClient(playerId);
+	if (c != null)
+	    clients.remove(c);
+    }
+
+    /**
+     * handle a C_SNAPSHOT_ACK from a client
+     */
+    public void ack(String playerId, int ackTick) {
+	Client c = getClient(playerId);
+	if (c != null && ackTick > c.ackedTick && ackTick <= tick)
+	    c.ackedTick = ackTick;
+    }
+
+    /**
+     * run one tick, for the TickLoop
+     */
+    public void run() {
+	try {
+	    tick();
+	}
+	catch (Exception e) {
+	    // don't let the exception cancel our scheduled ticks
+	    log.error("exception in tick " + tick, e);
+	}
+    }
+
+    /**
+     * simulate a step, then send every client its snapshot
+     */
+    public void tick() {
+	tick++;
+	simulate(state, 1f / ticksPerSecond);
+	state.setTick(tick);
+	history.store(state);
+
+	for (Iterator i = clients.iterator(); i.hasNext(); ) {
+	    Client c = (Client) i.next();
+	    int acked = c.ackedTick;
+	    Snapshot baseline = (acked < 0 || tick - acked > SnapshotCodec.MAX_BASELINE_AGE) ? null : history.get(acked);
+	    int slot = (baseline == null) ? HISTORY_SIZE : acked % HISTORY_SIZE;
+	    if (encodedTick[slot] != tick || (baseline != null && encodedBaseline[slot] != acked)) {
+		long start = System.nanoTime();
+		writer.reset();
+		SnapshotCodec.encode(state, baseline, writer);
+		byte data[] = new byte[writer.getByteCount()];
+		System.arraycopy(writer.getBytes(), 0, data, 0, data.length);
+		encodeNanos += System.nanoTime() - start;
+		encodes++;
+		encoded[slot] = data;
+		encodedTick[slot] = tick;
+		encodedBaseline[slot] = acked;
+	    }
+	    if (baseline == null)
+		fullSnapshots++;
+	    else
+		deltaSnapshots++;
+	    bytesSent += encoded[slot].length;
+	    send(c.playerId, encoded[slot]);
+	}
+    }
+
+    /**
+     * send a snapshot to a client.
+     * the data is shared between clients, so it mustn't be changed
+     */
+    protected void send(String playerId, byte data[]) {
+	SnapshotEvent e = new SnapshotEvent(data, data.length);
+	e.setPlayerId(playerId);
+	gameServer.writeEvent(e);
+    }
+
+    /**
+     * advance the simulation by dt seconds
+     */
+    protected abstract void simulate(Snapshot state, float dt);
+
+    private Client getClient(String playerId) {
+	for (Iterator i = clients.iterator(); i.hasNext(); ) {
+	    Client c = (Client) i.next();
+	    if (c.playerId.equals(playerId))
+		return c;
+	}
+	return null;
+    }
+
+    public long getEncodeNanos() {
+	return encodeNanos;
+    }
+    public long getEncodes() {
+	return encodes;
+    }
+    public long getBytesSent() {
+	return bytesSent;
+    }
+    public long getFullSnapshots() {
+	return fullSnapshots;
+    }
+    public long getDeltaSnapshots() {
+	return deltaSnapshots;
+    }
+}// ReplicatedMatch
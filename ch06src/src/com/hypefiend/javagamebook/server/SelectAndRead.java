@@ -1,14 +1,19 @@
 package com.hypefiend.javagamebook.server;
 
 import com.hypefiend.javagamebook.common.GameEvent;
+import com.hypefiend.javagamebook.common.GameEventDefault;
+import com.hypefiend.javagamebook.common.Globals;
+import com.hypefiend.javagamebook.common.TokenBucket;
 import com.hypefiend.javagamebook.common.Player;
 import com.hypefiend.javagamebook.common.Attachment;
+import com.hypefiend.javagamebook.common.Metrics;
 import com.hypefiend.javagamebook.server.controller.GameController;
 import java.nio.*;
 import java.nio.channels.*;
 import java.io.*;
 import java.util.*;
 import java.net.Socket;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.log4j.Logger;
 
 /**
@@ -17,6 +22,14 @@ import org.apache.log4j.Logger;
  * handles reading from all clients using a Selector
  * and hands off events to the appropriatae GameControllers
  *
+ * Admission control: each client gets a TokenBucket of events, and 
+ * when it's empty we stop reading from that client until it refills, 
+ * so TCP pushes back on it.  Event types can have their own limits 
+ * (chat, if Globals.CHAT_EVENT_RATE is set), events over those are 
+ * dropped.  And when a GameController's queue gets to Globals.OVERLOAD_HIGH 
+ * of its limit we stop reading from the noisiest clients until it's down 
+ * to OVERLOAD_LOW.  It's all off if both rates are 0.
+ *
  * @author <a href="mailto:bret@hypefiend.com">bret barker</a>
  * @version 1.0
  */
@@ -27,21 +40,76 @@ public class SelectAndRead extends Thread {
     /** pending connections */
     private LinkedList newClients;
 
-    //    /** timeout for the selector's select() call */
-    //    private static final long SELECT_TIMEOUT = 250;
+    /** timeout for the selector's select() call, when there's UDP to update */
+    private static final long SELECT_TIMEOUT = Globals.UDP_UPDATE_INTERVAL;
 
     /** the selector, multiplexes access to client channels */
-    private Selector selector;
+    private volatile Selector selector;
 
     /** reference to the GameServer */
     private GameServer gameServer;
 
+    /** the UDP transport, if there is one */
+    private UdpTransport udp;
+
+    /** how often to check the GameControllers' backlogs */
+    private static final long OVERLOAD_CHECK_NANOS = 10000000L;
+
+    /** how long to give the clients we paused for overload to make a difference */
+    private static final long OVERLOAD_PAUSE_NANOS = 250000000L;
+
+    // admission control
+    private boolean admissionControl = Globals.PLAYER_EVENT_RATE > 0 || Globals.CHAT_EVENT_RATE > 0;
+    private double playerRate = Globals.PLAYER_EVENT_RATE;
+    private int playerBurst = Globals.PLAYER_EVENT_BURST;
+    /** {rate, burst} by event type */
+    private HashMap typeLimits = new HashMap();
+    /** keys not reading, for rate limits and for overload */
+    private LinkedList rateLimited = new LinkedList();
+    private ArrayList overloadPaused = new ArrayList();
+    private volatile boolean overloaded;
+    private long lastOverloadCheck;
+    private long lastPause;
+    private long lastDecay;
+
+    // counters, written only by our thread
+    private volatile long eventsRead;
+    private volatile long rateLimitPauses;
+    private volatile long typeDropped;
+    private volatile long overloads;
+    private volatile long overloadPauses;
+    private volatile int maxBacklog;
+
+    /** bytes read, null when metrics are off */
+    private LongAdder bytesIn;
+
     /**
      * Constructor.
      */
     public SelectAndRead (GameServer gameServer){
 	this.gameServer = gameServer;
 	newClients = new LinkedList();
+	if (Globals.CHAT_EVENT_RATE > 0)
+	    setEventTypeRate(GameEventDefault.C_CHAT_MSG, Globals.CHAT_EVENT_RATE, Globals.CHAT_EVENT_BURST);
+	if (Globals.METRICS)
+	    initMetrics();
+    }
+
+    /**
+     * register net.bytes.in, and our counters as reader.*
+     */
+    private void initMetrics() {
+	bytesIn = Metrics.counter("net.bytes.in");
+	Metrics.source("reader", new Metrics.Source() {
+		public void addValues(Map out) {
+		    out.put("reader.events", Long.valueOf(eventsRead));
+		    out.put("reader.rate.limit.pauses", Long.valueOf(rateLimitPauses));
+		    out.put("reader.type.dropped", Long.valueOf(typeDropped));
+		    out.put("reader.overloads", Long.valueOf(overloads));
+		    out.put("reader.overload.pauses", Long.valueOf(overloadPauses));
+		    out.put("reader.max.backlog", Long.valueOf(maxBacklog));
+		}
+	    });
     }
     
     /** 
@@ -53,7 +121,9 @@ public class SelectAndRead extends Thread {
 	}
 	// force selector to return
 	// so our new client can get in the loop right away
-	selector.wakeup();
+	// (if we've opened it yet, if not we'll get to them when we do)
+	if (selector != null)
+	    selector.wakeup();
     }
     
     /** 
@@ -63,13 +133,22 @@ public class SelectAndRead extends Thread {
     public void run () {
 	try {
 	    selector = Selector.open();
+	    udp = gameServer.getUdpTransport();
+	    if (udp != null)
+		udp.register(selector);
 
 	    while (true) {
 		select();
 		checkNewConnections();
 
-		// sleep just a bit
-		try { Thread.sleep(30); } catch (InterruptedException e) {}
+		if (udp != null) {
+		    // no nap, UDP resends and acks are timed from here
+		    udp.update(System.currentTimeMillis());
+		}
+		else if (!admissionControl) {
+		    // sleep just a bit
+		    try { Thread.sleep(30); } catch (InterruptedException e) {}
+		}
 	    }
 	}
 	catch (IOException e) {
@@ -106,14 +185,24 @@ public class SelectAndRead extends Thread {
     private void select() {
 	try {
 	    // this is a blocking select call but will 
-	    // be interrupted when new clients come in
-	    selector.select();
+	    // be interrupted when new clients come in,
+	    // or events are queued for UDP.
+	    // if anyone is paused we need to wake up to resume them
+	    if (udp != null || rateLimited.size() > 0 || overloaded)
+		selector.select(SELECT_TIMEOUT);
+	    else
+		selector.select();
 	    Set readyKeys = selector.selectedKeys();
+	    long now = System.nanoTime();
 
 	    Iterator i = readyKeys.iterator();
 	    while (i.hasNext()) {
 		SelectionKey key = (SelectionKey) i.next();
 		i.remove();
+		if (key.attachment() == udp && udp != null) {
+		    udp.read();
+		    continue;
+		}
 		SocketChannel channel = (SocketChannel) key.channel();
 		Attachment attachment = (Attachment) key.attachment();
 
@@ -126,31 +215,21 @@ public class SelectAndRead extends Thread {
 				 ", end-of-stream");
 			channel.close();
 		    }
-
-		    // check for a complete event
-		    try {
-			if (attachment.readBuff.position() >= attachment.HEADER_SIZE) {
-			    attachment.readBuff.flip();
-			    
-			    // read as many events as are available in the buffer
-			    while(attachment.eventReady()) {
-				GameEvent event = getEvent(attachment);
-				delegateEvent(event, channel);
-				attachment.reset();
-			    }
-			    // prepare for more channel reading
-			    attachment.readBuff.compact();
-			}
-		    }
-		    catch (IllegalArgumentException e) {
-			log.error("illegal argument exception", e);
+		    else if (bytesIn != null) {
+			bytesIn.add(nbytes);
 		    }
+		    readEvents(key, attachment, channel, now);
 		}
 		catch (IOException ioe) {
 		    log.warn("IOException during read(), closing channel:" + channel.socket().getInetAddress());
 		    channel.close();
 		}
 	    }
+
+	    if (admissionControl) {
+		resumeRateLimited(now);
+		checkOverload(now);
+	    }
 	}
 	catch (IOException ioe2) {
 	    log.warn("IOException during select(): " + ioe2.getMessage());
@@ -160,6 +239,256 @@ public class SelectAndRead extends Thread {
  	}
     }
 
+    /**
+     * hand off the complete events in a channel's buffer, 
+     * as many as it's allowed to send right now
+     */
+    private void readEvents(SelectionKey key, Attachment attachment, SocketChannel channel, long now) {
+	try {
+	    if (attachment.readBuff.position() > 0) {
+		attachment.readBuff.flip();
+		
+		// read as many events as are available in the buffer
+		while (true) {
+		    if (admissionControl && !admitFrom(key, attachment, now))
+			break;
+		    if (!attachment.eventReady())
+			break;
+		    GameEvent event = getEvent(attachment);
+		    attachment.reset();
+		    eventsRead++;
+		    attachment.recentEvents++;
+		    if (admissionControl && attachment.bucket != null)
+			attachment.bucket.tryTake(now);
+		    if (event != null && admissionControl && !admitType(attachment, event, now))
+			continue;
+		    delegateEvent(event, channel);
+		}
+		// prepare for more channel reading
+		attachment.readBuff.compact();
+	    }
+	}
+	catch (IllegalArgumentException e) {
+	    log.error("illegal argument exception", e);
+	}
+    }
+
+    /**
+     * can this client send another event?  if not, stop reading from it
+     * until it can.  TCP will push back on it meanwhile
+     */
+    private boolean admitFrom(SelectionKey key, Attachment attachment, long now) {
+	if (playerRate <= 0)
+	    return true;
+	if (attachment.bucket == null)
+	    attachment.bucket = new TokenBucket(playerRate, playerBurst, now);
+	if (attachment.bucket.hasToken(now))
+	    return true;
+	if (!attachment.rateLimited) {
+	    attachment.rateLimited = true;
+	    attachment.resumeAt = now + attachment.bucket.nanosUntilToken(now);
+	    rateLimited.add(key);
+	    if (key.isValid())
+		key.interestOps(0);
+	    rateLimitPauses++;
+	}
+	return false;
+    }
+
+    /**
+     * is this event within the limit for its type?  if not, drop it
+     */
+    private boolean admitType(Attachment attachment, GameEvent event, long now) {
+	Integer type = Integer.valueOf(event.getType());
+	double limit[] = (double[]) typeLimits.get(type);
+	if (limit == null)
+	    return true;
+	if (attachment.typeBuckets == null)
+	    attachment.typeBuckets = new HashMap();
+	TokenBucket b = (TokenBucket) attachment.typeBuckets.get(type);
+	if (b == null) {
+	    b = new TokenBucket(limit[0], (int) limit[1], now);
+	    attachment.typeBuckets.put(type, b);
+	}
+	if (b.tryTake(now))
+	    return true;
+	typeDropped++;
+	return false;
+    }
+
+    /**
+     * start reading again from rate limited clients whose time is up,
+     * after handing off what's already in their buffers
+     */
+    private void resumeRateLimited(long now) {
+	ArrayList due = null;
+	Iterator i = rateLimited.iterator();
+	while (i.hasNext()) {
+	    SelectionKey key = (SelectionKey) i.next();
+	    if (!key.isValid()) {
+		i.remove();
+	    }
+	    else if (((Attachment) key.attachment()).resumeAt <= now) {
+		i.remove();
+		if (due == null)
+		    due = new ArrayList();
+		due.add(key);
+	    }
+	}
+	if (due == null)
+	    return;
+	// handing off what's buffered can pause them again
+	for (int k=0; k<due.size(); k++) {
+	    SelectionKey key = (SelectionKey) due.get(k);
+	    Attachment attachment = (Attachment) key.attachment();
+	    attachment.rateLimited = false;
+	    readEvents(key, attachment, (SocketChannel) key.channel(), now);
+	    if (!attachment.rateLimited && !attachment.overloadPaused && key.isValid())
+		key.interestOps(SelectionKey.OP_READ);
+	}
+    }
+
+    /**
+     * if a GameController's queue is filling up, stop reading from the
+     * noisiest clients until it drains.  done every OVERLOAD_CHECK_NANOS,
+     * and halves every client's recentEvents every second
+     */
+    private void checkOverload(long now) {
+	if (now - lastOverloadCheck < OVERLOAD_CHECK_NANOS)
+	    return;
+	lastOverloadCheck = now;
+	if (now - lastDecay >= 1000000000L) {
+	    lastDecay = now;
+	    Iterator i = selector.keys().iterator();
+	    while (i.hasNext()) {
+		Object a = ((SelectionKey) i.next()).attachment();
+		if (a instanceof Attachment)
+		    ((Attachment) a).recentEvents /= 2;
+	    }
+	}
+	// how full is the fullest GameController queue?
+	double fill = 0;
+	Iterator i = gameServer.getGameControllers().iterator();
+	while (i.hasNext()) {
+	    GameController gc = (GameController) i.next();
+	    int backlog = gc.getBacklog();
+	    maxBacklog = Math.max(maxBacklog, backlog);
+	    if (gc.getQueueLimit() > 0)
+		fill = Math.max(fill, (double) backlog / gc.getQueueLimit());
+	}
+
+	if (fill >= Globals.OVERLOAD_HIGH) {
+	    if (!overloaded) {
+		overloaded = true;
+		overloads++;
+		log.warn("overloaded, queue " + (int) (fill * 100) + "% full, pausing the noisiest clients");
+		pauseNoisiest();
+		lastPause = now;
+	    }
+	    else if (now - lastPause >= OVERLOAD_PAUSE_NANOS) {
+		// still full after a while, pause some more
+		pauseNoisiest();
+		lastPause = now;
+	    }
+	}
+	else if (overloaded && fill <= Globals.OVERLOAD_LOW) {
+	    overloaded = false;
+	    log.warn("overload over, resuming " + overloadPaused.size() + " clients");
+	    i = overloadPaused.iterator();
+	    while (i.hasNext()) {
+		SelectionKey key = (SelectionKey) i.next();
+		Attachment attachment = (Attachment) key.attachment();
+		attachment.overloadPaused = false;
+		if (!attachment.rateLimited && key.isValid())
+		    key.interestOps(SelectionKey.OP_READ);
+	    }
+	    overloadPaused.clear();
+	}
+    }
+
+    /**
+     * stop reading from the quarter of the clients that are still 
+     * reading that sent the most lately
+     */
+    private void pauseNoisiest() {
+	ArrayList reading = new ArrayList();
+	Iterator i = selector.keys().iterator();
+	while (i.hasNext()) {
+	    SelectionKey key = (SelectionKey) i.next();
+	    Object a = key.attachment();
+	    if (a instanceof Attachment && key.isValid() && !((Attachment) a).overloadPaused && 
+		((Attachment) a).recentEvents > 0)
+		reading.add(key);
+	}
+	Collections.sort(reading, new Comparator() {
+		public int compare(Object a, Object b) {
+		    return ((Attachment) ((SelectionKey) b).attachment()).recentEvents - 
+			((Attachment) ((SelectionKey) a).attachment()).recentEvents;
+		}
+	    });
+	int n = (reading.size() + 3) / 4;
+	for (int k=0; k<n; k++) {
+	    SelectionKey key = (SelectionKey) reading.get(k);
+	    ((Attachment) key.attachment()).overloadPaused = true;
+	    key.interestOps(0);
+	    overloadPaused.add(key);
+	    overloadPauses++;
+	}
+    }
+
+    /**
+     * turn admission control (rate limits and overload pauses) on or off, 
+     * it's on unless Globals.PLAYER_EVENT_RATE and CHAT_EVENT_RATE are 0.  
+     * off, we nap between selects like we always did
+     */
+    public void setAdmissionControl(boolean on) {
+	admissionControl = on;
+    }
+
+    /**
+     * limit each client to rate events per second, burst at once.
+     * 0 for no limit
+     */
+    public void setPlayerRate(double rate, int burst) {
+	playerRate = rate;
+	playerBurst = burst;
+    }
+
+    /**
+     * limit each client to rate events of this type per second, burst 
+     * at once.  ones over the limit are dropped
+     */
+    public void setEventTypeRate(int type, double rate, int burst) {
+	typeLimits.put(Integer.valueOf(type), new double[] { rate, burst });
+    }
+
+    public long getEventsRead() {
+	return eventsRead;
+    }
+    /** times a client was paused for going over its rate */
+    public long getRateLimitPauses() {
+	return rateLimitPauses;
+    }
+    /** events dropped for going over their type's rate */
+    public long getTypeDropped() {
+	return typeDropped;
+    }
+    /** times we went into overload */
+    public long getOverloads() {
+	return overloads;
+    }
+    /** times a client was paused for overload */
+    public long getOverloadPauses() {
+	return overloadPauses;
+    }
+    /** the biggest GameController backlog we've seen */
+    public int getMaxBacklog() {
+	return maxBacklog;
+    }
+    public boolean isOverloaded() {
+	return overloaded;
+    }
+
     /**
      * read an event from the attachment's payload
      */
@@ -184,7 +513,9 @@ public class SelectAndRead extends Thread {
      * based on the GameName of the event
      */
     private void delegateEvent(GameEvent event, SocketChannel channel) {
-	if (event != null && event.getGameName() == null) {
+	if (event == null)
+	    return;
+	if (event.getGameName() == null) {
 	    log.error("GameServer.handleEvent() : gameName is null");
 	    return;
 	}
@@ -213,6 +544,8 @@ public class SelectAndRead extends Thread {
 		      p.getPlayerId() + ", channel: " + channel);
 	}	
 	
+	gameServer.journalEvent(EventJournal.IN, event);
+	gc.countDecoded();
 	gc.handleEvent(event);
     }
 
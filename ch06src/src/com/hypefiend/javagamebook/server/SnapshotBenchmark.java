@@ -0,0 +1,188 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import java.util.*;
+import org.apache.log4j.*;
+
+/**
+ * SnapshotBenchmark.java
+ *
+ * Replicates a match of 64 entities to simulated clients at 20 and 60
+ * ticks per second, with and without packet loss, and prints the bytes
+ * per client per second (against sending every snapshot in full) and
+ * the encoding time.  Time is simulated, so it runs as fast as it can.
+ * Each client decodes every snapshot it gets, checks it against the
+ * server's state, and acknowledges it after half the round trip time.
+ *
+ * usage: SnapshotBenchmark [clients] [seconds] [rttMillis]
+ *
+ * @version 1.0
+ */
+public class SnapshotBenchmark extends ReplicatedMatch {
+    private static final int ENTITIES = 64;
+    private static final float SPEED = 6f;
+    private static final float ARENA = 500f;
+
+    private Random random = new Random(1);
+    private float x[] = new float[ENTITIES];
+    private float y[] = new float[ENTITIES];
+    private float angle[] = new float[ENTITIES];
+
+    /** the server state by tick, to check the clients against */
+    private SnapshotHistory serverStates;
+
+    private SimClient clients[];
+    private int latencyTicks;
+    private double loss;
+
+    /** packets in flight: deliver tick, client, snapshot (null for an ack), acked tick */
+    private LinkedList inFlight = new LinkedList();
+
+    private long fullBytes;
+
+    /**
+     * a client's view of the match
+     */
+    private static class SimClient {
+	String playerId;
+	SnapshotHistory history = new SnapshotHistory(HISTORY_SIZE, ENTITIES);
+	Snapshot current = new Snapshot(ENTITIES);
+	long received;
+
+	SimClient(String playerId) {
+	    this.playerId = playerId;
+	}
+    }
+
+    private static class Packet {
+	int deliverTick;
+	SimClient client;
+	byte data[];
+	int ackTick;
+    }
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	int numClients = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+	int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+	int rtt = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+	System.out.println(ENTITIES + " entities (3/4 moving), " + numClients + " clients, " + 
+			   seconds + " s, " + rtt + " ms rtt");
+
+	int rates[] = {20, 60};
+	double losses[] = {0, 0.05, 0.2};
+	// the first pass warms up the JIT
+	for (int pass=0; pass<2; pass++) {
+	    for (int r=0; r<rates.length; r++) {
+		for (int l=0; l<losses.length; l++) {
+		    SnapshotBenchmark b = new SnapshotBenchmark(rates[r], numClients, rtt, losses[l]);
+		    b.play(seconds);
+		    if (pass == 1)
+			b.report(seconds, losses[l]);
+		}
+	    }
+	}
+    }
+
+    public SnapshotBenchmark(int ticksPerSecond, int numClients, int rttMillis, double loss) {
+	super(null, ENTITIES, ticksPerSecond);
+	this.loss = loss;
+	latencyTicks = Math.max(1, rttMillis * ticksPerSecond / 2000);
+	serverStates = new SnapshotHistory(HISTORY_SIZE * 2, ENTITIES);
+	clients = new SimClient[numClients];
+	for (int i=0; i<numClients; i++) {
+	    clients[i] = new SimClient("p" + i);
+	    addClient(clients[i].playerId);
+	}
+	for (int i=0; i<ENTITIES; i++) {
+	    x[i] = random.nextFloat() * ARENA;
+	    y[i] = random.nextFloat() * ARENA;
+	    angle[i] = (float) (random.nextFloat() * 2 * Math.PI);
+	    state.setState(i, 100);
+	}
+    }
+
+    private void play(int seconds) {
+	BitWriter full = new BitWriter(1024);
+	for (int t=0; t<seconds * getTicksPerSecond(); t++) {
+	    tick();
+	    serverStates.store(state);
+	    full.reset();
+	    SnapshotCodec.encode(state, null, full);
+	    fullBytes += full.getByteCount() * (long) clients.length;
+	    deliver();
+	}
+    }
+
+    /**
+     * wander about, a quarter of the entities stand still
+     */
+    protected void simulate(Snapshot s, float dt) {
+	for (int i=0; i<ENTITIES; i++) {
+	    if (i % 4 == 0)
+		continue;
+	    angle[i] += (random.nextFloat() - 0.5f) * 2f * dt;
+	    x[i] = Math.max(0, Math.min(ARENA, x[i] + (float) Math.cos(angle[i]) * SPEED * dt));
+	    y[i] = Math.max(0, Math.min(ARENA, y[i] + (float) Math.sin(angle[i]) * SPEED * dt));
+	    s.setPosition(i, x[i], y[i]);
+	    s.setAngle(i, angle[i]);
+	    if (random.nextInt(200) == 0) 
+		s.setState(i, random.nextInt(101));
+	}
+    }
+
+    /**
+     * put the snapshot on the simulated network
+     */
+    protected void send(String playerId, byte data[]) {
+	if (random.nextDouble() < loss)
+	    return;
+	Packet p = new Packet();
+	p.deliverTick = getTick() + latencyTicks;
+	p.client = clients[Integer.parseInt(playerId.substring(1))];
+	p.data = data;
+	inFlight.addLast(p);
+    }
+
+    /**
+     * deliver the packets that have arrived: clients decode snapshots
+     * and send acks, the server takes the acks
+     */
+    private void deliver() {
+	while (!inFlight.isEmpty() && ((Packet) inFlight.getFirst()).deliverTick <= getTick()) {
+	    Packet p = (Packet) inFlight.removeFirst();
+	    if (p.data == null) {
+		ack(p.client.playerId, p.ackTick);
+		continue;
+	    }
+	    SimClient c = p.client;
+	    if (!SnapshotCodec.decode(p.data, p.data.length, c.history, c.current))
+		throw new IllegalStateException("client " + c.playerId + " is missing a baseline");
+	    if (!c.current.sameState(serverStates.get(c.current.getTick())))
+		throw new IllegalStateException("client " + c.playerId + " decoded the wrong state");
+	    c.history.store(c.current);
+	    c.received++;
+	    if (random.nextDouble() >= loss) {
+		Packet ack = new Packet();
+		ack.deliverTick = getTick() + latencyTicks;
+		ack.client = c;
+		ack.ackTick = c.current.getTick();
+		inFlight.addLast(ack);
+	    }
+	}
+    }
+
+    private void report(int seconds, double loss) {
+	long perClient = getBytesSent() / clients.length / seconds;
+	long fullPerClient = fullBytes / clients.length / seconds;
+	long snapshots = getFullSnapshots() + getDeltaSnapshots();
+	System.out.println(getTicksPerSecond() + " Hz, " + (int) (loss * 100) + "% loss: " + 
+			   perClient + " bytes/client/s (all full: " + fullPerClient + "), " + 
+			   getFullSnapshots() + " of " + snapshots + " full, " + 
+			   getEncodes() + " encodes, " + getEncodeNanos() / getEncodes() + " ns each, " + 
+			   getEncodeNanos() / (seconds * getTicksPerSecond()) + " ns per tick");
+    }
+
+}// SnapshotBenchmark
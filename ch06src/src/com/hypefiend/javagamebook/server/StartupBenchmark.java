@@ -0,0 +1,176 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.jar.*;
+import org.apache.log4j.*;
+
+/**
+ * StartupBenchmark.java
+ *
+ * Starts GameServers in fresh JVMs and times, from process start, the 
+ * first connection the server accepts and the reply to the first 
+ * RPS login (which is when a lazy controller gets init'd).  Each way 
+ * of finding controllers (Globals.CONTROLLER_LOADING) is run from 
+ * the classes directory and from a jar made of it.  The server uses 
+ * Globals.PORT, so nothing else can be on it.
+ *
+ * usage: StartupBenchmark [runs]
+ *
+ * @version 1.0
+ */
+public class StartupBenchmark {
+    private static final String MODES[] = {"scan", "eager", "lazy"};
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	int runs = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+	try {
+	    String classes = null;
+	    String libs = "";
+	    StringTokenizer st = new StringTokenizer(System.getProperty("java.class.path"), File.pathSeparator);
+	    while (st.hasMoreTokens()) {
+		String entry = st.nextToken();
+		if (classes == null && new File(entry, "com/hypefiend/javagamebook").isDirectory())
+		    classes = entry;
+		else
+		    libs += File.pathSeparator + entry;
+	    }
+	    if (classes == null) {
+		System.out.println("run this from the classes directory, not a jar");
+		System.exit(1);
+	    }
+	    File jar = File.createTempFile("javagamebook", ".jar");
+	    jar.deleteOnExit();
+	    makeJar(new File(classes), jar);
+
+	    System.out.println(runs + " runs each, median ms from process start, " + 
+			       Runtime.getRuntime().availableProcessors() + " cpus");
+	    for (int j=0; j<2; j++) {
+		String cp = (j == 0 ? classes : jar.getPath()) + libs;
+		for (int m=0; m<MODES.length; m++) {
+		    long accepted[] = new long[runs];
+		    long replied[] = new long[runs];
+		    for (int r=0; r<runs; r++) {
+			long times[] = startServer(cp, MODES[m]);
+			accepted[r] = times[0];
+			replied[r] = times[1];
+		    }
+		    System.out.println((j == 0 ? "classes " : "jar     ") + MODES[m] + 
+				       ":\tfirst connection " + median(accepted) + " ms, first reply " + 
+				       (median(replied) < 0 ? "none" : median(replied) + " ms"));
+		}
+	    }
+	}
+	catch (Exception e) {
+	    e.printStackTrace();
+	}
+	System.exit(0);
+    }
+
+    /**
+     * @return ms to the first accepted connection and to the first 
+     * reply, -1 for a reply if there wasn't one
+     */
+    private static long[] startServer(String cp, String mode) throws Exception {
+	ArrayList cmd = new ArrayList();
+	cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+	cmd.add("-Djavagamebook.controllers=" + mode);
+	cmd.add("-cp");
+	cmd.add(cp);
+	cmd.add(GameServer.class.getName());
+
+	long times[] = {-1, -1};
+	long start = System.nanoTime();
+	Process p = new ProcessBuilder(cmd).redirectErrorStream(true)
+	    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+	try {
+	    InetSocketAddress addr = new InetSocketAddress(InetAddress.getLocalHost(), Globals.PORT);
+	    SocketChannel channel = null;
+	    while (channel == null) {
+		try {
+		    channel = SocketChannel.open(addr);
+		}
+		catch (IOException ioe) {
+		    if (!p.isAlive() || System.nanoTime() - start > TIMEOUT_MILLIS * 1000000L)
+			throw new IOException("server didn't start");
+		    Thread.sleep(1);
+		}
+	    }
+	    times[0] = (System.nanoTime() - start) / 1000000;
+
+	    GameEventDefault e = new GameEventDefault(GameEventDefault.C_LOGIN, "");
+	    e.setGameName("RPS");
+	    e.setPlayerId("startup");
+	    ByteBuffer bb = ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+	    NIOUtils.prepBuffer(e, bb);
+	    while (bb.hasRemaining())
+		channel.write(bb);
+	    bb.clear();
+	    // no reply means no controller, so don't wait forever
+	    channel.socket().setSoTimeout((int) TIMEOUT_MILLIS);
+	    try {
+		if (channel.socket().getInputStream().read() >= 0)
+		    times[1] = (System.nanoTime() - start) / 1000000;
+	    }
+	    catch (SocketTimeoutException ste) {
+	    }
+	    channel.close();
+	}
+	finally {
+	    p.destroy();
+	    p.waitFor();
+	}
+	return times;
+    }
+
+    /**
+     * jar up a classes directory
+     */
+    private static void makeJar(File dir, File jar) throws IOException {
+	JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+	try {
+	    addToJar(out, dir, "");
+	}
+	finally {
+	    out.close();
+	}
+    }
+
+    private static void addToJar(JarOutputStream out, File dir, String prefix) throws IOException {
+	File files[] = dir.listFiles();
+	byte buf[] = new byte[8192];
+	for (int i=0; i<files.length; i++) {
+	    String name = prefix + files[i].getName();
+	    if (files[i].isDirectory()) {
+		out.putNextEntry(new JarEntry(name + "/"));
+		addToJar(out, files[i], name + "/");
+		continue;
+	    }
+	    out.putNextEntry(new JarEntry(name));
+	    InputStream in = new FileInputStream(files[i]);
+	    try {
+		int n;
+		while ((n = in.read(buf)) > 0)
+		    out.write(buf, 0, n);
+	    }
+	    finally {
+		in.close();
+	    }
+	}
+    }
+
+    private static long median(long values[]) {
+	long sorted[] = (long[]) values.clone();
+	Arrays.sort(sorted);
+	return sorted[sorted.length / 2];
+    }
+
+}// StartupBenchmark
@@ -0,0 +1,52 @@
+package com.hypefiend.javagamebook.server;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * TickLoop.java
+ *
+ * Steps ReplicatedMatches at their fixed tick rates, 
+ * on a small shared pool of threads.
+ *
+ * @version 1.0
+ */
+public class TickLoop {
+    private ScheduledThreadPoolExecutor scheduler;
+
+    /** scheduled ticks, by match */
+    private Map ticks = new ConcurrentHashMap();
+
+    public TickLoop(int numThreads) {
+	scheduler = new ScheduledThreadPoolExecutor(numThreads, new ThreadFactory() {
+		private int count = 0;
+		public synchronized Thread newThread(Runnable r) {
+		    Thread t = new Thread(r, "TickLoop-" + (++count));
+		    t.setDaemon(true);
+		    return t;
+		}
+	    });
+	scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * start ticking the match
+     */
+    public void add(ReplicatedMatch match) {
+	long period = 1000000000L / match.getTicksPerSecond();
+	ticks.put(match, scheduler.scheduleAtFixedRate(match, period, period, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * stop ticking the match
+     */
+    public void remove(ReplicatedMatch match) {
+	ScheduledFuture f = (ScheduledFuture) ticks.remove(match);
+	if (f != null)
+	    f.cancel(false);
+    }
+
+    public void shutdown() {
+	scheduler.shutdownNow();
+    }
+}// TickLoop
@@ -0,0 +1,360 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.client.*;
+import com.hypefiend.javagamebook.common.*;
+import com.hypefiend.javagamebook.server.controller.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+import org.apache.log4j.*;
+
+/**
+ * TransportBenchmark.java
+ *
+ * How fresh are 20 Hz state updates when they arrive, over TCP and over 
+ * UdpConnection's channels, on a link that drops packets?
+ *
+ * The first part runs in simulated time: a link with 50-60 ms one way 
+ * latency and some packet loss, sampled at 60 frames a second for the age 
+ * of the newest update the client has.  UDP runs the real UdpConnection 
+ * at both ends.  TCP is a model: a lost segment is resent after 3 
+ * duplicate acks or the retransmit timeout, whichever is first (the 
+ * timeout doubles if it's lost again), and nothing behind it is delivered 
+ * until it is.
+ *
+ * The second part runs a real UdpTransport on the loopback through 
+ * SelectAndRead, binds a UdpClient to it with a token, and echoes events
+ * through a GameController.
+ *
+ * usage: TransportBenchmark [seconds]
+ *
+ * @version 1.0
+ */
+public class TransportBenchmark extends GameServer {
+    private static final int UPDATE_INTERVAL = 50;
+    private static final int LATENCY = 50;
+    private static final int JITTER = 10;
+    private static final int FRAME_RATE = 60;
+    private static final int TCP_MIN_RTO = 200;
+    private static final double LOSS[] = { 0, 0.01, 0.05, 0.10 };
+
+    private static final String GAME_NAME = "TransportBenchmark";
+
+    /** one direction of the simulated link */
+    private static class Link implements UdpConnection.PacketSink {
+	Random random;
+	double loss;
+	long now;
+	PriorityQueue inFlight = new PriorityQueue(64, new Comparator() {
+		public int compare(Object a, Object b) {
+		    long d = ((long[]) ((Object[]) a)[0])[0] - ((long[]) ((Object[]) b)[0])[0];
+		    return d < 0 ? -1 : (d > 0 ? 1 : 0);
+		}
+	    });
+
+	Link(Random random, double loss) {
+	    this.random = random;
+	    this.loss = loss;
+	}
+
+	public void sendPacket(ByteBuffer packet, SocketAddress to) {
+	    byte data[] = new byte[packet.remaining()];
+	    packet.get(data);
+	    if (random.nextDouble() < loss)
+		return;
+	    long arrival[] = { now + LATENCY + random.nextInt(JITTER) };
+	    inFlight.add(new Object[] { arrival, data });
+	}
+
+	/** the next packet that's arrived by now, or null */
+	ByteBuffer poll(long now) {
+	    Object p[] = (Object[]) inFlight.peek();
+	    if (p == null || ((long[]) p[0])[0] > now)
+		return null;
+	    inFlight.poll();
+	    return ByteBuffer.wrap((byte[]) p[1]);
+	}
+    }
+
+    /** the client end: the newest update it has */
+    private static class Receiver implements UdpConnection.PayloadHandler {
+	int latest = -1;
+	long latestSent;
+	int delivered;
+	boolean outOfOrder;
+	boolean checkOrder;
+
+	public void deliver(UdpConnection conn, int ch, ByteBuffer payload) {
+	    int k = payload.getInt();
+	    long sent = payload.getLong();
+	    delivered++;
+	    if (checkOrder && k != latest + 1)
+		outOfOrder = true;
+	    if (k > latest) {
+		latest = k;
+		latestSent = sent;
+	    }
+	}
+    }
+
+    private static class Stats {
+	int ages[];
+	int n;
+
+	Stats(int size) {
+	    ages = new int[size];
+	}
+	void add(long age) {
+	    ages[n++] = (int) age;
+	}
+	String summary() {
+	    Arrays.sort(ages, 0, n);
+	    long sum = 0;
+	    for (int i=0; i<n; i++)
+		sum += ages[i];
+	    return "mean " + (sum / n) + " ms, p99 " + ages[(int) (n * 0.99)] + " ms, max " + ages[n - 1] + " ms";
+	}
+    }
+
+    private UdpTransport udp;
+    private GameController controller;
+
+    public static void main(String args[]) {
+	BasicConfigurator.configure();
+	Logger.getRootLogger().setLevel(Level.WARN);
+
+	int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 600;
+	System.out.println(seconds + " s simulated, " + (1000 / UPDATE_INTERVAL) + " Hz updates, " + 
+			   LATENCY + "-" + (LATENCY + JITTER) + " ms one way, sampled at " + FRAME_RATE + " fps");
+	System.out.println("age of the newest update on screen:");
+	for (int i=0; i<LOSS.length; i++) {
+	    long duration = seconds * 1000L;
+	    System.out.println("loss " + (int) (LOSS[i] * 100) + "%");
+	    System.out.println("  tcp model:           " + simulateTcp(LOSS[i], duration).summary());
+	    System.out.println("  udp sequenced:       " + 
+			       simulateUdp(LOSS[i], duration, Globals.UDP_SEQUENCED));
+	    System.out.println("  udp reliable:        " + 
+			       simulateUdp(LOSS[i], duration, Globals.UDP_RELIABLE));
+	}
+
+	System.out.println("loopback:");
+	try {
+	    new TransportBenchmark().loopback();
+	}
+	catch (Exception e) {
+	    e.printStackTrace();
+	}
+	System.exit(0);
+    }
+
+    private static String simulateUdp(double loss, long duration, int ch) {
+	Random random = new Random(42);
+	Link toClient = new Link(random, loss);
+	Link toServer = new Link(random, loss);
+	UdpConnection server = new UdpConnection(1, null, Globals.UDP_CHANNEL_MODES);
+	UdpConnection client = new UdpConnection(1, null, Globals.UDP_CHANNEL_MODES);
+	Receiver receiver = new Receiver();
+	receiver.checkOrder = (ch == Globals.UDP_RELIABLE);
+	UdpConnection.PayloadHandler none = new UdpConnection.PayloadHandler() {
+		public void deliver(UdpConnection conn, int c, ByteBuffer payload) {
+		}
+	    };
+	Stats stats = new Stats((int) (duration * FRAME_RATE / 1000) + 1);
+	ByteBuffer payload = ByteBuffer.allocate(12);
+	int sent = 0;
+	long lastFrame = -1;
+
+	for (long now=0; now<duration; now++) {
+	    toClient.now = toServer.now = now;
+	    if (now % UPDATE_INTERVAL == 0) {
+		payload.clear();
+		payload.putInt(sent++);
+		payload.putLong(now);
+		payload.flip();
+		server.send(ch, payload, toClient, now);
+	    }
+	    ByteBuffer p;
+	    while ((p = toClient.poll(now)) != null)
+		client.receive(p, receiver, toServer, now);
+	    while ((p = toServer.poll(now)) != null)
+		server.receive(p, none, toClient, now);
+	    if (now % Globals.UDP_UPDATE_INTERVAL == 0) {
+		server.update(toClient, now);
+		client.update(toServer, now);
+	    }
+	    long frame = now * FRAME_RATE / 1000;
+	    if (frame != lastFrame) {
+		lastFrame = frame;
+		if (receiver.latest >= 0)
+		    stats.add(now - receiver.latestSent);
+	    }
+	}
+	String s = stats.summary();
+	if (ch == Globals.UDP_RELIABLE)
+	    s += ", " + (receiver.outOfOrder ? "OUT OF ORDER" : "in order") + ", " + 
+		server.getPacketsResent() + " resent";
+	else
+	    s += ", " + receiver.delivered + "/" + sent + " delivered";
+	return s;
+    }
+
+    private static Stats simulateTcp(double loss, long duration) {
+	Random random = new Random(42);
+	int updates = (int) (duration / UPDATE_INTERVAL);
+	long delivered[] = new long[updates];
+	long rtt = 2 * LATENCY + JITTER;
+
+	for (int k=0; k<updates; k++) {
+	    long sent = (long) k * UPDATE_INTERVAL;
+	    long t = sent;
+	    long rto = rtt + TCP_MIN_RTO;
+	    boolean first = true;
+	    while (random.nextDouble() < loss) {
+		if (first) {
+		    // 3 dup acks, from the next 3 updates, or the timeout
+		    t += Math.min(rto, 3 * UPDATE_INTERVAL + rtt);
+		    first = false;
+		}
+		else {
+		    rto *= 2;
+		    t += rto;
+		}
+	    }
+	    long arrival = t + LATENCY + random.nextInt(JITTER);
+	    // head of line: nothing gets past an earlier segment
+	    delivered[k] = (k > 0) ? Math.max(arrival, delivered[k - 1]) : arrival;
+	}
+
+	Stats stats = new Stats((int) (duration * FRAME_RATE / 1000) + 1);
+	int latest = -1;
+	long lastFrame = -1;
+	for (long now=0; now<duration; now++) {
+	    while (latest + 1 < updates && delivered[latest + 1] <= now)
+		latest++;
+	    long frame = now * FRAME_RATE / 1000;
+	    if (frame != lastFrame) {
+		lastFrame = frame;
+		if (latest >= 0)
+		    stats.add(now - (long) latest * UPDATE_INTERVAL);
+	    }
+	}
+	return stats;
+    }
+
+    /**
+     * a GameServer with nothing but our UdpTransport and an echo controller
+     */
+    public TransportBenchmark() throws Exception {
+	udp = new UdpTransport(this, new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+	controller = new GameController() {
+		protected void initController(GameConfig gc) {
+		}
+		public String getGameName() {
+		    return GAME_NAME;
+		}
+		public Player createPlayer() {
+		    return new PlayerDefault();
+		}
+		public GameEvent createGameEvent() {
+		    return new GameEventDefault();
+		}
+		protected void processEvent(GameEvent e) {
+		    GameEventDefault reply = new GameEventDefault(GameEventDefault.S_ACK_OK, e.getMessage());
+		    reply.setGameName(GAME_NAME);
+		    sendUdpEvent(reply, getPlayerById(e.getPlayerId()), e.getType());
+		}
+	    };
+	// actors, so each player's events are handled in order
+	controller.init(this, null, true);
+    }
+
+    public GameController getGameControllerByHash(int gameNameHash) {
+	return gameNameHash == GAME_NAME.hashCode() ? controller : null;
+    }
+
+    public UdpTransport getUdpTransport() {
+	return udp;
+    }
+
+    public void writeEvent(GameEvent e) {
+	throw new IllegalStateException("unexpected TCP event for " + e.getPlayerId());
+    }
+
+    /**
+     * bind a client, then ping-pong on the sequenced channel, 
+     * then a burst on the reliable one
+     */
+    private void loopback() throws Exception {
+	new SelectAndRead(this).start();
+
+	PlayerDefault p = new PlayerDefault();
+	p.setPlayerId("p1");
+	p.setSessionId("s1");
+	addPlayer(p);
+	int token = udp.issueToken(p);
+
+	EventQueue queue = new EventQueue("TransportBenchmark");
+	GameClient gc = new GameClient() {
+		public String getGameName() {
+		    return GAME_NAME;
+		}
+		public GameEvent createGameEvent() {
+		    return new GameEventDefault();
+		}
+		public GameEvent createLoginEvent() {
+		    return null;
+		}
+		public GameEvent createDisconnectEvent(String reason) {
+		    return null;
+		}
+		protected void processIncomingEvents() {
+		}
+	    };
+	UdpClient client = new UdpClient(gc, udp.getLocalAddress(), token, queue);
+	long start = System.nanoTime();
+	client.start();
+	while (!client.isBound() || !udp.isBound("p1"))
+	    Thread.sleep(1);
+	System.out.println("  bound in " + (System.nanoTime() - start) / 1000 + " us");
+
+	for (int pass=0; pass<2; pass++) {
+	    int pings = 2000;
+	    start = System.nanoTime();
+	    for (int i=0; i<pings; i++) {
+		client.send(event(Globals.UDP_SEQUENCED, "" + i), Globals.UDP_SEQUENCED);
+		GameEvent e = queue.deQueue();
+		if (!e.getMessage().equals("" + i))
+		    throw new IllegalStateException("ping " + i + " got " + e.getMessage());
+	    }
+	    long pingTime = System.nanoTime() - start;
+
+	    int burst = 20000;
+	    start = System.nanoTime();
+	    for (int i=0; i<burst; i++) 
+		client.send(event(Globals.UDP_RELIABLE, "" + i), Globals.UDP_RELIABLE);
+	    for (int i=0; i<burst; i++) {
+		GameEvent e = queue.deQueue();
+		if (!e.getMessage().equals("" + i))
+		    throw new IllegalStateException("burst event " + i + " got " + e.getMessage());
+	    }
+	    long burstTime = System.nanoTime() - start;
+
+	    if (pass == 1) {
+		System.out.println("  sequenced ping-pong: " + pings + " round trips, " + 
+				   pingTime / pings / 1000 + " us each");
+		System.out.println("  reliable burst: " + burst + " events echoed in order in " + 
+				   burstTime / 1000000 + " ms, " + (long) (burst / (burstTime / 1e9)) + " events/s");
+	    }
+	}
+	client.shutdown();
+	udp.close();
+    }
+
+    private static GameEvent event(int ch, String msg) {
+	GameEventDefault e = new GameEventDefault(ch, msg);
+	e.setGameName(GAME_NAME);
+	e.setPlayerId("p1");
+	return e;
+    }
+
+}// TransportBenchmark
@@ -0,0 +1,278 @@
+package com.hypefiend.javagamebook.server;
+
+import com.hypefiend.javagamebook.common.*;
+import com.hypefiend.javagamebook.server.controller.GameController;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.log4j.Logger;
+
+/**
+ * UdpTransport.java
+ *
+ * Carries GameEvents over UDP, next to the TCP connections, for updates 
+ * where the latest value matters more than getting every one.  
+ * The payload of each packet is the gameName hash then the event, 
+ * written the same way as over TCP, see UdpConnection for the rest.
+ *
+ * A player gets a session token over TCP after logging in 
+ * (GameEventDefault.S_UDP_TOKEN); the client sends it back in a hello 
+ * from its UDP port, which binds that address to the player.  Packets 
+ * from any other address, or with an unknown token, are dropped.
+ *
+ * All socket I/O happens on the SelectAndRead thread: it registers our 
+ * channel with its selector and calls update() every pass.  Events sent 
+ * from other threads are encoded there and queued for it.
+ *
+ * @version 1.0
+ */
+public class UdpTransport implements UdpConnection.PacketSink, UdpConnection.PayloadHandler {
+    /** log4j logger */
+    private static Logger log = Logger.getLogger("UdpTransport");
+
+    private GameServer gameServer;
+    private DatagramChannel channel;
+    private Selector selector;
+
+    /** connections by token, and by playerId once bound */
+    private Map connectionsByToken = new ConcurrentHashMap();
+    private Map connectionsByPlayer = new ConcurrentHashMap();
+
+    /** payloads waiting for the reactor to send them */
+    private ConcurrentLinkedQueue outgoing = new ConcurrentLinkedQueue();
+
+    private ByteBuffer readBuff = ByteBuffer.allocateDirect(UdpConnection.HEADER_SIZE + Globals.MAX_EVENT_SIZE);
+    private SecureRandom random = new SecureRandom();
+    private long packetsDropped;
+
+    private static ThreadLocal encodeBuffers = new ThreadLocal() {
+	    protected Object initialValue() {
+		return ByteBuffer.allocate(Globals.MAX_EVENT_SIZE);
+	    }
+	};
+
+    /** one queued send */
+    private static class Outgoing {
+	UdpConnection connection;
+	int udpChannel;
+	byte payload[];
+    }
+
+    /**
+     * bind to the given address, Globals.UDP_PORT on the server
+     */
+    public UdpTransport(GameServer gameServer, SocketAddress address) throws IOException {
+	this.gameServer = gameServer;
+	channel = DatagramChannel.open();
+	channel.configureBlocking(false);
+	channel.socket().bind(address);
+	log.info("udp bound to: " + channel.socket().getLocalSocketAddress());
+    }
+
+    public SocketAddress getLocalAddress() {
+	return channel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * register with a reactor's selector, we're the key's attachment
+     */
+    public void register(Selector selector) throws ClosedChannelException {
+	this.selector = selector;
+	channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * make a session token for a logged in player, to be sent to them over TCP
+     */
+    public int issueToken(Player p) {
+	int token;
+	UdpConnection conn;
+	do {
+	    token = random.nextInt();
+	} while (token == 0 || connectionsByToken.containsKey(Integer.valueOf(token)));
+	conn = new UdpConnection(token, null, Globals.UDP_CHANNEL_MODES);
+	conn.setAttachment(p);
+
+	UdpConnection old = (UdpConnection) connectionsByPlayer.remove(p.getPlayerId());
+	if (old != null)
+	    connectionsByToken.remove(Integer.valueOf(old.getToken()));
+	connectionsByToken.put(Integer.valueOf(token), conn);
+	return token;
+    }
+
+    /**
+     * forget a player's session, when they log out
+     */
+    public void removePlayer(Player p) {
+	UdpConnection conn = (UdpConnection) connectionsByPlayer.remove(p.getPlayerId());
+	if (conn != null)
+	    connectionsByToken.remove(Integer.valueOf(conn.getToken()));
+    }
+
+    /**
+     * has this player said hello from their UDP port?
+     */
+    public boolean isBound(String playerId) {
+	return playerId != null && connectionsByPlayer.containsKey(playerId);
+    }
+
+    /**
+     * send an event to its playerId, or its recipients, on one of 
+     * Globals.UDP_CHANNEL_MODES.  
+     * returns the players that aren't bound, who didn't get it, or null
+     */
+    public String[] send(GameEvent event, int udpChannel) {
+	ByteBuffer bb = (ByteBuffer) encodeBuffers.get();
+	bb.clear();
+	bb.putInt(event.getGameName() != null ? event.getGameName().hashCode() : 0);
+	event.write(bb);
+	bb.flip();
+	byte payload[] = new byte[bb.remaining()];
+	bb.get(payload);
+
+	String recipients[] = event.getRecipients();
+	if (recipients == null)
+	    recipients = new String[] { event.getPlayerId() };
+	ArrayList unbound = null;
+	String sender = event.getRecipients() == null ? null : event.getPlayerId();
+	for (int i=0; i<recipients.length; i++) {
+	    if (recipients[i] == null || recipients[i].equals(sender))
+		continue;
+	    UdpConnection conn = (UdpConnection) connectionsByPlayer.get(recipients[i]);
+	    if (conn == null) {
+		if (unbound == null)
+		    unbound = new ArrayList();
+		unbound.add(recipients[i]);
+		continue;
+	    }
+	    Outgoing o = new Outgoing();
+	    o.connection = conn;
+	    o.udpChannel = udpChannel;
+	    o.payload = payload;
+	    outgoing.add(o);
+	}
+	if (selector != null)
+	    selector.wakeup();
+	return unbound == null ? null : (String[]) unbound.toArray(new String[unbound.size()]);
+    }
+
+    /**
+     * read every waiting packet, called by the reactor when we're selected
+     */
+    public void read() {
+	long now = System.currentTimeMillis();
+	try {
+	    while (true) {
+		readBuff.clear();
+		SocketAddress from = channel.receive(readBuff);
+		if (from == null)
+		    break;
+		readBuff.flip();
+		receive(from, now);
+	    }
+	}
+	catch (IOException ioe) {
+	    log.warn("IOException during udp receive(): " + ioe.getMessage());
+	}
+    }
+
+    /**
+     * send queued events, resends and acks.  called by the reactor every pass
+     */
+    public void update(long now) {
+	Outgoing o;
+	while ((o = (Outgoing) outgoing.poll()) != null) 
+	    o.connection.send(o.udpChannel, ByteBuffer.wrap(o.payload), this, now);
+
+	Iterator i = connectionsByPlayer.values().iterator();
+	while (i.hasNext()) 
+	    ((UdpConnection) i.next()).update(this, now);
+    }
+
+    public long getPacketsDropped() {
+	return packetsDropped;
+    }
+
+    public void close() {
+	try {
+	    channel.close();
+	}
+	catch (IOException ioe) {
+	    log.warn("IOException closing udp channel: " + ioe.getMessage());
+	}
+    }
+
+    /**
+     * UdpConnection.PacketSink: send now, or drop it if the socket buffer 
+     * is full.  reliable channels will send it again
+     */
+    public void sendPacket(ByteBuffer packet, SocketAddress to) {
+	if (to == null)
+	    return;
+	try {
+	    if (channel.send(packet, to) == 0)
+		packetsDropped++;
+	}
+	catch (IOException ioe) {
+	    log.warn("IOException during udp send(): " + ioe.getMessage());
+	}
+    }
+
+    /**
+     * UdpConnection.PayloadHandler: decode the event and hand it to its 
+     * GameController, as the player the connection is bound to
+     */
+    public void deliver(UdpConnection conn, int udpChannel, ByteBuffer payload) {
+	Player p = (Player) conn.getAttachment();
+	try {
+	    GameController gc = gameServer.getGameControllerByHash(payload.getInt());
+	    if (gc == null)
+		return;
+	    GameEvent event = gc.createGameEvent();
+	    event.read(payload);
+	    // never trust the id in the packet
+	    event.setPlayerId(p.getPlayerId());
+	    gameServer.journalEvent(EventJournal.IN, event);
+	    gc.countDecoded();
+	    gc.handleEvent(event);
+	}
+	catch (BufferUnderflowException bue) {
+	    log.warn("truncated udp event from player: " + p.getPlayerId());
+	}
+    }
+
+    private void receive(SocketAddress from, long now) {
+	if (readBuff.remaining() < UdpConnection.HEADER_SIZE) {
+	    packetsDropped++;
+	    return;
+	}
+	Integer token = Integer.valueOf(readBuff.getInt(0));
+	UdpConnection conn = (UdpConnection) connectionsByToken.get(token);
+	if (conn == null) {
+	    packetsDropped++;
+	    return;
+	}
+
+	if ((readBuff.get(5) & UdpConnection.FLAG_HELLO) != 0) {
+	    // bind, or rebind if their address changed, and say hello back
+	    if (!from.equals(conn.getAddress()))
+		log.info("udp session bound, player: " + ((Player) conn.getAttachment()).getPlayerId() + 
+			 ", address: " + from);
+	    conn.setAddress(from);
+	    connectionsByPlayer.put(((Player) conn.getAttachment()).getPlayerId(), conn);
+	    conn.sendHello(this);
+	    return;
+	}
+	if (!from.equals(conn.getAddress())) {
+	    packetsDropped++;
+	    return;
+	}
+	conn.receive(readBuff, this, this, now);
+    }
+
+}// UdpTransport
@@ -3,6 +3,12 @@ package com.hypefiend.javagamebook.server.controller;
 import com.hypefiend.javagamebook.common.*;
 import com.hypefiend.javagamebook.server.*;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 
 /**
@@ -10,7 +16,16 @@ import org.apache.log4j.Logger;
  *
  * Base class for all server-side logic implementations.
  * Extends from Wrap to provide a backing thread pool 
- * and incoming EventQueue
+ * and incoming EventQueue.
+ * In actor mode the Wrap workers aren't started, instead events
+ * are routed to Actors on a work-stealing pool: each event to one
+ * of LOBBY_SHARDS lobby actors by playerId, so a player's events are 
+ * processed in order.  Subclasses can have a lobby actor pass a 
+ * player's events on to an actor per match by overriding forward(); 
+ * they're passed on in the same order.  route() can send them to that 
+ * actor directly while none of the player's events are at the lobby.
+ * Either way, the events (or actors) can run on an Executor from
+ * WorkerPools, such as virtual threads, instead of our own threads.
  *
  * @author <a href="mailto:bret@hypefiend.com">bret barker</a>
  * @version 1.0
@@ -20,23 +35,276 @@ public abstract class GameController extends Wrap {
     /** reference to the GameServer */
     protected GameServer gameServer;
 
+    /** pool the actors run on, null when not in actor mode */
+    protected Executor actorPool;
+
+    /** did we create the actorPool, so we should shut it down? */
+    private boolean ownActorPool;
+
+    /** player positions for area events */
+    private InterestGrid interestGrid;
+
+    /** actors for lobby events, players are sharded over them by id */
+    protected Actor lobby[];
+
+    /** 
+     * count of each player's events routed to their lobby actor and not 
+     * yet processed or passed on, keyed by playerId.  a player with none 
+     * there can have route() skip the lobby actor
+     */
+    private Map atLobby = new ConcurrentHashMap();
+
+    /** the actor processing an event on this thread (actor mode) */
+    private ThreadLocal currentActor = new ThreadLocal();
+
+    /** 
+     * events decoded for us, only ever counted by the thread reading 
+     * from clients, so it's a lazySet rather than an atomic add
+     */
+    private AtomicLong eventsDecoded = new AtomicLong();
+
     /**
      * GameServer will call this init method immediately after construction.
      * It is final so that this initialization does not got overridden by subclasses.
      * Initialization for subclasses is done in the initController() method below.
      */
     public final void init(GameServer s, GameConfig gc) {
+	init(s, gc, WorkerPools.createExecutor(getClass().getName()), Globals.CONTROLLER_ACTORS);
+    }
+
+    /**
+     * init with the Wrap workers, or as actors
+     */
+    public final void init(GameServer s, GameConfig gc, boolean actors) {
+	init(s, gc, null, actors);
+    }
+
+    /**
+     * init with the Wrap workers, or as actors
+     * @param executor runs the events or actors, null for our own threads
+     */
+    public final void init(GameServer s, GameConfig gc, Executor executor, boolean actors) {
 	this.gameServer = s;
+	setQueueLimit(Globals.CONTROLLER_QUEUE_LIMIT, Globals.QUEUE_SHED_POLICY);
 
-	// todo: get the preferred number of workers from the GameConfig
-	//	int nw = gc.getInt("NUM_WORKERS", 5);
+	int workers = (gc == null) ? Globals.DEFAULT_CONTROLLER_WORKERS : 
+	    gc.getInt("NUM_WORKERS", Globals.DEFAULT_CONTROLLER_WORKERS);
 
 	// init the Wrap first
-	initWrap(Globals.DEFAULT_CONTROLLER_WORKERS);
+	if (actors) {
+	    initWrap(0);
+	    actorPool = executor;
+	    if (actorPool == null) {
+		// asyncMode, so actors are run in FIFO order
+		actorPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+					     ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+		ownActorPool = true;
+	    }
+	    lobby = new Actor[Globals.LOBBY_SHARDS];
+	    for (int i=0; i<lobby.length; i++) 
+		lobby[i] = createActor();
+	}
+	else if (executor != null) {
+	    initWrap(executor);
+	}
+	else {
+	    initWrap(workers);
+	}
+	if (Globals.METRICS)
+	    initMetrics();
 	// now call the subclasses' init
 	initController(gc);
     }
 
+    /**
+     * register our counters as controller.<gameName>.*
+     */
+    private void initMetrics() {
+	String prefix = "controller." + getGameName() + ".";
+	Metrics.gauge(prefix + "events", new Metrics.Gauge() {
+		public long getValue() {
+		    return eventsDecoded.get();
+		}
+	    });
+	setHandleTimes(Metrics.histogram(prefix + "handle.ns"));
+	Metrics.gauge(prefix + "backlog", new Metrics.Gauge() {
+		public long getValue() {
+		    return getBacklog();
+		}
+	    });
+	Metrics.gauge(prefix + "shed", new Metrics.Gauge() {
+		public long getValue() {
+		    return getShedCount();
+		}
+	    });
+    }
+
+    /**
+     * count an event decoded for us, call only from the thread 
+     * reading from clients
+     */
+    public void countDecoded() {
+	if (Globals.METRICS)
+	    eventsDecoded.lazySet(eventsDecoded.get() + 1);
+    }
+
+    /**
+     * are we running as actors?
+     */
+    public boolean isActorMode() {
+	return actorPool != null;
+    }
+
+    /**
+     * queue the event for the workers, or post it to its actor
+     */
+    public void handleEvent(GameEvent event) {
+	if (actorPool == null)
+	    super.handleEvent(event);
+	else if (admit(event)) {
+	    String pid = event.getPlayerId();
+	    Actor a = route(event);
+	    if (pid != null && a == getLobbyActor(pid)) {
+		AtomicInteger n = (AtomicInteger) atLobby.get(pid);
+		if (n == null) {
+		    AtomicInteger m = new AtomicInteger();
+		    n = (AtomicInteger) ((ConcurrentHashMap) atLobby).putIfAbsent(pid, m);
+		    if (n == null)
+			n = m;
+		}
+		n.incrementAndGet();
+	    }
+	    a.handleEvent(event);
+	}
+    }
+
+    /**
+     * pick the actor for an event, by default the player's lobby actor.
+     * called on the reading thread, so it should only look at 
+     * thread-safe state.  to keep a player's events in order, an event 
+     * may only skip the lobby actor if inLobby() is false for its player
+     */
+    protected Actor route(GameEvent event) {
+	return getLobbyActor(event.getPlayerId());
+    }
+
+    /**
+     * are any of this player's events still at their lobby actor?
+     */
+    protected boolean inLobby(String playerId) {
+	if (playerId == null)
+	    return true;
+	AtomicInteger n = (AtomicInteger) atLobby.get(playerId);
+	return n != null && n.get() != 0;
+    }
+
+    /**
+     * an event routed to a player's lobby actor has been processed or 
+     * passed on.  forget the player once they've logged out
+     */
+    private void leftLobby(GameEvent event) {
+	String pid = event.getPlayerId();
+	AtomicInteger n = (pid == null) ? null : (AtomicInteger) atLobby.get(pid);
+	if (n == null)
+	    return;
+	if (n.decrementAndGet() == 0 && 
+	    (event.getType() == GameEventDefault.C_LOGOUT || 
+	     event.getType() == GameEventDefault.S_DISCONNECT))
+	    atLobby.remove(pid);
+    }
+
+    /**
+     * the lobby actor that a player is sharded to
+     */
+    protected Actor getLobbyActor(String playerId) {
+	int h = (playerId == null) ? 0 : playerId.hashCode();
+	return lobby[(h & 0x7fffffff) % lobby.length];
+    }
+
+    /**
+     * the actor an event should be passed on to instead of being processed
+     * on the actor it's at, or null to process it there.  called on that 
+     * actor, in order, so a player's events are passed on in the order 
+     * they came in.  by default events are processed where they're routed
+     */
+    protected Actor forward(Actor at, GameEvent event) {
+	return null;
+    }
+
+    /**
+     * pass the event being processed on to another actor, unless it's 
+     * already there.  for state that forward() didn't know about yet, such
+     * as a game that was started on another actor after forward() looked.
+     * returns true if it was passed on, and the caller should leave it 
+     * to that actor.  does nothing outside actor mode
+     */
+    protected boolean passOn(GameEvent event, Actor to) {
+	ControllerActor at = (ControllerActor) currentActor.get();
+	if (at == null || to == null || to == at)
+	    return false;
+	// still admitted, the next actor calls finished()
+	at.passedOn = true;
+	to.handleEvent(event);
+	return true;
+    }
+
+    /**
+     * a new actor that calls our processEvent(), 
+     * or passes the event on if forward() or passOn() says to
+     */
+    protected Actor createActor() {
+	return new ControllerActor();
+    }
+
+    /**
+     * an actor that calls our processEvent()
+     */
+    private class ControllerActor extends Actor {
+	/** did passOn() send the current event to another actor? */
+	boolean passedOn;
+
+	ControllerActor() {
+	    super(actorPool);
+	}
+
+	protected void processEvent(GameEvent event) {
+	    boolean lobbyActor = (this == getLobbyActor(event.getPlayerId()));
+	    try {
+		Actor next = forward(this, event);
+		if (next != null) {
+		    // still admitted, the next actor calls finished()
+		    next.handleEvent(event);
+		    return;
+		}
+		passedOn = false;
+		currentActor.set(this);
+		try {
+		    GameController.this.processTimed(event);
+		}
+		finally {
+		    currentActor.set(null);
+		    if (!passedOn)
+			finished();
+		}
+	    }
+	    finally {
+		// only once it's passed on, so a later event that 
+		// skips the lobby can't get ahead of it
+		if (lobbyActor)
+		    leftLobby(event);
+	    }
+	}
+    }
+
+    /**
+     * shutdown the workers or the actor pool
+     */
+    public void shutdown() {
+	super.shutdown();
+	if (ownActorPool)
+	    ((ExecutorService) actorPool).shutdown();
+    }
+
     /**
      * utility method for sending events
      */
@@ -48,19 +316,59 @@ public abstract class GameController extends Wrap {
     /** 
      * utility method for sending events to multiple players
      */
-    protected synchronized void sendBroadcastEvent(GameEvent e, Collection players) {
+    protected void sendBroadcastEvent(GameEvent e, Collection players) {
+	// players may change while we iterate, so don't size the array up front
 	Iterator i = players.iterator();
-	String[] recipients = new String[players.size()];
-	int j=0;
+	ArrayList recipients = new ArrayList(players.size());
 	while(i.hasNext()) {
 	    Player p = (Player) i.next();
 	    if (!(p.getPlayerId().equals(e.getPlayerId()))) 
-		recipients[j++] = p.getPlayerId();
+		recipients.add(p.getPlayerId());
 	}
-	e.setRecipients(recipients);
+	e.setRecipients((String[]) recipients.toArray(new String[recipients.size()]));
+	gameServer.writeEvent(e);
+    }
+
+    /**
+     * give a logged in player a session token for UDP, if the server has it on.
+     * they'll be sent events from sendUdpEvent() over UDP once they bind it
+     */
+    protected void sendUdpToken(Player p) {
+	UdpTransport udp = gameServer.getUdpTransport();
+	if (udp == null)
+	    return;
+	GameEventDefault te = new GameEventDefault(GameEventDefault.S_UDP_TOKEN, "" + udp.issueToken(p));
+	sendEvent(te, p);
+    }
+
+    /**
+     * utility method for sending events over UDP, on one of 
+     * Globals.UDP_CHANNEL_MODES.  players without a session get it over TCP
+     */
+    protected void sendUdpEvent(GameEvent e, Player p, int udpChannel) {
+	e.setPlayerId(p.getPlayerId());
+	gameServer.writeUdpEvent(e, udpChannel);
+    }
+
+    /** 
+     * utility method for sending events to the players near (x, y),
+     * who must have been placed in the InterestGrid
+     */
+    protected void sendAreaEvent(GameEvent e, float x, float y, float radius) {
+	e.setRecipients(getInterestGrid().getRecipients(x, y, radius));
 	gameServer.writeEvent(e);
     }
 
+    /**
+     * where our players are, for sendAreaEvent().
+     * created on first use, with a cell size of Globals.INTEREST_CELL_SIZE
+     */
+    protected synchronized InterestGrid getInterestGrid() {
+	if (interestGrid == null)
+	    interestGrid = new InterestGrid(Globals.INTEREST_CELL_SIZE);
+	return interestGrid;
+    }
+
     /** 
      * GameController subclasses should implement initController 
      * in order to do any initialization they require.
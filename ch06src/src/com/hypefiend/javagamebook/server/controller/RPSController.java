@@ -5,6 +5,7 @@ import com.hypefiend.javagamebook.server.*;
 import com.hypefiend.javagamebook.server.controller.*;
 import com.hypefiend.javagamebook.common.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.log4j.*;
 
 /**
@@ -12,16 +13,30 @@ import org.apache.log4j.*;
  * 
  * Server-side game logic for RPS game
  *
+ * In actor mode every event goes to the player's lobby actor first, 
+ * so each player's events are handled in order: a join always comes 
+ * after the login before it.  Joins are handled there, under the join 
+ * lock so two players can't be matched twice at once.  Each game gets 
+ * its own Actor, and the lobby actor passes the events of a player in 
+ * a game on to it, in order, so the RPSGame state is only touched by 
+ * one thread at a time.  A game started by the other player can begin
+ * after the lobby actor has looked, so move(), quit() and logout() 
+ * pass the event on themselves if they find a game they're not on.  Once none of a player's events are left at 
+ * the lobby actor, the rest go straight to the game's actor.
+ *
  * @author <a href="mailto:bret@hypefiend.com">bret barker</a>
  * @version 1.0
  */
 public class RPSController extends GameController {
 
     /** list of connected players */
-    protected Hashtable players;
+    protected Map players;
 
     /** list of games */
-    protected HashMap games;
+    protected Map games;
+
+    /** actor of the game each player is in, keyed by playerId (actor mode) */
+    protected Map matchesByPlayer;
 
     /** possible moves */
     String moves[] = {"rock", "paper", "scissors" };
@@ -51,9 +66,32 @@ public class RPSController extends GameController {
      */
     public void initController(GameConfig gc) {
 	log.info("initController");
-	players = new Hashtable();
+	players = new ConcurrentHashMap();
 	//	clients = new HashMap();
-	games = new HashMap();
+	games = new ConcurrentHashMap();
+	matchesByPlayer = new ConcurrentHashMap();
+    }
+
+    /** 
+     * send the events of a player who is in a game straight to that game's
+     * actor, once none of their earlier events are left at the lobby actor
+     */
+    protected Actor route(GameEvent e) {
+	String pid = e.getPlayerId();
+	if (!inLobby(pid)) {
+	    Actor match = (Actor) matchesByPlayer.get(pid);
+	    if (match != null)
+		return match;
+	}
+	return super.route(e);
+    }
+
+    /** 
+     * pass the events of a player who is in a game on to that game's actor
+     */
+    protected Actor forward(Actor at, GameEvent e) {
+	Actor match = (Actor) matchesByPlayer.get(e.getPlayerId());
+	return (match == at) ? null : match;
     }
 
     /**
@@ -121,6 +159,7 @@ public class RPSController extends GameController {
 	// send ACK to player
 	GameEventDefault la = new GameEventDefault(GameEventDefault.S_LOGIN_ACK_OK);
 	sendEvent(la, p);
+	sendUdpToken(p);
 
 	// tell everyone this player is here
 	GameEventDefault sbl = new GameEventDefault(GameEventDefault.SB_LOGIN, p.getPlayerId());
@@ -144,11 +183,16 @@ public class RPSController extends GameController {
 	
 	// if in game, kill it first
 	if (p.inGame()) {
+	    // on the game's actor, which quit() would pass it on to
+	    if (passOn(e, (Actor) matchesByPlayer.get(pid)))
+		return;
 	    quit(e);
 	}
 
 	// remove the player
 	players.remove(pid);
+	if (gameServer.getUdpTransport() != null)
+	    gameServer.getUdpTransport().removePlayer(p);
 
 	// send them a disconnect
 	GameEventDefault dis = new GameEventDefault(GameEventDefault.S_DISCONNECT, "logged out");
@@ -164,7 +208,9 @@ public class RPSController extends GameController {
     /** 
      * initiate a game w/another player 
      * synchronized so we don't have concurrency problems with multiple
-     * players starting games with the same opponent
+     * players starting games with the same opponent.
+     * (in actor mode the lobby actors call this, so only joins on different 
+     * lobby actors contend for the lock)
      */
     protected synchronized void join(GameEvent e) {
 	String p1_id = e.getPlayerId();
@@ -200,6 +246,14 @@ public class RPSController extends GameController {
 	    return;
 	}
 
+	if (isActorMode()) {
+	    // before the players are in the game, so anything that finds 
+	    // the game also finds its actor (see move() and quit())
+	    Actor match = createActor();
+	    matchesByPlayer.put(p1_id, match);
+	    matchesByPlayer.put(p2_id, match);
+	}
+
 	// create new game
 	RPSGame g = new RPSGame(p1, p2);
 	games.put("" + g.getGameId(), g);
@@ -224,7 +278,7 @@ public class RPSController extends GameController {
     protected void quit(GameEvent e) {
 	String p1_id = e.getPlayerId();
 	Player player = (Player) players.get(p1_id);
-	RPSGame g = (RPSGame) games.get("" + player.getGameId());
+	RPSGame g = player.inGame() ? (RPSGame) games.get("" + player.getGameId()) : null;
 
 	if (g == null) {
 	    GameEventDefault jf = new GameEventDefault(GameEventDefault.S_JOIN_GAME_ACK_FAIL);
@@ -232,6 +286,9 @@ public class RPSController extends GameController {
 	    sendEvent(jf, player);
 	    return;
 	}
+	// the game may have started after forward() looked
+	if (passOn(e, (Actor) matchesByPlayer.get(p1_id)))
+	    return;
 
 	Player p1 = g.getPlayer1();
 	Player p2 = g.getPlayer2();
@@ -240,6 +297,8 @@ public class RPSController extends GameController {
 	p1.setGameId(g.getGameId());
 	p2.setGameId(g.getGameId());
 	games.remove("" + g.getGameId());
+	matchesByPlayer.remove(p1.getPlayerId());
+	matchesByPlayer.remove(p2.getPlayerId());
 
 	// return the ack, and final game stats
 	String msg1 = "GameOver, player " + player.getPlayerId() + " has quit.\n";
@@ -270,7 +329,7 @@ public class RPSController extends GameController {
     protected void move(GameEvent e) {
 	String p1_id = e.getPlayerId();
 	Player player = (Player) players.get(p1_id);
-	RPSGame g = (RPSGame) games.get("" + player.getGameId());
+	RPSGame g = player.inGame() ? (RPSGame) games.get("" + player.getGameId()) : null;
 
 	if (g==null) {
 	    GameEventDefault mf = new GameEventDefault(GameEventDefault.S_MOVE_ACK_FAIL);
@@ -278,6 +337,9 @@ public class RPSController extends GameController {
 	    sendEvent(mf, player);
 	    return;
 	}
+	// the game may have started after forward() looked
+	if (passOn(e, (Actor) matchesByPlayer.get(p1_id)))
+	    return;
 	Player p1 = g.getPlayer1();
 	Player p2 = g.getPlayer2();
 
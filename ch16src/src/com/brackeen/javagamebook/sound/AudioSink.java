@@ -0,0 +1,42 @@
+package com.brackeen.javagamebook.sound;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+    The AudioSink interface is the destination of the mixed
+    output of a SoundMixer. The usual sink is a LineSink, which
+    writes to the sound card; a NullSink discards the samples so
+    the mixer can run without any sound hardware.
+    @see SoundManager
+*/
+public interface AudioSink {
+
+    /**
+        Opens this sink for the specified format. The bufferSize
+        is the size, in bytes, of the sink's internal buffer, if
+        it has one.
+    */
+    public void open(AudioFormat format, int bufferSize)
+        throws LineUnavailableException;
+
+
+    /**
+        Writes a block of mixed samples. This method may block
+        until the sink is ready for more data.
+    */
+    public void write(byte[] samples, int offset, int length);
+
+
+    /**
+        Blocks until all written samples have been played.
+    */
+    public void drain();
+
+
+    /**
+        Closes this sink.
+    */
+    public void close();
+
+}
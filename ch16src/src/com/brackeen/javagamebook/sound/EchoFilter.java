@@ -4,9 +4,9 @@ package com.brackeen.javagamebook.sound;
     The EchoFilter class is a SoundFilter that emulates an echo.
     @see FilteredSoundStream
 */
-public class EchoFilter extends SoundFilter {
+public class EchoFilter extends FloatSoundFilter {
 
-    private short[] delayBuffer;
+    private float[] delayBuffer;
     private int delayBufferPos;
     private float decay;
 
@@ -21,7 +21,7 @@ public class EchoFilter extends SoundFilter {
         half as loud as the source.
     */
     public EchoFilter(int numDelaySamples, float decay) {
-        delayBuffer = new short[numDelaySamples];
+        delayBuffer = new float[numDelaySamples];
         this.decay = decay;
     }
 
@@ -60,18 +60,21 @@ public class EchoFilter extends SoundFilter {
         multipied by the decay rate. The result is then stored in
         the delay buffer, so multiple echoes are heard.
     */
-    public void filter(byte[] samples, int offset, int length) {
+    public void filter(float[] samples, int offset, int length) {
 
-        for (int i=offset; i<offset+length; i+=2) {
-            // update the sample
-            short oldSample = getSample(samples, i);
-            short newSample = (short)(oldSample + decay *
-                delayBuffer[delayBufferPos]);
-            setSample(samples, i, newSample);
-
-            // update the delay buffer
-            delayBuffer[delayBufferPos] = newSample;
-            delayBufferPos++;
+        // work in runs that don't wrap around the delay buffer
+        while (length > 0) {
+            int count = Math.min(length,
+                delayBuffer.length - delayBufferPos);
+            for (int i=0; i<count; i++) {
+                float newSample = samples[offset + i] + decay *
+                    delayBuffer[delayBufferPos + i];
+                samples[offset + i] = newSample;
+                delayBuffer[delayBufferPos + i] = newSample;
+            }
+            offset+=count;
+            length-=count;
+            delayBufferPos+=count;
             if (delayBufferPos == delayBuffer.length) {
                 delayBufferPos = 0;
             }
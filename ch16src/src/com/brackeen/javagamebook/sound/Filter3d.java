@@ -6,12 +6,11 @@ import com.brackeen.javagamebook.graphics.Sprite;
     The Filter3d class is a SoundFilter that creates a 3d sound
     effect. The sound is filtered so that it is quiter the farther
     away the sound source is from the listener.
-    <p>Possible ideas to extend this class:
-    <ul><li>pan the sound to the left and right speakers
-    </ul>
+    <p>For stereo sound that is also panned to the left and
+    right speakers, use PanFilter3d.
     @see FilteredSoundStream
 */
-public class Filter3d extends SoundFilter {
+public class Filter3d extends FloatSoundFilter {
 
     // number of samples to shift when changing the volume.
     private static final int NUM_SHIFTING_SAMPLES = 500;
@@ -42,7 +41,7 @@ public class Filter3d extends SoundFilter {
         Filters the sound so that it gets more quiet with
         distance.
     */
-    public void filter(byte[] samples, int offset, int length) {
+    public void filter(float[] samples, int offset, int length) {
 
         if (source == null || listener == null) {
             // nothing to filter - return
@@ -60,26 +59,22 @@ public class Filter3d extends SoundFilter {
             newVolume = 0;
         }
 
-        // set the volume of the sample
-        int shift = 0;
-        for (int i=offset; i<offset+length; i+=2) {
-
-            float volume = newVolume;
-
-            // shift from the last volume to the new volume
-            if (shift < NUM_SHIFTING_SAMPLES) {
-                volume = lastVolume + (newVolume - lastVolume) *
-                    shift / NUM_SHIFTING_SAMPLES;
-                shift++;
-            }
+        // shift from the last volume to the new volume
+        int numShifting = Math.min(length, NUM_SHIFTING_SAMPLES);
+        float step = (newVolume - lastVolume) / NUM_SHIFTING_SAMPLES;
+        float volume = lastVolume;
+        for (int i=0; i<numShifting; i++) {
+            samples[offset + i] *= volume;
+            volume+=step;
+        }
 
-            // change the volume of the sample
-            short oldSample = getSample(samples, i);
-            short newSample = (short)(oldSample * volume);
-            setSample(samples, i, newSample);
+        // set the volume of the rest of the samples
+        for (int i=numShifting; i<length; i++) {
+            samples[offset + i] *= newVolume;
         }
 
-        lastVolume = newVolume;
+        lastVolume = (numShifting == NUM_SHIFTING_SAMPLES) ?
+            newVolume : volume;
     }
 
 }
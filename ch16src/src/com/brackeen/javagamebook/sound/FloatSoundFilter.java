@@ -0,0 +1,39 @@
+package com.brackeen.javagamebook.sound;
+
+/**
+    The FloatSoundFilter class is a SoundFilter that does its
+    work on float samples from -1 to 1. When used on 16-bit
+    samples, each block is decoded once, filtered, and encoded
+    once. Subclasses implement filter(float[], int, int) with
+    plain loops over the array, which the JIT can unroll and
+    vectorize.
+    @see FilterSequence
+*/
+public abstract class FloatSoundFilter extends SoundFilter {
+
+    private float[] floatBuffer;
+
+    /**
+        Filters an array of 16-bit, signed, little-endian samples
+        by converting them to floats and back.
+    */
+    public void filter(byte[] samples, int offset, int length) {
+        int numSamples = length / 2;
+        if (floatBuffer == null || floatBuffer.length < numSamples) {
+            floatBuffer = new float[numSamples];
+        }
+        decode(samples, offset, floatBuffer, 0, numSamples);
+        filter(floatBuffer, 0, numSamples);
+        encode(floatBuffer, 0, samples, offset, numSamples);
+    }
+
+
+    /**
+        Filters an array of float samples, from -1 to 1. The
+        offset and length are in samples. This method should be
+        implemented by subclasses.
+    */
+    public abstract void filter(float[] samples, int offset,
+        int length);
+
+}
@@ -0,0 +1,123 @@
+package com.brackeen.javagamebook.sound;
+
+import com.brackeen.javagamebook.graphics.Sprite;
+
+/**
+    The PanFilter3d class is a SoundFilter for stereo sound that
+    works like Filter3d, and also pans the sound to the left or
+    right speaker depending on where the source is relative to
+    the listener.
+    <p>In 2D, the source and listener are Sprites. In 3D, call
+    setPosition() each frame with the source's position relative
+    to the listener (x to the right, y up, z forward).
+    <p>Samples are interleaved left, right.
+    @see Filter3d
+*/
+public class PanFilter3d extends FloatSoundFilter {
+
+    // number of frames to shift when changing the volume.
+    private static final int NUM_SHIFTING_FRAMES = 500;
+
+    private Sprite source;
+    private Sprite listener;
+    private float x;
+    private float y;
+    private float z;
+    private int maxDistance;
+    private float lastLeft;
+    private float lastRight;
+
+    /**
+        Creates a new PanFilter3d object with the specified
+        source and listener Sprites. The Sprite's position can
+        be changed while this filter is running.
+        <p> The maxDistance parameter is the maximum distance
+        that the sound can be heard.
+    */
+    public PanFilter3d(Sprite source, Sprite listener,
+        int maxDistance)
+    {
+        this.source = source;
+        this.listener = listener;
+        this.maxDistance = maxDistance;
+    }
+
+
+    /**
+        Creates a new PanFilter3d object for 3D sound. The
+        source is at the listener until setPosition() is called.
+    */
+    public PanFilter3d(int maxDistance) {
+        this(null, null, maxDistance);
+    }
+
+
+    /**
+        Sets the position of the sound source relative to the
+        listener, for 3D sound.
+    */
+    public void setPosition(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+
+    /**
+        Filters the sound so that it gets more quiet with
+        distance, and pans it to the source's side.
+    */
+    public void filter(float[] samples, int offset, int length) {
+
+        if (source != null && listener != null) {
+            x = source.getX() - listener.getX();
+            y = listener.getY() - source.getY();
+            z = 0;
+        }
+
+        float distance = (float)Math.sqrt(x * x + y * y + z * z);
+
+        // set volume from 0 (no sound) to 1
+        float volume = (maxDistance - distance) / maxDistance;
+        if (volume <= 0) {
+            volume = 0;
+        }
+
+        // equal-power pan from -1 (left) to 1 (right)
+        float pan = (distance > 0) ? x / distance : 0;
+        double angle = (pan + 1) * Math.PI / 4;
+        float newLeft = volume * (float)Math.cos(angle);
+        float newRight = volume * (float)Math.sin(angle);
+
+        // shift from the last volume to the new volume
+        int numFrames = length / 2;
+        int numShifting = Math.min(numFrames, NUM_SHIFTING_FRAMES);
+        float leftStep = (newLeft - lastLeft) / NUM_SHIFTING_FRAMES;
+        float rightStep = (newRight - lastRight) / NUM_SHIFTING_FRAMES;
+        float left = lastLeft;
+        float right = lastRight;
+        int p = offset;
+        for (int i=0; i<numShifting; i++, p+=2) {
+            samples[p] *= left;
+            samples[p+1] *= right;
+            left+=leftStep;
+            right+=rightStep;
+        }
+
+        // set the volume of the rest of the frames
+        for (; p<offset + numFrames * 2; p+=2) {
+            samples[p] *= newLeft;
+            samples[p+1] *= newRight;
+        }
+
+        if (numShifting == NUM_SHIFTING_FRAMES) {
+            lastLeft = newLeft;
+            lastRight = newRight;
+        }
+        else {
+            lastLeft = left;
+            lastRight = right;
+        }
+    }
+
+}
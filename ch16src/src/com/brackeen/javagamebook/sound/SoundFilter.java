@@ -7,11 +7,18 @@ package com.brackeen.javagamebook.sound;
     played. However, SoundFilters can be reused after they are
     finished by called the reset() method.
     <p>Assumes all samples are 16-bit, signed, little-endian
-    format.
+    format. Filters can also run on float samples from -1 to 1,
+    which is how a FilterSequence chains them: the samples are
+    decoded once, run through every filter, and encoded once.
     @see FilteredSoundStream
+    @see FloatSoundFilter
 */
 public abstract class SoundFilter{
 
+    private static final float TO_FLOAT = 1 / 32768f;
+
+    private byte[] byteBuffer;
+
     /**
         Resets this SoundFilter. Does nothing by default.
     */
@@ -49,6 +56,23 @@ public abstract class SoundFilter{
         byte[] samples, int offset, int length);
 
 
+    /**
+        Filters an array of float samples, from -1 to 1. The
+        offset and length are in samples, not bytes. By default,
+        the samples are converted to 16-bit and filtered with
+        filter(byte[], int, int); filters that work on floats
+        should extend FloatSoundFilter instead.
+    */
+    public void filter(float[] samples, int offset, int length) {
+        if (byteBuffer == null || byteBuffer.length < length * 2) {
+            byteBuffer = new byte[length * 2];
+        }
+        encode(samples, offset, byteBuffer, 0, length);
+        filter(byteBuffer, 0, length * 2);
+        decode(byteBuffer, 0, samples, offset, length);
+    }
+
+
     /**
         Convenience method for getting a 16-bit sample from a
         byte array. Samples should be in 16-bit, signed,
@@ -73,4 +97,41 @@ public abstract class SoundFilter{
         buffer[position+1] = (byte)((sample >> 8) & 0xff);
     }
 
+
+    /**
+        Converts 16-bit, signed, little-endian samples to float
+        samples from -1 to 1.
+    */
+    public static void decode(byte[] src, int srcOffset,
+        float[] dest, int destOffset, int numSamples)
+    {
+        for (int i=0; i<numSamples; i++) {
+            int p = srcOffset + i * 2;
+            int sample = (src[p+1] << 8) | (src[p] & 0xff);
+            dest[destOffset + i] = sample * TO_FLOAT;
+        }
+    }
+
+
+    /**
+        Converts float samples from -1 to 1 to 16-bit, signed,
+        little-endian samples. Samples out of range are clipped.
+    */
+    public static void encode(float[] src, int srcOffset,
+        byte[] dest, int destOffset, int numSamples)
+    {
+        for (int i=0; i<numSamples; i++) {
+            int sample = (int)(src[srcOffset + i] * 32768);
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            }
+            else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            int p = destOffset + i * 2;
+            dest[p] = (byte)sample;
+            dest[p+1] = (byte)(sample >> 8);
+        }
+    }
+
 }
@@ -4,36 +4,53 @@ import java.io.*;
 import javax.sound.sampled.*;
 import javax.sound.midi.*;
 import com.brackeen.javagamebook.util.ThreadPool;
-import com.brackeen.javagamebook.util.LoopingByteInputStream;
 
 
 /**
     The SoundManager class manages sound playback. The
-    SoundManager is a ThreadPool, with each thread playing back
-    one sound at a time. This allows the SoundManager to
-    easily limit the number of simultaneous sounds being played.
+    SoundManager is a ThreadPool with a single thread, which
+    mixes every playing sound with a SoundMixer and writes the
+    result to one AudioSink (normally a LineSink). The number of
+    simultaneous sounds is the number of voices of the mixer,
+    and doesn't depend on how many lines the sound card has.
+    <p>Sounds loaded from files are kept in a SoundCache, so
+    loading the same file twice shares one copy of its samples.
+    Files larger than the stream threshold aren't loaded at all:
+    they are returned as StreamingSounds, decoded from disk each
+    time they are played.
     <p>Possible ideas to extend this class:<ul>
-    <li>add a setMasterVolume() method, which uses Controls to
-        set the volume for each line.
+    <li>add a setMasterVolume() method, which scales the mix
+        before it's written to the sink.
     <li>don't play a sound if more than, say, 500ms has passed
         since the request to play
     </ul>
 */
 public class SoundManager extends ThreadPool {
 
+    /**
+        The priority of sounds played without one.
+    */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static final int DEFAULT_VOICES = 32;
+    private static final long DEFAULT_CACHE_BUDGET = 16 << 20;
+    private static final int DEFAULT_STREAM_THRESHOLD = 1 << 20;
+
     private AudioFormat playbackFormat;
-    private ThreadLocal localLine;
-    private ThreadLocal localBuffer;
+    private AudioSink sink;
+    private SoundMixer mixer;
+    private SoundCache cache;
+    private int streamThreshold;
     private Object pausedLock;
     private boolean paused;
+    private boolean started;
+    private volatile boolean draining;
 
     /**
-        Creates a new SoundManager using the maximum number of
-        simultaneous sounds.
+        Creates a new SoundManager with 32 voices.
     */
     public SoundManager(AudioFormat playbackFormat) {
-        this(playbackFormat,
-            getMaxSimultaneousSounds(playbackFormat));
+        this(playbackFormat, DEFAULT_VOICES);
     }
 
 
@@ -44,22 +61,39 @@ public class SoundManager extends ThreadPool {
     public SoundManager(AudioFormat playbackFormat,
         int maxSimultaneousSounds)
     {
-        super(Math.min(maxSimultaneousSounds,
-            getMaxSimultaneousSounds(playbackFormat)));
+        this(playbackFormat, maxSimultaneousSounds, new LineSink());
+    }
+
+
+    /**
+        Creates a new SoundManager with the specified maximum
+        number of simultaneous sounds, that writes the mixed
+        sound to the specified sink.
+    */
+    public SoundManager(AudioFormat playbackFormat,
+        int maxSimultaneousSounds, AudioSink sink)
+    {
+        super(1);
         this.playbackFormat = playbackFormat;
-        localLine = new ThreadLocal();
-        localBuffer = new ThreadLocal();
+        this.sink = sink;
+        mixer = new SoundMixer(playbackFormat,
+            maxSimultaneousSounds);
+        cache = new SoundCache(DEFAULT_CACHE_BUDGET);
+        streamThreshold = DEFAULT_STREAM_THRESHOLD;
         pausedLock = new Object();
-        // notify threads in pool it's ok to start
+        // notify the mixing thread it's ok to start
         synchronized (this) {
+            started = true;
             notifyAll();
         }
+        runTask(new MixerTask());
     }
 
 
     /**
-        Gets the maximum number of simultaneous sounds with the
-        specified AudioFormat that the default mixer can play.
+        Gets the maximum number of lines with the specified
+        AudioFormat that the default mixer can open. The
+        SoundManager only needs one.
     */
     public static int getMaxSimultaneousSounds(
         AudioFormat playbackFormat)
@@ -77,23 +111,25 @@ public class SoundManager extends ThreadPool {
     protected void cleanUp() {
         // signal to unpause
         setPaused(false);
-
-        // close the mixer (stops any running sounds)
-        Mixer mixer = AudioSystem.getMixer(null);
-        if (mixer.isOpen()) {
-            mixer.close();
-        }
     }
 
 
+    /**
+        Stops all sounds and closes the sink.
+    */
     public void close() {
         cleanUp();
         super.close();
     }
 
 
+    /**
+        Waits for all playing sounds to finish, then closes the
+        sink.
+    */
     public void join() {
         cleanUp();
+        draining = true;
         super.join();
     }
 
@@ -123,11 +159,84 @@ public class SoundManager extends ThreadPool {
 
 
     /**
-        Loads a Sound from the file system. Returns null if an
-        error occurs.
+        Gets the SoundMixer that mixes the sounds played by this
+        SoundManager.
+    */
+    public SoundMixer getMixer() {
+        return mixer;
+    }
+
+
+    /**
+        Gets the SoundCache that holds the Sounds loaded from
+        files. Its budget is 16MB by default.
+    */
+    public SoundCache getCache() {
+        return cache;
+    }
+
+
+    /**
+        Sets the size, in bytes of decoded samples, above which
+        getSound(String) streams a file instead of loading it.
+        The default is 1MB (about 12 seconds of 44100Hz, 16-bit,
+        mono sound).
+    */
+    public void setStreamThreshold(int streamThreshold) {
+        this.streamThreshold = streamThreshold;
+    }
+
+
+    public int getStreamThreshold() {
+        return streamThreshold;
+    }
+
+
+    /**
+        Loads a Sound from the file system, or gets it from the
+        cache if it was already loaded. Files larger than the
+        stream threshold return a StreamingSound. Returns null if
+        an error occurs.
+        <p>Call releaseSound() when the Sound isn't needed
+        anymore, so the cache can evict it.
     */
     public Sound getSound(String filename) {
-        return getSound(getAudioInputStream(filename));
+        Object key = new File(filename).getAbsolutePath();
+        Sound sound = cache.get(key);
+        if (sound != null) {
+            return sound;
+        }
+
+        AudioInputStream audioStream = getAudioInputStream(filename);
+        if (audioStream == null) {
+            return null;
+        }
+        long length = audioStream.getFrameLength() *
+            audioStream.getFormat().getFrameSize();
+        if (length < 0 || length > streamThreshold) {
+            try {
+                audioStream.close();
+            }
+            catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            // read about 1 second ahead
+            int readAheadSize = playbackFormat.getFrameSize() *
+                Math.round(playbackFormat.getSampleRate());
+            return new StreamingSound(this, filename, readAheadSize);
+        }
+
+        return cache.put(key, getSound(audioStream));
+    }
+
+
+    /**
+        Releases a Sound returned by getSound(String). The Sound
+        can still be played, but it may be evicted from the
+        cache.
+    */
+    public void releaseSound(Sound sound) {
+        cache.release(sound);
     }
 
 
@@ -231,17 +340,32 @@ public class SoundManager extends ThreadPool {
     public InputStream play(Sound sound, SoundFilter filter,
         boolean loop)
     {
-        InputStream is;
+        return play(sound, filter, loop, DEFAULT_PRIORITY);
+    }
+
+
+    /**
+        Plays a sound with an optional SoundFilter, optionally
+        looping, and with the specified priority. If all voices
+        are busy, the sound takes over the oldest voice with the
+        lowest priority, or isn't played if all of them have a
+        higher priority. Returns null if the sound isn't played.
+        This method returns immediately.
+    */
+    public InputStream play(Sound sound, SoundFilter filter,
+        boolean loop, int priority)
+    {
         if (sound != null) {
-            if (loop) {
-                is = new LoopingByteInputStream(
-                    sound.getSamples());
+            InputStream is = sound.openStream(loop);
+            if (is != null) {
+                // keep the Sound in the cache while it plays
+                cache.acquire(sound);
+                is = new CachedSoundStream(is, sound);
             }
-            else {
-                is = new ByteArrayInputStream(sound.getSamples());
-            }
-
-            return play(is, filter);
+            // if the mixer rejects the sound, it closes the
+            // stream, which releases the Sound (and, for a
+            // StreamingSound, its file and read-ahead thread)
+            return play(is, filter, priority);
         }
         return null;
     }
@@ -261,27 +385,66 @@ public class SoundManager extends ThreadPool {
         sound filter. This method returns immediately.
     */
     public InputStream play(InputStream is, SoundFilter filter) {
+        return play(is, filter, DEFAULT_PRIORITY);
+    }
+
+
+    /**
+        Plays a sound from an InputStream with an optional
+        sound filter and the specified priority. The returned
+        InputStream identifies the sound for setVolume() and
+        stop(). Returns null, and closes the InputStream, if all
+        voices are playing sounds with a higher priority. This
+        method returns immediately.
+    */
+    public InputStream play(InputStream is, SoundFilter filter,
+        int priority)
+    {
         if (is != null) {
             if (filter != null) {
                 is = new FilteredSoundStream(is, filter);
             }
-            runTask(new SoundPlayer(is));
+            if (!mixer.play(is, priority)) {
+                // the mixer closed the stream
+                return null;
+            }
         }
         return is;
     }
 
 
     /**
-        Signals that a PooledThread has started. Creates the
-        Thread's line and buffer.
+        Sets the volume of a sound returned by play(), from 0
+        (silent) to 1 (unchanged).
+    */
+    public void setVolume(InputStream sound, float volume) {
+        mixer.setVolume(sound, volume);
+    }
+
+
+    /**
+        Fades out and stops a sound returned by play().
+    */
+    public void stop(InputStream sound) {
+        mixer.stop(sound);
+    }
+
+
+    /**
+        Signals that a PooledThread has started. Opens the sink.
     */
     protected void threadStarted() {
         // wait for the SoundManager constructor to finish
         synchronized (this) {
             try {
-                wait();
+                while (!started) {
+                    wait();
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
             }
-            catch (InterruptedException ex) { }
         }
 
         // use a short, 100ms (1/10th sec) buffer for filters that
@@ -289,95 +452,84 @@ public class SoundManager extends ThreadPool {
         int bufferSize = playbackFormat.getFrameSize() *
             Math.round(playbackFormat.getSampleRate() / 10);
 
-        // create, open, and start the line
-        SourceDataLine line;
-        DataLine.Info lineInfo = new DataLine.Info(
-            SourceDataLine.class, playbackFormat);
         try {
-            line = (SourceDataLine)AudioSystem.getLine(lineInfo);
-            line.open(playbackFormat, bufferSize);
+            sink.open(playbackFormat, bufferSize);
         }
         catch (LineUnavailableException ex) {
             // the line is unavailable - signal to end this thread
             Thread.currentThread().interrupt();
-            return;
         }
-
-        line.start();
-
-        // create the buffer
-        byte[] buffer = new byte[bufferSize];
-
-        // set this thread's locals
-        localLine.set(line);
-        localBuffer.set(buffer);
     }
 
 
     /**
         Signals that a PooledThread has stopped. Drains and
-        closes the Thread's Line.
+        closes the sink.
     */
     protected void threadStopped() {
-        SourceDataLine line = (SourceDataLine)localLine.get();
-        if (line != null) {
-            line.drain();
-            line.close();
-        }
+        sink.drain();
+        sink.close();
     }
 
 
     /**
-        The SoundPlayer class is a task for the PooledThreads to
-        run. It receives the threads's Line and byte buffer from
-        the ThreadLocal variables and plays a sound from an
-        InputStream.
-        <p>This class only works when called from a PooledThread.
+        The CachedSoundStream class is a stream of a Sound that
+        releases the Sound from the cache when closed. The mixer
+        closes it when the sound is done playing.
     */
-    protected class SoundPlayer implements Runnable {
+    protected class CachedSoundStream extends FilterInputStream {
 
-        private InputStream source;
+        private Sound sound;
 
-        public SoundPlayer(InputStream source) {
-            this.source = source;
+        public CachedSoundStream(InputStream in, Sound sound) {
+            super(in);
+            this.sound = sound;
         }
 
-        public void run() {
-            // get line and buffer from ThreadLocals
-            SourceDataLine line = (SourceDataLine)localLine.get();
-            byte[] buffer = (byte[])localBuffer.get();
-            if (line == null || buffer == null) {
-                // the line is unavailable
-                return;
+        public void close() throws IOException {
+            super.close();
+            synchronized (this) {
+                if (sound != null) {
+                    cache.release(sound);
+                    sound = null;
+                }
             }
+        }
+    }
 
-            // copy data to the line
-            try {
-                int numBytesRead = 0;
-                while (numBytesRead != -1) {
-                    // if paused, wait until unpaused
-                    synchronized (pausedLock) {
-                        if (paused) {
-                            try {
-                                pausedLock.wait();
-                            }
-                            catch (InterruptedException ex) {
-                                return;
-                            }
+
+    /**
+        The MixerTask class is the task the mixing thread runs
+        until the SoundManager is closed. It mixes 10ms
+        (1/100th sec) blocks and writes them to the sink, which
+        blocks while its buffer is full.
+    */
+    protected class MixerTask implements Runnable {
+
+        public void run() {
+            int blockSize = playbackFormat.getFrameSize() *
+                Math.round(playbackFormat.getSampleRate() / 100);
+            byte[] buffer = new byte[blockSize];
+
+            while (!Thread.currentThread().isInterrupted()) {
+                // if paused, wait until unpaused
+                synchronized (pausedLock) {
+                    if (paused) {
+                        try {
+                            pausedLock.wait();
+                        }
+                        catch (InterruptedException ex) {
+                            return;
                         }
-                    }
-                    // copy data
-                    numBytesRead =
-                        source.read(buffer, 0, buffer.length);
-                    if (numBytesRead != -1) {
-                        line.write(buffer, 0, numBytesRead);
                     }
                 }
-            }
-            catch (IOException ex) {
-                ex.printStackTrace();
-            }
 
+                int numMixed = mixer.mix(buffer, 0, blockSize);
+                if (numMixed == 0 && draining) {
+                    return;
+                }
+                sink.write(buffer, 0, blockSize);
+            }
         }
     }
 
@@ -0,0 +1,198 @@
+package com.brackeen.javagamebook.test;
+
+import com.brackeen.javagamebook.graphics.Animation;
+import com.brackeen.javagamebook.graphics.Sprite;
+import com.brackeen.javagamebook.sound.*;
+
+/**
+    Compares the throughput, in samples per second, of an echo
+    and 3d filter chain run the old way (each filter a separate
+    pass over 16-bit samples) against the float pipeline (decode
+    once, filter floats, encode once), and of the panning filter.
+    <p>Usage: java FilterBenchmark [seconds of audio]
+*/
+public class FilterBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+
+    // the block size the SoundManager plays
+    private static final int BLOCK_SAMPLES = SAMPLE_RATE / 100;
+
+    public static void main(String[] args) {
+        int seconds = (args.length > 0) ?
+            Integer.parseInt(args[0]) : 600;
+        int numBlocks = seconds * 100;
+
+        Sprite source = new Sprite(new Animation());
+        Sprite listener = new Sprite(new Animation());
+        source.setX(300);
+
+        byte[] tone = createTone(SAMPLE_RATE);
+        byte[] bytes = new byte[BLOCK_SAMPLES * 2];
+        float[] floats = new float[BLOCK_SAMPLES];
+
+        for (int pass=0; pass<2; pass++) {
+            SoundFilter[] oldChain = new SoundFilter[] {
+                new OldEchoFilter(11025, .6f),
+                new OldFilter3d(source, listener, 1000) };
+            SoundFilter newChain = new FilterSequence(new SoundFilter[] {
+                new EchoFilter(11025, .6f),
+                new Filter3d(source, listener, 1000) });
+            SoundFilter panChain = new FilterSequence(new SoundFilter[] {
+                new EchoFilter(11025, .6f),
+                new PanFilter3d(source, listener, 1000) });
+
+            long start = System.nanoTime();
+            for (int i=0; i<numBlocks; i++) {
+                fill(bytes, tone, i);
+                for (int j=0; j<oldChain.length; j++) {
+                    oldChain[j].filter(bytes, 0, bytes.length);
+                }
+            }
+            report(pass, "byte, one pass per filter", numBlocks,
+                System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i=0; i<numBlocks; i++) {
+                fill(bytes, tone, i);
+                newChain.filter(bytes, 0, bytes.length);
+            }
+            report(pass, "byte, float pipeline", numBlocks,
+                System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i=0; i<numBlocks; i++) {
+                fill(bytes, tone, i);
+                SoundFilter.decode(bytes, 0, floats, 0, BLOCK_SAMPLES);
+                newChain.filter(floats, 0, BLOCK_SAMPLES);
+            }
+            report(pass, "float only", numBlocks,
+                System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i=0; i<numBlocks; i++) {
+                fill(bytes, tone, i);
+                panChain.filter(bytes, 0, bytes.length);
+            }
+            report(pass, "byte, stereo pan pipeline", numBlocks,
+                System.nanoTime() - start);
+        }
+    }
+
+
+    /**
+        Creates a 440Hz tone.
+    */
+    private static byte[] createTone(int numSamples) {
+        byte[] tone = new byte[numSamples * 2];
+        for (int i=0; i<numSamples; i++) {
+            short sample = (short)(8000 * Math.sin(
+                2 * Math.PI * 440 * i / SAMPLE_RATE));
+            SoundFilter.setSample(tone, i * 2, sample);
+        }
+        return tone;
+    }
+
+
+    /**
+        Copies the next block of the tone.
+    */
+    private static void fill(byte[] bytes, byte[] tone, int block) {
+        int start = (block * bytes.length) % tone.length;
+        int count = Math.min(bytes.length, tone.length - start);
+        System.arraycopy(tone, start, bytes, 0, count);
+        System.arraycopy(tone, 0, bytes, count, bytes.length - count);
+    }
+
+
+    private static void report(int pass, String name, int numBlocks,
+        long elapsed)
+    {
+        // the first pass warms up the JIT
+        if (pass == 0) {
+            return;
+        }
+        long numSamples = (long)numBlocks * BLOCK_SAMPLES;
+        System.out.println(name + ": " +
+            Math.round(numSamples * 1e3 / elapsed) + " samples/ms");
+    }
+
+
+    /**
+        The EchoFilter as it was before the float pipeline.
+    */
+    private static class OldEchoFilter extends SoundFilter {
+
+        private short[] delayBuffer;
+        private int delayBufferPos;
+        private float decay;
+
+        public OldEchoFilter(int numDelaySamples, float decay) {
+            delayBuffer = new short[numDelaySamples];
+            this.decay = decay;
+        }
+
+        public void filter(byte[] samples, int offset, int length) {
+            for (int i=offset; i<offset+length; i+=2) {
+                short oldSample = getSample(samples, i);
+                short newSample = (short)(oldSample + decay *
+                    delayBuffer[delayBufferPos]);
+                setSample(samples, i, newSample);
+
+                delayBuffer[delayBufferPos] = newSample;
+                delayBufferPos++;
+                if (delayBufferPos == delayBuffer.length) {
+                    delayBufferPos = 0;
+                }
+            }
+        }
+    }
+
+
+    /**
+        The Filter3d as it was before the float pipeline.
+    */
+    private static class OldFilter3d extends SoundFilter {
+
+        private static final int NUM_SHIFTING_SAMPLES = 500;
+
+        private Sprite source;
+        private Sprite listener;
+        private int maxDistance;
+        private float lastVolume;
+
+        public OldFilter3d(Sprite source, Sprite listener,
+            int maxDistance)
+        {
+            this.source = source;
+            this.listener = listener;
+            this.maxDistance = maxDistance;
+        }
+
+        public void filter(byte[] samples, int offset, int length) {
+            float dx = (source.getX() - listener.getX());
+            float dy = (source.getY() - listener.getY());
+            float distance = (float)Math.sqrt(dx * dx + dy * dy);
+
+            float newVolume = (maxDistance - distance) / maxDistance;
+            if (newVolume <= 0) {
+                newVolume = 0;
+            }
+
+            int shift = 0;
+            for (int i=offset; i<offset+length; i+=2) {
+                float volume = newVolume;
+                if (shift < NUM_SHIFTING_SAMPLES) {
+                    volume = lastVolume + (newVolume - lastVolume) *
+                        shift / NUM_SHIFTING_SAMPLES;
+                    shift++;
+                }
+                short oldSample = getSample(samples, i);
+                short newSample = (short)(oldSample * volume);
+                setSample(samples, i, newSample);
+            }
+            lastVolume = newVolume;
+        }
+    }
+
+}